@@ -19,10 +19,13 @@
 package eu.tango.energymodeller;
 
 import eu.ascetic.utils.ovf.api.OvfDefinition;
+import eu.tango.energymodeller.datasourceclient.CollectDInfluxDbDataSourceAdaptor;
 import eu.tango.energymodeller.datasourceclient.HostDataSource;
 import eu.tango.energymodeller.datasourceclient.SlurmDataSourceAdaptor;
 import eu.tango.energymodeller.datasourceclient.WattsUpMeterDataSourceAdaptor;
+import eu.tango.energymodeller.datastore.ClusterPowerAggregates;
 import eu.tango.energymodeller.datastore.DataGatherer;
+import eu.tango.energymodeller.datastore.DataGathererSnapshot;
 import eu.tango.energymodeller.datastore.DatabaseConnector;
 import eu.tango.energymodeller.datastore.DefaultDatabaseConnector;
 import eu.tango.energymodeller.energypredictor.CpuOnlyEnergyPredictor;
@@ -31,8 +34,10 @@ import eu.tango.energymodeller.energypredictor.vmenergyshare.DefaultEnergyShareR
 import eu.tango.energymodeller.energypredictor.vmenergyshare.EnergyDivision;
 import eu.tango.energymodeller.energypredictor.vmenergyshare.EnergyShareRule;
 import eu.tango.energymodeller.energypredictor.vmenergyshare.LoadFractionShareRule;
+import eu.tango.energymodeller.energypredictor.vmenergyshare.historic.HistoricEnergyAccumulator;
 import eu.tango.energymodeller.energypredictor.vmenergyshare.historic.HistoricLoadBasedDivision;
 import eu.tango.energymodeller.energypredictor.vmenergyshare.historic.LoadBasedDivision;
+import eu.tango.energymodeller.energypredictor.vmenergyshare.historic.LoadBasedDivisionWithIdleEnergy;
 import eu.tango.energymodeller.types.OVFConverterFactory;
 import eu.tango.energymodeller.types.TimePeriod;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
@@ -56,8 +61,20 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -94,6 +111,10 @@ public class EnergyModeller {
     private Class<?> historicEnergyDivisionMethod = LoadBasedDivision.class;
     private Class<?> currentEnergyDivisionMethod = DefaultEnergyShareRule.class;//LoadFractionShareRule.class;
     private boolean considerIdleEnergyCurrentVm = true;
+    private long historicStreamingMinPeriod = TimeUnit.DAYS.toSeconds(1);
+    private int queryParallelism = 8;
+    private long queryTimeout = 30000;
+    private ThreadPoolExecutor queryExecutor;
     private static final String CONFIG_FILE = "energy-modeller.properties";
 
     /**
@@ -216,6 +237,12 @@ public class EnergyModeller {
                 String predictorStr = config.getString("energy.modeller.predictor", "CpuAndAcceleratorEnergyPredictor");
                 setEnergyPredictor(predictorStr);                
                 config.setProperty("energy.modeller.predictor", predictorStr);
+                historicStreamingMinPeriod = config.getLong("energy.modeller.historic.streaming_min_period_sec", historicStreamingMinPeriod);
+                config.setProperty("energy.modeller.historic.streaming_min_period_sec", historicStreamingMinPeriod);
+                queryParallelism = config.getInt("energy.modeller.query.parallelism", queryParallelism);
+                config.setProperty("energy.modeller.query.parallelism", queryParallelism);
+                queryTimeout = config.getLong("energy.modeller.query.timeout_ms", queryTimeout);
+                config.setProperty("energy.modeller.query.timeout_ms", queryTimeout);
                 if (!new File(CONFIG_FILE).exists()) {
                     config.save();
                 }
@@ -223,6 +250,7 @@ public class EnergyModeller {
         } catch (ConfigurationException ex) {
             Logger.getLogger(EnergyModeller.class.getName()).log(Level.INFO, "Error loading the configuration of the energy modeller", ex);
         }
+        queryExecutor = createQueryExecutor(queryParallelism);
         dataGatherer = new DataGatherer(datasource, database);
         dataGatherer.setPerformDataGathering(performDataGathering);
         try {
@@ -234,6 +262,125 @@ public class EnergyModeller {
         }
     }
 
+    /**
+     * This creates the executor that runs the queries for each element of a
+     * collection based query in parallel.
+     *
+     * @param parallelism The maximum amount of elements to query at once
+     * @return The executor for collection based queries.
+     */
+    private static ThreadPoolExecutor createQueryExecutor(int parallelism) {
+        parallelism = Math.max(1, parallelism);
+        ThreadPoolExecutor answer = new ThreadPoolExecutor(parallelism, parallelism,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "energy-modeller-query-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        answer.allowCoreThreadTimeOut(true);
+        return answer;
+    }
+
+    /**
+     * This runs the queries for each element of a collection based query in
+     * parallel, waiting at most the query timeout for them to complete. The
+     * results of any queries that do not complete in time are left out. Once
+     * the energy modeller has been stopped the queries are run one after
+     * another, on the calling thread.
+     *
+     * @param <T> The type of record returned by each query
+     * @param queries The queries to run
+     * @return The records returned by the queries that completed in time.
+     */
+    private <T> ArrayList<T> invokeQueries(Collection<Callable<T>> queries) {
+        if (queryExecutor.isShutdown()) {
+            return invokeQueriesInline(queries);
+        }
+        ArrayList<T> answer = new ArrayList<>();
+        int incomplete = 0;
+        try {
+            List<Future<T>> results = queryExecutor.invokeAll(queries, queryTimeout, TimeUnit.MILLISECONDS);
+            for (Future<T> result : results) {
+                if (result.isCancelled()) {
+                    incomplete++;
+                    continue;
+                }
+                try {
+                    answer.add(result.get());
+                } catch (ExecutionException ex) {
+                    incomplete++;
+                    Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE, "A query failed", ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Logger.getLogger(EnergyModeller.class.getName()).log(Level.WARNING, "The energy modeller was interupted while querying.", ex);
+        } catch (RejectedExecutionException ex) {
+            //The energy modeller was stopped while the queries were submitted
+            return invokeQueriesInline(queries);
+        }
+        if (incomplete > 0) {
+            Logger.getLogger(EnergyModeller.class.getName()).log(Level.WARNING,
+                    "{0} of {1} queries did not complete in time and were left out of the results.",
+                    new Object[]{incomplete, queries.size()});
+        }
+        return answer;
+    }
+
+    /**
+     * This runs the queries for each element of a collection based query one
+     * after another, on the calling thread.
+     *
+     * @param <T> The type of record returned by each query
+     * @param queries The queries to run
+     * @return The records returned by the queries that succeeded.
+     */
+    private <T> ArrayList<T> invokeQueriesInline(Collection<Callable<T>> queries) {
+        ArrayList<T> answer = new ArrayList<>();
+        for (Callable<T> query : queries) {
+            try {
+                answer.add(query.call());
+            } catch (Exception ex) {
+                Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE, "A query failed", ex);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This sets the maximum amount of hosts, VMs or applications that are
+     * queried at once, by the collection based queries.
+     *
+     * @param parallelism The maximum amount of queries to run at once
+     */
+    public void setQueryParallelism(int parallelism) {
+        queryParallelism = Math.max(1, parallelism);
+        //The core pool size may never exceed the maximum pool size
+        if (queryParallelism > queryExecutor.getMaximumPoolSize()) {
+            queryExecutor.setMaximumPoolSize(queryParallelism);
+            queryExecutor.setCorePoolSize(queryParallelism);
+        } else {
+            queryExecutor.setCorePoolSize(queryParallelism);
+            queryExecutor.setMaximumPoolSize(queryParallelism);
+        }
+    }
+
+    /**
+     * This sets the time a collection based query waits for the queries of
+     * its hosts, VMs or applications to complete. Any that have not completed
+     * in this time are left out of the results.
+     *
+     * @param timeout The timeout in milliseconds
+     */
+    public void setQueryTimeout(long timeout) {
+        queryTimeout = timeout;
+    }
+
     /**
      * This allows the energy predictor to be set
      *
@@ -346,6 +493,18 @@ public class EnergyModeller {
         this.considerIdleEnergyCurrentVm = considerIdleEnergy;
     }
 
+    /**
+     * This sets the shortest time period for which the historic energy usage
+     * of VMs is calculated by streaming the host's records from the database,
+     * rather than reading them all into memory first.
+     *
+     * @param minPeriod The time period in seconds, 0 to always stream the
+     * records or -1 to never stream them.
+     */
+    public void setHistoricStreamingMinPeriod(long minPeriod) {
+        this.historicStreamingMinPeriod = minPeriod;
+    }
+
     /**
      * This returns the energy usage for a named virtual machine.
      *
@@ -363,9 +522,44 @@ public class EnergyModeller {
                     + " Please check the start and end times used. {0}", timePeriod.toString());
             return null;
         }
-        HistoricUsageRecord answer = new HistoricUsageRecord(vm);
-        Host host = vm.getAllocatedTo();
+        ArrayList<VmDeployed> vms = new ArrayList<>();
+        vms.add(vm);
+        return getEnergyRecordForVMsOnHost(vm.getAllocatedTo(), vms, timePeriod).get(0);
+    }
+
+    /**
+     * This returns the energy usage for a set of virtual machines that are on
+     * the same host. The host's data is read and divided among the VMs once,
+     * rather than once for each VM.
+     *
+     * @param host The host the VMs are on
+     * @param vms The VMs to get the energy usage records for
+     * @param timePeriod The time period for which the query applies.
+     * @return The energy usage records for the VMs, in the same order as the
+     * VMs were given.
+     */
+    private List<HistoricUsageRecord> getEnergyRecordForVMsOnHost(Host host, List<VmDeployed> vms, TimePeriod timePeriod) {
         List<HostEnergyRecord> hostsData = database.getHostHistoryData(host, timePeriod);
+        if (isStreamed(timePeriod) && hostsData != null) {
+            /**
+             * The host's records are held while the much larger set of VM load
+             * records is streamed from the database and matched against them.
+             */
+            HistoricEnergyAccumulator accumulator = new HistoricEnergyAccumulator(host, vms,
+                    LoadBasedDivisionWithIdleEnergy.class.equals(historicEnergyDivisionMethod));
+            accumulator.setEnergyUsage(hostsData);
+            if (database.getHostVmHistoryLoadData(host, timePeriod, accumulator)) {
+                Map<EnergyUsageSource, Double> energyUsed = accumulator.getEnergyUsage();
+                List<HistoricUsageRecord> answer = new ArrayList<>();
+                for (VmDeployed vm : vms) {
+                    answer.add(getHistoricUsageRecord(vm, energyUsed.get(vm), accumulator.getDuration(),
+                            accumulator.getStart(), accumulator.getEnd(), timePeriod));
+                }
+                return answer;
+            }
+            Logger.getLogger(EnergyModeller.class.getName()).log(Level.WARNING,
+                    "The VM load records could not be streamed, falling back to reading them in full.");
+        }
         List<HostEnergyUserLoadFraction> loadFractionData = (List<HostEnergyUserLoadFraction>) database.getHostVmHistoryLoadData(host, timePeriod);
         HistoricLoadBasedDivision shareRule;
         try {
@@ -383,17 +577,73 @@ public class EnergyModeller {
         }
         shareRule.setEnergyUsage(hostsData);
         shareRule.setLoadFraction(loadFractionData);
-        double totalEnergy = shareRule.getEnergyUsage(vm);
-        answer.setTotalEnergyUsed(totalEnergy);
-        answer.setAvgPowerUsed(totalEnergy / (((double) shareRule.getDuration()) / 3600));
-        if (shareRule.getStart() != null && shareRule.getEnd() != null) {
-            answer.setDuration(new TimePeriod(shareRule.getStart(), shareRule.getEnd()));
+        Map<EnergyUsageSource, Double> energyUsed = shareRule.getEnergyUsage(vms);
+        List<HistoricUsageRecord> answer = new ArrayList<>();
+        for (VmDeployed vm : vms) {
+            answer.add(getHistoricUsageRecord(vm, energyUsed.get(vm), shareRule.getDuration(),
+                    shareRule.getStart(), shareRule.getEnd(), timePeriod));
+        }
+        return answer;
+    }
+
+    /**
+     * This indicates if the VM load records for a query should be streamed
+     * from the database, rather than read in full before dividing the
+     * host's energy among its VMs. This is only possible for the load based
+     * division rules.
+     *
+     * @param timePeriod The time period for which the query applies.
+     * @return If the VM load records should be streamed.
+     */
+    private boolean isStreamed(TimePeriod timePeriod) {
+        if (historicStreamingMinPeriod < 0
+                || !(LoadBasedDivision.class.equals(historicEnergyDivisionMethod)
+                || LoadBasedDivisionWithIdleEnergy.class.equals(historicEnergyDivisionMethod))) {
+            return false;
+        }
+        return timePeriod == null || timePeriod.getDuration() >= historicStreamingMinPeriod;
+    }
+
+    /**
+     * This creates the historic usage record for a VM.
+     *
+     * @param vm The VM the record is for
+     * @param totalEnergy The energy used by the VM
+     * @param duration The duration in seconds of the host's records
+     * @param start The time of the first of the host's records
+     * @param end The time of the last of the host's records
+     * @param timePeriod The time period for which the query applies.
+     * @return The historic usage record for the VM.
+     */
+    private HistoricUsageRecord getHistoricUsageRecord(VmDeployed vm, double totalEnergy, long duration, Calendar start, Calendar end, TimePeriod timePeriod) {
+        HistoricUsageRecord record = new HistoricUsageRecord(vm);
+        record.setTotalEnergyUsed(totalEnergy);
+        record.setAvgPowerUsed(totalEnergy / (((double) duration) / 3600));
+        if (start != null && end != null) {
+            record.setDuration(new TimePeriod(start, end));
         } else {
             /**
              * In this case the share rule has no data so the time period is
              * reported as null. This avoids a null pointer.
              */
-            answer.setDuration(timePeriod);
+            record.setDuration(timePeriod);
+        }
+        return record;
+    }
+
+    /**
+     * This returns the energy usage for a collection of virtual machines. The
+     * VMs are grouped by the host they are on, so that each host's data is
+     * only read and divided among its VMs once.
+     *
+     * @param vms The set of virtual machines.
+     * @param timePeriod The time period for which the query applies.
+     * @return The energy usage records for the VMs.
+     */
+    private HashSet<HistoricUsageRecord> getEnergyRecordForVMsByHost(Collection<VmDeployed> vms, TimePeriod timePeriod) {
+        HashSet<HistoricUsageRecord> answer = new HashSet<>();
+        for (Map.Entry<Host, List<VmDeployed>> hostsVms : groupVmsByHost(vms).entrySet()) {
+            answer.addAll(getEnergyRecordForVMsOnHost(hostsVms.getKey(), hostsVms.getValue(), timePeriod));
         }
         return answer;
     }
@@ -421,11 +671,7 @@ public class EnergyModeller {
                     + " Please check the start and end times used. {0}", timePeriod.toString());
             return null;
         }
-        HashSet<HistoricUsageRecord> answer = new HashSet<>();
-        for (VmDeployed vm : vms) {
-            answer.add(getEnergyRecordForVM(vm, timePeriod));
-        }
-        return answer;
+        return getEnergyRecordForVMsByHost(vms, timePeriod);
     }
 
     /**
@@ -451,12 +697,8 @@ public class EnergyModeller {
                     + " Please check the start and end times used. {0}", timePeriod.toString());
             return null;
         }
-        HashSet<HistoricUsageRecord> answer = new HashSet<>();
         HashSet<VmDeployed> vms = dataGatherer.getVmList(deploymentId);
-        for (VmDeployed vm : vms) {
-            answer.add(getEnergyRecordForVM(vm, timePeriod));
-        }
-        return answer;
+        return getEnergyRecordForVMsByHost(vms, timePeriod);
     }
 
     /**
@@ -478,6 +720,11 @@ public class EnergyModeller {
                     + " Please check the start and end times used. {0}", timePeriod.toString());
             return null;
         }
+        //Use the cumulative energy index if it covers the time period
+        HistoricUsageRecord indexed = database.getHostEnergyRecord(host, timePeriod);
+        if (indexed != null) {
+            return indexed;
+        }
         List<HostEnergyRecord> data = database.getHostHistoryData(host, timePeriod);
         HistoricUsageRecord answer = new HistoricUsageRecord(host);
         double totalEnergy = 0;
@@ -519,18 +766,23 @@ public class EnergyModeller {
      * (i.e. long as recorded data)
      *
      */
-    public HashSet<HistoricUsageRecord> getEnergyRecordForHost(Collection<Host> hosts, TimePeriod timePeriod) {
-        HashSet<HistoricUsageRecord> answer = new HashSet<>();
+    public HashSet<HistoricUsageRecord> getEnergyRecordForHost(Collection<Host> hosts, final TimePeriod timePeriod) {
         if (timePeriod != null && !timePeriod.isValid()) {
             Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE,
                     "The time period passed to the energy modeller was invalid. "
                     + " Please check the start and end times used. {0}", timePeriod.toString());
             return null;
         }
-        for (Host host : hosts) {
-            answer.add(getEnergyRecordForHost(host, timePeriod));
+        ArrayList<Callable<HistoricUsageRecord>> queries = new ArrayList<>();
+        for (final Host host : hosts) {
+            queries.add(new Callable<HistoricUsageRecord>() {
+                @Override
+                public HistoricUsageRecord call() {
+                    return getEnergyRecordForHost(host, timePeriod);
+                }
+            });
         }
-        return answer;
+        return new HashSet<>(invokeQueries(queries));
     }
 
     /**
@@ -543,36 +795,170 @@ public class EnergyModeller {
      *
      */
     public CurrentUsageRecord getCurrentEnergyForVM(VmDeployed vm) {
-        EnergyShareRule rule;
-        try {
-            rule = (EnergyShareRule) currentEnergyDivisionMethod.newInstance();
-        } catch (InstantiationException | IllegalAccessException ex) {
-            rule = new DefaultEnergyShareRule();
-        }
-        Host host = vm.getAllocatedTo();
+        ArrayList<VmDeployed> vms = new ArrayList<>();
+        vms.add(vm);
+        return getCurrentEnergyForVMsOnHost(vm.getAllocatedTo(), vms).get(0);
+    }
+
+    /**
+     * This returns the power consumption for a set of virtual machines that
+     * are on the same host. The host's power and VM load is read and divided
+     * among the VMs once, rather than once for each VM.
+     *
+     * @param host The host the VMs are on
+     * @param vms The VMs to get the current power usage records for
+     * @return The current power usage records for the VMs, in the same order
+     * as the VMs were given.
+     */
+    private List<CurrentUsageRecord> getCurrentEnergyForVMsOnHost(Host host, List<VmDeployed> vms) {
         if (host == null) {
-            CurrentUsageRecord answer = new CurrentUsageRecord(vm);
-            answer.setTime(Calendar.getInstance());
-            answer.setPower(0);
-            Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE,
-                    "The VM {0} host was not correctly detected!", vm.getName());
+            for (VmDeployed vm : vms) {
+                Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE,
+                        "The VM {0} host was not correctly detected!", vm.getName());
+            }
+            return getUnallocatedUsageRecords(vms);
         }
+        EnergyShareRule rule = getCurrentEnergyShareRule();
         ArrayList<VmDeployed> otherVms = dataGatherer.getVMsOnHost(host);
-        ArrayList<VmDeployed> vmsDeployedOnHost = new ArrayList<>();
         ArrayList<EnergyUsageSource> vmsOnHost = new ArrayList<>();
         vmsOnHost.addAll(otherVms);
-        vmsOnHost.add(vm);
+        vmsOnHost.addAll(vms);
         if (rule.getClass().equals(LoadFractionShareRule.class)) {
+            ArrayList<VmDeployed> vmsDeployedOnHost = new ArrayList<>();
             vmsDeployedOnHost.addAll(otherVms);
-            vmsDeployedOnHost.add(vm);
-            ((LoadFractionShareRule) rule).setVmMeasurements(datasource.getVmData(vmsDeployedOnHost));
+            vmsDeployedOnHost.addAll(vms);
+            HostEnergyUserLoadFraction fraction = getSnapshotVmLoadFraction(host);
+            if (fraction != null && fraction.getFraction().keySet().containsAll(vmsDeployedOnHost)) {
+                ((LoadFractionShareRule) rule).setFractions(new HashMap<>(fraction.getFraction()));
+            } else {
+                ((LoadFractionShareRule) rule).setVmMeasurements(datasource.getVmData(vmsDeployedOnHost));
+            }
+        }
+        return getCurrentUsageRecords(host, rule, vmsOnHost, vms);
+    }
+
+    /**
+     * This gets the load fractions of a host's VMs from the data gatherer's
+     * latest snapshot.
+     *
+     * @param host The host to get the VMs' load fractions for
+     * @return The load fractions, or null if there is no recent snapshot
+     * holding them.
+     */
+    private HostEnergyUserLoadFraction getSnapshotVmLoadFraction(Host host) {
+        DataGathererSnapshot snapshot = dataGatherer.getFreshSnapshot();
+        if (snapshot == null) {
+            return null;
         }
-        CurrentUsageRecord hostAnswer = datasource.getCurrentEnergyUsage(host);
-        EnergyDivision divider = rule.getEnergyUsage(host, vmsOnHost);
+        return snapshot.getVmLoadFraction(host);
+    }
+
+    /**
+     * This creates a new instance of the energy share rule used for current
+     * power consumption.
+     *
+     * @return The energy share rule to divide a host's power among its VMs or
+     * applications.
+     */
+    private EnergyShareRule getCurrentEnergyShareRule() {
+        try {
+            return (EnergyShareRule) currentEnergyDivisionMethod.newInstance();
+        } catch (InstantiationException | IllegalAccessException ex) {
+            Logger.getLogger(EnergyModeller.class.getName()).log(Level.WARNING,
+                    "An error occured loading the share rule, reverting to the default");
+            return new DefaultEnergyShareRule();
+        }
+    }
+
+    /**
+     * This divides a host's current power consumption among a set of its VMs
+     * or applications. The host's power is read once and a single energy
+     * division is made, from which each VM or application's share is taken.
+     *
+     * @param host The host the VMs or applications are on
+     * @param rule The energy share rule to divide the host's power by
+     * @param usersOnHost All the VMs or applications on the host
+     * @param users The VMs or applications to get the power consumption of
+     * @return The current power usage records, in the same order as the VMs
+     * or applications were given.
+     */
+    private List<CurrentUsageRecord> getCurrentUsageRecords(Host host, EnergyShareRule rule,
+            Collection<EnergyUsageSource> usersOnHost, List<? extends EnergyUsageSource> users) {
+        List<CurrentUsageRecord> answer = new ArrayList<>();
+        CurrentUsageRecord hostAnswer = getCurrentEnergyForHost(host);
+        if (hostAnswer == null) {
+            Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE,
+                    "Host Power consumption not detected correctly!");
+            for (EnergyUsageSource user : users) {
+                answer.add(new CurrentUsageRecord(user));
+            }
+            return answer;
+        }
+        EnergyDivision divider = rule.getEnergyUsage(host, usersOnHost);
         divider.setConsiderIdleEnergy(considerIdleEnergyCurrentVm);
-        CurrentUsageRecord answer = new CurrentUsageRecord(vm);
-        answer.setTime(hostAnswer.getTime());
-        answer.setPower(divider.getEnergyUsage(hostAnswer.getPower(), vm));
+        for (EnergyUsageSource user : users) {
+            CurrentUsageRecord record = new CurrentUsageRecord(user);
+            record.setTime(hostAnswer.getTime());
+            record.setPower(divider.getEnergyUsage(hostAnswer.getPower(), user));
+            answer.add(record);
+        }
+        return answer;
+    }
+
+    /**
+     * This creates the current power usage records for VMs or applications
+     * whose host is not known, which are reported as using no power.
+     *
+     * @param users The VMs or applications without a known host
+     * @return The current power usage records for the VMs or applications.
+     */
+    private List<CurrentUsageRecord> getUnallocatedUsageRecords(List<? extends EnergyUsageSource> users) {
+        List<CurrentUsageRecord> answer = new ArrayList<>();
+        for (EnergyUsageSource user : users) {
+            CurrentUsageRecord record = new CurrentUsageRecord(user);
+            record.setTime(Calendar.getInstance());
+            record.setPower(0);
+            answer.add(record);
+        }
+        return answer;
+    }
+
+    /**
+     * This groups VMs by the host they are on.
+     *
+     * @param vms The VMs to group
+     * @return The VMs on each host, in the order the hosts were first seen.
+     */
+    private static LinkedHashMap<Host, List<VmDeployed>> groupVmsByHost(Collection<VmDeployed> vms) {
+        LinkedHashMap<Host, List<VmDeployed>> answer = new LinkedHashMap<>();
+        for (VmDeployed vm : vms) {
+            List<VmDeployed> hostsVms = answer.get(vm.getAllocatedTo());
+            if (hostsVms == null) {
+                hostsVms = new ArrayList<>();
+                answer.put(vm.getAllocatedTo(), hostsVms);
+            }
+            hostsVms.add(vm);
+        }
+        return answer;
+    }
+
+    /**
+     * This groups applications by the host they are on.
+     *
+     * @param apps The applications to group
+     * @return The applications on each host, in the order the hosts were
+     * first seen.
+     */
+    private static LinkedHashMap<Host, List<ApplicationOnHost>> groupApplicationsByHost(Collection<ApplicationOnHost> apps) {
+        LinkedHashMap<Host, List<ApplicationOnHost>> answer = new LinkedHashMap<>();
+        for (ApplicationOnHost app : apps) {
+            List<ApplicationOnHost> hostsApps = answer.get(app.getAllocatedTo());
+            if (hostsApps == null) {
+                hostsApps = new ArrayList<>();
+                answer.put(app.getAllocatedTo(), hostsApps);
+            }
+            hostsApps.add(app);
+        }
         return answer;
     }
 
@@ -592,9 +978,18 @@ public class EnergyModeller {
      *
      */
     public HashSet<CurrentUsageRecord> getCurrentEnergyForVM(Collection<VmDeployed> vms) {
+        ArrayList<Callable<List<CurrentUsageRecord>>> queries = new ArrayList<>();
+        for (final Map.Entry<Host, List<VmDeployed>> hostsVms : groupVmsByHost(vms).entrySet()) {
+            queries.add(new Callable<List<CurrentUsageRecord>>() {
+                @Override
+                public List<CurrentUsageRecord> call() {
+                    return getCurrentEnergyForVMsOnHost(hostsVms.getKey(), hostsVms.getValue());
+                }
+            });
+        }
         HashSet<CurrentUsageRecord> answer = new HashSet<>();
-        for (VmDeployed vm : vms) {
-            answer.add(getCurrentEnergyForVM(vm));
+        for (List<CurrentUsageRecord> hostsRecords : invokeQueries(queries)) {
+            answer.addAll(hostsRecords);
         }
         return answer;
     }
@@ -609,46 +1004,42 @@ public class EnergyModeller {
      *
      */
     public CurrentUsageRecord getCurrentEnergyForApplication(ApplicationOnHost app) {
-        EnergyShareRule rule;
-        try {
-            rule = (EnergyShareRule) currentEnergyDivisionMethod.newInstance();
-        } catch (InstantiationException | IllegalAccessException ex) {
-            rule = new DefaultEnergyShareRule();
-            Logger.getLogger(EnergyModeller.class.getName()).log(Level.WARNING,
-                    "An error occured loading the share rule, reverting to the default");            
-        }
-        Host host = app.getAllocatedTo();
+        ArrayList<ApplicationOnHost> apps = new ArrayList<>();
+        apps.add(app);
+        return getCurrentEnergyForApplicationsOnHost(app.getAllocatedTo(), apps).get(0);
+    }
+
+    /**
+     * This returns the power consumption for a set of applications that are
+     * on the same host. The host's power is read and divided among the
+     * applications once, rather than once for each application.
+     *
+     * @param host The host the applications are on
+     * @param apps The applications to get the current power usage records for
+     * @return The current power usage records for the applications, in the
+     * same order as the applications were given.
+     */
+    private List<CurrentUsageRecord> getCurrentEnergyForApplicationsOnHost(Host host, List<ApplicationOnHost> apps) {
         if (host == null) {
-            CurrentUsageRecord answer = new CurrentUsageRecord(app);
-            answer.setTime(Calendar.getInstance());
-            answer.setPower(0);
-            Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE,
-                    "The application {0} host was not correctly detected!", app.getName());
-            return answer;
+            for (ApplicationOnHost app : apps) {
+                Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE,
+                        "The application {0} host was not correctly detected!", app.getName());
+            }
+            return getUnallocatedUsageRecords(apps);
         }
+        EnergyShareRule rule = getCurrentEnergyShareRule();
         ArrayList<ApplicationOnHost> otherApps = dataGatherer.getApplications(host);
         ArrayList<EnergyUsageSource> appsOnHost = new ArrayList<>();
         appsOnHost.addAll(otherApps);
-        appsOnHost.add(app);
+        appsOnHost.addAll(apps);
 //TODO Fails on load fraction share rule Fix here
 //        Find a means to query individual load for applications
 //        if (rule.getClass().equals(LoadFractionShareRule.class)) {
 //            appsDeployedOnHost.addAll(otherApps);
-//            appsDeployedOnHost.add(app);
+//            appsDeployedOnHost.addAll(apps);
 //            ((LoadFractionShareRule) rule).setVmMeasurements(datasource.getAppData(appsDeployedOnHost));
 //        }
-        CurrentUsageRecord hostAnswer = datasource.getCurrentEnergyUsage(host);     
-        EnergyDivision divider = rule.getEnergyUsage(host, appsOnHost);
-        divider.setConsiderIdleEnergy(considerIdleEnergyCurrentVm);
-        CurrentUsageRecord answer = new CurrentUsageRecord(app);
-        if (hostAnswer == null) {
-            Logger.getLogger(EnergyModeller.class.getName()).log(Level.SEVERE,
-                    "Host Power consumption not detected correctly!");            
-            return answer;
-        }
-        answer.setTime(hostAnswer.getTime());
-        answer.setPower(divider.getEnergyUsage(hostAnswer.getPower(), app));
-        return answer;
+        return getCurrentUsageRecords(host, rule, appsOnHost, apps);
     }
 
     /**
@@ -667,12 +1058,18 @@ public class EnergyModeller {
      *
      */
     public HashSet<CurrentUsageRecord> getCurrentEnergyForApplication(Collection<ApplicationOnHost> apps) {
+        ArrayList<Callable<List<CurrentUsageRecord>>> queries = new ArrayList<>();
+        for (final Map.Entry<Host, List<ApplicationOnHost>> hostsApps : groupApplicationsByHost(apps).entrySet()) {
+            queries.add(new Callable<List<CurrentUsageRecord>>() {
+                @Override
+                public List<CurrentUsageRecord> call() {
+                    return getCurrentEnergyForApplicationsOnHost(hostsApps.getKey(), hostsApps.getValue());
+                }
+            });
+        }
         HashSet<CurrentUsageRecord> answer = new HashSet<>();
-        for (ApplicationOnHost app : apps) {
-            CurrentUsageRecord current = getCurrentEnergyForApplication(app);
-            if (current != null) {
-                answer.add(current);
-            }
+        for (List<CurrentUsageRecord> hostsRecords : invokeQueries(queries)) {
+            answer.addAll(hostsRecords);
         }
         return answer;
     }
@@ -686,6 +1083,13 @@ public class EnergyModeller {
      * Current Values for: Power (Watts), current and voltage
      */
     public CurrentUsageRecord getCurrentEnergyForHost(Host host) {
+        DataGathererSnapshot snapshot = dataGatherer.getFreshSnapshot();
+        if (snapshot != null) {
+            CurrentUsageRecord answer = snapshot.getCurrentEnergyUsage(host);
+            if (answer != null) {
+                return answer;
+            }
+        }
         CurrentUsageRecord answer = datasource.getCurrentEnergyUsage(host);
         return answer;
     }
@@ -719,11 +1123,16 @@ public class EnergyModeller {
      *
      */
     public HashSet<CurrentUsageRecord> getCurrentEnergyForHost(Collection<Host> hosts) {
-        HashSet<CurrentUsageRecord> answer = new HashSet<>();
-        for (Host host : hosts) {
-            answer.add(getCurrentEnergyForHost(host));
+        ArrayList<Callable<CurrentUsageRecord>> queries = new ArrayList<>();
+        for (final Host host : hosts) {
+            queries.add(new Callable<CurrentUsageRecord>() {
+                @Override
+                public CurrentUsageRecord call() {
+                    return getCurrentEnergyForHost(host);
+                }
+            });
         }
-        return answer;
+        return new HashSet<>(invokeQueries(queries));
     }
 
     /**
@@ -1015,8 +1424,14 @@ public class EnergyModeller {
      * @return The total power consumption allocated to all known Vms.
      */
     public double getVmTotalCurrentPowerConsumption() {
+        ClusterPowerAggregates aggregates = dataGatherer.getFreshPowerAggregates();
+        if (aggregates != null) {
+            return aggregates.getVmPower(considerIdleEnergyCurrentVm);
+        }
         double answer = 0;
-        HashSet<CurrentUsageRecord> vmData = getCurrentEnergyForVM(datasource.getVmList());
+        DataGathererSnapshot snapshot = dataGatherer.getFreshSnapshot();
+        Collection<VmDeployed> vms = (snapshot == null ? datasource.getVmList() : snapshot.getVms());
+        HashSet<CurrentUsageRecord> vmData = getCurrentEnergyForVM(vms);
         for (CurrentUsageRecord current : vmData) {
             answer = answer + current.getPower();
         }
@@ -1032,8 +1447,14 @@ public class EnergyModeller {
      * @return The total power consumption of all physical hosts.
      */
     public double getHostsTotalCurrentPowerConsumption() {
+        ClusterPowerAggregates aggregates = dataGatherer.getFreshPowerAggregates();
+        if (aggregates != null) {
+            return aggregates.getHostPower();
+        }
         double answer = 0;
-        HashSet<CurrentUsageRecord> hostData = getCurrentEnergyForHost(datasource.getHostList());
+        DataGathererSnapshot snapshot = dataGatherer.getFreshSnapshot();
+        Collection<Host> hosts = (snapshot == null ? datasource.getHostList() : snapshot.getHosts());
+        HashSet<CurrentUsageRecord> hostData = getCurrentEnergyForHost(hosts);
         for (CurrentUsageRecord current : hostData) {
             answer = answer + current.getPower();
         }
@@ -1048,6 +1469,10 @@ public class EnergyModeller {
      * consumption.
      */
     public double getVMToHostPowerRatio() {
+        ClusterPowerAggregates aggregates = dataGatherer.getFreshPowerAggregates();
+        if (aggregates != null) {
+            return aggregates.getVmToHostPowerRatio(considerIdleEnergyCurrentVm);
+        }
         return getVmTotalCurrentPowerConsumption() / getHostsTotalCurrentPowerConsumption();
     }
 
@@ -1059,16 +1484,67 @@ public class EnergyModeller {
      * power consumption.
      */
     public double getHostPowerUnallocatedToVMs() {
+        ClusterPowerAggregates aggregates = dataGatherer.getFreshPowerAggregates();
+        if (aggregates != null) {
+            return aggregates.getHostPowerUnallocatedToVms(considerIdleEnergyCurrentVm);
+        }
         return getHostsTotalCurrentPowerConsumption() - getVmTotalCurrentPowerConsumption();
     }
 
+    /**
+     * This gets the total current power consumption of the physical hosts,
+     * grouped by the host attribute the data gatherer is set to group power
+     * totals by.
+     *
+     * @return The total power consumption of the physical hosts in each
+     * group. This is empty if there are no recent power totals.
+     */
+    public Map<String, Double> getHostsTotalCurrentPowerConsumptionByGroup() {
+        ClusterPowerAggregates aggregates = dataGatherer.getFreshPowerAggregates();
+        if (aggregates == null) {
+            return new HashMap<>();
+        }
+        return aggregates.getHostPowerByGroup();
+    }
+
+    /**
+     * This gets the total current power consumption allocated to VMs, grouped
+     * by the host attribute the data gatherer is set to group power totals
+     * by.
+     *
+     * @return The total power consumption allocated to VMs in each group. This
+     * is empty if there are no recent power totals.
+     */
+    public Map<String, Double> getVmTotalCurrentPowerConsumptionByGroup() {
+        ClusterPowerAggregates aggregates = dataGatherer.getFreshPowerAggregates();
+        if (aggregates == null) {
+            return new HashMap<>();
+        }
+        return aggregates.getVmPowerByGroup(considerIdleEnergyCurrentVm);
+    }
+
     /**
      * This permanently stops the energy modeller from running, closing threads
-     * and ensuring it no longer consumes resources.
+     * and ensuring it no longer consumes resources. Queries that are running
+     * are given up to the query timeout to complete. Collection based queries
+     * made after this are run on the calling thread.
      */
     public void stop() {
+        //Queries already running are allowed to complete
+        queryExecutor.shutdown();
+        try {
+            if (!queryExecutor.awaitTermination(queryTimeout, TimeUnit.MILLISECONDS)) {
+                Logger.getLogger(EnergyModeller.class.getName()).log(Level.WARNING,
+                        "The energy modeller stopped before all running queries completed.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
         dataGatherer.stop();
         database.closeConnection();
+        if (datasource instanceof CollectDInfluxDbDataSourceAdaptor) {
+            ((CollectDInfluxDbDataSourceAdaptor) datasource).stop();
+        }
     }
 
 }
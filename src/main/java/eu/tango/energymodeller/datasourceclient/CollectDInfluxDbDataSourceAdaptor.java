@@ -32,13 +32,14 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.influxdb.InfluxDB;
 import org.influxdb.InfluxDBFactory;
-import org.influxdb.dto.BatchPoints;
 import org.influxdb.dto.Point;
 import org.influxdb.dto.Query;
 import org.influxdb.dto.QueryResult;
@@ -58,6 +59,8 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
     private final String dbName;
 
     private final InfluxDB influxDB;
+    private final InfluxDbPointWriter writer;
+    private int hostsPerQuery = 100;
 
     public CollectDInfluxDbDataSourceAdaptor() {
         dbName = settings.getString("energy.modeller.influx.db.name", "collectd");
@@ -68,6 +71,8 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
         }
         hostname = settings.getString("energy.modeller.influx.db.hostname", "http://ns54.bullx:8086");
         influxDB = InfluxDBFactory.connect(hostname, user, password);
+        hostsPerQuery = Math.max(1, settings.getInt("energy.modeller.influx.db.query.hosts_per_request", hostsPerQuery));
+        writer = getWriter();
     }
 
     /**
@@ -83,6 +88,52 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
         this.password = password;
         this.dbName = dbName;
         influxDB = InfluxDBFactory.connect(hostname, user, password);
+        hostsPerQuery = Math.max(1, settings.getInt("energy.modeller.influx.db.query.hosts_per_request", hostsPerQuery));
+        writer = getWriter();
+    }
+
+    /**
+     * This gets the writer, shared with other adaptors writing to the same
+     * database, that queues points and writes them out to influx db in
+     * batches.
+     *
+     * @return The writer to write points out to influx db with
+     */
+    private InfluxDbPointWriter getWriter() {
+        String consistency = settings.getString("energy.modeller.influx.db.write.consistency", InfluxDB.ConsistencyLevel.ALL.name());
+        int batchSize = settings.getInt("energy.modeller.influx.db.write.batch_size", 500);
+        int flushInterval = settings.getInt("energy.modeller.influx.db.write.flush_interval_ms", 1000);
+        int capacity = settings.getInt("energy.modeller.influx.db.write.queue_capacity", 10000);
+        if (settings.isChanged()) {
+            settings.save(CONFIG_FILE);
+        }
+        InfluxDB.ConsistencyLevel level = InfluxDB.ConsistencyLevel.ALL;
+        try {
+            level = InfluxDB.ConsistencyLevel.valueOf(consistency.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            Logger.getLogger(CollectDInfluxDbDataSourceAdaptor.class.getName()).log(Level.WARNING,
+                    "The influx db write consistency level was not recognised, using ALL", ex);
+        }
+        return InfluxDbPointWriter.getInstance(influxDB, hostname, user, dbName, level, batchSize, flushInterval, capacity);
+    }
+
+    /**
+     * This returns the writer that queues points and writes them out to
+     * influx db in batches.
+     *
+     * @return The writer used to write points out to influx db
+     */
+    public InfluxDbPointWriter getPointWriter() {
+        return writer;
+    }
+
+    /**
+     * This writes out any points that are waiting to be written to influx db
+     * and stops the writer's background thread. Points written after this
+     * are written out immediately.
+     */
+    public void stop() {
+        writer.stop();
     }
 
     @Override
@@ -234,15 +285,7 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
             return null;
         }        
         HostMeasurement answer;
-        String listMeasurements = "";
-        ArrayList<String> measurements = getMeasurements();
-        for (String measurement : measurements) {
-            if (listMeasurements.isEmpty()) {
-                listMeasurements = measurement;
-            } else {
-                listMeasurements = listMeasurements + ", " + measurement;
-            }
-        }
+        String listMeasurements = getMeasurementList();
         QueryResult results = runQuery("SELECT last(value),type_instance, instance, type FROM " + listMeasurements + " WHERE host = '" + host.getHostName() + "'  GROUP BY instance, type_instance, type;");
         answer = convertToHostMeasurement(host, results);
         return answer;
@@ -260,57 +303,74 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
         if (results == null) {
             return null;
         }
-        HostMeasurement answer = new HostMeasurement(host);
-        double acceleratorPowerUsed = 0.0;
+        List<QueryResult.Series> hostSeries = new ArrayList<>();
         for (QueryResult.Result result : results.getResults()) {
             if (result == null || result.getSeries() == null) {
                 return null;
             }
-            addCpuUtilisationInfo(answer, result);
-            for (QueryResult.Series series : result.getSeries()) {
-                if (series == null || series.getValues() == null) {
-                    return null;
+            hostSeries.addAll(result.getSeries());
+        }
+        return convertToHostMeasurement(host, hostSeries);
+    }
+
+    /**
+     * This takes the series returned by the data source for a host and
+     * converts them into a host measurement.
+     *
+     * @param host The host to convert the data for
+     * @param hostSeries The series to convert, null if none were returned
+     * @return The host measurement
+     */
+    private HostMeasurement convertToHostMeasurement(Host host, List<QueryResult.Series> hostSeries) {
+        if (hostSeries == null) {
+            return null;
+        }
+        HostMeasurement answer = new HostMeasurement(host);
+        double acceleratorPowerUsed = 0.0;
+        addCpuUtilisationInfo(answer, hostSeries);
+        for (QueryResult.Series series : hostSeries) {
+            if (series == null || series.getValues() == null) {
+                return null;
+            }
+            for (List<Object> value : series.getValues()) {
+                Instant time = Instant.parse((String) value.get(0));
+                String metricName = series.getName() + ":" + (value.get(2) == null ? "" : value.get(2));
+                if (value.size() >= 4) {
+                    metricName = metricName + ":" + (value.get(3) == null ? "" : value.get(3));
                 }
-                for (List<Object> value : series.getValues()) {
-                    Instant time = Instant.parse((String) value.get(0));
-                    String metricName = series.getName() + ":" + (value.get(2) == null ? "" : value.get(2));
-                    if (value.size() >= 4) {
-                        metricName = metricName + ":" + (value.get(3) == null ? "" : value.get(3));
-                    }
-                    if (value.size() >= 5) {
-                        metricName = metricName + ":" + (value.get(4) == null ? "" : value.get(4));
-                    }
-                    if (metricName.equals("power_value:estimated::power")) {
-                        MetricValue estimatedPower = new MetricValue(KpiList.ESTIMATED_POWER_KPI_NAME, KpiList.ESTIMATED_POWER_KPI_NAME, value.get(1).toString(), time.getEpochSecond());
-                        answer.addMetric(estimatedPower);
-                    }
-                    if (metricName.equals("power_value:measured::power")) {
-                        MetricValue estimatedPower = new MetricValue(KpiList.POWER_KPI_NAME, KpiList.POWER_KPI_NAME, value.get(1).toString(), time.getEpochSecond());
-                        answer.addMetric(estimatedPower);
-                    }                      
-                    /**
-                     * This counts up all power consumed and reported by the
-                     * monitoring infrastructure usually in the format:
-                     * nvidia_value::0:nvidia:power (i.e. card 1)
-                     * nvidia_value::1:nvidia:power (and card 2)
-                     */
-                    try {
-                        if (metricName.matches("nvidia_value::[0-9]+:power")) {
-                            acceleratorPowerUsed = acceleratorPowerUsed + Double.parseDouble(value.get(1).toString());
-                        }
-                    } catch (NumberFormatException ex) {
-                        Logger.getLogger(CollectDInfluxDbDataSourceAdaptor.class.getName()).log(Level.WARNING, "Parsing input from collectd failed", ex);
-                    }
-                    MetricValue metric = new MetricValue(metricName, metricName, value.get(1).toString(), time.getEpochSecond());
-                    answer.addMetric(metric);
-                    if (time.getEpochSecond() > answer.getClock()) {
-                        answer.setClock(time.getEpochSecond());
+                if (value.size() >= 5) {
+                    metricName = metricName + ":" + (value.get(4) == null ? "" : value.get(4));
+                }
+                if (metricName.equals("power_value:estimated::power")) {
+                    MetricValue estimatedPower = new MetricValue(KpiList.ESTIMATED_POWER_KPI_NAME, KpiList.ESTIMATED_POWER_KPI_NAME, value.get(1).toString(), time.getEpochSecond());
+                    answer.addMetric(estimatedPower);
+                }
+                if (metricName.equals("power_value:measured::power")) {
+                    MetricValue estimatedPower = new MetricValue(KpiList.POWER_KPI_NAME, KpiList.POWER_KPI_NAME, value.get(1).toString(), time.getEpochSecond());
+                    answer.addMetric(estimatedPower);
+                }                      
+                /**
+                 * This counts up all power consumed and reported by the
+                 * monitoring infrastructure usually in the format:
+                 * nvidia_value::0:nvidia:power (i.e. card 1)
+                 * nvidia_value::1:nvidia:power (and card 2)
+                 */
+                try {
+                    if (metricName.matches("nvidia_value::[0-9]+:power")) {
+                        acceleratorPowerUsed = acceleratorPowerUsed + Double.parseDouble(value.get(1).toString());
                     }
+                } catch (NumberFormatException ex) {
+                    Logger.getLogger(CollectDInfluxDbDataSourceAdaptor.class.getName()).log(Level.WARNING, "Parsing input from collectd failed", ex);
+                }
+                MetricValue metric = new MetricValue(metricName, metricName, value.get(1).toString(), time.getEpochSecond());
+                answer.addMetric(metric);
+                if (time.getEpochSecond() > answer.getClock()) {
+                    answer.setClock(time.getEpochSecond());
                 }
             }
         }
         if (acceleratorPowerUsed > 0) {
-            MetricValue metric = new MetricValue(KpiList.ACCELERATOR_POWER_USED, KpiList.ACCELERATOR_POWER_USED, Double.toString(acceleratorPowerUsed), answer.getClock());
+            MetricValue metric = new MetricValue(KpiList.ACCELERATOR_POWER_USED, KpiList.ACCELERATOR_POWER_USED, acceleratorPowerUsed, answer.getClock());
             answer.addMetric(metric);
         }
         return answer;
@@ -319,13 +379,13 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
     /**
      * This method appends to a host measurement cpu utilisation information.
      * @param measurement The host measurement to append
-     * @param result The results that contain cpu utilisation information.
+     * @param hostSeries The series that contain cpu utilisation information.
      */
-    private HostMeasurement addCpuUtilisationInfo(HostMeasurement measurement, QueryResult.Result result) {
+    private HostMeasurement addCpuUtilisationInfo(HostMeasurement measurement, List<QueryResult.Series> hostSeries) {
         double count = 0;
         double idleValue = 0;
         Instant time = null;
-        for (QueryResult.Series series : result.getSeries()) {
+        for (QueryResult.Series series : hostSeries) {
             for (List<Object> value : series.getValues()) {
                 time = Instant.parse((String) value.get(0));
                 String metricName = series.getName() + ":" + (value.get(2) == null ? "" : value.get(2));
@@ -344,9 +404,9 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
         if (count > 0 && time != null) {
             double idleMetricValue = idleValue / count;
             idleMetricValue = idleMetricValue / 100; //make sure its in the range 0..1 instead of 0..100
-            MetricValue idle = new MetricValue(KpiList.CPU_IDLE_KPI_NAME, KpiList.CPU_IDLE_KPI_NAME, idleMetricValue + "", time.getEpochSecond());
+            MetricValue idle = new MetricValue(KpiList.CPU_IDLE_KPI_NAME, KpiList.CPU_IDLE_KPI_NAME, idleMetricValue, time.getEpochSecond());
             measurement.addMetric(idle);
-            MetricValue spotCpu = new MetricValue(KpiList.CPU_SPOT_USAGE_KPI_NAME, KpiList.CPU_SPOT_USAGE_KPI_NAME, 1 - idleMetricValue + "", time.getEpochSecond());
+            MetricValue spotCpu = new MetricValue(KpiList.CPU_SPOT_USAGE_KPI_NAME, KpiList.CPU_SPOT_USAGE_KPI_NAME, 1 - idleMetricValue, time.getEpochSecond());
             measurement.addMetric(spotCpu);             
         }
         return measurement;
@@ -357,6 +417,25 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
         return getHostData(getHostList());
     }
 
+    /**
+     * This lists which metrics are available, in the form used by the FROM
+     * clause of a query.
+     *
+     * @return The comma separated list of metrics that are available
+     */
+    private String getMeasurementList() {
+        String listMeasurements = "";
+        ArrayList<String> measurements = getMeasurements();
+        for (String measurement : measurements) {
+            if (listMeasurements.isEmpty()) {
+                listMeasurements = measurement;
+            } else {
+                listMeasurements = listMeasurements + ", " + measurement;
+            }
+        }
+        return listMeasurements;
+    }
+
     /**
      * This lists which metrics are available.
      */
@@ -373,15 +452,248 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
         return answer;
     }
 
+    /**
+     * This gets the latest measurements for a list of hosts. Rather than
+     * querying each host in turn, the hosts are grouped so that a single query
+     * returns the measurements of many hosts.
+     *
+     * @param hostList The hosts to get the measurements for
+     * @return The measurements in the same order as the hosts given, with null
+     * for any host that no measurement could be found for.
+     */
     @Override
     public List<HostMeasurement> getHostData(List<Host> hostList) {
         ArrayList<HostMeasurement> answer = new ArrayList<>();
+        HashMap<String, List<QueryResult.Series>> seriesByHost = new HashMap<>();
+        List<List<Host>> hostGroups = getHostGroups(hostList, hostsPerQuery);
+        if (!hostGroups.isEmpty()) {
+            String listMeasurements = getMeasurementList();
+            for (List<Host> hosts : hostGroups) {
+                QueryResult results = runQuery("SELECT last(value),type_instance, instance, type FROM " + listMeasurements
+                        + " WHERE " + getHostCondition(hosts) + " GROUP BY host, instance, type_instance, type;");
+                addSeriesByHost(results, seriesByHost);
+            }
+        }
+        for (Host host : hostList) {
+            if (host == null) {
+                Logger.getLogger(CollectDInfluxDbDataSourceAdaptor.class.getName()).log(Level.SEVERE,
+                        "The host to get data for was null");
+                answer.add(null);
+            } else {
+                answer.add(convertToHostMeasurement(host, seriesByHost.get(host.getHostName())));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This splits a list of hosts into groups, each of which is small enough
+     * to be queried in a single request.
+     *
+     * @param hostList The hosts to split into groups
+     * @param hostsPerQuery The maximum amount of hosts in each group
+     * @return The groups of hosts, with null and repeated hosts removed.
+     */
+    static List<List<Host>> getHostGroups(List<Host> hostList, int hostsPerQuery) {
+        List<List<Host>> answer = new ArrayList<>();
+        if (hostList == null) {
+            return answer;
+        }
+        HashSet<String> seen = new HashSet<>();
+        List<Host> current = new ArrayList<>();
+        for (Host host : hostList) {
+            if (host == null || !seen.add(host.getHostName())) {
+                continue;
+            }
+            current.add(host);
+            if (current.size() >= hostsPerQuery) {
+                answer.add(current);
+                current = new ArrayList<>();
+            }
+        }
+        if (!current.isEmpty()) {
+            answer.add(current);
+        }
+        return answer;
+    }
+
+    /**
+     * This creates the condition of a WHERE clause that selects a group of
+     * hosts.
+     *
+     * @param hosts The hosts to select
+     * @return The condition that matches any of the hosts' names
+     */
+    static String getHostCondition(List<Host> hosts) {
+        StringBuilder answer = new StringBuilder("host =~ /^(");
+        for (int i = 0; i < hosts.size(); i++) {
+            if (i > 0) {
+                answer.append("|");
+            }
+            answer.append(hosts.get(i).getHostName().replaceAll("[\\\\^$.|?*+()\\[\\]{}/]", "\\\\$0"));
+        }
+        answer.append(")$/");
+        return answer.toString();
+    }
+
+    /**
+     * This sorts the series of a query that was grouped by host, by the host
+     * they belong to.
+     *
+     * @param results The results of the query, which may hold the results of
+     * many statements.
+     * @param seriesByHost The map of host names to series to add to
+     */
+    static void addSeriesByHost(QueryResult results, HashMap<String, List<QueryResult.Series>> seriesByHost) {
+        if (results == null || results.getResults() == null) {
+            return;
+        }
+        for (QueryResult.Result result : results.getResults()) {
+            if (result == null || result.getSeries() == null) {
+                continue;
+            }
+            for (QueryResult.Series series : result.getSeries()) {
+                if (series == null || series.getTags() == null || series.getTags().get("host") == null) {
+                    continue;
+                }
+                String host = series.getTags().get("host");
+                List<QueryResult.Series> hostSeries = seriesByHost.get(host);
+                if (hostSeries == null) {
+                    hostSeries = new ArrayList<>();
+                    seriesByHost.put(host, hostSeries);
+                }
+                hostSeries.add(series);
+            }
+        }
+    }
+
+    /**
+     * This runs a query that returns a single value for each host, for a list
+     * of hosts. The hosts are grouped so that a single query returns the
+     * values of many hosts.
+     *
+     * @param select The start of the query, up to and including WHERE
+     * @param condition Any further condition to place on the query, that is
+     * combined with the selection of hosts. This may be empty.
+     * @param hostList The hosts to get the values for
+     * @return The value for each host, by host name. Hosts without a value are
+     * not present.
+     */
+    private HashMap<String, Double> getValuePerHost(String select, String condition, List<Host> hostList) {
+        HashMap<String, Double> answer = new HashMap<>();
+        for (List<Host> hosts : getHostGroups(hostList, hostsPerQuery)) {
+            HashMap<String, List<QueryResult.Series>> seriesByHost = new HashMap<>();
+            addSeriesByHost(runQuery(select + " " + getHostCondition(hosts) + condition + " GROUP BY host;"), seriesByHost);
+            for (Map.Entry<String, List<QueryResult.Series>> hostSeries : seriesByHost.entrySet()) {
+                QueryResult.Series series = hostSeries.getValue().get(0);
+                if (series.getValues() == null || series.getValues().isEmpty()
+                        || series.getValues().get(0).get(1) == null) {
+                    continue;
+                }
+                answer.put(hostSeries.getKey(), (Double) series.getValues().get(0).get(1));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This provides the current energy usage of a list of hosts, using a
+     * single query for many hosts.
+     *
+     * @param hostList The hosts to get the current energy usage for
+     * @return The current energy usage of each host, in the same order as the
+     * hosts given. Null hosts are skipped.
+     */
+    public List<CurrentUsageRecord> getCurrentEnergyUsage(List<Host> hostList) {
+        List<CurrentUsageRecord> answer = new ArrayList<>();
+        HashMap<String, Double> power = getValuePerHost("SELECT last(value) FROM power_value WHERE", "", hostList);
+        for (Host host : hostList) {
+            if (host != null) {
+                answer.add(new CurrentUsageRecord(host, getValue(power, host)));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This provides the lowest power usage of a list of hosts, using a single
+     * query for many hosts.
+     *
+     * @param hostList The hosts to get the lowest power usage for
+     * @return The lowest power usage of each host
+     */
+    public HashMap<Host, Double> getLowestHostPowerUsage(List<Host> hostList) {
+        return toHostMap(getValuePerHost("SELECT min(value) FROM power_value WHERE", "", hostList), hostList);
+    }
+
+    /**
+     * This provides the highest power usage of a list of hosts, using a single
+     * query for many hosts.
+     *
+     * @param hostList The hosts to get the highest power usage for
+     * @return The highest power usage of each host
+     */
+    public HashMap<Host, Double> getHighestHostPowerUsage(List<Host> hostList) {
+        return toHostMap(getValuePerHost("SELECT max(value) FROM power_value WHERE", "", hostList), hostList);
+    }
+
+    /**
+     * This provides the CPU utilisation of a list of hosts, using a single
+     * query for many hosts.
+     *
+     * @param hostList The hosts to get the CPU utilisation for
+     * @param durationSeconds The amount of seconds to average the CPU
+     * utilisation over
+     * @return The CPU utilisation of each host
+     */
+    public HashMap<Host, Double> getCpuUtilisation(List<Host> hostList, int durationSeconds) {
+        HashMap<String, Double> idle = getValuePerHost("SELECT mean(value) FROM cpu_value WHERE",
+                " AND type='percent' AND type_instance = 'idle' AND time > now() - " + durationSeconds + "s", hostList);
+        HashMap<Host, Double> answer = new HashMap<>();
+        for (Host host : hostList) {
+            if (host == null) {
+                continue;
+            }
+            if (!idle.containsKey(host.getHostName())) {
+                answer.put(host, 0.0); //Not enough data to know therefore assume zero usage.
+                continue;
+            }
+            BigDecimal utilisation = BigDecimal.valueOf(1 - idle.get(host.getHostName()) / 100d);
+            utilisation = utilisation.setScale(2, BigDecimal.ROUND_HALF_UP);
+            answer.put(host, utilisation.doubleValue());
+        }
+        return answer;
+    }
+
+    /**
+     * This converts a map of values by host name into a map of values by host.
+     *
+     * @param values The values by host name
+     * @param hostList The hosts to place in the map
+     * @return The value for each host, zero if a host has no value.
+     */
+    private static HashMap<Host, Double> toHostMap(HashMap<String, Double> values, List<Host> hostList) {
+        HashMap<Host, Double> answer = new HashMap<>();
         for (Host host : hostList) {
-            answer.add(getHostData(host));
+            if (host != null) {
+                answer.put(host, getValue(values, host));
+            }
         }
         return answer;
     }
 
+    /**
+     * This gets the value of a host, from a map of values by host name.
+     *
+     * @param values The values by host name
+     * @param host The host to get the value of
+     * @return The host's value or zero if it does not have one.
+     */
+    private static double getValue(HashMap<String, Double> values, Host host) {
+        Double answer = values.get(host.getHostName());
+        return (answer == null ? 0.0 : answer);
+    }
+
     @Override
     public VmMeasurement getVmData(VmDeployed vm) {
         return null; //VMs are not currently handled by this data source adaptor.
@@ -531,7 +843,7 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
     }
 
     /**
-     * This writes the log data out directly to influx db
+     * This queues the log data to be written out to influx db
      * @param host The host to write the data out for
      * @param power The power consumption information to write out
      */
@@ -541,19 +853,13 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
     }
     
     /**
-     * This writes the log data out directly to influx db
+     * This queues the log data to be written out to influx db
      * @param host The host to write the data out for
      * @param power The power consumption information to write out
      * @param estimated indicates if the power consumption is estimated or if
      * they derive from actual measurement
      */
     public void writeOutHostValuesToInflux(Host host, double power, boolean estimated) {
-
-        BatchPoints batchPoints = BatchPoints
-                .database(dbName)
-                .tag("async", "true")
-                .consistency(InfluxDB.ConsistencyLevel.ALL)
-                .build();
         //TODO Note fix here copes with name differences between sources.
         String influxHostname = host.getHostName() + (host.getHostName().contains(".bullx") ? "" : ".bullx");
         Point dataPoint = Point.measurement("power_value")
@@ -563,12 +869,11 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
                 .time(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
                 .addField("value", power)
                 .build();
-        batchPoints.point(dataPoint);
-        influxDB.write(batchPoints);
+        writer.add(dataPoint);
     }    
 
     /**
-     * This writes the log data out directly to influx db, parameters follow the 
+     * This queues the log data to be written out to influx db, parameters follow the 
      * positions as shown in the following query:
      * SELECT mean(value) FROM power_value WHERE host = "testhost50" AND type='power' 
      * AND type_instance = 'estimated' 
@@ -580,12 +885,6 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
     */
     public void writeOutHostValuesToInflux(Host host, String series, 
             String type, String typeInstance, double value) {
-
-        BatchPoints batchPoints = BatchPoints
-                .database(dbName)
-                .tag("async", "true")
-                .consistency(InfluxDB.ConsistencyLevel.ALL)
-                .build();
         //TODO Note fix here copes with name differences between sources.
         String influxHostname = host.getHostName() + (host.getHostName().contains(".bullx") ? "" : ".bullx");
         Point dataPoint = Point.measurement(series) //series i.e. power_value
@@ -595,12 +894,11 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
                 .time(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
                 .addField("value", value)
                 .build();
-        batchPoints.point(dataPoint);
-        influxDB.write(batchPoints);
+        writer.add(dataPoint);
     }
     
     /**
-     * This writes the log data out directly to influx db, parameters follow the 
+     * This queues the log data to be written out to influx db, parameters follow the 
      * positions as shown in the following query:
      * SELECT mean(value) FROM power_value WHERE host = "testhost50" AND type='power' 
      * AND type_instance = 'estimated' 
@@ -612,12 +910,6 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
     */
     public void writeOutHostValuesToInflux(String hostname, String series, 
             String type, String typeInstance, double value) {
-
-        BatchPoints batchPoints = BatchPoints
-                .database(dbName)
-                .tag("async", "true")
-                .consistency(InfluxDB.ConsistencyLevel.ALL)
-                .build();
         //TODO Note fix here copes with name differences between sources.
         String influxHostname = hostname + (hostname.contains(".bullx") ? "" : ".bullx");
         Point dataPoint = Point.measurement(series) //series i.e. power_value
@@ -627,12 +919,11 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
                 .time(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
                 .addField("value", value)
                 .build();
-        batchPoints.point(dataPoint);
-        influxDB.write(batchPoints);
+        writer.add(dataPoint);
     }    
 
     /**
-     * This writes the log data out directly to influx db, parameters follow the 
+     * This queues the log data to be written out to influx db, parameters follow the 
      * positions as shown in the following query:
      * SELECT mean(value) FROM compss_execution_count_value WHERE type='jobId' AND type_instance = 'COMPSs'
      * @param series The data series, such as power_value or "compss_execution_count_value".
@@ -642,12 +933,6 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
     */
     public void writeOutHostValuesToInflux(String series, 
             String type, String typeInstance, double value) {
-
-        BatchPoints batchPoints = BatchPoints
-                .database(dbName)
-                .tag("async", "true")
-                .consistency(InfluxDB.ConsistencyLevel.ALL)
-                .build();
         //TODO Note fix here copes with name differences between sources.
         String influxHostname = hostname + (hostname.contains(".bullx") ? "" : ".bullx");
         Point dataPoint = Point.measurement(series) //series i.e. power_value
@@ -656,22 +941,15 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
                 .time(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
                 .addField("value", value)
                 .build();
-        batchPoints.point(dataPoint);
-        influxDB.write(batchPoints);
+        writer.add(dataPoint);
     }     
     
     /**
-     * This writes the log data out directly to influx db
+     * This queues the log data to be written out to influx db
      * @param app The application to write the data out for
      * @param power The power consumption information to write out
      */
     public void writeOutApplicationValuesToInflux(ApplicationOnHost app, double power) {
-
-        BatchPoints batchPoints = BatchPoints
-                .database(dbName)
-                .tag("async", "true")
-                .consistency(InfluxDB.ConsistencyLevel.ALL)
-                .build();
         Point dataPoint = Point.measurement("app_power")
                 .tag("type_instance", app.getName())
                 .tag("type", app.getId() + "")
@@ -679,8 +957,7 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
                 .time(System.currentTimeMillis(), TimeUnit.MILLISECONDS)
                 .addField("value", power)
                 .build();
-        batchPoints.point(dataPoint);
-        influxDB.write(batchPoints);
+        writer.add(dataPoint);
     }
     
     @Override
@@ -699,7 +976,7 @@ public class CollectDInfluxDbDataSourceAdaptor implements HostDataSource, Applic
         //TODO change the assumption here regarding running applications
         //Must assume all applications are running, as can't get job status.
         answer.addMetric(new MetricValue(APPS_RUNNING_ON_HOST_COUNT, APPS_RUNNING_ON_HOST_COUNT, appsOnThisHost.size() + "", measure.getClock()));
-        answer.addMetric(new MetricValue(APPS_AVERAGE_POWER, APPS_AVERAGE_POWER, getAverageAppPower(application) + "", measure.getClock()));
+        answer.addMetric(new MetricValue(APPS_AVERAGE_POWER, APPS_AVERAGE_POWER, getAverageAppPower(application), measure.getClock()));
         //TODO add power consumption info? running energy for application?? or just utilisation information?? latter is best
         return answer;
     }
@@ -23,7 +23,7 @@ import static eu.tango.energymodeller.datasourceclient.KpiList.APPS_RUNNING_ON_H
 import static eu.tango.energymodeller.datasourceclient.KpiList.APPS_STATUS;
 import eu.tango.energymodeller.datasourceclient.compsstype.CompssImplementation;
 import eu.tango.energymodeller.datasourceclient.compsstype.CompssResource;
-import static eu.tango.energymodeller.datasourceclient.compsstype.JsonUtils.readJsonFromXMLFile;
+import eu.tango.energymodeller.datasourceclient.compsstype.CompssState;
 import eu.tango.energymodeller.types.energyuser.Accelerator;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
@@ -34,6 +34,14 @@ import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -42,8 +50,6 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  * This adaptor integrates the energy modeller directly into the compss runtime.
@@ -62,9 +68,18 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      */
     private String monitoringDirectory = System.getProperty("user.home") + "/.COMPSs/";
     private String monitoringFile = "/monitor/COMPSs_state.xml";
-    private static final String COMPSS_STATE = "COMPSsState";
-    private static final String RESOURCE_INFO = "ResourceInfo";
-    private static final String TASK_INFO = "TasksInfo";
+    /**
+     * The last parsed state of the monitoring file, this is reused until the
+     * file's size or modification time changes.
+     */
+    private volatile CompssState state = null;
+    /**
+     * The folder of the job currently being monitored, this is searched for
+     * again only once the monitoring directory has changed.
+     */
+    private volatile File currentJobDirectory = null;
+    private volatile boolean jobDirectoryChanged = true;
+    private CompssWatcher watcher = null;
     
     /**
      * This filter is for directories. The most relevant program to query is the
@@ -102,22 +117,7 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      * @return
      */
     public List<CompssResource> getCompssResources() {
-        try {
-            JSONObject items = readJsonFromXMLFile(getCurrentMonitoringFile());
-            if (!items.has(COMPSS_STATE)) {
-                /**
-                 * The file to be parsed might not be fully populated, if it isn't
-                 * then this avoids parse errors.
-                 */
-                return new ArrayList<>();
-            }              
-            JSONObject compssState = items.getJSONObject(COMPSS_STATE);  
-            JSONObject resourceInfo = compssState.getJSONObject(RESOURCE_INFO);
-            return CompssResource.getCompssResouce(resourceInfo);
-        } catch (IOException | JSONException ex) {
-            Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.SEVERE, "parse error", ex);
-        }
-        return new ArrayList<>();
+        return new ArrayList<>(getState().getResources());
     }
     
     /**
@@ -131,64 +131,132 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      * @return 
      */
     public List<CompssImplementation> getCompssImplementation() {
-        try {
-            JSONObject items = readJsonFromXMLFile(getCurrentMonitoringFile());
-            if (!items.has(COMPSS_STATE)) {
-                /**
-                 * The file to be parsed might not be fully populated, if it isn't
-                 * then this avoids parse errors.
-                 */
-                return new ArrayList<>();
-            }            
-            JSONObject compssState = items.getJSONObject(COMPSS_STATE);           
-            JSONObject coresInfo = compssState.getJSONObject("CoresInfo");            
-            return CompssImplementation.getCompssImplementation(coresInfo);
-        } catch (IOException | JSONException ex) {
-            Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.SEVERE, "parse error", ex);
+        return new ArrayList<>(getState().getImplementations());
+    }
+
+    /**
+     * This obtains the parsed content of the current monitoring file. The file
+     * is only parsed again if it has been replaced, or its size or modification
+     * time has changed since it was last read.
+     *
+     * @return The current state of the COMPSs runtime
+     */
+    private CompssState getState() {
+        startWatcher();
+        File jobDirectory = getCurrentJobDirectory();
+        if (jobDirectory == null) {
+            return CompssState.getEmptyState();
         }
-        return new ArrayList<>();
+        File file = new File(jobDirectory.getAbsoluteFile() + monitoringFile);
+        CompssState answer = state;
+        if (answer != null && answer.isCurrent(file)) {
+            return answer;
+        }
+        return readState(jobDirectory, file);
     }
-    
+
     /**
-     * This obtains the current monitoring file that is in use. It is represented
-     * by the latest folder in the compss directory (~/.COMPSs/).
-     * @return 
+     * This parses the monitoring file, unless another thread has just done so.
+     *
+     * @param jobDirectory The folder of the job being monitored
+     * @param file The monitoring file to parse
+     * @return The current state of the COMPSs runtime
      */
-    private String getCurrentMonitoringFile() {
-        String answer = "";
-        File[] files = new File(monitoringDirectory).listFiles(filter);
+    private synchronized CompssState readState(File jobDirectory, File file) {
+        CompssState answer = state;
+        if (answer == null || !answer.isCurrent(file)) {
+            answer = CompssState.read(jobDirectory.getName(), file);
+            state = answer;
+        }
+        return answer;
+    }
 
-        Arrays.sort(files, new Comparator<File>(){
-            @Override
-            public int compare(File f1, File f2)
-            {
-                return Long.valueOf(f2.lastModified()).compareTo(f1.lastModified());
-            } });
-        //get the newest folder if it exists
-        for (File file : files) {
-            File monFile = new File(file.getAbsoluteFile() + monitoringFile);
-            if (monFile.exists() && monFile.length() > 0) {
-                return file.getAbsoluteFile() + monitoringFile;
-            } else {// the monitoring file doesn't exist so wait a few seconds and try again.
-                sleep();
-            if (monFile.exists() && monFile.length() > 0) {
-                    return file.getAbsoluteFile() + monitoringFile;
-                } else {
-                    Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.FINE, 
-                            "Compss file was not found, I waited but it was still not found. "
-                                    + "Trying to read {0}", file.getAbsoluteFile() + monitoringFile);                    
+    /**
+     * This obtains the folder of the job that is currently being monitored.
+     * It is represented by the latest folder in the compss directory
+     * (~/.COMPSs/) that has a monitoring file. The directory is only searched
+     * again if it has changed, or the monitoring file is no longer present.
+     *
+     * @return The job's folder or null if no monitoring file exists yet.
+     */
+    private File getCurrentJobDirectory() {
+        File answer = currentJobDirectory;
+        boolean rescan = jobDirectoryChanged || watcher == null;
+        if (!rescan && answer != null && hasMonitoringFile(answer)) {
+            return answer;
+        }
+        jobDirectoryChanged = false;
+        answer = null;
+        File[] files = new File(monitoringDirectory).listFiles(filter);
+        if (files != null) {
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File f1, File f2) {
+                    return Long.valueOf(f2.lastModified()).compareTo(f1.lastModified());
                 }
+            });
+            //get the newest folder if it exists
+            for (File file : files) {
+                if (hasMonitoringFile(file)) {
+                    answer = file;
+                    break;
+                }
+                /**
+                 * The monitoring file doesn't exist yet, rather than waiting
+                 * for it the next request searches again. Changes inside a
+                 * job's folder are not seen by the watcher.
+                 */
+                jobDirectoryChanged = true;
+                Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.FINE,
+                        "Compss file was not found. Trying to read {0}", file.getAbsoluteFile() + monitoringFile);
             }
         }
+        currentJobDirectory = answer;
         return answer;
     }
-    
+
+    /**
+     * This indicates if a job's folder has a monitoring file ready to read.
+     *
+     * @param jobDirectory The job's folder
+     * @return If the monitoring file exists and is not empty
+     */
+    private boolean hasMonitoringFile(File jobDirectory) {
+        File monFile = new File(jobDirectory.getAbsoluteFile() + monitoringFile);
+        return monFile.exists() && monFile.length() > 0;
+    }
+
+    /**
+     * This starts the thread that watches the monitoring directory for
+     * changes, if it is not already watching it.
+     */
+    private synchronized void startWatcher() {
+        if (watcher != null && watcher.isWatching(monitoringDirectory)) {
+            return;
+        }
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        try {
+            CompssWatcher newWatcher = new CompssWatcher(monitoringDirectory);
+            Thread watcherThread = new Thread(newWatcher, "energy-modeller-compss-watcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+            watcher = newWatcher;
+        } catch (IOException ex) {
+            //Without a watcher the directory is searched on every request
+            Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.FINE,
+                    "The monitoring directory could not be watched", ex);
+        }
+    }
+
     /**
      * This returns the current last modified date of the monitoring file.
      * @return The date as a long value
      */
     public long getMonitoringFileLastModifiedDate() {
-        return new File(getCurrentMonitoringFile()).lastModified();
+        return getState().getLastModified();
     }    
     
     /**
@@ -197,43 +265,8 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      * @return The master job id of the application been monitored. such as: EmulateRemote_01
      */
     public String getCurrentMonitoringJobId() {
-        String answer = "";
-        File[] files = new File(monitoringDirectory).listFiles(filter);
-
-        Arrays.sort(files, new Comparator<File>(){
-            @Override
-            public int compare(File f1, File f2)
-            {
-                return Long.valueOf(f2.lastModified()).compareTo(f1.lastModified());
-            } });
-        //get the newest folder if it exists
-        for (File file : files) {
-            if (new File(file.getAbsoluteFile() + monitoringFile).exists()) {
-                return file.getName();
-            } else {// the monitoring file doesn't exist so wait a few seconds and try again.
-                sleep();
-                if (new File(file.getAbsoluteFile() + monitoringFile).exists()) {
-                    return file.getName();
-                } else {
-                    Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.FINE, 
-                            "Compss file was not found, I waited but it was still not found.");                    
-                }
-            }
-        }
-        return answer;
+        return getState().getJobId();
     }    
-    
-    /**
-     * Sleeps the thread for 3 seconds. This allows chance for a monitoring file 
-     * that is to be read to be written to disk if needed
-     */
-    private void sleep() {
-        try {
-            Thread.sleep(3000);
-        } catch (InterruptedException ex) {
-            Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.SEVERE, null, ex);
-        }        
-    }
 
     public String getMonitoringDirectory() {
         return monitoringDirectory;
@@ -249,6 +282,7 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      */
     public void setMonitoringDirectory(String monitoringDirectory) {
         this.monitoringDirectory = monitoringDirectory;
+        jobDirectoryChanged = true;
     }
 
     /**
@@ -257,6 +291,7 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      */
     public void setMonitoringFile(String monitoringFile) {
         this.monitoringFile = monitoringFile;
+        jobDirectoryChanged = true;
     }
         
     
@@ -289,48 +324,15 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
     @Override
     public List<Host> getHostList() {
         List<Host> answer = new ArrayList<>();
-        try {
-            JSONObject items = readJsonFromXMLFile(getCurrentMonitoringFile());
-            if (!items.has(COMPSS_STATE)) {
+        for (CompssResource resource : getState().getResources()) {
+            if (resource.getHostname().contains("requested new VM")) {
                 /**
-                 * The file to be parsed might not be fully populated, if it isn't
-                 * then this avoids parse errors.
-                 */
-                return answer;
+                 * This avoids parsing errors at the point a new resource is 
+                 * added to the job, but before the host is fully detected.
+                 */ 
+                continue;
             }
-            JSONObject compssState = items.getJSONObject(COMPSS_STATE);             
-            JSONObject resourceInfo = compssState.getJSONObject(RESOURCE_INFO);
-            List<CompssResource> resourceListing = CompssResource.getCompssResouce(resourceInfo);
-            for (CompssResource resource : resourceListing) {
-                if (resource.getHostname().contains("requested new VM")) {
-                    /**
-                     * This avoids parsing errors at the point a new resource is 
-                     * added to the job, but before the host is fully detected.
-                     */ 
-                    continue;
-                }
-                Host host = new Host(Integer.parseInt(
-                                resource.getHostname().replaceAll("[^0-9]", "")), 
-                                resource.getHostname());
-                host.setDiskGb((resource.getDiskSize() < 0 ? 0 : resource.getDiskSize()));
-                host.setCoreCount(resource.getCoreCount());
-                if (resource.getGpuCount() > 0) {
-                    host.addAccelerator(new Accelerator("gpu", resource.getGpuCount(), Accelerator.AcceleratorType.GPU));
-                }
-                if (resource.getFpgaCount() > 0) {
-                    host.addAccelerator(new Accelerator("fpga", resource.getGpuCount(), Accelerator.AcceleratorType.FPGA));
-                }
-                //compss considers a host in the "running" state to be available
-                host.setAvailable(resource.getState().trim().equalsIgnoreCase("Running"));
-                host.setState(resource.getState());
-                if (resource.isIdle()) {
-                    host.setState("IDLE");
-                }
-                answer.add(host);
-            }
-            
-        } catch (IOException | JSONException ex) {
-            Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.SEVERE, "parse error", ex);
+            answer.add(getHostFromResource(resource));
         }
         return answer;
     }
@@ -371,48 +373,33 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      */
     public List<ApplicationOnHost> getHostApplicationList() {
         List<ApplicationOnHost> answer = new ArrayList<>();
-        try {
-            JSONObject items = readJsonFromXMLFile(getCurrentMonitoringFile());
-            if (!items.has(COMPSS_STATE)) {
+        CompssState current = getState();
+        //Prevent old completed tasks from appearing as still running
+        if (current.getRunningTaskCount() == 0) {
+            return answer;
+        }
+        String appNameAndId = current.getJobId();
+        for (CompssResource resource : current.getResources()) {
+            if (resource.getHostname().contains("requested new VM")) {
+                /**
+                 * This avoids parsing errors at the point a new resource is 
+                 * added to the job, but before the host is fully detected.
+                 */ 
+                continue;
+            }                
+            Host host = getHostFromResource(resource);
+            for(String action : resource.getCurrentActions()) {
+                ApplicationOnHost app = new ApplicationOnHost(Integer.parseInt(appNameAndId.replaceAll("[^0-9]", "")), appNameAndId.replaceAll("[_0-9]", ""), host);
                 /**
-                 * The file to be parsed might not be fully populated, if it isn't
-                 * then this avoids parse errors.
+                 * //action = A string such as: "ExecutionAction ( Task 4, CE name multiplyBlocks)"
+                //"CE name multiplyBlocks" identifies the core implementation of the core element 
+                * but the string as a whole keeps changing so fast events can't be usefully injected into the system.
                  */
-                return answer;
-            }            
-            JSONObject compssState = items.getJSONObject(COMPSS_STATE);             
-            JSONObject resourceInfo = compssState.getJSONObject(RESOURCE_INFO);
-            List<CompssResource> resourceListing = CompssResource.getCompssResouce(resourceInfo);
-            //Prevent old completed tasks from appearing as still running
-            if (getRunningTaskCount(compssState) == 0) {
-                return answer;
-            }
-            for (CompssResource resource : resourceListing) {
-                if (resource.getHostname().contains("requested new VM")) {
-                    /**
-                     * This avoids parsing errors at the point a new resource is 
-                     * added to the job, but before the host is fully detected.
-                     */ 
-                    continue;
-                }                
-                Host host = getHostFromResource(resource);
-                for(String action : resource.getCurrentActions()) {
-                    String appNameAndId = getCurrentMonitoringJobId();
-                    ApplicationOnHost app = new ApplicationOnHost(Integer.parseInt(appNameAndId.replaceAll("[^0-9]", "")), appNameAndId.replaceAll("[_0-9]", ""), host);
-                    /**
-                     * //action = A string such as: "ExecutionAction ( Task 4, CE name multiplyBlocks)"
-                    //"CE name multiplyBlocks" identifies the core implementation of the core element 
-                    * but the string as a whole keeps changing so fast events can't be usefully injected into the system.
-                     */
-                    app.addProperty("ACTION", action);
-                    app.addProperty("CE_NAME", action.substring(action.indexOf("CE name ") + 8, action.length() - 1)) ;
-                    app.setStatus(ApplicationOnHost.JOB_STATUS.RUNNING);
-                    answer.add(app);
-                }
+                app.addProperty("ACTION", action);
+                app.addProperty("CE_NAME", action.substring(action.indexOf("CE name ") + 8, action.length() - 1)) ;
+                app.setStatus(ApplicationOnHost.JOB_STATUS.RUNNING);
+                answer.add(app);
             }
-            
-        } catch (IOException | JSONException ex) {
-            Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.SEVERE, "parse error", ex);
         }
         return answer;
     }
@@ -463,9 +450,12 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      */
     public List<ApplicationOnHost> getIdleResourcesAsDormantApplications() {
         List<ApplicationOnHost> answer = new ArrayList<>();
-        List<CompssResource> idleResources = getIdleResources();
-        String appNameAndId = getCurrentMonitoringJobId();
-        for (CompssResource idleResource : idleResources) {
+        CompssState current = getState();
+        String appNameAndId = current.getJobId();
+        for (CompssResource idleResource : current.getResources()) {
+            if (!idleResource.isIdle()) {
+                continue;
+            }
             ApplicationOnHost app = new ApplicationOnHost(Integer.parseInt(appNameAndId.replaceAll("[^0-9]", "")), 
                     appNameAndId.replaceAll("[_0-9]", ""), 
                     getHostFromResource(idleResource));
@@ -480,57 +470,7 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
      * @return 
      */
     public int getRunningTaskCount() {
-        try {
-            JSONObject items = readJsonFromXMLFile(getCurrentMonitoringFile());
-            if (!items.has(COMPSS_STATE)) {
-                /**
-                 * The file to be parsed might not be fully populated, if it isn't
-                 * then this avoids parse errors.
-                 */
-                return 0;
-            }            
-            JSONObject compssState = items.getJSONObject(COMPSS_STATE);             
-            return getRunningTaskCount(compssState);
-        } catch (IOException | JSONException ex) {
-            Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.SEVERE, "parse error", ex);
-        }
-        return 0;
-    }
-    
-    /**
-     * This gets the list of tasks that are to yet to be processed.
-     * @param compssState The compss state object to parse
-     * @return The amount of tasks that are in progress.
-     */
-    private int getRunningTaskCount(JSONObject compssState) {
-        try {
-            /**
-             * Guard against empty strings, when a json object is expected
-             * This happens when there are no tasks running
-             */
-            if (compssState.get(TASK_INFO) instanceof String && 
-                    compssState.getString(TASK_INFO).isEmpty()) {
-                    return 0;
-            }
-            if (compssState.get(TASK_INFO) instanceof JSONObject) {
-                JSONObject taskInfo = compssState.getJSONObject(TASK_INFO);
-                if (taskInfo != null && taskInfo.has("Application")) {
-                    JSONObject application = taskInfo.getJSONObject("Application");
-                    if (application != null && application.has("InProgress")) {
-                        //Other options are "TotalCount" or "Completed"
-                        return application.getInt("InProgress");
-                    }
-                } 
-            } else {
-                Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.SEVERE, 
-                        "parse error " + TASK_INFO + " was not of the expected type. "
-                                + "It was of type {0}", compssState.get(TASK_INFO).getClass());
-            }
-        } catch (JSONException ex) {
-            Logger.getLogger(CompssDatasourceAdaptor.class.getName()).log(Level.SEVERE, 
-                    "parse error", ex);
-        }
-        return 0;
+        return getState().getRunningTaskCount();
     }
     
     @Override
@@ -676,4 +616,107 @@ public class CompssDatasourceAdaptor implements HostDataSource, ApplicationDataS
         return answer;
     }
     
+    /**
+     * This watches the COMPSs monitoring directory, along with the monitoring
+     * folder of the current job. A change to the directory causes the current
+     * job to be searched for again, while a change to the monitoring file
+     * causes it to be parsed ahead of the next request for it.
+     */
+    private class CompssWatcher implements Runnable {
+
+        private final String directory;
+        private final WatchService service;
+        private WatchKey jobKey = null;
+        private File watchedJobDirectory = null;
+        private volatile boolean running = true;
+
+        /**
+         * This creates a new watcher of the monitoring directory.
+         *
+         * @param directory The COMPSs monitoring directory, i.e. ~/.COMPSs/
+         * @throws IOException Thrown if the directory can't be watched.
+         */
+        public CompssWatcher(String directory) throws IOException {
+            this.directory = directory;
+            service = FileSystems.getDefault().newWatchService();
+            try {
+                Paths.get(directory).register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException | RuntimeException ex) {
+                service.close();
+                throw new IOException("Unable to watch " + directory, ex);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    WatchKey key = service.take();
+                    if (key != jobKey) {
+                        //A job folder was added, removed or updated
+                        jobDirectoryChanged = true;
+                    }
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            jobDirectoryChanged = true;
+                        }
+                    }
+                    key.reset();
+                    getState();
+                    watchJobDirectory();
+                } catch (InterruptedException | ClosedWatchServiceException ex) {
+                    running = false;
+                } catch (Exception ex) {
+                    Logger.getLogger(CompssWatcher.class.getName()).log(Level.SEVERE, "The monitoring file could not be read.", ex);
+                }
+            }
+        }
+
+        /**
+         * This watches the monitoring folder of the current job, in place of
+         * that of any previous job.
+         */
+        private void watchJobDirectory() {
+            File jobDirectory = currentJobDirectory;
+            if (jobDirectory == null || jobDirectory.equals(watchedJobDirectory)) {
+                return;
+            }
+            if (jobKey != null) {
+                jobKey.cancel();
+                jobKey = null;
+            }
+            watchedJobDirectory = jobDirectory;
+            Path monitorFolder = new File(jobDirectory.getAbsoluteFile() + monitoringFile).getParentFile().toPath();
+            try {
+                jobKey = monitorFolder.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException ex) {
+                Logger.getLogger(CompssWatcher.class.getName()).log(Level.FINE, "The job's monitoring folder could not be watched.", ex);
+            }
+        }
+
+        /**
+         * This indicates if this watcher is watching a given directory.
+         *
+         * @param directory The monitoring directory
+         * @return If the directory is the one being watched
+         */
+        public boolean isWatching(String directory) {
+            return running && this.directory.equals(directory);
+        }
+
+        /**
+         * This stops the watcher.
+         */
+        public void stop() {
+            running = false;
+            try {
+                service.close();
+            } catch (IOException ex) {
+                Logger.getLogger(CompssWatcher.class.getName()).log(Level.FINE, null, ex);
+            }
+        }
+    }
+
 }
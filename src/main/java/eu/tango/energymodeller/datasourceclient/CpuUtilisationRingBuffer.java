@@ -0,0 +1,233 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+/**
+ * This holds the recent CPU utilisation samples of a host, so that the
+ * average utilisation over the last few seconds can be reported.
+ *
+ * The samples are held in primitive arrays that are allocated once and then
+ * written to in a circle, so adding a sample creates no garbage. Alongside
+ * each sample the running total of all the samples before it is kept, so the
+ * sum of any run of samples is the difference between two totals. Finding the
+ * start of a time window is a binary search over the sample times, so the cost
+ * of a query does not grow with the length of the window.
+ *
+ * Samples are expected to be added in time order. Adding is synchronized,
+ * while queries take no locks: a query that overlaps a sample being written
+ * over the values it has read is simply retried.
+ *
+ * @author Richard Kavanagh
+ */
+public class CpuUtilisationRingBuffer {
+
+    /**
+     * An hour's worth of samples taken once a second.
+     */
+    public static final int DEFAULT_CAPACITY = 3600;
+    private final int capacity;
+    private final int length;
+    private final long[] clocks;
+    private final double[] values;
+    private final double[] totalsBefore;
+    private double total = 0;
+    private volatile long count = 0;
+
+    /**
+     * This creates a new ring buffer that holds up to an hour's worth of
+     * samples taken once a second.
+     */
+    public CpuUtilisationRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * This creates a new ring buffer.
+     *
+     * @param capacity The maximum amount of samples to hold, once full the
+     * oldest sample is replaced.
+     */
+    public CpuUtilisationRingBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        //One spare slot is kept for the sample that is being written
+        length = this.capacity + 1;
+        clocks = new long[length];
+        values = new double[length];
+        totalsBefore = new double[length];
+    }
+
+    /**
+     * This adds a new sample.
+     *
+     * @param clock The time the sample was taken, in seconds
+     * @param utilisation The CPU utilisation
+     */
+    public synchronized void add(long clock, double utilisation) {
+        int slot = slot(count);
+        clocks[slot] = clock;
+        values[slot] = utilisation;
+        totalsBefore[slot] = total;
+        total = total + utilisation;
+        count = count + 1; //publishes the sample to readers
+    }
+
+    /**
+     * This returns the maximum amount of samples that are held.
+     *
+     * @return The capacity of the buffer
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * This returns the amount of samples currently held.
+     *
+     * @return The amount of samples held
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /**
+     * This returns the amount of samples that have ever been added. This may
+     * be given to {@link #getAverageUpTo(long, long)} to see the buffer as it
+     * was at this point, ignoring any samples added later.
+     *
+     * @return The amount of samples added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * This indicates if no samples have been added yet.
+     *
+     * @return If the buffer is empty
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * This returns the most recent sample.
+     *
+     * @return The most recent CPU utilisation, or NaN if there are no
+     * samples.
+     */
+    public double getLatest() {
+        while (true) {
+            long end = count;
+            if (end == 0) {
+                return Double.NaN;
+            }
+            double answer = values[slot(end - 1)];
+            if (count - length < end - 1) {
+                return answer;
+            }
+        }
+    }
+
+    /**
+     * This returns the average utilisation of the samples taken at or after a
+     * given time.
+     *
+     * @param since The time in seconds of the start of the window
+     * @return The average CPU utilisation, or NaN if no samples were taken in
+     * the window.
+     */
+    public double getAverage(long since) {
+        return getAverageUpTo(since, Long.MAX_VALUE);
+    }
+
+    /**
+     * This returns the average utilisation of the samples taken at or after a
+     * given time, considering only the samples that had been added when the
+     * buffer held a given amount of samples.
+     *
+     * @param since The time in seconds of the start of the window
+     * @param sampleCount The amount of samples added, as given by
+     * {@link #getCount()}, samples added after this are ignored
+     * @return The average CPU utilisation, or NaN if no samples were taken in
+     * the window.
+     */
+    public double getAverageUpTo(long since, long sampleCount) {
+        while (true) {
+            long current = count;
+            long end = Math.min(sampleCount, current);
+            long oldest = Math.max(0, current - capacity);
+            if (end <= oldest) {
+                return Double.NaN;
+            }
+            long start = findFirst(oldest, end, since);
+            if (start == end) {
+                return Double.NaN;
+            }
+            int last = slot(end - 1);
+            double sum = totalsBefore[last] + values[last] - totalsBefore[slot(start)];
+            //Check the samples read were not overwritten while being read
+            if (count - length < start) {
+                return sum / (double) (end - start);
+            }
+        }
+    }
+
+    /**
+     * This returns the average utilisation over the last few seconds.
+     *
+     * @param now The current time in seconds
+     * @param lastNSeconds The length of the window in seconds
+     * @return The average CPU utilisation, or NaN if no samples were taken in
+     * the window.
+     */
+    public double getAverage(long now, int lastNSeconds) {
+        return getAverage(now - lastNSeconds);
+    }
+
+    /**
+     * This finds the first sample taken at or after a given time.
+     *
+     * @param from The index of the oldest sample to consider
+     * @param to The index after the newest sample to consider
+     * @param since The time to search for
+     * @return The index of the first sample at or after the time, or the
+     * index after the newest sample if there is none.
+     */
+    private long findFirst(long from, long to, long since) {
+        while (from < to) {
+            long mid = (from + to) >>> 1;
+            if (clocks[slot(mid)] < since) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * This converts the index of a sample into its position in the arrays.
+     *
+     * @param index The index of the sample, counted from the first added
+     * @return The position of the sample in the arrays
+     */
+    private int slot(long index) {
+        return (int) (index % length);
+    }
+}
@@ -15,9 +15,6 @@
  */
 package eu.tango.energymodeller.datasourceclient;
 
-import static eu.tango.energymodeller.datasourceclient.KpiList.ENERGY_KPI_NAME;
-import static eu.tango.energymodeller.datasourceclient.KpiList.ESTIMATED_POWER_KPI_NAME;
-import static eu.tango.energymodeller.datasourceclient.KpiList.POWER_KPI_NAME;
 import eu.tango.energymodeller.types.energyuser.Host;
 import java.util.List;
 
@@ -51,6 +48,17 @@ public class HostMeasurement extends Measurement {
         setClock(clock);
     }
 
+    /**
+     * This creates a copy of a host measurement. Metrics added to or removed
+     * from the copy do not change the original.
+     *
+     * @param measurement The measurement to copy
+     */
+    public HostMeasurement(HostMeasurement measurement) {
+        this(measurement.getHost(), measurement.getClock());
+        addMetrics(measurement);
+    }
+
     /**
      * The gets the host that the measurement is for.
      *
@@ -80,7 +88,7 @@ public class HostMeasurement extends Measurement {
      * @return The power consumed when the measurement was taken.
      */
     public double getPower() {
-        return this.getMetric(POWER_KPI_NAME).getValue();
+        return getSlot(POWER_SLOT).getValue();
     }
 
     /**
@@ -89,7 +97,7 @@ public class HostMeasurement extends Measurement {
      * @return If the power metric is contained inside this host measurement.
      */
     public boolean getPowerMetricExist() {
-        return this.metricExists(POWER_KPI_NAME);
+        return getSlot(POWER_SLOT) != null;
     }
     
     /**
@@ -98,7 +106,7 @@ public class HostMeasurement extends Measurement {
      * @return The power consumed when the measurement was taken.
      */
     public double getEstimatedPower() {
-        return this.getMetric(ESTIMATED_POWER_KPI_NAME).getValue();
+        return getSlot(ESTIMATED_POWER_SLOT).getValue();
     }
 
     /**
@@ -108,7 +116,7 @@ public class HostMeasurement extends Measurement {
      * @return If the power metric is contained inside this host measurement.
      */
     public boolean getEstimatedPowerMetricExist() {
-        return this.metricExists(ESTIMATED_POWER_KPI_NAME);
+        return getSlot(ESTIMATED_POWER_SLOT) != null;
     }
     
     /**
@@ -158,7 +166,7 @@ public class HostMeasurement extends Measurement {
      * might give to an energy company.
      */
     public double getEnergy() {
-        return this.getMetric(ENERGY_KPI_NAME).getValue();
+        return getSlot(ENERGY_SLOT).getValue();
     }
 
     /**
@@ -167,7 +175,7 @@ public class HostMeasurement extends Measurement {
      * @return If the energy metric is contained inside this host measurement.
      */
     public boolean getEnergyMetricExist() {
-        return this.metricExists(ENERGY_KPI_NAME);
+        return getSlot(ENERGY_SLOT) != null;
     }
 
     /**
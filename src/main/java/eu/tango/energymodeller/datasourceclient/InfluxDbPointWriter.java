@@ -0,0 +1,246 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+
+/**
+ * This is a write behind queue for data points that are written out to
+ * influx db. Points from all hosts and applications are queued in memory and
+ * written out together, as a single line protocol request, once either enough
+ * points have been queued or the flush interval has passed. Callers therefore
+ * never wait upon influx db.
+ *
+ * The queue is bounded, if it fills further points are discarded and counted
+ * rather than blocking the caller. Once the writer has been stopped any
+ * further points are written out immediately.
+ *
+ * @author Richard Kavanagh
+ */
+public class InfluxDbPointWriter implements Runnable {
+
+    private static final HashMap<String, InfluxDbPointWriter> WRITERS = new HashMap<>();
+    private final InfluxDB influxDB;
+    private final String dbName;
+    private final InfluxDB.ConsistencyLevel consistency;
+    private final ArrayBlockingQueue<Point> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final Object flushLock = new Object();
+    private final Object wakeUp = new Object();
+    private final AtomicLong droppedPoints = new AtomicLong(0);
+    private volatile boolean running = true;
+
+    /**
+     * This creates a new write behind queue for influx db data points.
+     *
+     * @param influxDB The connection to influx db to write to
+     * @param dbName The name of the database to write to
+     * @param consistency The consistency level of the writes
+     * @param batchSize The amount of points that triggers a flush of the queue
+     * @param flushInterval The maximum time in milliseconds between flushes
+     * of the queue.
+     * @param capacity The maximum amount of points to hold in memory.
+     */
+    public InfluxDbPointWriter(InfluxDB influxDB, String dbName, InfluxDB.ConsistencyLevel consistency,
+            int batchSize, long flushInterval, int capacity) {
+        this.influxDB = influxDB;
+        this.dbName = dbName;
+        this.consistency = (consistency == null ? InfluxDB.ConsistencyLevel.ALL : consistency);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = Math.max(1, flushInterval);
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, capacity));
+    }
+
+    /**
+     * This gets the writer that is shared by everything writing to a given
+     * influx db database as a given user, creating and starting it if it does
+     * not yet exist.
+     *
+     * @param influxDB The connection to influx db to write with, if the writer
+     * has to be created
+     * @param hostname The url of the influx db server
+     * @param user The user the connection to influx db is made as
+     * @param dbName The name of the database to write to
+     * @param consistency The consistency level of the writes
+     * @param batchSize The amount of points that triggers a flush of the queue
+     * @param flushInterval The maximum time in milliseconds between flushes
+     * of the queue.
+     * @param capacity The maximum amount of points to hold in memory.
+     * @return The writer for the database
+     */
+    public static synchronized InfluxDbPointWriter getInstance(InfluxDB influxDB, String hostname, String user, String dbName,
+            InfluxDB.ConsistencyLevel consistency, int batchSize, long flushInterval, int capacity) {
+        String key = user + "@" + hostname + "/" + dbName;
+        InfluxDbPointWriter answer = WRITERS.get(key);
+        if (answer == null || !answer.running) {
+            answer = new InfluxDbPointWriter(influxDB, dbName, consistency, batchSize, flushInterval, capacity);
+            Thread writerThread = new Thread(answer, "energy-modeller-influx-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+            WRITERS.put(key, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * This adds a point to the queue of points to write. If the queue is full
+     * the point is discarded.
+     *
+     * @param point The point to write to influx db.
+     */
+    public void add(Point point) {
+        if (!running) {
+            ArrayList<Point> batch = new ArrayList<>(1);
+            batch.add(point);
+            write(batch);
+            return;
+        }
+        if (!queue.offer(point)) {
+            if (droppedPoints.incrementAndGet() == 1) {
+                Logger.getLogger(InfluxDbPointWriter.class.getName()).log(Level.WARNING,
+                        "The influx db write queue was full, points are being dropped.");
+            }
+            return;
+        }
+        if (!running) { //The writer stopped as the point was added
+            flush();
+        } else if (queue.size() >= batchSize) {
+            synchronized (wakeUp) {
+                wakeUp.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean interrupted = false;
+        long lastFlush = System.currentTimeMillis();
+        while (running) {
+            try {
+                long waited = System.currentTimeMillis() - lastFlush;
+                if (queue.size() >= batchSize || (waited >= flushInterval && !queue.isEmpty())) {
+                    flush();
+                    lastFlush = System.currentTimeMillis();
+                } else if (waited >= flushInterval) {
+                    lastFlush = System.currentTimeMillis();
+                } else {
+                    synchronized (wakeUp) {
+                        wakeUp.wait(flushInterval - waited);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                //Stop, writing out what is queued before the thread exits
+                Logger.getLogger(InfluxDbPointWriter.class.getName()).log(Level.INFO, "The influx db writer was interupted, it is stopping.");
+                running = false;
+                interrupted = true;
+            } catch (Exception ex) { //This should always keep writing data out
+                Logger.getLogger(InfluxDbPointWriter.class.getName()).log(Level.SEVERE, "The influx db writer encountered a fault.", ex);
+            }
+        }
+        flush();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This writes out every point currently held in the queue. It returns
+     * once all points queued before the call have been written.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            ArrayList<Point> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * This stops the background thread, writing any remaining points out
+     * before it returns.
+     */
+    public void stop() {
+        running = false;
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+        flush();
+    }
+
+    /**
+     * This indicates if the background thread is still writing points out.
+     *
+     * @return If the writer has not been stopped
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * This indicates how many points have been discarded, either due to the
+     * queue being full or influx db failing to accept them.
+     *
+     * @return The count of points that have been discarded.
+     */
+    public long getDroppedPointCount() {
+        return droppedPoints.get();
+    }
+
+    /**
+     * This indicates how many points are waiting to be written.
+     *
+     * @return The amount of points currently held in the queue.
+     */
+    public int getQueuedPointCount() {
+        return queue.size();
+    }
+
+    /**
+     * This writes a batch of points out to influx db, as a single request.
+     *
+     * @param batch The points to write
+     */
+    private void write(ArrayList<Point> batch) {
+        BatchPoints batchPoints = BatchPoints
+                .database(dbName)
+                .tag("async", "true")
+                .consistency(consistency)
+                .build();
+        for (Point point : batch) {
+            batchPoints.point(point);
+        }
+        try {
+            influxDB.write(batchPoints);
+        } catch (RuntimeException ex) {
+            droppedPoints.addAndGet(batch.size());
+            Logger.getLogger(InfluxDbPointWriter.class.getName()).log(Level.SEVERE, "Failed to write a batch of points to influx db.", ex);
+        }
+    }
+}
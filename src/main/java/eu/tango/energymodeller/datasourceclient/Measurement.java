@@ -25,10 +25,13 @@ import static eu.tango.energymodeller.datasourceclient.KpiList.CPU_SPOT_USAGE_KP
 import static eu.tango.energymodeller.datasourceclient.KpiList.CPU_STEAL_KPI_NAME;
 import static eu.tango.energymodeller.datasourceclient.KpiList.CPU_SYSTEM_KPI_NAME;
 import static eu.tango.energymodeller.datasourceclient.KpiList.CPU_USER_KPI_NAME;
+import static eu.tango.energymodeller.datasourceclient.KpiList.ENERGY_KPI_NAME;
+import static eu.tango.energymodeller.datasourceclient.KpiList.ESTIMATED_POWER_KPI_NAME;
 import static eu.tango.energymodeller.datasourceclient.KpiList.MEMORY_AVAILABLE_KPI_NAME;
 import static eu.tango.energymodeller.datasourceclient.KpiList.MEMORY_TOTAL_KPI_NAME;
 import static eu.tango.energymodeller.datasourceclient.KpiList.NETWORK_IN_STARTS_WITH_KPI_NAME;
 import static eu.tango.energymodeller.datasourceclient.KpiList.NETWORK_OUT_STARTS_WITH_KPI_NAME;
+import static eu.tango.energymodeller.datasourceclient.KpiList.POWER_KPI_NAME;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -43,12 +46,63 @@ import java.util.logging.Logger;
  * This is the base class for all measurements, either for a vm instance or a
  * host physical machine.
  *
+ * The well known metrics such as power and cpu utilisation are also held in
+ * fixed slots, so that they may be read without a lookup by name. The slots
+ * are kept in step with the metrics map by the methods of this class, so the
+ * map returned by getMetrics should not be altered directly.
+ *
  * @author Richard Kavanagh
  */
 public abstract class Measurement {
 
+    /**
+     * The slots used for the well known metrics.
+     */
+    protected static final int POWER_SLOT = 0;
+    protected static final int ESTIMATED_POWER_SLOT = 1;
+    protected static final int ENERGY_SLOT = 2;
+    private static final int CPU_SPOT_USAGE_SLOT = 3;
+    private static final int CPU_SPOT_USAGE_SLOT2 = 4;
+    private static final int CPU_IDLE_SLOT = 5;
+    private static final int CPU_INTERUPT_SLOT = 6;
+    private static final int CPU_IO_WAIT_SLOT = 7;
+    private static final int CPU_NICE_SLOT = 8;
+    private static final int CPU_SOFT_IRQ_SLOT = 9;
+    private static final int CPU_STEAL_SLOT = 10;
+    private static final int CPU_SYSTEM_SLOT = 11;
+    private static final int CPU_USER_SLOT = 12;
+    private static final int MEMORY_AVAILABLE_SLOT = 13;
+    private static final int MEMORY_TOTAL_SLOT = 14;
+    private static final String[] SLOT_NAMES = {POWER_KPI_NAME,
+        ESTIMATED_POWER_KPI_NAME, ENERGY_KPI_NAME, CPU_SPOT_USAGE_KPI_NAME,
+        CPU_SPOT_USAGE_KPI_NAME2, CPU_IDLE_KPI_NAME, CPU_INTERUPT_KPI_NAME,
+        CPU_IO_WAIT_KPI_NAME, CPU_NICE_KPI_NAME, CPU_SOFT_IRQ_KPI_NAME,
+        CPU_STEAL_KPI_NAME, CPU_SYSTEM_KPI_NAME, CPU_USER_KPI_NAME,
+        MEMORY_AVAILABLE_KPI_NAME, MEMORY_TOTAL_KPI_NAME};
+    /**
+     * The cpu utilisation metrics that are summed, when no spot value is
+     * available.
+     */
+    private static final int[] CPU_SUM_SLOTS = {CPU_SYSTEM_SLOT, CPU_USER_SLOT,
+        CPU_INTERUPT_SLOT, CPU_IO_WAIT_SLOT, CPU_NICE_SLOT, CPU_SOFT_IRQ_SLOT,
+        CPU_STEAL_SLOT};
+    /**
+     * The order the cpu utilisation metrics are checked for a time stamp.
+     */
+    private static final int[] CPU_CLOCK_SLOTS = {CPU_SPOT_USAGE_SLOT,
+        CPU_SYSTEM_SLOT, CPU_USER_SLOT, CPU_INTERUPT_SLOT, CPU_IO_WAIT_SLOT,
+        CPU_NICE_SLOT, CPU_SOFT_IRQ_SLOT, CPU_STEAL_SLOT};
+    private static final HashMap<String, Integer> SLOTS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < SLOT_NAMES.length; i++) {
+            SLOTS.put(SLOT_NAMES[i], i);
+        }
+    }
+
     private long clock;
     private HashMap<String, MetricValue> metrics = new HashMap<>();
+    private final MetricValue[] slots = new MetricValue[SLOT_NAMES.length];
 
     /**
      * This looks at the metrics gained, for this given gathering of measurement
@@ -201,6 +255,7 @@ public abstract class Measurement {
         }
         for (String item : toRemove) {
             metrics.remove(item);
+            setSlot(item, null);
         }
         return count;
     }    
@@ -284,6 +339,33 @@ public abstract class Measurement {
      */
     public void setMetrics(HashMap<String, MetricValue> metrics) {
         this.metrics = metrics;
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = metrics.get(SLOT_NAMES[i]);
+        }
+    }
+
+    /**
+     * This updates the slot for a metric, if the metric is one of the well
+     * known metrics that are held in slots.
+     *
+     * @param key The key of the metric
+     * @param item The metric's value, or null if it has been removed
+     */
+    private void setSlot(String key, MetricValue item) {
+        Integer slot = SLOTS.get(key);
+        if (slot != null) {
+            slots[slot] = item;
+        }
+    }
+
+    /**
+     * This gets one of the well known metrics that are held in slots.
+     *
+     * @param slot The slot to get the metric from
+     * @return The metric and its value, or null if the metric is not present
+     */
+    protected MetricValue getSlot(int slot) {
+        return slots[slot];
     }
 
     /**
@@ -303,11 +385,13 @@ public abstract class Measurement {
         }
         if (!metrics.containsKey(item.getKey())) {
             metrics.put(item.getKey(), item);
+            setSlot(item.getKey(), item);
         } else {
             MetricValue existing = metrics.get(item.getKey());
             // Add only the newer of the two items.
             if (existing != null && item.getClock() > existing.getClock()) {
                 metrics.put(item.getKey(), item);
+                setSlot(item.getKey(), item);
             }
         }
     }
@@ -321,8 +405,8 @@ public abstract class Measurement {
         if (metricName == null) {
            return; //Don't allow null metric values
         }
-        if (!metrics.containsKey(metricName)) {
-            metrics.remove(metricName);
+        if (metrics.remove(metricName) != null) {
+            setSlot(metricName, null);
         }
     }
 
@@ -365,21 +449,25 @@ public abstract class Measurement {
     }
     
     /**
-     * This gets the item that represents a given metric
+     * This gets the items that represent a given metric, or that match a
+     * regular expression. The regular expression is compiled once and the
+     * metric keys that match it are remembered by the metric key registry.
      *
      * @param key The key that is used to identify a given measurement
      * @return The metric and its value that is identified by the key.
      */    
     public HashSet<MetricValue> getMetricByRegularExpression(String key) {
         HashSet<MetricValue> answer = new HashSet<>();
-        if (metrics.get(key) != null) {
-            answer.add(metrics.get(key));
+        MetricValue exact = metrics.get(key);
+        if (exact != null) {
+            answer.add(exact);
             return answer;
         }
-        Set<String> keys = metrics.keySet();
-        for (String currentKey : keys) {
-            if (currentKey.matches(key)) {
-                answer.add(metrics.get(currentKey));
+        MetricKeyRegistry.KeyPattern pattern = MetricKeyRegistry.getPattern(key);
+        for (MetricValue current : metrics.values()) {
+            int id = current.getKeyId();
+            if (id >= 0 && pattern.matches(id)) {
+                answer.add(current);
             }
         }
         return answer;
@@ -420,41 +508,19 @@ public abstract class Measurement {
      * range 0...1
      */
     public double getCpuUtilisation() {
-        if (metrics.containsKey(CPU_SPOT_USAGE_KPI_NAME)) {
-            return this.getMetric(CPU_SPOT_USAGE_KPI_NAME).getValue() / 100;
-        }
-        if (metrics.containsKey(CPU_SPOT_USAGE_KPI_NAME2)) {
-            return this.getMetric(CPU_SPOT_USAGE_KPI_NAME2).getValue() / 100;
-        }
-        double interrupt = 0.0;
-        double iowait = 0.0;
-        double nice = 0.0;
-        double softirq = 0.0;
-        double steal = 0.0;
-        double system = 0.0;
-        double user = 0.0;
-        if (metrics.containsKey(CPU_SYSTEM_KPI_NAME)) {
-            system = this.getMetric(CPU_SYSTEM_KPI_NAME).getValue();
+        if (slots[CPU_SPOT_USAGE_SLOT] != null) {
+            return slots[CPU_SPOT_USAGE_SLOT].getValue() / 100;
         }
-        if (metrics.containsKey(CPU_USER_KPI_NAME)) {
-            user = this.getMetric(CPU_USER_KPI_NAME).getValue();
+        if (slots[CPU_SPOT_USAGE_SLOT2] != null) {
+            return slots[CPU_SPOT_USAGE_SLOT2].getValue() / 100;
         }
-        if (metrics.containsKey(CPU_INTERUPT_KPI_NAME)) {
-            interrupt = this.getMetric(CPU_INTERUPT_KPI_NAME).getValue();
-        }
-        if (metrics.containsKey(CPU_IO_WAIT_KPI_NAME)) {
-            iowait = this.getMetric(CPU_IO_WAIT_KPI_NAME).getValue();
-        }
-        if (metrics.containsKey(CPU_NICE_KPI_NAME)) {
-            nice = this.getMetric(CPU_NICE_KPI_NAME).getValue();
-        }
-        if (metrics.containsKey(CPU_SOFT_IRQ_KPI_NAME)) {
-            softirq = this.getMetric(CPU_SOFT_IRQ_KPI_NAME).getValue();
-        }
-        if (metrics.containsKey(CPU_STEAL_KPI_NAME)) {
-            steal = this.getMetric(CPU_STEAL_KPI_NAME).getValue();
+        double answer = 0.0;
+        for (int slot : CPU_SUM_SLOTS) {
+            if (slots[slot] != null) {
+                answer = answer + slots[slot].getValue();
+            }
         }
-        return (system + user + interrupt + iowait + nice + softirq + steal) / 100;
+        return answer / 100;
     }
 
     /**
@@ -463,29 +529,10 @@ public abstract class Measurement {
      * @return The cpu utilisation's time stamp data.
      */
     public long getCpuUtilisationTimeStamp() {
-        if (metrics.containsKey(CPU_SPOT_USAGE_KPI_NAME)) {
-            return this.getMetric(CPU_SPOT_USAGE_KPI_NAME).getClock();
-        }
-        if (metrics.containsKey(CPU_SYSTEM_KPI_NAME)) {
-            return this.getMetric(CPU_SYSTEM_KPI_NAME).getClock();
-        }
-        if (metrics.containsKey(CPU_USER_KPI_NAME)) {
-            return this.getMetric(CPU_USER_KPI_NAME).getClock();
-        }
-        if (metrics.containsKey(CPU_INTERUPT_KPI_NAME)) {
-            return this.getMetric(CPU_INTERUPT_KPI_NAME).getClock();
-        }
-        if (metrics.containsKey(CPU_IO_WAIT_KPI_NAME)) {
-            return this.getMetric(CPU_IO_WAIT_KPI_NAME).getClock();
-        }
-        if (metrics.containsKey(CPU_NICE_KPI_NAME)) {
-            return this.getMetric(CPU_NICE_KPI_NAME).getClock();
-        }
-        if (metrics.containsKey(CPU_SOFT_IRQ_KPI_NAME)) {
-            return this.getMetric(CPU_SOFT_IRQ_KPI_NAME).getClock();
-        }
-        if (metrics.containsKey(CPU_STEAL_KPI_NAME)) {
-            return this.getMetric(CPU_STEAL_KPI_NAME).getClock();
+        for (int slot : CPU_CLOCK_SLOTS) {
+            if (slots[slot] != null) {
+                return slots[slot].getClock();
+            }
         }
         return 0;
     }
@@ -497,10 +544,10 @@ public abstract class Measurement {
      * range 0...1
      */
     public double getCpuIdle() {
-        if (metrics.containsKey(CPU_SPOT_USAGE_KPI_NAME)) {
-            return 1.0 - this.getMetric(CPU_SPOT_USAGE_KPI_NAME).getValue();
+        if (slots[CPU_SPOT_USAGE_SLOT] != null) {
+            return 1.0 - slots[CPU_SPOT_USAGE_SLOT].getValue();
         }
-        return this.getMetric(CPU_IDLE_KPI_NAME).getValue() / 100.0;
+        return slots[CPU_IDLE_SLOT].getValue() / 100.0;
     }
 
     /**
@@ -511,7 +558,7 @@ public abstract class Measurement {
      */
     public double getMemoryAvailable() {
         //Original value given in bytes. 1024 * 1024 = 1048576
-        return this.getMetric(MEMORY_AVAILABLE_KPI_NAME).getValue() / 1048576;
+        return slots[MEMORY_AVAILABLE_SLOT].getValue() / 1048576;
     }
 
     /**
@@ -532,7 +579,7 @@ public abstract class Measurement {
      */
     public double getMemoryTotal() {
         //Original value given in bytes. 1024 * 1024 = 1048576
-        return this.getMetric(MEMORY_TOTAL_KPI_NAME).getValue() / 1048576;
+        return slots[MEMORY_TOTAL_SLOT].getValue() / 1048576;
     }
 
     /**
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * This is a registry of the keys of the metrics that have been seen. Each key
+ * is given a small integer id when it is first registered, with ids being
+ * allocated in order starting from zero, so they may be used to index arrays
+ * and bit sets.
+ *
+ * It also holds the regular expressions that metric keys are searched for
+ * with. Each expression is compiled once and the set of ids that it matches
+ * is remembered, so a key is only tested against an expression the first
+ * time that it is seen.
+ *
+ * @author Richard Kavanagh
+ */
+public final class MetricKeyRegistry {
+
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, KeyPattern> PATTERNS = new ConcurrentHashMap<>();
+    private static volatile String[] keys = new String[64];
+    private static volatile int count = 0;
+
+    private MetricKeyRegistry() {
+    }
+
+    /**
+     * This gets the id of a metric key, registering the key if it has not
+     * been seen before.
+     *
+     * @param key The metric key
+     * @return The id of the metric key
+     */
+    public static int getId(String key) {
+        Integer answer = IDS.get(key);
+        if (answer != null) {
+            return answer;
+        }
+        return register(key);
+    }
+
+    /**
+     * This registers a metric key, giving it the next free id.
+     *
+     * @param key The metric key
+     * @return The id of the metric key
+     */
+    private static synchronized int register(String key) {
+        Integer existing = IDS.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int answer = count;
+        String[] current = keys;
+        if (answer == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[answer] = key;
+        keys = current;
+        count = answer + 1;
+        IDS.put(key, answer);
+        return answer;
+    }
+
+    /**
+     * This gets the metric key that has a given id.
+     *
+     * @param id The id of the metric key
+     * @return The metric key
+     */
+    public static String getKey(int id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("The metric key id " + id + " has not been registered");
+        }
+        return keys[id];
+    }
+
+    /**
+     * This gets the count of metric keys that have been registered.
+     *
+     * @return The count of metric keys registered.
+     */
+    public static int size() {
+        return count;
+    }
+
+    /**
+     * This gets a regular expression that metric keys may be matched against.
+     * The expression is compiled the first time it is requested.
+     *
+     * @param regex The regular expression
+     * @return The compiled regular expression
+     * @throws java.util.regex.PatternSyntaxException If the regular
+     * expression is not valid
+     */
+    public static KeyPattern getPattern(String regex) {
+        KeyPattern answer = PATTERNS.get(regex);
+        if (answer == null) {
+            answer = new KeyPattern(regex);
+            KeyPattern existing = PATTERNS.putIfAbsent(regex, answer);
+            if (existing != null) {
+                answer = existing;
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This is a regular expression that metric keys are matched against. It
+     * remembers which of the registered keys it matches.
+     */
+    public static final class KeyPattern {
+
+        private final Pattern pattern;
+        private volatile BitSet matches = new BitSet();
+        private volatile int checked = 0;
+
+        /**
+         * This creates a new pattern to match metric keys against.
+         *
+         * @param regex The regular expression
+         */
+        private KeyPattern(String regex) {
+            pattern = Pattern.compile(regex);
+        }
+
+        /**
+         * This indicates if a metric key matches the pattern, in the same way
+         * as String.matches.
+         *
+         * @param id The id of the metric key
+         * @return If the whole of the metric key matches the pattern
+         */
+        public boolean matches(int id) {
+            if (id >= checked) {
+                update();
+            }
+            return matches.get(id);
+        }
+
+        /**
+         * This indicates if a metric key matches the pattern, in the same way
+         * as String.matches.
+         *
+         * @param key The metric key
+         * @return If the whole of the metric key matches the pattern
+         */
+        public boolean matches(String key) {
+            return matches(getId(key));
+        }
+
+        /**
+         * This gets the ids of all the registered metric keys that match the
+         * pattern.
+         *
+         * @return The ids of the matching metric keys
+         */
+        public BitSet getMatchingIds() {
+            update();
+            return (BitSet) matches.clone();
+        }
+
+        /**
+         * This tests the keys registered since the last update against the
+         * pattern.
+         */
+        private synchronized void update() {
+            int last = size();
+            if (checked >= last) {
+                return;
+            }
+            BitSet answer = (BitSet) matches.clone();
+            for (int i = checked; i < last; i++) {
+                if (pattern.matcher(getKey(i)).matches()) {
+                    answer.set(i);
+                }
+            }
+            matches = answer;
+            checked = last;
+        }
+    }
+}
@@ -19,6 +19,10 @@ package eu.tango.energymodeller.datasourceclient;
  * This class records the value of a specific metric. It is aimed at separating
  * out the measurement from the origin of the value, i.e. Zabbix/Ganglia etc
  *
+ * Numeric values are held as a double. Values given as a string are kept as
+ * they were read and are parsed the first time they are needed as a number,
+ * so that each value is parsed at most once.
+ *
  * @author Richard Kavanagh
  */
 public class MetricValue {
@@ -31,6 +35,11 @@ public class MetricValue {
      * The key.
      */
     private String key;
+    /**
+     * The id of the key in the metric key registry, or -1 if it has not yet
+     * been looked up.
+     */
+    private int keyId = -1;
 
     /**
      * The delay.
@@ -38,9 +47,18 @@ public class MetricValue {
     private String delay;
 
     /**
-     * The value that was taken for the metric.
+     * The value that was taken for the metric, as it was read. This is null
+     * until it is first needed if the value was given as a number.
      */
     private String value;
+    /**
+     * The value that was taken for the metric, as a number.
+     */
+    private double numericValue = Double.NaN;
+    /**
+     * Indicates if numericValue holds the value of the metric.
+     */
+    private volatile boolean parsed = false;
     /**
      * The time.
      */
@@ -70,6 +88,22 @@ public class MetricValue {
         this.clock = clock;
     }
 
+    /**
+     * Instantiates a new metric value.
+     *
+     * @param name The name of the metric (human readable)
+     * @param key The key used to identify the metric
+     * @param value The value the metric holds
+     * @param clock The time the value was taken.
+     */
+    public MetricValue(String name, String key, double value, long clock) {
+        this.name = name;
+        this.key = key;
+        this.numericValue = value;
+        this.parsed = true;
+        this.clock = clock;
+    }
+
     /**
      * Gets the name.
      *
@@ -104,6 +138,21 @@ public class MetricValue {
      */
     public void setKey(String key) {
         this.key = key;
+        this.keyId = -1;
+    }
+
+    /**
+     * Gets the id of the key, as given by the metric key registry.
+     *
+     * @return the id of the key, or -1 if there is no key
+     */
+    public int getKeyId() {
+        int answer = keyId;
+        if (answer < 0 && key != null) {
+            answer = MetricKeyRegistry.getId(key);
+            keyId = answer;
+        }
+        return answer;
     }
 
     /**
@@ -130,16 +179,26 @@ public class MetricValue {
      * @return the last value
      */
     public String getValueAsString() {
-        return value;
+        String answer = value;
+        if (answer == null && parsed) {
+            answer = Double.toString(numericValue);
+            value = answer;
+        }
+        return answer;
     }
 
     /**
      * Gets the last value.
      *
      * @return the last value
+     * @throws NumberFormatException If the value is not a number
      */
     public double getValue() {
-        return Double.parseDouble(value);
+        if (!parsed) {
+            numericValue = Double.parseDouble(value);
+            parsed = true;
+        }
+        return numericValue;
     }
 
     /**
@@ -148,9 +207,21 @@ public class MetricValue {
      * @param value the new last value
      */
     public void setValue(String value) {
+        this.parsed = false;
         this.value = value;
     }
 
+    /**
+     * Sets the last value.
+     *
+     * @param value the new last value
+     */
+    public void setValue(double value) {
+        this.value = null;
+        this.numericValue = value;
+        this.parsed = true;
+    }
+
     /**
      * Gets the last clock. The value is given in Unix time.
      *
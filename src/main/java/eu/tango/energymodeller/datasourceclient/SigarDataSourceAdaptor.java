@@ -26,9 +26,7 @@ import eu.tango.energymodeller.types.energyuser.VmDeployed;
 import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -58,7 +56,7 @@ public class SigarDataSourceAdaptor implements HostDataSource {
     private Host host;
     private HostMeasurement lowest = null;
     private HostMeasurement highest = null;
-    private final LinkedList<CPUUtilisation> cpuMeasure = new LinkedList<>();
+    private final CpuUtilisationRingBuffer cpuMeasure = new CpuUtilisationRingBuffer();
     private final Settings settings = new Settings("energy-modeller-sigar.properties");
 
     /**
@@ -113,19 +111,19 @@ public class SigarDataSourceAdaptor implements HostDataSource {
         HostMeasurement measurement = new HostMeasurement(host, clock);
         try {
             CpuPerc cpu = SOURCE.getCpuPerc();
-            cpuMeasure.add(new CPUUtilisation(clock, cpu));
+            cpuMeasure.add(clock, 1 - cpu.getIdle());
             Mem mem = SOURCE.getMem();
-            measurement.addMetric(new MetricValue(KpiList.CPU_IDLE_KPI_NAME, KpiList.CPU_IDLE_KPI_NAME, cpu.getIdle() * 100 + "", clock));
-            measurement.addMetric(new MetricValue(KpiList.CPU_INTERUPT_KPI_NAME, KpiList.CPU_INTERUPT_KPI_NAME, cpu.getIrq() * 100 + "", clock));
-            measurement.addMetric(new MetricValue(KpiList.CPU_IO_WAIT_KPI_NAME, KpiList.CPU_IO_WAIT_KPI_NAME, cpu.getWait() * 100 + "", clock));
-            measurement.addMetric(new MetricValue(KpiList.CPU_NICE_KPI_NAME, KpiList.CPU_NICE_KPI_NAME, cpu.getNice() * 100 + "", clock));
-            measurement.addMetric(new MetricValue(KpiList.CPU_SOFT_IRQ_KPI_NAME, KpiList.CPU_SOFT_IRQ_KPI_NAME, cpu.getIrq() * 100 + "", clock));
-            measurement.addMetric(new MetricValue(KpiList.CPU_STEAL_KPI_NAME, KpiList.CPU_STEAL_KPI_NAME, cpu.getStolen() * 100 + "", clock));
-            measurement.addMetric(new MetricValue(KpiList.CPU_SYSTEM_KPI_NAME, KpiList.CPU_SYSTEM_KPI_NAME, cpu.getSys() * 100 + "", clock));
-            measurement.addMetric(new MetricValue(KpiList.CPU_USER_KPI_NAME, KpiList.CPU_USER_KPI_NAME, cpu.getUser() * 100 + "", clock));
-
-            measurement.addMetric(new MetricValue(KpiList.MEMORY_AVAILABLE_KPI_NAME, KpiList.MEMORY_AVAILABLE_KPI_NAME, (int) (Double.valueOf(mem.getActualFree()) / 1048576) + "", clock));
-            measurement.addMetric(new MetricValue(KpiList.MEMORY_TOTAL_KPI_NAME, KpiList.MEMORY_TOTAL_KPI_NAME, (int) (Double.valueOf(mem.getTotal()) / 1048576) + "", clock));
+            measurement.addMetric(new MetricValue(KpiList.CPU_IDLE_KPI_NAME, KpiList.CPU_IDLE_KPI_NAME, cpu.getIdle() * 100, clock));
+            measurement.addMetric(new MetricValue(KpiList.CPU_INTERUPT_KPI_NAME, KpiList.CPU_INTERUPT_KPI_NAME, cpu.getIrq() * 100, clock));
+            measurement.addMetric(new MetricValue(KpiList.CPU_IO_WAIT_KPI_NAME, KpiList.CPU_IO_WAIT_KPI_NAME, cpu.getWait() * 100, clock));
+            measurement.addMetric(new MetricValue(KpiList.CPU_NICE_KPI_NAME, KpiList.CPU_NICE_KPI_NAME, cpu.getNice() * 100, clock));
+            measurement.addMetric(new MetricValue(KpiList.CPU_SOFT_IRQ_KPI_NAME, KpiList.CPU_SOFT_IRQ_KPI_NAME, cpu.getIrq() * 100, clock));
+            measurement.addMetric(new MetricValue(KpiList.CPU_STEAL_KPI_NAME, KpiList.CPU_STEAL_KPI_NAME, cpu.getStolen() * 100, clock));
+            measurement.addMetric(new MetricValue(KpiList.CPU_SYSTEM_KPI_NAME, KpiList.CPU_SYSTEM_KPI_NAME, cpu.getSys() * 100, clock));
+            measurement.addMetric(new MetricValue(KpiList.CPU_USER_KPI_NAME, KpiList.CPU_USER_KPI_NAME, cpu.getUser() * 100, clock));
+
+            measurement.addMetric(new MetricValue(KpiList.MEMORY_AVAILABLE_KPI_NAME, KpiList.MEMORY_AVAILABLE_KPI_NAME, (int) (Double.valueOf(mem.getActualFree()) / 1048576), clock));
+            measurement.addMetric(new MetricValue(KpiList.MEMORY_TOTAL_KPI_NAME, KpiList.MEMORY_TOTAL_KPI_NAME, (int) (Double.valueOf(mem.getTotal()) / 1048576), clock));
 
         } catch (SigarException ex) {
             Logger.getLogger(SigarDataSourceAdaptor.class.getName()).log(Level.SEVERE, null, ex);
@@ -263,95 +261,14 @@ public class SigarDataSourceAdaptor implements HostDataSource {
     }
 
     @Override
-    public synchronized double getCpuUtilisation(Host host, int lastNSeconds) {
-        double count = 0.0;
-        double sumOfUtil = 0.0;
+    public double getCpuUtilisation(Host host, int lastNSeconds) {
         GregorianCalendar cal = new GregorianCalendar();
         long now = TimeUnit.MILLISECONDS.toSeconds(cal.getTimeInMillis());
-        long nowMinustime = now - lastNSeconds;
-        CopyOnWriteArrayList<CPUUtilisation> list = new CopyOnWriteArrayList<>();
-        list.addAll(cpuMeasure);
-        for (CPUUtilisation util : list) {
-            if (util.isOlderThan(nowMinustime)) {
-                list.remove(util);
-                cpuMeasure.remove(util);
-            } else {
-                sumOfUtil = sumOfUtil + util.getCpuBusy();
-                count = count + 1;
-            }
-        }
-        if (count == 0) {
+        double answer = cpuMeasure.getAverage(now, lastNSeconds);
+        if (Double.isNaN(answer)) {
             return 0.0;
         }
-        return sumOfUtil / count;
-    }
-
-    /**
-     * This is a CPU utilisation record for the Sigar data source adaptor.
-     */
-    private class CPUUtilisation {
-
-        private final long clock;
-        private final CpuPerc cpu;
-
-        /**
-         * This creates a new CPU Utilisation record
-         *
-         * @param clock the time when the CPU Utilisation was taken
-         * @param cpu The CPU utilisation record.
-         */
-        public CPUUtilisation(long clock, CpuPerc cpu) {
-            this.clock = clock;
-            this.cpu = cpu;
-        }
-
-        /**
-         * The time when this record was taken
-         *
-         * @return The UTC time for this record.
-         */
-        public long getClock() {
-            return clock;
-        }
-
-        /**
-         * This returns the Sigar object representing CPU load information.
-         *
-         * @return The sigar CPU object
-         */
-        public CpuPerc getCpu() {
-            return cpu;
-        }
-
-        /**
-         * This returns the percentage of time the CPU was idle.
-         *
-         * @return 0..1 for how idle the CPU was at a specified time frame.
-         */
-        public double getCpuIdle() {
-            return cpu.getIdle();
-        }
-
-        /**
-         * This returns the percentage of time the CPU was busy.
-         *
-         * @return 0..1 for how busy the CPU was at a specified time frame.
-         */
-        public double getCpuBusy() {
-            return 1 - cpu.getIdle();
-        }
-
-        /**
-         * This indicates if this CPU utilisation object is older than a
-         * specified time.
-         *
-         * @param time The UTC time to compare to
-         * @return If the current item is older than the date specified.
-         */
-        public boolean isOlderThan(long time) {
-            return clock < time;
-        }
-
+        return answer;
     }
 
 }
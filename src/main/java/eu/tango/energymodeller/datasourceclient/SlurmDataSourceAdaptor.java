@@ -34,15 +34,17 @@ import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.collections4.queue.CircularFifoQueue;
 import org.apache.commons.io.input.Tailer;
 import org.apache.commons.io.input.TailerListenerAdapter;
 
@@ -55,13 +57,29 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
 
     private Tailer tailer;
     private SlurmPoller poller;
-    private final HashMap<String, Host> hosts = new HashMap<>();
-    private final HashMap<String, HostMeasurement> lowest = new HashMap<>();
-    private final HashMap<String, HostMeasurement> highest = new HashMap<>();
-    private final HashMap<String, HostMeasurement> current = new HashMap<>();
+    private SlurmJobPoller jobPoller;
+    /**
+     * The job states that a plain call to squeue lists, these may be served
+     * from the cached job list. Any other state requires its own query.
+     */
+    private static final EnumSet<JOB_STATUS> CACHED_JOB_STATES = EnumSet.of(JOB_STATUS.PENDING, JOB_STATUS.RUNNING, JOB_STATUS.COMPLETING);
+    private volatile SlurmJobList jobList = null;
+    private long jobListTtl = TimeUnit.SECONDS.toMillis(10);
+    private int pollRate = 1;
+    private final ConcurrentHashMap<String, Host> hosts = new ConcurrentHashMap<>();
+    /**
+     * The latest state of each host. Each parse of a host's line replaces its
+     * state as a whole, so readers always see a current, lowest and highest
+     * measurement and CPU window that belong together.
+     */
+    private final ConcurrentHashMap<String, HostState> states = new ConcurrentHashMap<>();
     private SlurmDataSourceAdaptor.SlurmTailer fileTailer;
     private final Settings settings = new Settings("energy-modeller-slurm-config.properties");
-    private final HashMap<String, CircularFifoQueue<SlurmDataSourceAdaptor.CPUUtilisation>> cpuMeasure = new HashMap<>();
+    /**
+     * Lines are read by either the tailer or the poller thread, never both,
+     * so a single record is reused to index each line.
+     */
+    private final SlurmNodeRecord record = new SlurmNodeRecord();
 
     public SlurmDataSourceAdaptor() {
         startup(1);
@@ -73,6 +91,7 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
      * @param interval The interval at which to take logging data.
      */
     public final void startup(int interval) {
+        pollRate = interval;
         String filename = settings.getString("energy.modeller.slurm.scrape.file", "slurm-host-data.log");
         boolean useFileScraper = settings.getBoolean("energy.modeller.slurm.scrape.from.file", false);
         if (useFileScraper) {
@@ -92,6 +111,14 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
             pollerThread.start();
             System.out.println("Reading from SLURM directly");
         }
+        jobListTtl = TimeUnit.SECONDS.toMillis(settings.getInt("energy.modeller.slurm.job.list.ttl", 10));
+        int jobRefreshInterval = settings.getInt("energy.modeller.slurm.job.list.refresh.interval", 5);
+        if (jobRefreshInterval > 0) {
+            jobPoller = new SlurmJobPoller(jobRefreshInterval);
+            Thread jobPollerThread = new Thread(jobPoller);
+            jobPollerThread.setDaemon(true);
+            jobPollerThread.start();
+        }
         if (settings.isChanged()) {
             settings.save("energy-modeller-slurm-config.properties");
         }
@@ -175,6 +202,21 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
         return hosts.get(hostname);
     }
 
+    /**
+     * This gets the most recent measurement of a host.
+     *
+     * @param hostname The name of the host
+     * @return The host's most recent measurement, or null if it has not yet
+     * been measured.
+     */
+    private HostMeasurement getCurrent(String hostname) {
+        HostState state = states.get(hostname);
+        if (state == null) {
+            return null;
+        }
+        return state.getCurrent();
+    }
+
     @Override
     public GeneralPurposePowerConsumer getGeneralPowerConsumerByName(String hostname) {
         Host host = hosts.get(hostname);
@@ -243,7 +285,107 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
 
     @Override
     public List<ApplicationOnHost> getHostApplicationList(JOB_STATUS state) {
+        return getHostApplicationList(state, false);
+    }
+
+    /**
+     * This lists the applications that are known to SLURM. The list is taken
+     * from a cache of squeue's output that is refreshed in the background,
+     * unless a refresh is forced or the job state is one that squeue does not
+     * list by default.
+     *
+     * @param state The job status, null for all
+     * @param forceRefresh If squeue should be queried again before answering
+     * @return A list of applications running on the hosts.
+     */
+    public List<ApplicationOnHost> getHostApplicationList(JOB_STATUS state, boolean forceRefresh) {
+        if (state != null && !CACHED_JOB_STATES.contains(state)) {
+            return toApplications(querySqueue(state), state);
+        }
+        return toApplications(getJobList(forceRefresh).getJobs(), state);
+    }
+
+    /**
+     * This lists the applications that are on a given host, from the cached
+     * list of jobs.
+     *
+     * @param host The host to get the applications for
+     * @return The list of applications on the host
+     */
+    public List<ApplicationOnHost> getApplicationsOnHost(Host host) {
+        return toApplications(getJobList(false).getJobs(host.getHostName()), null);
+    }
+
+    /**
+     * This forces the cached list of jobs to be refreshed from squeue.
+     */
+    public void refreshJobList() {
+        getJobList(true);
+    }
+
+    /**
+     * This gets the cached list of jobs, querying squeue if the list is out
+     * of date.
+     *
+     * @param forceRefresh If squeue should be queried regardless of the
+     * list's age
+     * @return The list of jobs known to SLURM
+     */
+    private SlurmJobList getJobList(boolean forceRefresh) {
+        SlurmJobList answer = jobList;
+        if (forceRefresh || answer == null || answer.getAge() > jobListTtl) {
+            answer = new SlurmJobList(querySqueue(null));
+            jobList = answer;
+        }
+        return answer;
+    }
+
+    /**
+     * This converts a list of jobs into the applications that are on each of
+     * their hosts.
+     *
+     * @param jobs The jobs to convert
+     * @param state The status to filter the jobs by, null for all
+     * @return The list of applications
+     */
+    private List<ApplicationOnHost> toApplications(List<SlurmJob> jobs, JOB_STATUS state) {
         ArrayList<ApplicationOnHost> answer = new ArrayList<>();
+        for (SlurmJob job : jobs) {
+            if (state != null && job.getStatus() != state) {
+                continue;
+            }
+            GregorianCalendar start = new GregorianCalendar();
+            start.setTimeInMillis(job.getStartTime());
+            GregorianCalendar deadline = null;
+            if (job.getDeadline() != 0) {
+                deadline = new GregorianCalendar();
+                deadline.setTimeInMillis(job.getDeadline());
+            }
+            for (String hostStr : job.getHosts()) {
+                Host host = getHostByName(hostStr);
+                ApplicationOnHost app = new ApplicationOnHost(job.getId(), job.getName(), host);
+                app.setCreated(start);
+                app.setDeadline(deadline);
+                if (state != null) {
+                    app.setStatus(state);
+                } else {
+                    app.setStatus(job.getStatus());
+                }
+                answer.add(app);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This queries squeue for the jobs that are known to SLURM.
+     *
+     * @param state The job status, null for the states squeue lists by
+     * default.
+     * @return The list of jobs
+     */
+    private List<SlurmJob> querySqueue(JOB_STATUS state) {
+        ArrayList<SlurmJob> answer = new ArrayList<>();
 
         /**
          * squeue has various jobs states that are possible: see:
@@ -298,31 +440,16 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
                 try {
                     int appId = Integer.parseInt(items[0]);
                     String name = items[1];
-                    String status = items[3];
+                    JOB_STATUS status = (state != null ? state : ApplicationOnHost.getAdaptationType(items[3]));
                     long runningTime = parseDurationString(items[4]); //units seconds
                     long maxRuntime = parseDurationString(items[5]); //units seconds
                     long currentTime = System.currentTimeMillis(); //units milliseconds
                     long startTime = currentTime - TimeUnit.SECONDS.toMillis(runningTime); //unit milliseconds
-                    GregorianCalendar start = new GregorianCalendar();
-                    GregorianCalendar deadline = null;
-                    start.setTimeInMillis(startTime);
+                    long deadline = 0;
                     if (maxRuntime != 0) {
-                        deadline = new GregorianCalendar();
-                        deadline.setTimeInMillis(startTime + TimeUnit.SECONDS.toMillis(maxRuntime));
-                    }
-                    ArrayList<String> hostStrings = getHostList(items[6]);
-                    for (String hostStr : hostStrings) {
-                        Host host = getHostByName(hostStr);
-                        ApplicationOnHost app = new ApplicationOnHost(appId, name, host);
-                        app.setCreated(start);
-                        app.setDeadline(deadline);
-                        if (state != null) {
-                            app.setStatus(state);
-                        } else {
-                            app.setStatus(status);
-                        }
-                        answer.add(app);
+                        deadline = startTime + TimeUnit.SECONDS.toMillis(maxRuntime);
                     }
+                    answer.add(new SlurmJob(appId, name, status, startTime, deadline, getHostList(items[6])));
                 } catch (NumberFormatException ex) {
                     Logger.getLogger(SlurmDataSourceAdaptor.class.getName()).log(Level.SEVERE,
                             "Unexpected number format", ex);
@@ -405,13 +532,17 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
 
     @Override
     public HostMeasurement getHostData(Host host) {
-        return current.get(host.getHostName());
+        return getCurrent(host.getHostName());
     }
 
     @Override
     public List<HostMeasurement> getHostData() {
         ArrayList<HostMeasurement> answer = new ArrayList<>();
-        answer.addAll(current.values());
+        for (HostState state : states.values()) {
+            if (state.getCurrent() != null) {
+                answer.add(state.getCurrent());
+            }
+        }
         return answer;
     }
 
@@ -422,7 +553,7 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
         }
         ArrayList<HostMeasurement> answer = new ArrayList<>();
         for (Host host : hostList) {
-            HostMeasurement value = current.get(host.getHostName());
+            HostMeasurement value = getCurrent(host.getHostName());
             if (value != null) {
                 answer.add(value);
             }
@@ -432,7 +563,7 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
 
     @Override
     public VmMeasurement getVmData(VmDeployed vm) {
-        for (HostMeasurement measure : current.values()) {
+        for (HostMeasurement measure : getHostData()) {
             if (measure.getHost().getHostName().equals(vm.getName())) {
                 VmMeasurement answer = new VmMeasurement(vm, measure.getClock());
                 answer.setMetrics(measure.getMetrics());
@@ -445,7 +576,7 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
     @Override
     public List<VmMeasurement> getVmData() {
         ArrayList<VmMeasurement> answer = new ArrayList<>();
-        for (HostMeasurement measure : current.values()) {
+        for (HostMeasurement measure : getHostData()) {
             VmMeasurement vmData = new VmMeasurement(
                     getVmByName(measure.getHost().getHostName()),
                     measure.getClock());
@@ -463,7 +594,7 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
         ArrayList<VmMeasurement> answer = new ArrayList<>();
         for (VmDeployed vm : vmList) {
 
-            HostMeasurement measure = current.get(vm.getName());
+            HostMeasurement measure = getCurrent(vm.getName());
             VmMeasurement vmData = new VmMeasurement(
                     getVmByName(measure.getHost().getHostName()),
                     measure.getClock());
@@ -485,7 +616,7 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
         if (application == null) {
             return null;
         }
-        HostMeasurement measure = current.get(application.getAllocatedTo().getHostName());
+        HostMeasurement measure = getCurrent(application.getAllocatedTo().getHostName());
         ApplicationMeasurement appData = new ApplicationMeasurement(
                 application,
                 measure.getClock());
@@ -536,7 +667,7 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
      * @return The application measurement with more data appended into it.
      */
     private ApplicationMeasurement appendApplicationData(ApplicationMeasurement appData, HostMeasurement measure) {
-        List<ApplicationOnHost> appsOnThisHost = ApplicationOnHost.filter(getHostApplicationList(), measure.getHost());
+        List<ApplicationOnHost> appsOnThisHost = getApplicationsOnHost(measure.getHost());
         List<ApplicationOnHost> appsRunningOnThisHost = getHostApplicationList(appsOnThisHost, JOB_STATUS.RUNNING);
         //loop through the refreshed data and update the apps job status.
         for (ApplicationOnHost app : appsOnThisHost) {
@@ -561,33 +692,27 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
 
     @Override
     public double getLowestHostPowerUsage(Host host) {
-        return lowest.get(host.getHostName()).getPower();
+        return states.get(host.getHostName()).getLowest().getPower();
     }
 
     @Override
     public double getHighestHostPowerUsage(Host host) {
-        return highest.get(host.getHostName()).getPower();
+        return states.get(host.getHostName()).getHighest().getPower();
     }
 
     @Override
     public double getCpuUtilisation(Host host, int durationSeconds) {
+        HostState state = states.get(host.getHostName());
         if (durationSeconds < 0) {
-            return current.get(host.getHostName()).getCpuUtilisation();
+            return state.getCurrent().getCpuUtilisation();
         }
-        if (cpuMeasure.containsKey(host.getHostName())) {
-            CircularFifoQueue<SlurmDataSourceAdaptor.CPUUtilisation> recentItems = cpuMeasure.get(host.getHostName());
-            int itemsToGet = durationSeconds / poller.getPollRate();
-            if (itemsToGet > recentItems.size()) {
-                itemsToGet = recentItems.size();
-            }
-            double totalUtil = 0;
-            for (int i = 0; i < itemsToGet; i++) {
-                SlurmDataSourceAdaptor.CPUUtilisation item = recentItems.get(i);
-                totalUtil = totalUtil + item.getCpuBusy();
-            }
-            return totalUtil / ((double) itemsToGet);
+        GregorianCalendar cal = new GregorianCalendar();
+        long now = TimeUnit.MILLISECONDS.toSeconds(cal.getTimeInMillis());
+        double answer = state.getCpuUtilisation(now - durationSeconds);
+        if (Double.isNaN(answer)) {
+            return state.getCurrent().getCpuUtilisation();
         }
-        return current.get(host.getHostName()).getCpuUtilisation();
+        return answer;
     }
 
     /**
@@ -688,18 +813,61 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
         }
     }
 
+    /**
+     * This refreshes the cached list of jobs from squeue at a regular
+     * interval, so that requests for the list of applications don't each
+     * need to run squeue.
+     */
+    private class SlurmJobPoller implements Runnable {
+
+        private int pollRate = 5;
+        private boolean running = true;
+
+        /**
+         * This creates a new job list polling thread.
+         *
+         * @param pollRate The rate in seconds of how fast to poll squeue.
+         */
+        public SlurmJobPoller(int pollRate) {
+            this.pollRate = pollRate;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    refreshJobList();
+                } catch (Exception ex) {
+                    Logger.getLogger(SlurmJobPoller.class.getName()).log(Level.SEVERE, "The job list could not be refreshed.", ex);
+                }
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(pollRate));
+                } catch (InterruptedException ex) {
+                    Logger.getLogger(SlurmJobPoller.class.getName()).log(Level.SEVERE, "The data source was interupted.", ex);
+                }
+            }
+        }
+
+        /**
+         * This stops the job list from being refreshed.
+         */
+        public void stop() {
+            running = false;
+        }
+    }
+
     /**
      * This reads in the Gres string, this string represents Generic Resource
      * Scheduling (GRES). Usually either GPUs or Intel Many Integrated Core
      * (MIC) processors
      *
-     * @param values The parsed list of metrics.
+     * @param values The indexed line of metrics.
      * @param measurement The measurement to add the metrics to
      * @param clock The timestamp for the new metric values
      * @return The newly adjusted measurement
      */
-    private HostMeasurement readGresString(String[] values, HostMeasurement measurement, long clock) {
-        String gresString = getValue("Gres", values);
+    private HostMeasurement readGresString(SlurmNodeRecord values, HostMeasurement measurement, long clock) {
+        String gresString = values.getString(SlurmNodeRecord.GRES);
         if (gresString.isEmpty()) {
             // This indicates that there is no accelerator
             gresString = "(null)";
@@ -761,13 +929,13 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
      * Resource Scheduling (GRES). Usually either GPUs or Intel Many Integrated
      * Core (MIC) processors
      *
-     * @param values The parsed list of metrics.
+     * @param values The indexed line of metrics.
      * @param measurement The measurement to add the metrics to
      * @param clock The timestamp for the new metric values
      * @return The newly adjusted measurement
      */
-    private HostMeasurement readGresUsedString(String[] values, HostMeasurement measurement, long clock) {
-        String gresString = getValue("GresUsed", values);
+    private HostMeasurement readGresUsedString(SlurmNodeRecord values, HostMeasurement measurement, long clock) {
+        String gresString = values.getString(SlurmNodeRecord.GRES_USED);
         if (gresString.isEmpty()) {
             return measurement;
         }
@@ -800,42 +968,44 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
      * This reads in generic metrics from SLURM that the data source adaptor is
      * not necessarily expecting.
      *
-     * @param values The parsed list of metrics.
+     * @param values The indexed line of metrics.
      * @param measurement The measurement to add the metrics to
      * @param clock The timestamp for the new metric values
      * @return The newly adjusted measurement
      */
-    private HostMeasurement readGenericMetrics(String[] values, HostMeasurement measurement, long clock) {
+    private HostMeasurement readGenericMetrics(SlurmNodeRecord values, HostMeasurement measurement, long clock) {
         //The general case is to add all metric values into the list.
-        for (String value : values) {
-            String[] valueSplit = value.split("=");
+        for (int field = 0; field < values.getFieldCount(); field++) {
             try {
-                switch (valueSplit.length) {
-                    case 2: //Most common case
-                        measurement.addMetric(new MetricValue(valueSplit[0].trim(), valueSplit[0].trim(), valueSplit[1].trim(), clock));
-                        break;
-                    case 1: //In cases such as AllocTRES, leave the metric there but report the empty value
-                        measurement.addMetric(new MetricValue(valueSplit[0].trim(), valueSplit[0].trim(), "", clock));
-                        break;
-                    default: //Cases such as CfgTRES=cpu=32,mem=64408M
-                        int params = value.split("=").length / 2;
-                        valueSplit = value.split("[=,]");
-                        /*
-                         * CfgTRES=cpu=32,mem=64408M becomes
-                         * [CfgTRES, cpu, 32, mem, 64408M]
-                         * Thus end result should be:
-                         * [CfgTRES:cpu, 32] i.e. index 0:1 , 2
-                         * [CfgTRES:mem, 64408M] i.e. index 0:3 , 5
-                         */
-                        try {
-                            for (int i = 1; i <= params; i++) {
-                                String name = valueSplit[0].trim() + ":" + valueSplit[i * 2 - 1].trim();
-                                measurement.addMetric(new MetricValue(name, name, valueSplit[i * 2].trim(), clock));
-                            }
-                        } catch (Exception ex) {
-                            System.out.println("Parsing had an issue with : " + value);
-                        }
-                        break;
+                String key = values.getKey(field);
+                if (!values.hasNestedValues(field)) {
+                    /*
+                     * The most common case, though in cases such as AllocTRES,
+                     * leave the metric there but report the empty value
+                     */
+                    measurement.addMetric(new MetricValue(key, key, values.getValue(field), clock));
+                    continue;
+                }
+                /*
+                 * Cases such as CfgTRES=cpu=32,mem=64408M, the end result
+                 * should be: [CfgTRES:cpu, 32] and [CfgTRES:mem, 64408M]
+                 */
+                String value = values.getValue(field);
+                int start = 0;
+                while (start < value.length()) {
+                    int end = value.indexOf(',', start);
+                    if (end < 0) {
+                        end = value.length();
+                    }
+                    int equals = value.indexOf('=', start);
+                    if (equals >= 0 && equals < end) {
+                        String name = key + ":" + value.substring(start, equals).trim();
+                        measurement.addMetric(new MetricValue(name, name, value.substring(equals + 1, end).trim(), clock));
+                    } else {
+                        Logger.getLogger(SlurmDataSourceAdaptor.class.getName()).log(Level.FINE,
+                                "Parsing had an issue with : {0}={1}", new Object[]{key, value});
+                    }
+                    start = end + 1;
                 }
             } catch (Exception ex) {
                 Logger.getLogger(SlurmDataSourceAdaptor.class.getName()).log(Level.SEVERE,
@@ -852,32 +1022,22 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
      */
     private void parse(String line) {
         try {
-            boolean valid = true;
             GregorianCalendar calander = new GregorianCalendar();
             long clock = TimeUnit.MILLISECONDS.toSeconds(calander.getTimeInMillis());
-            String[] values = line.split(";");
-            String watts = getValue("CurrentWatts", values);
-            String wattskwh = getValue("ConsumedJoules", values);
-            String hostname = getValue("NodeName", values);
-            String state = getValue("State", values);
-            String coreCount = getValue("CPUTot", values);
+            SlurmNodeRecord values = record.reset(line);
+            String hostname = values.getString(SlurmNodeRecord.NODE_NAME);
             if (hostname.isEmpty()) {
                 return;
             }
-            String hostId = hostname.replaceAll("[^0-9]", "");
-            CircularFifoQueue<SlurmDataSourceAdaptor.CPUUtilisation> lastCpuMeasurements = cpuMeasure.get(hostname);
-            if (lastCpuMeasurements == null) {
-                //Needs enough information to cover any recent queries of cpu utilisation, thus gather last 10mins of data
-                lastCpuMeasurements = new CircularFifoQueue<>((int) TimeUnit.MINUTES.toSeconds(10) / poller.getPollRate());
-                cpuMeasure.put(hostname, lastCpuMeasurements);
-            }
+            String state = values.getString(SlurmNodeRecord.STATE);
             Host host = getHostByName(hostname);
 
             //Check for need to discover host
             if (host == null) {
+                String hostId = hostname.replaceAll("[^0-9]", "");
                 host = new Host(Integer.parseInt(hostId), hostname);
-                if (coreCount.matches("-?\\d+(\\.\\d+)?")) {
-                    host.setCoreCount(Integer.parseInt(coreCount));
+                if (values.isNumber(SlurmNodeRecord.CPU_TOTAL)) {
+                    host.setCoreCount((int) values.getDouble(SlurmNodeRecord.CPU_TOTAL));
                 }
                 hosts.put(hostname, host);
             }
@@ -890,44 +1050,60 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
             if (!host.isAvailable()) {
                 return;
             }
-
+            HostState hostState = states.get(hostname);
+            if (hostState == null) {
+                //Needs enough information to cover any recent queries of cpu utilisation, thus gather last 10mins of data
+                hostState = new HostState(new CpuUtilisationRingBuffer((int) TimeUnit.MINUTES.toSeconds(10) / pollRate));
+            }
             //Note CPU Load = N/A when the node is down, but perhas might occur in some other case. The previous guard should prevent this error.
-            String cpuLoad = getValue("CPULoad", values);
-            if (!cpuLoad.equals("N/A") && cpuLoad.matches("-?\\d+(\\.\\d+)?")) {
-                lastCpuMeasurements.add(new SlurmDataSourceAdaptor.CPUUtilisation(clock, hostname, (Double.valueOf(cpuLoad)) * 100));
+            if (values.isNumber(SlurmNodeRecord.CPU_LOAD)) {
+                hostState.getCpuUtilisationHistory().add(clock, values.getDouble(SlurmNodeRecord.CPU_LOAD) * 100);
             }
+            HostMeasurement measurement = readMeasurement(values, host, clock);
+            //Only the tailer or the poller parses lines, so there is a single writer
+            states.put(hostname, hostState.update(measurement));
+        } catch (NumberFormatException ex) {
+            //Ignore these errors and carry on. It may just be the header line.
+            Logger.getLogger(SlurmDataSourceAdaptor.class.getName()).log(Level.SEVERE,
+                    "Unexpected number format", ex);
+        }
+    }
+
+    /**
+     * This reads a host's measurement from a line of Slurm's output.
+     *
+     * @param values The indexed line of metrics.
+     * @param host The host the line is for
+     * @param clock The timestamp for the new metric values
+     * @return The host's measurement, or null if the measurement was not
+     * valid.
+     */
+    private HostMeasurement readMeasurement(SlurmNodeRecord values, Host host, long clock) {
+        try {
+            boolean valid = true;
             HostMeasurement measurement = new HostMeasurement(host, clock);
-            measurement.addMetric(new MetricValue(KpiList.POWER_KPI_NAME, KpiList.POWER_KPI_NAME, watts, clock));
-            measurement.addMetric(new MetricValue(KpiList.ENERGY_KPI_NAME, KpiList.ENERGY_KPI_NAME, wattskwh, clock));
+            measurement.addMetric(new MetricValue(KpiList.POWER_KPI_NAME, KpiList.POWER_KPI_NAME, values.getString(SlurmNodeRecord.CURRENT_WATTS), clock));
+            measurement.addMetric(new MetricValue(KpiList.ENERGY_KPI_NAME, KpiList.ENERGY_KPI_NAME, values.getString(SlurmNodeRecord.CONSUMED_JOULES), clock));
             readGresString(values, measurement, clock);
             readGresUsedString(values, measurement, clock);
             readGenericMetrics(values, measurement, clock);
-            double cpuUtil = Double.valueOf(cpuLoad) / Double.valueOf(getValue("CPUTot", values));
-            valid = valid && validatedAddMetric(measurement, new MetricValue(KpiList.CPU_SPOT_USAGE_KPI_NAME, KpiList.CPU_SPOT_USAGE_KPI_NAME, cpuUtil * 100 + "", clock));
-            valid = valid && validatedAddMetric(measurement, new MetricValue(KpiList.CPU_IDLE_KPI_NAME, KpiList.CPU_IDLE_KPI_NAME, ((1 - cpuUtil)) * 100 + "", clock));
+            double cpuUtil = values.getDouble(SlurmNodeRecord.CPU_LOAD) / values.getDouble(SlurmNodeRecord.CPU_TOTAL);
+            valid = valid && validatedAddMetric(measurement, new MetricValue(KpiList.CPU_SPOT_USAGE_KPI_NAME, KpiList.CPU_SPOT_USAGE_KPI_NAME, cpuUtil * 100, clock));
+            valid = valid && validatedAddMetric(measurement, new MetricValue(KpiList.CPU_IDLE_KPI_NAME, KpiList.CPU_IDLE_KPI_NAME, (1 - cpuUtil) * 100, clock));
             if (!valid) {
-                System.out.println("The measurement taken was invalid");
-                return;
+                Logger.getLogger(SlurmDataSourceAdaptor.class.getName()).log(Level.FINE,
+                        "The measurement taken of {0} was invalid", host.getHostName());
+                return null;
             }
 
-            valid = valid && validatedAddMetric(measurement, new MetricValue(KpiList.MEMORY_AVAILABLE_KPI_NAME, KpiList.MEMORY_AVAILABLE_KPI_NAME, (int) (Double.valueOf(getValue("FreeMem", values)) / 1048576) + "", clock));
-            valid = valid && validatedAddMetric(measurement, new MetricValue(KpiList.MEMORY_TOTAL_KPI_NAME, KpiList.MEMORY_TOTAL_KPI_NAME, (int) (Double.valueOf(getValue("RealMemory", values)) / 1048576) + "", clock));
-
-            if (!valid) {
-                return;
-            }
-            current.put(hostname, measurement);
-            if (lowest.get(hostname) == null || measurement.getPower() < lowest.get(hostname).getPower()) {
-                lowest.put(hostname, measurement);
-            }
-            if (highest.get(hostname) == null || measurement.getPower() > highest.get(hostname).getPower()) {
-                highest.put(hostname, measurement);
-            }
+            valid = valid && validatedAddMetric(measurement, new MetricValue(KpiList.MEMORY_AVAILABLE_KPI_NAME, KpiList.MEMORY_AVAILABLE_KPI_NAME, (int) (values.getDouble(SlurmNodeRecord.FREE_MEMORY) / 1048576), clock));
+            valid = valid && validatedAddMetric(measurement, new MetricValue(KpiList.MEMORY_TOTAL_KPI_NAME, KpiList.MEMORY_TOTAL_KPI_NAME, (int) (values.getDouble(SlurmNodeRecord.REAL_MEMORY) / 1048576), clock));
+            return (valid ? measurement : null);
         } catch (NumberFormatException ex) {
-            //Ignore these errors and carry on. It may just be the header line.
             Logger.getLogger(SlurmDataSourceAdaptor.class.getName()).log(Level.SEVERE,
                     "Unexpected number format", ex);
         }
+        return null;
     }
 
     /**
@@ -948,69 +1124,230 @@ public class SlurmDataSourceAdaptor implements HostDataSource, ApplicationDataSo
     }
     
     /**
-     * This is a CPU utilisation record for the Slurm data source adaptor.
+     * This is a single job as reported by squeue.
+     */
+    private static class SlurmJob {
+
+        private final int id;
+        private final String name;
+        private final JOB_STATUS status;
+        private final long startTime;
+        private final long deadline;
+        private final List<String> hosts;
+
+        /**
+         * This creates a new record of a job.
+         *
+         * @param id The job's id
+         * @param name The job's name
+         * @param status The job's status
+         * @param startTime The time the job started, in milliseconds
+         * @param deadline The time the job must finish by in milliseconds, 0
+         * if it has no limit.
+         * @param hosts The names of the hosts the job is on
+         */
+        public SlurmJob(int id, String name, JOB_STATUS status, long startTime, long deadline, List<String> hosts) {
+            this.id = id;
+            this.name = name;
+            this.status = status;
+            this.startTime = startTime;
+            this.deadline = deadline;
+            this.hosts = Collections.unmodifiableList(hosts);
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public JOB_STATUS getStatus() {
+            return status;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public List<String> getHosts() {
+            return hosts;
+        }
+    }
+
+    /**
+     * This is the list of jobs reported by a single call to squeue, indexed by
+     * the hosts that each job is on.
      */
-    private class CPUUtilisation {
+    private static class SlurmJobList {
+
+        private final long created = System.currentTimeMillis();
+        private final List<SlurmJob> jobs;
+        private final HashMap<String, List<SlurmJob>> jobsByHost = new HashMap<>();
 
-        private final String hostname;
-        private final long clock;
-        private final double cpu;
+        /**
+         * This creates a new job list.
+         *
+         * @param jobs The jobs reported by squeue
+         */
+        public SlurmJobList(List<SlurmJob> jobs) {
+            this.jobs = Collections.unmodifiableList(jobs);
+            for (SlurmJob job : jobs) {
+                for (String host : job.getHosts()) {
+                    List<SlurmJob> hostJobs = jobsByHost.get(host);
+                    if (hostJobs == null) {
+                        hostJobs = new ArrayList<>();
+                        jobsByHost.put(host, hostJobs);
+                    }
+                    hostJobs.add(job);
+                }
+            }
+        }
+
+        /**
+         * @return How old the list is in milliseconds
+         */
+        public long getAge() {
+            return System.currentTimeMillis() - created;
+        }
+
+        /**
+         * @return All the jobs in the list
+         */
+        public List<SlurmJob> getJobs() {
+            return jobs;
+        }
 
         /**
-         * This creates a new CPU Utilisation record
+         * This returns the jobs on a given host.
          *
-         * @param clock the time when the CPU Utilisation was taken
-         * @param hostname the name of the host the measurement is for
-         * @param cpu The CPU utilisation.
+         * @param hostname The name of the host
+         * @return The jobs on the host
          */
-        public CPUUtilisation(long clock, String hostname, double cpu) {
-            this.clock = clock;
-            this.hostname = hostname;
-            this.cpu = cpu;
+        public List<SlurmJob> getJobs(String hostname) {
+            List<SlurmJob> answer = jobsByHost.get(hostname);
+            if (answer == null) {
+                return Collections.emptyList();
+            }
+            return answer;
         }
+    }
+
+    /**
+     * This is the state of a single host as of the last line parsed for it.
+     * The state is never changed once it has been created, instead each parse
+     * creates a new state from the previous one which is then published in a
+     * single step. Each measurement is created by the parse that publishes it
+     * and is not changed afterwards, callers must copy it before changing it.
+     * The CPU utilisation history is shared by each of a host's states and is
+     * only added to by the thread that parses lines, each state remembers how
+     * many samples it held when it was published and ignores any added later.
+     */
+    private static class HostState {
+
+        private final HostMeasurement current;
+        private final HostMeasurement lowest;
+        private final HostMeasurement highest;
+        private final CpuUtilisationRingBuffer cpuUtilisation;
+        private final long cpuSampleCount;
 
         /**
-         * The time when this record was taken
+         * This creates the state of a host that has not yet been measured.
          *
-         * @return The UTC time for this record.
+         * @param cpuUtilisation The buffer to hold the host's recent CPU
+         * utilisation
          */
-        public long getClock() {
-            return clock;
+        public HostState(CpuUtilisationRingBuffer cpuUtilisation) {
+            this(null, null, null, cpuUtilisation);
         }
 
         /**
-         * This returns the percentage of time the CPU was idle.
+         * This creates a new host state.
          *
-         * @return 0..1 for how idle the CPU was at a specified time frame.
+         * @param current The most recent measurement
+         * @param lowest The measurement with the lowest power
+         * @param highest The measurement with the highest power
+         * @param cpuUtilisation The recent CPU utilisation of the host
          */
-        public double getCpuIdle() {
-            return 1 - cpu;
+        private HostState(HostMeasurement current, HostMeasurement lowest, HostMeasurement highest,
+                CpuUtilisationRingBuffer cpuUtilisation) {
+            this.current = current;
+            this.lowest = lowest;
+            this.highest = highest;
+            this.cpuUtilisation = cpuUtilisation;
+            this.cpuSampleCount = cpuUtilisation.getCount();
         }
 
         /**
-         * This returns the percentage of time the CPU was busy.
+         * This creates the state that follows from a new line being parsed for
+         * the host, after any CPU utilisation sample in it has been added to
+         * the history.
          *
-         * @return 0..1 for how busy the CPU was at a specified time frame.
+         * @param measurement The new measurement, or null if the line did not
+         * hold a valid measurement
+         * @return The new state of the host
          */
-        public double getCpuBusy() {
-            return cpu;
+        public HostState update(HostMeasurement measurement) {
+            if (measurement == null) {
+                return new HostState(current, lowest, highest, cpuUtilisation);
+            }
+            HostMeasurement newLowest = lowest;
+            HostMeasurement newHighest = highest;
+            if (newLowest == null || measurement.getPower() < newLowest.getPower()) {
+                newLowest = measurement;
+            }
+            if (newHighest == null || measurement.getPower() > newHighest.getPower()) {
+                newHighest = measurement;
+            }
+            return new HostState(measurement, newLowest, newHighest, cpuUtilisation);
         }
 
-        public String getHostname() {
-            return hostname;
+        /**
+         * @return The most recent measurement of the host, or null if it has
+         * not yet been measured
+         */
+        public HostMeasurement getCurrent() {
+            return current;
         }
 
         /**
-         * This indicates if this CPU utilisation object is older than a
-         * specified time.
+         * @return The measurement of the host with the lowest power
+         */
+        public HostMeasurement getLowest() {
+            return lowest;
+        }
+
+        /**
+         * @return The measurement of the host with the highest power
+         */
+        public HostMeasurement getHighest() {
+            return highest;
+        }
+
+        /**
+         * This gets the average CPU utilisation of the host, as of when this
+         * state was published.
          *
-         * @param time The UTC time to compare to
-         * @return If the current item is older than the date specified.
+         * @param since The time in seconds of the start of the window
+         * @return The average CPU utilisation, or NaN if no samples were taken
+         * in the window.
          */
-        public boolean isOlderThan(long time) {
-            return clock < time;
+        public double getCpuUtilisation(long since) {
+            return cpuUtilisation.getAverageUpTo(since, cpuSampleCount);
         }
 
+        /**
+         * @return The CPU utilisation history of the host, this is only to be
+         * added to by the thread that parses lines
+         */
+        public CpuUtilisationRingBuffer getCpuUtilisationHistory() {
+            return cpuUtilisation;
+        }
     }
 
 }
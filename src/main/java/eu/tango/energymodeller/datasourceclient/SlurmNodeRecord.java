@@ -0,0 +1,401 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import java.util.Arrays;
+
+/**
+ * This indexes a single line of output from "scontrol show node= -o", in
+ * which each field has been separated by a semi-colon, i.e.
+ * "NodeName=ns51;CPUTot=32;CPULoad=0.01;...;CurrentWatts=105".
+ *
+ * The line is walked once and the start and end of each field's key and value
+ * is recorded, rather than splitting the line and then splitting each field
+ * again every time a value is looked up. The keys the Slurm data source
+ * adaptor uses are registered in a table, so their position in the line is
+ * found during the same pass and looking them up afterwards costs nothing.
+ * Numeric values are read directly from the line without creating any
+ * intermediate strings.
+ *
+ * A record may be reused for each line that is read, it is not thread safe.
+ *
+ * @author Richard Kavanagh
+ */
+public class SlurmNodeRecord {
+
+    public static final int NODE_NAME = 0;
+    public static final int STATE = 1;
+    public static final int CPU_TOTAL = 2;
+    public static final int CPU_LOAD = 3;
+    public static final int CURRENT_WATTS = 4;
+    public static final int CONSUMED_JOULES = 5;
+    public static final int FREE_MEMORY = 6;
+    public static final int REAL_MEMORY = 7;
+    public static final int GRES = 8;
+    public static final int GRES_USED = 9;
+
+    /**
+     * The keys that are located as the line is indexed, in the order of the
+     * constants above.
+     */
+    private static final String[] KEYS = {"NodeName", "State", "CPUTot",
+        "CPULoad", "CurrentWatts", "ConsumedJoules", "FreeMem", "RealMemory",
+        "Gres", "GresUsed"};
+
+    /**
+     * Powers of ten that are exactly representable as a double, dividing an
+     * exact mantissa by one of these gives the same result as parsing the
+     * string.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4,
+        1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+        1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private String line = "";
+    private int fieldCount = 0;
+    private int[] keyStart = new int[64];
+    private int[] keyEnd = new int[64];
+    private int[] valueStart = new int[64];
+    private int[] valueEnd = new int[64];
+    private final int[] keyField = new int[KEYS.length];
+
+    /**
+     * This creates a new empty record, that is ready to be reset with a line
+     * of output from Slurm.
+     */
+    public SlurmNodeRecord() {
+        Arrays.fill(keyField, -1);
+    }
+
+    /**
+     * This creates a new record for a line of output from Slurm.
+     *
+     * @param line The line to index
+     */
+    public SlurmNodeRecord(String line) {
+        reset(line);
+    }
+
+    /**
+     * This indexes a new line of output from Slurm, replacing the line that
+     * was previously held.
+     *
+     * @param line The line to index
+     * @return This record, now indexing the new line.
+     */
+    public SlurmNodeRecord reset(String line) {
+        this.line = (line == null ? "" : line);
+        fieldCount = 0;
+        Arrays.fill(keyField, -1);
+        int length = this.line.length();
+        int start = 0;
+        while (start <= length) {
+            int end = this.line.indexOf(';', start);
+            if (end < 0) {
+                end = length;
+            }
+            addField(start, end);
+            start = end + 1;
+        }
+        return this;
+    }
+
+    /**
+     * This records the position of a field, trimming white space from around
+     * its key and value.
+     *
+     * @param start The position of the first character of the field
+     * @param end The position after the last character of the field
+     */
+    private void addField(int start, int end) {
+        int equals = line.indexOf('=', start);
+        if (equals < 0 || equals > end) {
+            equals = end;
+        }
+        int kStart = skipSpace(start, equals);
+        int kEnd = trimSpace(kStart, equals);
+        if (kStart == kEnd) {
+            return; //Empty fields, such as those caused by repeated spaces
+        }
+        int vStart = (equals == end ? end : skipSpace(equals + 1, end));
+        int vEnd = trimSpace(vStart, end);
+        if (fieldCount == keyStart.length) {
+            int size = fieldCount * 2;
+            keyStart = Arrays.copyOf(keyStart, size);
+            keyEnd = Arrays.copyOf(keyEnd, size);
+            valueStart = Arrays.copyOf(valueStart, size);
+            valueEnd = Arrays.copyOf(valueEnd, size);
+        }
+        keyStart[fieldCount] = kStart;
+        keyEnd[fieldCount] = kEnd;
+        valueStart[fieldCount] = vStart;
+        valueEnd[fieldCount] = vEnd;
+        for (int i = 0; i < KEYS.length; i++) {
+            //The first occurrence of a key is the one that is used
+            if (keyField[i] < 0 && KEYS[i].length() == kEnd - kStart
+                    && line.regionMatches(true, kStart, KEYS[i], 0, kEnd - kStart)) {
+                keyField[i] = fieldCount;
+                break;
+            }
+        }
+        fieldCount++;
+    }
+
+    /**
+     * This moves a position forwards past any white space.
+     *
+     * @param start The position to start from
+     * @param end The position to stop at
+     * @return The position of the first non white space character
+     */
+    private int skipSpace(int start, int end) {
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * This moves an end position backwards past any white space.
+     *
+     * @param start The position to stop at
+     * @param end The position to start from
+     * @return The position after the last non white space character
+     */
+    private int trimSpace(int start, int end) {
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * This returns the line that is currently indexed.
+     *
+     * @return The line of output from Slurm
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * This returns how many fields the line has.
+     *
+     * @return The count of fields in the line
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * This returns the key of a field.
+     *
+     * @param field The index of the field
+     * @return The key of the field, i.e. "CPUTot"
+     */
+    public String getKey(int field) {
+        return line.substring(keyStart[field], keyEnd[field]);
+    }
+
+    /**
+     * This returns the value of a field.
+     *
+     * @param field The index of the field
+     * @return The value of the field, i.e. "32". This is the empty string if
+     * the field has no value.
+     */
+    public String getValue(int field) {
+        return line.substring(valueStart[field], valueEnd[field]);
+    }
+
+    /**
+     * This indicates if a field has a value that has a nested list of key
+     * value pairs, such as "CfgTRES=cpu=32,mem=64408M".
+     *
+     * @param field The index of the field
+     * @return If the field's value contains an equals sign.
+     */
+    public boolean hasNestedValues(int field) {
+        int equals = line.indexOf('=', valueStart[field]);
+        return equals >= 0 && equals < valueEnd[field];
+    }
+
+    /**
+     * This indicates if one of the registered keys was found in the line.
+     *
+     * @param key The registered key, i.e. {@link #CPU_LOAD}
+     * @return If the key is present in the line
+     */
+    public boolean contains(int key) {
+        return keyField[key] >= 0;
+    }
+
+    /**
+     * This returns the value of one of the registered keys.
+     *
+     * @param key The registered key, i.e. {@link #NODE_NAME}
+     * @return The key's value, or the empty string if it is not present.
+     */
+    public String getString(int key) {
+        int field = keyField[key];
+        if (field < 0) {
+            return "";
+        }
+        return getValue(field);
+    }
+
+    /**
+     * This compares the value of one of the registered keys to a string.
+     *
+     * @param key The registered key, i.e. {@link #CPU_LOAD}
+     * @param value The value to compare to
+     * @return If the key is present and its value matches exactly.
+     */
+    public boolean valueEquals(int key, String value) {
+        int field = keyField[key];
+        if (field < 0) {
+            return false;
+        }
+        int length = valueEnd[field] - valueStart[field];
+        return length == value.length() && line.regionMatches(valueStart[field], value, 0, length);
+    }
+
+    /**
+     * This indicates if the value of one of the registered keys is a plain
+     * decimal number, i.e. "32", "-1" or "0.01".
+     *
+     * @param key The registered key, i.e. {@link #CPU_LOAD}
+     * @return If the value is a plain decimal number
+     */
+    public boolean isNumber(int key) {
+        int field = keyField[key];
+        if (field < 0) {
+            return false;
+        }
+        int pos = valueStart[field];
+        int end = valueEnd[field];
+        if (pos < end && line.charAt(pos) == '-') {
+            pos++;
+        }
+        int digits = 0;
+        while (pos < end && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+            pos++;
+            digits++;
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (pos < end && line.charAt(pos) == '.') {
+            pos++;
+            digits = 0;
+            while (pos < end && line.charAt(pos) >= '0' && line.charAt(pos) <= '9') {
+                pos++;
+                digits++;
+            }
+            if (digits == 0) {
+                return false;
+            }
+        }
+        return pos == end;
+    }
+
+    /**
+     * This returns the value of one of the registered keys as a number. Plain
+     * decimal values are read without creating an intermediate string, any
+     * other value is handed to {@link Double#parseDouble(java.lang.String)}.
+     *
+     * @param key The registered key, i.e. {@link #CPU_LOAD}
+     * @return The numeric value of the key
+     * @throws NumberFormatException Thrown if the key is not present or its
+     * value is not a number, as would happen with Double.valueOf.
+     */
+    public double getDouble(int key) throws NumberFormatException {
+        if (!isNumber(key)) {
+            return Double.parseDouble(getString(key));
+        }
+        int field = keyField[key];
+        int pos = valueStart[field];
+        int end = valueEnd[field];
+        boolean negative = line.charAt(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+        long mantissa = 0;
+        int scale = -1;
+        for (; pos < end; pos++) {
+            char current = line.charAt(pos);
+            if (current == '.') {
+                scale = 0;
+                continue;
+            }
+            mantissa = mantissa * 10 + (current - '0');
+            if (scale >= 0) {
+                scale++;
+            }
+            if (mantissa >= MAX_EXACT_MANTISSA) {
+                //Too many digits to be exact, so fall back to the full parser
+                return Double.parseDouble(getString(key));
+            }
+        }
+        if (scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(getString(key));
+        }
+        double answer = (scale > 0 ? mantissa / POWERS_OF_TEN[scale] : mantissa);
+        return negative ? -answer : answer;
+    }
+
+    /**
+     * This returns the value of one of the registered keys as an integer.
+     *
+     * @param key The registered key, i.e. {@link #CPU_TOTAL}
+     * @return The integer value of the key
+     * @throws NumberFormatException Thrown if the key is not present or its
+     * value is not an integer.
+     */
+    public int getInt(int key) throws NumberFormatException {
+        int field = keyField[key];
+        if (field < 0) {
+            throw new NumberFormatException("The key " + KEYS[key] + " was not found");
+        }
+        int pos = valueStart[field];
+        int end = valueEnd[field];
+        boolean negative = pos < end && line.charAt(pos) == '-';
+        if (negative) {
+            pos++;
+        }
+        if (pos == end || end - pos > 9) {
+            return Integer.parseInt(getString(key));
+        }
+        int answer = 0;
+        for (; pos < end; pos++) {
+            char current = line.charAt(pos);
+            if (current < '0' || current > '9') {
+                throw new NumberFormatException("For input string: \"" + getString(key) + "\"");
+            }
+            answer = answer * 10 + (current - '0');
+        }
+        return negative ? -answer : answer;
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+}
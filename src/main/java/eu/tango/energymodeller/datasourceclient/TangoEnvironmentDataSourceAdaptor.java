@@ -26,6 +26,7 @@ import eu.tango.energymodeller.types.energyuser.VmDeployed;
 import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -129,53 +130,126 @@ public class TangoEnvironmentDataSourceAdaptor implements HostDataSource, Applic
         //Adds various information such as memory usage, including static upper bound values.
         Host collectDhost = convertNames(host);
         if (collectDhost != null) {
-            if (answer == null) {
-                answer = collectD.getHostData(collectDhost);
-                answer.setHost(host); //This ensures a collectD host is not leaked
-            } else {
-                HostMeasurement data = collectD.getHostData(collectDhost);
-                if (data.metricExists(KpiList.CPU_IDLE_KPI_NAME)) {
-                    //Ensure that collectd based measures of utilisation take precedence
-                    answer.deleteMetric(KpiList.CPU_IDLE_KPI_NAME);
-                    answer.deleteMetric(KpiList.CPU_SPOT_USAGE_KPI_NAME);                    
-                    answer.addMetric(data.getMetric(KpiList.CPU_IDLE_KPI_NAME));
-                    answer.addMetric(data.getMetric(KpiList.CPU_SPOT_USAGE_KPI_NAME));
-                }
-                answer.addMetrics(data);
-                
-            }
+            answer = merge(host, answer, collectD.getHostData(collectDhost));
         }
         return answer;
     }
 
-    @Override
-    public List<HostMeasurement> getHostData() {
-        List<HostMeasurement> answer = new ArrayList<>();
-        for (Host host : slurm.getHostList()) {
-            HostMeasurement measurement = getHostData(host);
-            if (measurement != null) {
-                answer.add(measurement);
-            }
+    /**
+     * This merges the measurement of a host from SLURM with the measurement
+     * from CollectD. The measurement from SLURM is shared with its adaptor,
+     * so the merge is made in a copy of it.
+     *
+     * @param host The host the measurements are for
+     * @param answer The measurement from SLURM, may be null
+     * @param data The measurement from CollectD, may be null
+     * @return The merged measurement of the host
+     */
+    private HostMeasurement merge(Host host, HostMeasurement answer, HostMeasurement data) {
+        if (data == null) {
+            return answer;
         }
+        if (answer == null) {
+            data.setHost(host); //This ensures a collectD host is not leaked
+            return data;
+        }
+        answer = new HostMeasurement(answer);
+        answer.setHost(host);
+        if (data.metricExists(KpiList.CPU_IDLE_KPI_NAME)) {
+            //Ensure that collectd based measures of utilisation take precedence
+            answer.deleteMetric(KpiList.CPU_IDLE_KPI_NAME);
+            answer.deleteMetric(KpiList.CPU_SPOT_USAGE_KPI_NAME);
+            answer.addMetric(data.getMetric(KpiList.CPU_IDLE_KPI_NAME));
+            answer.addMetric(data.getMetric(KpiList.CPU_SPOT_USAGE_KPI_NAME));
+        }
+        answer.addMetrics(data);
         return answer;
     }
 
+    @Override
+    public List<HostMeasurement> getHostData() {
+        return getHostData(slurm.getHostList());
+    }
+
+    /**
+     * This gets the measurements for a list of hosts. The CollectD data for
+     * all the hosts is obtained together, rather than one host at a time.
+     *
+     * @param hostList The hosts to get the measurements for
+     * @return The measurements of the hosts, hosts without a measurement are
+     * omitted.
+     */
     @Override
     public List<HostMeasurement> getHostData(List<Host> hostList) {
         if (hostList == null) {
             hostList = new ArrayList<>();
         }
+        LinkedHashMap<Host, Host> collectDHosts = getCollectDHosts(hostList);
+        List<HostMeasurement> collectDData = collectD.getHostData(new ArrayList<>(collectDHosts.values()));
+        HashMap<Host, HostMeasurement> collectDDataByHost = new HashMap<>();
+        int i = 0;
+        for (Host host : collectDHosts.keySet()) {
+            collectDDataByHost.put(host, collectDData.get(i));
+            i++;
+        }
         List<HostMeasurement> answer = new ArrayList<>();
         for (Host host : hostList) {
-            HostMeasurement measurement = getHostData(host);
+            if (host == null) {
+                continue;
+            }
+            HostMeasurement measurement = merge(host, slurm.getHostData(host), collectDDataByHost.get(host));
             if (measurement != null) {
                 answer.add(measurement);
-                measurement.setHost(host);
             }
         }
         return answer;
     }
 
+    /**
+     * This converts a list of SLURM hosts into the matching CollectD hosts.
+     * Hosts without a matching CollectD host are left out, so that CollectD is
+     * only ever asked about hosts it knows.
+     *
+     * @param hostList The SLURM hosts
+     * @return The CollectD hosts, keyed by the SLURM host they match, in the
+     * same order as the hosts given.
+     */
+    private LinkedHashMap<Host, Host> getCollectDHosts(List<Host> hostList) {
+        LinkedHashMap<Host, Host> answer = new LinkedHashMap<>();
+        if (hostList == null) {
+            return answer;
+        }
+        for (Host host : hostList) {
+            Host collectDHost = (host == null ? null : convertNames(host));
+            if (collectDHost != null) {
+                answer.put(host, collectDHost);
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This converts the values CollectD gives for its hosts back into values
+     * for the matching SLURM hosts.
+     *
+     * @param collectDHosts The CollectD hosts, keyed by the SLURM host they
+     * match
+     * @param values The values by CollectD host
+     * @param hostList The SLURM hosts to place in the map
+     * @return The value for each SLURM host, zero if a host has no value.
+     */
+    private static HashMap<Host, Double> toSlurmHosts(HashMap<Host, Host> collectDHosts, HashMap<Host, Double> values, List<Host> hostList) {
+        HashMap<Host, Double> answer = new HashMap<>();
+        for (Host host : hostList) {
+            if (host == null) {
+                continue;
+            }
+            Double value = (collectDHosts.containsKey(host) ? values.get(collectDHosts.get(host)) : null);
+            answer.put(host, (value == null ? 0.0 : value));
+        }
+        return answer;
+    }
+
     @Override
     public VmMeasurement getVmData(VmDeployed vm) {
         return slurm.getVmData(vm);
@@ -203,6 +277,56 @@ public class TangoEnvironmentDataSourceAdaptor implements HostDataSource, Applic
         return answer;
     }
 
+    /**
+     * This provides the current energy usage of a list of hosts, which is
+     * obtained from CollectD for all the hosts together.
+     *
+     * @param hostList The hosts to get the current energy usage for
+     * @return The current energy usage of each host that has a matching
+     * CollectD host
+     */
+    public List<CurrentUsageRecord> getCurrentEnergyUsage(List<Host> hostList) {
+        return collectD.getCurrentEnergyUsage(new ArrayList<>(getCollectDHosts(hostList).values()));
+    }
+
+    /**
+     * This provides the lowest power usage of a list of hosts, which is
+     * obtained from CollectD for all the hosts together.
+     *
+     * @param hostList The hosts to get the lowest power usage for
+     * @return The lowest power usage of each host
+     */
+    public HashMap<Host, Double> getLowestHostPowerUsage(List<Host> hostList) {
+        LinkedHashMap<Host, Host> collectDHosts = getCollectDHosts(hostList);
+        return toSlurmHosts(collectDHosts, collectD.getLowestHostPowerUsage(new ArrayList<>(collectDHosts.values())), hostList);
+    }
+
+    /**
+     * This provides the highest power usage of a list of hosts, which is
+     * obtained from CollectD for all the hosts together.
+     *
+     * @param hostList The hosts to get the highest power usage for
+     * @return The highest power usage of each host
+     */
+    public HashMap<Host, Double> getHighestHostPowerUsage(List<Host> hostList) {
+        LinkedHashMap<Host, Host> collectDHosts = getCollectDHosts(hostList);
+        return toSlurmHosts(collectDHosts, collectD.getHighestHostPowerUsage(new ArrayList<>(collectDHosts.values())), hostList);
+    }
+
+    /**
+     * This provides the CPU utilisation of a list of hosts, which is obtained
+     * from CollectD for all the hosts together.
+     *
+     * @param hostList The hosts to get the CPU utilisation for
+     * @param durationSeconds The amount of seconds to average the CPU
+     * utilisation over
+     * @return The CPU utilisation of each host
+     */
+    public HashMap<Host, Double> getCpuUtilisation(List<Host> hostList, int durationSeconds) {
+        LinkedHashMap<Host, Host> collectDHosts = getCollectDHosts(hostList);
+        return toSlurmHosts(collectDHosts, collectD.getCpuUtilisation(new ArrayList<>(collectDHosts.values()), durationSeconds), hostList);
+    }
+
     @Override
     public double getLowestHostPowerUsage(Host host) {
         return collectD.getLowestHostPowerUsage(convertNames(host));
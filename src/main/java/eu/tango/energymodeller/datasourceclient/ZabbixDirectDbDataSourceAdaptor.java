@@ -25,6 +25,7 @@ import static eu.tango.energymodeller.datasourceclient.KpiList.POWER_KPI_NAME;
 import static eu.tango.energymodeller.datasourceclient.KpiList.VM_PHYSICAL_HOST_NAME;
 import static eu.tango.energymodeller.datasourceclient.KpiList.VM_PHYSICAL_HOST_NAME_2;
 import eu.tango.energymodeller.datastore.MySqlDatabaseConnector;
+import eu.tango.energymodeller.datastore.RowMapper;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost.JOB_STATUS;
 import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
@@ -59,7 +60,7 @@ import org.apache.commons.configuration.PropertiesConfiguration;
  */
 public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector implements HostDataSource {
 
-    /**
+    /*
      * Get max item id values for history items select itemid, max(clock) from
      * history group by itemid;
      *
@@ -77,7 +78,6 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
      * (select itemid from hosts, items where hosts.hostid = items.hostid and
      * hosts.hostid = 10084);
      */
-    private Connection connection;
     /**
      * This query lists all hosts data items. status <> 3 excludes templates 0 -
      * not available (templates are in this category), 1 - available, 2 -
@@ -156,6 +156,9 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
     private static final String CONFIG_FILE = "energy-modeller-db-zabbix.properties";
     private static final Logger DB_LOGGER = Logger.getLogger(ZabbixDirectDbDataSourceAdaptor.class.getName());
 
+    private int poolSize = 4;
+    private long poolValidationInterval = 30000;
+
     /**
      * This creates a new database connector for use. It establishes a database
      * connection immediately ready for use.
@@ -200,13 +203,19 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
             if (onlyAvailableHosts) {
                 allZabbixHosts = allZabbixHosts + " AND h.available = 1";
             }
+            poolSize = config.getInt("energy.modeller.zabbix.db.pool.size", poolSize);
+            config.setProperty("energy.modeller.zabbix.db.pool.size", poolSize);
+            poolValidationInterval = config.getLong("energy.modeller.zabbix.db.pool.validation_interval_ms", poolValidationInterval);
+            config.setProperty("energy.modeller.zabbix.db.pool.validation_interval_ms", poolValidationInterval);
 
         } catch (ConfigurationException ex) {
             DB_LOGGER.log(Level.SEVERE, "Error loading the configuration of the IaaS energy modeller", ex);
         }
-        try {
-            connection = getConnection();
-        } catch (IOException | SQLException | ClassNotFoundException ex) {
+        setPoolSettings(poolSize, poolValidationInterval);
+        //Establish the first connection, returning it to the pool ready for use
+        try (Connection connection = getPooledConnection()) {
+            DB_LOGGER.log(Level.FINE, "Connected to {0}", databaseURL);
+        } catch (SQLException ex) {
             DB_LOGGER.log(Level.SEVERE, "Failed to establish the connection to the Zabbix DB", ex);
         }
     }
@@ -229,25 +238,23 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
                 databaseUser, databasePassword);
     }
 
-    @Override
-    public Host getHostByName(String hostname) {
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
-        }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
-                allZabbixHosts + FILTER_BY_GROUP + FILTER_BY_NAME)) {
-            preparedStatement.setString(1, hostGroup);
-            preparedStatement.setString(2, hostname);
+    /**
+     * This runs a query against the list of Zabbix hosts, returning the rows
+     * found. The connection used is returned to the pool before the rows are
+     * processed, so callers may perform further queries for each row.
+     *
+     * @param query The query to run
+     * @param parameters The string parameters of the query, in order
+     * @return The rows returned by the query, or null if the query failed.
+     */
+    private ArrayList<ZabbixHostRecord> queryHosts(String query, String... parameters) {
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            for (int i = 0; i < parameters.length; i++) {
+                preparedStatement.setString(i + 1, parameters[i]);
+            }
             try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                if (results.isEmpty()) {
-                    return null;
-                }
-                ArrayList<Object> hostData = results.get(0);
-                Host answer = new Host(((Long) hostData.get(0)).intValue(), (String) hostData.get(1));
-                answer = fullyDescribeHost(answer, getHostData(answer).getMetrics().values());
-                return answer;
+                return mapResultSet(resultSet, HOST_RECORD_MAPPER);
             }
         } catch (SQLException ex) {
             DB_LOGGER.log(Level.SEVERE, null, ex);
@@ -255,56 +262,76 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
         return null;
     }
 
+    /**
+     * This is a row of the list of Zabbix hosts, in the form: hostid, host,
+     * group name.
+     */
+    private static class ZabbixHostRecord {
+
+        private final int id;
+        private final String name;
+        private final String group;
+
+        public ZabbixHostRecord(int id, String name, String group) {
+            this.id = id;
+            this.name = name;
+            this.group = group;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+    }
+
+    /**
+     * This converts rows of the list of Zabbix hosts into host records.
+     */
+    private static final RowMapper<ZabbixHostRecord> HOST_RECORD_MAPPER = new RowMapper<ZabbixHostRecord>() {
+        @Override
+        public ZabbixHostRecord mapRow(ResultSet row) throws SQLException {
+            return new ZabbixHostRecord((int) row.getLong(1), row.getString(2), row.getString(3));
+        }
+    };
+
     @Override
-    public GeneralPurposePowerConsumer getGeneralPowerConsumerByName(String hostname) {
-        connection = getConnection(connection);
-        if (connection == null) {
+    public Host getHostByName(String hostname) {
+        ArrayList<ZabbixHostRecord> results = queryHosts(allZabbixHosts + FILTER_BY_GROUP + FILTER_BY_NAME, hostGroup, hostname);
+        if (results == null || results.isEmpty()) {
             return null;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
-                allZabbixHosts + FILTER_BY_GROUP + FILTER_BY_NAME)) {
-            preparedStatement.setString(1, generalPowerConsumer);
-            preparedStatement.setString(2, hostname);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                if (results.isEmpty()) {
-                    return null;
-                }
-                ArrayList<Object> hostData = results.get(0);
-                GeneralPurposePowerConsumer answer = new GeneralPurposePowerConsumer(((Long) hostData.get(0)).intValue(), (String) hostData.get(1));
-                answer = (GeneralPurposePowerConsumer) fullyDescribeHost(answer, getHostData(answer).getMetrics().values());
-                return answer;
-            }
-        } catch (SQLException ex) {
-            DB_LOGGER.log(Level.SEVERE, null, ex);
+        ZabbixHostRecord hostData = results.get(0);
+        Host answer = new Host(hostData.getId(), hostData.getName());
+        return fullyDescribeHost(answer, getHostData(answer).getMetrics().values());
+    }
+
+    @Override
+    public GeneralPurposePowerConsumer getGeneralPowerConsumerByName(String hostname) {
+        ArrayList<ZabbixHostRecord> results = queryHosts(allZabbixHosts + FILTER_BY_GROUP + FILTER_BY_NAME, generalPowerConsumer, hostname);
+        if (results == null || results.isEmpty()) {
+            return null;
         }
-        return null;
+        ZabbixHostRecord hostData = results.get(0);
+        GeneralPurposePowerConsumer answer = new GeneralPurposePowerConsumer(hostData.getId(), hostData.getName());
+        return (GeneralPurposePowerConsumer) fullyDescribeHost(answer, getHostData(answer).getMetrics().values());
     }
 
     @Override
     public VmDeployed getVmByName(String name) {
-        connection = getConnection(connection);
-        if (connection == null) {
+        ArrayList<ZabbixHostRecord> results = queryHosts(allZabbixHosts + FILTER_BY_GROUP + FILTER_BY_NAME, vmGroup, name);
+        if (results == null || results.isEmpty()) {
             return null;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
-                allZabbixHosts + FILTER_BY_GROUP + FILTER_BY_NAME)) {
-            preparedStatement.setString(1, vmGroup);
-            preparedStatement.setString(2, name);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                if (results.isEmpty()) {
-                    return null;
-                }
-                ArrayList<Object> hostData = results.get(0);
-                VmDeployed answer = new VmDeployed(((Long) hostData.get(0)).intValue(), (String) hostData.get(1));
-                answer = fullyDescribeVM(answer, getVmData(answer).getMetrics().values());
-                return answer;
-            }
-        } catch (SQLException ex) {
-            DB_LOGGER.log(Level.SEVERE, null, ex);
-        }
-        return null;
+        ZabbixHostRecord hostData = results.get(0);
+        VmDeployed answer = new VmDeployed(hostData.getId(), hostData.getName());
+        return fullyDescribeVM(answer, getVmData(answer).getMetrics().values());
     }
 
     /**
@@ -423,24 +450,14 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
 
     public List<Host> getHostList(String groupName) {
         List<Host> answer = new ArrayList<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
+        ArrayList<ZabbixHostRecord> results = queryHosts(allZabbixHosts + FILTER_BY_GROUP, groupName);
+        if (results == null) {
+            return answer;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(allZabbixHosts + FILTER_BY_GROUP);) {
-            preparedStatement.setString(1, groupName);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                for (ArrayList<Object> hostData : results) {
-                    Host host = new Host(((Long) hostData.get(0)).intValue(), (String) hostData.get(1));
-                    host = fullyDescribeHost(host, getHostData(host).getMetrics().values());
-                    answer.add(host);
-                }
-            } catch (SQLException ex) {
-                DB_LOGGER.log(Level.SEVERE, null, ex);
-            }
-        } catch (SQLException ex) {
-            DB_LOGGER.log(Level.SEVERE, null, ex);
+        for (ZabbixHostRecord hostData : results) {
+            Host host = new Host(hostData.getId(), hostData.getName());
+            host = fullyDescribeHost(host, getHostData(host).getMetrics().values());
+            answer.add(host);
         }
         return answer;
     }
@@ -448,24 +465,14 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
     @Override
     public List<GeneralPurposePowerConsumer> getGeneralPowerConsumerList() {
         List<GeneralPurposePowerConsumer> answer = new ArrayList<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
+        ArrayList<ZabbixHostRecord> results = queryHosts(allZabbixHosts + FILTER_BY_GROUP, generalPowerConsumer);
+        if (results == null) {
+            return answer;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(allZabbixHosts + FILTER_BY_GROUP)) {
-            preparedStatement.setString(1, generalPowerConsumer);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                for (ArrayList<Object> storageData : results) {
-                    GeneralPurposePowerConsumer fileStore = new GeneralPurposePowerConsumer(((Long) storageData.get(0)).intValue(), (String) storageData.get(1));
-                    fileStore = (GeneralPurposePowerConsumer) fullyDescribeHost(fileStore, getHostData(fileStore).getMetrics().values());
-                    answer.add(fileStore);
-                }
-            } catch (SQLException ex) {
-                DB_LOGGER.log(Level.SEVERE, null, ex);
-            }
-        } catch (SQLException ex) {
-            DB_LOGGER.log(Level.SEVERE, null, ex);
+        for (ZabbixHostRecord storageData : results) {
+            GeneralPurposePowerConsumer fileStore = new GeneralPurposePowerConsumer(storageData.getId(), storageData.getName());
+            fileStore = (GeneralPurposePowerConsumer) fullyDescribeHost(fileStore, getHostData(fileStore).getMetrics().values());
+            answer.add(fileStore);
         }
         return answer;
     }
@@ -473,35 +480,24 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
     @Override
     public List<EnergyUsageSource> getHostAndVmList() {
         List<EnergyUsageSource> answer = new ArrayList<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
+        ArrayList<ZabbixHostRecord> results = queryHosts(allZabbixHosts + " AND (groups.name = ? OR groups.name = ?)", hostGroup, vmGroup);
+        if (results == null) {
+            return answer;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(allZabbixHosts + " AND (groups.name = ? OR groups.name = ?)")) {
-            preparedStatement.setString(1, hostGroup);
-            preparedStatement.setString(2, vmGroup);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                for (ArrayList<Object> hostData : results) {
-                    if (hostData.get(2).equals(hostGroup)) {
-                        Host host = new Host(((Long) hostData.get(0)).intValue(), (String) hostData.get(1));
-                        host = fullyDescribeHost(host, getHostData(host).getMetrics().values());
-                        answer.add(host);
-                    } else if (hostData.get(2).equals(generalPowerConsumer)) {
-                        GeneralPurposePowerConsumer host = new GeneralPurposePowerConsumer(((Long) hostData.get(0)).intValue(), (String) hostData.get(1));
-                        host = (GeneralPurposePowerConsumer) fullyDescribeHost(host, getHostData(host).getMetrics().values());
-                        answer.add(host);
-                    } else {
-                        VmDeployed vm = new VmDeployed(((Long) hostData.get(0)).intValue(), (String) hostData.get(1));
-                        vm = fullyDescribeVM(vm, getVmData(vm).getMetrics().values());
-                        answer.add(vm);
-                    }
-                }
-            } catch (SQLException ex) {
-                DB_LOGGER.log(Level.SEVERE, null, ex);
+        for (ZabbixHostRecord hostData : results) {
+            if (hostData.getGroup().equals(hostGroup)) {
+                Host host = new Host(hostData.getId(), hostData.getName());
+                host = fullyDescribeHost(host, getHostData(host).getMetrics().values());
+                answer.add(host);
+            } else if (hostData.getGroup().equals(generalPowerConsumer)) {
+                GeneralPurposePowerConsumer host = new GeneralPurposePowerConsumer(hostData.getId(), hostData.getName());
+                host = (GeneralPurposePowerConsumer) fullyDescribeHost(host, getHostData(host).getMetrics().values());
+                answer.add(host);
+            } else {
+                VmDeployed vm = new VmDeployed(hostData.getId(), hostData.getName());
+                vm = fullyDescribeVM(vm, getVmData(vm).getMetrics().values());
+                answer.add(vm);
             }
-        } catch (SQLException ex) {
-            DB_LOGGER.log(Level.SEVERE, null, ex);
         }
         return answer;
     }
@@ -529,24 +525,14 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
 
     public List<VmDeployed> getVmList(String groupName) {
         List<VmDeployed> answer = new ArrayList<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
+        ArrayList<ZabbixHostRecord> results = queryHosts(allZabbixHosts + FILTER_BY_GROUP, groupName);
+        if (results == null) {
+            return answer;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(allZabbixHosts + FILTER_BY_GROUP)) {
-            preparedStatement.setString(1, groupName);
-            try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                for (ArrayList<Object> hostData : results) {
-                    VmDeployed vm = new VmDeployed(((Long) hostData.get(0)).intValue(), (String) hostData.get(1));
-                    vm = fullyDescribeVM(vm, getVmData(vm).getMetrics().values());
-                    answer.add(vm);
-                }
-            } catch (SQLException ex) {
-                DB_LOGGER.log(Level.SEVERE, null, ex);
-            }
-        } catch (SQLException ex) {
-            DB_LOGGER.log(Level.SEVERE, null, ex);
+        for (ZabbixHostRecord hostData : results) {
+            VmDeployed vm = new VmDeployed(hostData.getId(), hostData.getName());
+            vm = fullyDescribeVM(vm, getVmData(vm).getMetrics().values());
+            answer.add(vm);
         }
         return answer;
     }
@@ -555,33 +541,29 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
     public HostMeasurement getHostData(Host host) {
         HostMeasurement answer = new HostMeasurement(host);
         long clock = 0;
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
-        }
-        for (String historyTable : HISTORY_TABLES) {
-            String query = QUERY_DATA_BY_ID.replace("XXXX", historyTable);
-            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-                preparedStatement.setInt(1, host.getId());
-                try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                    ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                    for (ArrayList<Object> dataItem : results) {
-                        if ((int) dataItem.get(1) > clock) {
-                            clock = (int) dataItem.get(1);
-                            answer.setClock(clock);
+        try (Connection connection = getPooledConnection()) {
+            for (String historyTable : HISTORY_TABLES) {
+                String query = QUERY_DATA_BY_ID.replace("XXXX", historyTable);
+                try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                    preparedStatement.setInt(1, host.getId());
+                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            //itemid | clock | name | key_ | value
+                            int itemClock = resultSet.getInt(2);
+                            if (itemClock > clock) {
+                                clock = itemClock;
+                                answer.setClock(clock);
+                            }
+                            answer.addMetric(readMetricValue(resultSet, historyTable, itemClock));
                         }
-                        //itemid | clock | name | key_ | value   
-                        MetricValue value = new MetricValue(
-                                (String) dataItem.get(2),
-                                (String) dataItem.get(3),
-                                dataItem.get(4) + "",
-                                (Integer) dataItem.get(1));
-                        answer.addMetric(value);
                     }
+                } catch (SQLException ex) {
+                    DB_LOGGER.log(Level.SEVERE, null, ex);
                 }
-            } catch (SQLException ex) {
-                DB_LOGGER.log(Level.SEVERE, null, ex);
             }
+        } catch (SQLException ex) {
+            DB_LOGGER.log(Level.SEVERE, null, ex);
+            return null;
         }
         return answer;
     }
@@ -608,37 +590,52 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
     public VmMeasurement getVmData(VmDeployed vm) {
         VmMeasurement answer = new VmMeasurement(vm);
         long clock = 0;
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
-        }
-        for (String historyTable : HISTORY_TABLES) {
-            String query = QUERY_DATA_BY_ID.replace("XXXX", historyTable);
-            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
-                preparedStatement.setInt(1, vm.getId());
-                try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                    ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                    for (ArrayList<Object> dataItem : results) {
-                        if ((int) dataItem.get(1) > clock) {
-                            clock = (int) dataItem.get(1);
-                            answer.setClock(clock);
+        try (Connection connection = getPooledConnection()) {
+            for (String historyTable : HISTORY_TABLES) {
+                String query = QUERY_DATA_BY_ID.replace("XXXX", historyTable);
+                try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                    preparedStatement.setInt(1, vm.getId());
+                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                        while (resultSet.next()) {
+                            //itemid | clock | name | key_ | value
+                            int itemClock = resultSet.getInt(2);
+                            if (itemClock > clock) {
+                                clock = itemClock;
+                                answer.setClock(clock);
+                            }
+                            answer.addMetric(readMetricValue(resultSet, historyTable, itemClock));
                         }
-                        //itemid | clock | name | key_ | value  
-                        MetricValue value = new MetricValue(
-                                (String) dataItem.get(2), //name
-                                (String) dataItem.get(3), //key
-                                dataItem.get(4) + "",//value
-                                (Integer) dataItem.get(1)); //clock
-                        answer.addMetric(value);
                     }
+                } catch (SQLException ex) {
+                    DB_LOGGER.log(Level.SEVERE, null, ex);
                 }
-            } catch (SQLException ex) {
-                DB_LOGGER.log(Level.SEVERE, null, ex);
             }
+        } catch (SQLException ex) {
+            DB_LOGGER.log(Level.SEVERE, null, ex);
+            return null;
         }
         return answer;
     }
 
+    /**
+     * This reads a row of a Zabbix history table as a metric value. Numeric
+     * values from the history table are read as a double, rather than as a
+     * string.
+     *
+     * @param row The result set, positioned at the row to read
+     * @param historyTable The history table the row came from
+     * @param clock The time the value was taken
+     * @return The metric value held in the row
+     * @throws SQLException if a database access error occurs
+     */
+    private static MetricValue readMetricValue(ResultSet row, String historyTable, long clock) throws SQLException {
+        //itemid | clock | name | key_ | value
+        if (historyTable.equals("history")) {
+            return new MetricValue(row.getString(3), row.getString(4), row.getDouble(5), clock);
+        }
+        return new MetricValue(row.getString(3), row.getString(4), row.getString(5), clock);
+    }
+
     @Override
     public List<VmMeasurement> getVmData() {
         List<VmMeasurement> answer = new ArrayList<>();
@@ -735,21 +732,16 @@ public class ZabbixDirectDbDataSourceAdaptor extends MySqlDatabaseConnector impl
      */
     private List<Double> getHistoryDataItems(String key, int hostId, long startTime, long endTime) {
         List<Double> answer = new ArrayList<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return answer;
-        }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(HISTORY_QUERY)) {
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = prepareStreamingStatement(connection, HISTORY_QUERY)) {
             //hostid, item name, clock start, clock end
             preparedStatement.setLong(1, startTime);
             preparedStatement.setLong(2, endTime);
             preparedStatement.setInt(3, hostId);
             preparedStatement.setString(4, key);
             try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                for (ArrayList<Object> hostData : results) {
-                    Double value = ((Double) hostData.get(2));
-                    answer.add(value);
+                while (resultSet.next()) {
+                    answer.add(resultSet.getDouble(3));
                 }
             }
         } catch (SQLException ex) {
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient.compsstype;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is the parsed content of a single version of the COMPSs monitoring
+ * file (COMPSs_state.xml). It records the size and modification time of the
+ * file it was read from, so that it can be reused until the file changes.
+ *
+ * @author Richard Kavanagh
+ */
+public class CompssState {
+
+    private final String jobId;
+    private final String filename;
+    private final long lastModified;
+    private final long length;
+    private final List<CompssResource> resources;
+    private final List<CompssImplementation> implementations;
+    private final int runningTaskCount;
+
+    /**
+     * This creates a new COMPSs state.
+     *
+     * @param jobId The name of the folder the monitoring file is in, i.e.
+     * EmulateRemote_01
+     * @param file The monitoring file the state was read from
+     * @param lastModified The modification time of the file when read
+     * @param length The size of the file when read
+     * @param resources The resources listed in the file
+     * @param implementations The implementations listed in the file
+     * @param runningTaskCount The count of tasks in progress
+     */
+    public CompssState(String jobId, File file, long lastModified, long length,
+            List<CompssResource> resources, List<CompssImplementation> implementations, int runningTaskCount) {
+        this.jobId = jobId;
+        this.filename = (file == null ? "" : file.getAbsolutePath());
+        this.lastModified = lastModified;
+        this.length = length;
+        this.resources = Collections.unmodifiableList(new ArrayList<>(resources));
+        this.implementations = Collections.unmodifiableList(new ArrayList<>(implementations));
+        this.runningTaskCount = runningTaskCount;
+    }
+
+    /**
+     * This creates a state that indicates no monitoring file was found.
+     *
+     * @return A state with no resources, implementations or tasks.
+     */
+    public static CompssState getEmptyState() {
+        return new CompssState("", null, 0, 0, new ArrayList<CompssResource>(),
+                new ArrayList<CompssImplementation>(), 0);
+    }
+
+    /**
+     * This reads a COMPSs monitoring file.
+     *
+     * @param jobId The name of the folder the monitoring file is in
+     * @param file The monitoring file to read
+     * @return The parsed state of the file. If the file is not yet fully
+     * populated the state has no resources, implementations or tasks.
+     */
+    public static CompssState read(String jobId, File file) {
+        return CompssStateParser.parse(jobId, file);
+    }
+
+    /**
+     * This indicates if this state is the current content of a monitoring
+     * file, i.e. the file has not been modified since it was read.
+     *
+     * @param file The monitoring file
+     * @return If the file is the one this state was read from and its size
+     * and modification time are unchanged.
+     */
+    public boolean isCurrent(File file) {
+        return file.getAbsolutePath().equals(filename)
+                && file.lastModified() == lastModified
+                && file.length() == length;
+    }
+
+    /**
+     * This returns the job id of the application, taken from the name of the
+     * folder the monitoring file is in.
+     *
+     * @return The job id, such as: EmulateRemote_01
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * This returns the modification time of the monitoring file when it was
+     * read.
+     *
+     * @return The modification time of the file
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * This returns the resources that were listed in the monitoring file.
+     *
+     * @return The list of resources, this list may not be modified.
+     */
+    public List<CompssResource> getResources() {
+        return resources;
+    }
+
+    /**
+     * This returns the implementations that were listed in the monitoring
+     * file.
+     *
+     * @return The list of implementations, this list may not be modified.
+     */
+    public List<CompssImplementation> getImplementations() {
+        return implementations;
+    }
+
+    /**
+     * This returns the count of tasks that were in progress.
+     *
+     * @return The amount of tasks that are in progress.
+     */
+    public int getRunningTaskCount() {
+        return runningTaskCount;
+    }
+}
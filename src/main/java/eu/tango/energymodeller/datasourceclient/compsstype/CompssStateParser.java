@@ -0,0 +1,300 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient.compsstype;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.XML;
+
+/**
+ * This reads the COMPSs monitoring file (COMPSs_state.xml) as a stream, rather
+ * than loading the whole file and converting it into JSON.
+ *
+ * Only the ResourceInfo and CoresInfo sections and the count of tasks in
+ * progress are read, all other sections are skipped over. Each Resource and
+ * Impl element is converted into the same JSON that XML.toJSONObject would
+ * have given for it, so the compss types built from them behave as before.
+ *
+ * @author Richard Kavanagh
+ */
+public class CompssStateParser {
+
+    private static final String COMPSS_STATE = "COMPSsState";
+    private static final String RESOURCE_INFO = "ResourceInfo";
+    private static final String CORES_INFO = "CoresInfo";
+    private static final String TASK_INFO = "TasksInfo";
+    private static final XMLInputFactory FACTORY = getFactory();
+
+    private final List<CompssResource> resources = new ArrayList<>();
+    private final List<CompssImplementation> implementations = new ArrayList<>();
+    private int runningTaskCount = 0;
+
+    /**
+     * This utility class is expected to be used via its static parse method.
+     */
+    private CompssStateParser() {
+    }
+
+    /**
+     * This creates the factory used to read the monitoring files. External
+     * entities and DTDs are not needed to read the file and are disabled.
+     *
+     * @return The XML stream factory
+     */
+    private static XMLInputFactory getFactory() {
+        XMLInputFactory answer = XMLInputFactory.newInstance();
+        answer.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        answer.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        answer.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return answer;
+    }
+
+    /**
+     * This reads a COMPSs monitoring file.
+     *
+     * @param jobId The name of the folder the monitoring file is in
+     * @param file The monitoring file to read
+     * @return The parsed state of the file. If the file is not yet fully
+     * populated the state has no resources, implementations or tasks.
+     */
+    public static CompssState parse(String jobId, File file) {
+        //Taken before reading, so a change made while reading is seen next time
+        long lastModified = file.lastModified();
+        long length = file.length();
+        CompssStateParser parser = new CompssStateParser();
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            parser.read(stream);
+        } catch (XMLStreamException ex) {
+            /**
+             * The file to be parsed might not be fully populated, if it isn't
+             * then this avoids returning part of its content.
+             */
+            Logger.getLogger(CompssStateParser.class.getName()).log(Level.FINE, "parse error", ex);
+            return new CompssState(jobId, file, lastModified, length, new ArrayList<CompssResource>(),
+                    new ArrayList<CompssImplementation>(), 0);
+        } catch (IOException | JSONException ex) {
+            Logger.getLogger(CompssStateParser.class.getName()).log(Level.SEVERE, "parse error", ex);
+            return new CompssState(jobId, file, lastModified, length, new ArrayList<CompssResource>(),
+                    new ArrayList<CompssImplementation>(), 0);
+        }
+        return new CompssState(jobId, file, lastModified, length, parser.resources,
+                parser.implementations, parser.runningTaskCount);
+    }
+
+    /**
+     * This reads the monitoring file's content.
+     *
+     * @param stream The stream to read the file from
+     * @throws XMLStreamException Thrown if the file is not well formed
+     */
+    private void read(InputStream stream) throws XMLStreamException {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(stream);
+        try {
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT
+                    || !reader.getLocalName().equals(COMPSS_STATE)) {
+                return;
+            }
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case RESOURCE_INFO:
+                        readResources(reader);
+                        break;
+                    case CORES_INFO:
+                        readCores(reader);
+                        break;
+                    case TASK_INFO:
+                        readTasks(reader);
+                        break;
+                    default:
+                        skipElement(reader);
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * This reads the resources from the ResourceInfo section.
+     *
+     * @param reader The reader, positioned at the start of the section
+     * @throws XMLStreamException Thrown if the file is not well formed
+     */
+    private void readResources(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!reader.getLocalName().equals("Resource")) {
+                skipElement(reader);
+                continue;
+            }
+            Object resource = readElement(reader);
+            if (resource instanceof JSONObject && ((JSONObject) resource).has("id")) {
+                JSONObject json = (JSONObject) resource;
+                resources.add(new CompssResource(json.getString("id"), json));
+            }
+        }
+    }
+
+    /**
+     * This reads the implementations of each core element from the CoresInfo
+     * section.
+     *
+     * @param reader The reader, positioned at the start of the section
+     * @throws XMLStreamException Thrown if the file is not well formed
+     */
+    private void readCores(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!reader.getLocalName().equals("Core")) {
+                skipElement(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                if (!reader.getLocalName().equals("Impl")) {
+                    skipElement(reader);
+                    continue;
+                }
+                Object implementation = readElement(reader);
+                if (implementation instanceof JSONObject && ((JSONObject) implementation).has("Signature")) {
+                    JSONObject json = (JSONObject) implementation;
+                    implementations.add(new CompssImplementation(json.getString("Signature"), json));
+                }
+            }
+        }
+    }
+
+    /**
+     * This reads the count of tasks in progress from the TasksInfo section.
+     *
+     * @param reader The reader, positioned at the start of the section
+     * @throws XMLStreamException Thrown if the file is not well formed
+     */
+    private void readTasks(XMLStreamReader reader) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!reader.getLocalName().equals("Application")) {
+                skipElement(reader);
+                continue;
+            }
+            while (nextChild(reader)) {
+                //Other options are "TotalCount" or "Completed"
+                if (!reader.getLocalName().equals("InProgress")) {
+                    skipElement(reader);
+                    continue;
+                }
+                String inProgress = reader.getElementText().trim();
+                try {
+                    runningTaskCount = runningTaskCount + Integer.parseInt(inProgress);
+                } catch (NumberFormatException ex) {
+                    Logger.getLogger(CompssStateParser.class.getName()).log(Level.SEVERE,
+                            "parse error InProgress was not a number: {0}", inProgress);
+                }
+            }
+        }
+    }
+
+    /**
+     * This moves the reader onto the next child element of the current
+     * element.
+     *
+     * @param reader The reader
+     * @return True if the reader is at the start of a child element, false if
+     * it is at the end of the current element.
+     * @throws XMLStreamException Thrown if the file is not well formed
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This moves the reader past the end of the current element, without
+     * reading any of its content.
+     *
+     * @param reader The reader, positioned at the start of the element
+     * @throws XMLStreamException Thrown if the file is not well formed
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * This reads an element in the same form as XML.toJSONObject would give
+     * it. Attributes and child elements become keys, repeated child elements
+     * become arrays and values are converted to numbers or booleans where
+     * possible. An element with no content is given as the empty string.
+     *
+     * @param reader The reader, positioned at the start of the element
+     * @return The element as a JSON object or a value
+     * @throws XMLStreamException Thrown if the file is not well formed
+     */
+    private static Object readElement(XMLStreamReader reader) throws XMLStreamException {
+        JSONObject answer = new JSONObject();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            answer.accumulate(reader.getAttributeLocalName(i), XML.stringToValue(reader.getAttributeValue(i)));
+        }
+        StringBuilder text = new StringBuilder();
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                answer.accumulate(name, readElement(reader));
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        String content = text.toString().trim();
+        if (answer.length() == 0) {
+            return (content.isEmpty() ? "" : XML.stringToValue(content));
+        }
+        if (!content.isEmpty()) {
+            answer.accumulate("content", XML.stringToValue(content));
+        }
+        return answer;
+    }
+}
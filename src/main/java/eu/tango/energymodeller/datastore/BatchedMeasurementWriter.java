@@ -0,0 +1,498 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This is a write behind queue for measurement data. Rows for the
+ * host_measurement, vm_measurement, app_measurement and host_energy_index
+ * tables are queued in
+ * memory and written out as JDBC batches, inside a single transaction on a
+ * pooled connection, once either enough rows have been queued or the oldest
+ * row has waited long enough. This coalesces the writes from all hosts and all data gathering cycles into a
+ * small number of database round trips.
+ *
+ * The queue is bounded, if it fills the caller flushes it before adding more
+ * rows. Rows are only discarded if the database can not be written to.
+ *
+ * @author Richard Kavanagh
+ */
+public class BatchedMeasurementWriter implements Runnable {
+
+    private static final String HOST_INSERT = "INSERT INTO host_measurement (host_id, clock, energy, power) VALUES (?, ?, ? , ?);";
+    private static final String VM_INSERT = "INSERT INTO vm_measurement (host_id, vm_id, clock, cpu_load, power_overhead) VALUES (?, ?, ? , ?, ?);";
+    private static final String APP_INSERT = "INSERT INTO app_measurement (host_id, app_id, clock, cpu_load, power_overhead) VALUES (?, ?, ? , ?, ?);";
+    private static final String ENERGY_INDEX_INSERT = "INSERT INTO host_energy_index (host_id, clock, cumulative_energy, power) VALUES (?, ?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE cumulative_energy=VALUES(`cumulative_energy`), power=VALUES(`power`);";
+
+    private final DefaultDatabaseConnector database;
+    private final ArrayBlockingQueue<MeasurementRow> queue;
+    private final int batchSize;
+    private final long maxAge;
+    private final Object flushLock = new Object();
+    private final Object wakeUp = new Object();
+    private final AtomicLong droppedRows = new AtomicLong(0);
+    private volatile boolean running = true;
+
+    /**
+     * This creates a new write behind queue for measurement data.
+     *
+     * @param database The database connector that provides the connection to
+     * write to.
+     * @param batchSize The amount of rows that triggers a flush of the queue
+     * @param maxAge The maximum time in milliseconds a row may wait in the
+     * queue before it is flushed.
+     * @param capacity The maximum amount of rows to hold in memory.
+     */
+    public BatchedMeasurementWriter(DefaultDatabaseConnector database, int batchSize, long maxAge, int capacity) {
+        this.database = database;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAge = Math.max(1, maxAge);
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, capacity));
+    }
+
+    /**
+     * This adds a row to the queue of rows to write. If the queue is full it
+     * is flushed by the caller first.
+     *
+     * @param row The row to write to the database.
+     */
+    public void add(MeasurementRow row) {
+        if (!queue.offer(row)) {
+            flush();
+            if (!queue.offer(row)) {
+                droppedRows.incrementAndGet();
+                Logger.getLogger(BatchedMeasurementWriter.class.getName()).log(Level.WARNING,
+                        "The measurement write queue was full, a row has been dropped.");
+                return;
+            }
+        }
+        if (queue.size() >= batchSize) {
+            synchronized (wakeUp) {
+                wakeUp.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean interrupted = false;
+        while (running) {
+            try {
+                MeasurementRow oldest = queue.peek();
+                long waited = (oldest == null ? 0 : System.currentTimeMillis() - oldest.getQueuedAt());
+                if (oldest != null && (queue.size() >= batchSize || waited >= maxAge)) {
+                    flush();
+                } else {
+                    synchronized (wakeUp) {
+                        wakeUp.wait(oldest == null ? maxAge : maxAge - waited);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                //Stop, writing out what is queued before the thread exits
+                Logger.getLogger(BatchedMeasurementWriter.class.getName()).log(Level.INFO, "The measurement writer was interupted, it is stopping.");
+                running = false;
+                interrupted = true;
+            } catch (Exception ex) { //This should always keep writing data out
+                Logger.getLogger(BatchedMeasurementWriter.class.getName()).log(Level.SEVERE, "The measurement writer encountered a fault.", ex);
+            }
+        }
+        flush();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This writes out every row currently held in the queue. It returns once
+     * all rows queued before the call have been written.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            ArrayList<MeasurementRow> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * This stops the background thread, writing any remaining rows out as it
+     * does so.
+     */
+    public void stop() {
+        running = false;
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+    }
+
+    /**
+     * This indicates how many rows have been discarded, either due to the
+     * queue being full or the database failing to accept them.
+     *
+     * @return The count of rows that have been discarded.
+     */
+    public long getDroppedRowCount() {
+        return droppedRows.get();
+    }
+
+    /**
+     * This indicates how many rows are waiting to be written.
+     *
+     * @return The amount of rows currently held in the queue.
+     */
+    public int getQueuedRowCount() {
+        return queue.size();
+    }
+
+    /**
+     * This writes a batch of rows out to the database. The batch is written as
+     * a single transaction, which is retried once. If it still fails each
+     * table's rows are written in a transaction of their own and then, for a
+     * table that still fails, one row at a time. This stops a bad VM or
+     * application row from discarding the host and energy index rows written
+     * alongside it. Only rows that can not be written on their own, or that
+     * can not be written because the database can not be reached, are counted
+     * as dropped.
+     *
+     * @param batch The rows to write
+     */
+    private void write(ArrayList<MeasurementRow> batch) {
+        SQLException failure;
+        try {
+            writeTransaction(batch);
+            return;
+        } catch (SQLException ex) {
+            failure = ex;
+        }
+        try {
+            writeTransaction(batch);
+            return;
+        } catch (SQLException ex) {
+            if (isConnectionFailure(ex)) {
+                drop(batch, ex);
+                return;
+            }
+            Logger.getLogger(BatchedMeasurementWriter.class.getName()).log(Level.WARNING,
+                    "Failed to write a batch of measurements, writing it out table by table.", failure);
+        }
+        EnumMap<Table, ArrayList<MeasurementRow>> byTable = new EnumMap<>(Table.class);
+        for (MeasurementRow row : batch) {
+            ArrayList<MeasurementRow> rows = byTable.get(row.getTable());
+            if (rows == null) {
+                rows = new ArrayList<>();
+                byTable.put(row.getTable(), rows);
+            }
+            rows.add(row);
+        }
+        for (ArrayList<MeasurementRow> rows : byTable.values()) {
+            try {
+                writeTransaction(rows);
+            } catch (SQLException ex) {
+                if (isConnectionFailure(ex)) {
+                    drop(rows, ex);
+                } else {
+                    writeRowByRow(rows);
+                }
+            }
+        }
+    }
+
+    /**
+     * This writes rows out to the database one at a time, so that a single
+     * row that can not be written does not prevent the others being written.
+     *
+     * @param rows The rows to write
+     */
+    private void writeRowByRow(ArrayList<MeasurementRow> rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            MeasurementRow row = rows.get(i);
+            try {
+                writeTransaction(Collections.singletonList(row));
+            } catch (SQLException ex) {
+                if (isConnectionFailure(ex)) {
+                    drop(rows.subList(i, rows.size()), ex);
+                    return;
+                }
+                droppedRows.incrementAndGet();
+                Logger.getLogger(BatchedMeasurementWriter.class.getName()).log(Level.SEVERE,
+                        "Failed to write a " + row.getTable() + " measurement for host " + row.getHostId() + ".", ex);
+            }
+        }
+    }
+
+    /**
+     * This discards rows that could not be written.
+     *
+     * @param rows The rows to discard
+     * @param ex The reason the rows could not be written
+     */
+    private void drop(List<MeasurementRow> rows, SQLException ex) {
+        droppedRows.addAndGet(rows.size());
+        Logger.getLogger(BatchedMeasurementWriter.class.getName()).log(Level.SEVERE, "Failed to write a batch of measurements.", ex);
+    }
+
+    /**
+     * This indicates if a write failed because the database could not be
+     * reached, in which case writing the rows one at a time will not help.
+     *
+     * @param ex The reason the write failed
+     * @return If the failure was with the connection to the database
+     */
+    private static boolean isConnectionFailure(SQLException ex) {
+        return ex instanceof SQLTransientConnectionException
+                || ex instanceof SQLNonTransientConnectionException
+                || (ex.getSQLState() != null && ex.getSQLState().startsWith("08"));
+    }
+
+    /**
+     * This writes rows out to the database, as a single transaction.
+     *
+     * @param batch The rows to write
+     * @throws SQLException if the rows could not be written, in which case
+     * none of them have been.
+     */
+    void writeTransaction(List<MeasurementRow> batch) throws SQLException {
+        try (Connection connection = database.getPooledConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement hostStatement = connection.prepareStatement(HOST_INSERT);
+                    PreparedStatement vmStatement = connection.prepareStatement(VM_INSERT);
+                    PreparedStatement appStatement = connection.prepareStatement(APP_INSERT);
+                    PreparedStatement indexStatement = connection.prepareStatement(ENERGY_INDEX_INSERT)) {
+                boolean hosts = false;
+                boolean vms = false;
+                boolean apps = false;
+                boolean index = false;
+                for (MeasurementRow row : batch) {
+                    switch (row.getTable()) {
+                        case HOST:
+                            hostStatement.setInt(1, row.getHostId());
+                            hostStatement.setLong(2, row.getClock());
+                            hostStatement.setDouble(3, row.getFirstValue());
+                            hostStatement.setDouble(4, row.getSecondValue());
+                            hostStatement.addBatch();
+                            hosts = true;
+                            break;
+                        case VM:
+                            addUserRow(vmStatement, row);
+                            vms = true;
+                            break;
+                        case APP:
+                            addUserRow(appStatement, row);
+                            apps = true;
+                            break;
+                        case ENERGY_INDEX:
+                            indexStatement.setInt(1, row.getHostId());
+                            indexStatement.setLong(2, row.getClock());
+                            indexStatement.setDouble(3, row.getFirstValue());
+                            indexStatement.setDouble(4, row.getSecondValue());
+                            indexStatement.addBatch();
+                            index = true;
+                            break;
+                    }
+                }
+                if (hosts) {
+                    hostStatement.executeBatch();
+                }
+                if (vms) {
+                    vmStatement.executeBatch();
+                }
+                if (apps) {
+                    appStatement.executeBatch();
+                }
+                if (index) {
+                    indexStatement.executeBatch();
+                }
+                connection.commit();
+            }
+            /**
+             * On failure the pool rolls back the transaction and restores auto
+             * commit as the connection is returned to it.
+             */
+        }
+    }
+
+    /**
+     * This adds a VM or application measurement row to a batch statement.
+     *
+     * @param statement The statement to add the row to
+     * @param row The row to add
+     * @throws SQLException if a database access error occurs
+     */
+    private static void addUserRow(PreparedStatement statement, MeasurementRow row) throws SQLException {
+        statement.setInt(1, row.getHostId());
+        statement.setInt(2, row.getUserId());
+        statement.setLong(3, row.getClock());
+        statement.setDouble(4, row.getFirstValue());
+        statement.setDouble(5, row.getSecondValue());
+        statement.addBatch();
+    }
+
+    /**
+     * The table that a measurement row is destined for.
+     */
+    public enum Table {
+
+        HOST, VM, APP, ENERGY_INDEX
+    }
+
+    /**
+     * This is a single row of measurement data that is waiting to be written.
+     */
+    public static class MeasurementRow {
+
+        private final Table table;
+        private final int hostId;
+        private final int userId;
+        private final long clock;
+        private final double firstValue;
+        private final double secondValue;
+        private final long queuedAt = System.currentTimeMillis();
+
+        private MeasurementRow(Table table, int hostId, int userId, long clock, double firstValue, double secondValue) {
+            this.table = table;
+            this.hostId = hostId;
+            this.userId = userId;
+            this.clock = clock;
+            this.firstValue = firstValue;
+            this.secondValue = secondValue;
+        }
+
+        /**
+         * This creates a row for the host_measurement table.
+         *
+         * @param hostId The host's id
+         * @param clock The time of the measurement
+         * @param energy The energy meter reading
+         * @param power The power reading
+         * @return The row to write
+         */
+        public static MeasurementRow host(int hostId, long clock, double energy, double power) {
+            return new MeasurementRow(Table.HOST, hostId, 0, clock, energy, power);
+        }
+
+        /**
+         * This creates a row for the vm_measurement table.
+         *
+         * @param hostId The host's id
+         * @param vmId The VM's id
+         * @param clock The time of the measurement
+         * @param cpuLoad The VM's fraction of the host's load
+         * @param powerOverhead The VM's share of the overhead power
+         * @return The row to write
+         */
+        public static MeasurementRow vm(int hostId, int vmId, long clock, double cpuLoad, double powerOverhead) {
+            return new MeasurementRow(Table.VM, hostId, vmId, clock, cpuLoad, powerOverhead);
+        }
+
+        /**
+         * This creates a row for the app_measurement table.
+         *
+         * @param hostId The host's id
+         * @param appId The application's id
+         * @param clock The time of the measurement
+         * @param cpuLoad The application's fraction of the host's load
+         * @param powerOverhead The application's share of the overhead power
+         * @return The row to write
+         */
+        public static MeasurementRow app(int hostId, int appId, long clock, double cpuLoad, double powerOverhead) {
+            return new MeasurementRow(Table.APP, hostId, appId, clock, cpuLoad, powerOverhead);
+        }
+
+        /**
+         * This creates a row for the host_energy_index table.
+         *
+         * @param hostId The host's id
+         * @param clock The time of the measurement
+         * @param cumulativeEnergy The energy used by the host up to this time
+         * @param power The power reading
+         * @return The row to write
+         */
+        public static MeasurementRow energyIndex(int hostId, long clock, double cumulativeEnergy, double power) {
+            return new MeasurementRow(Table.ENERGY_INDEX, hostId, 0, clock, cumulativeEnergy, power);
+        }
+
+        /**
+         * @return The table the row is to be written to
+         */
+        public Table getTable() {
+            return table;
+        }
+
+        /**
+         * @return The id of the host the row is for
+         */
+        public int getHostId() {
+            return hostId;
+        }
+
+        /**
+         * @return The id of the VM or application the row is for, zero for
+         * host rows
+         */
+        public int getUserId() {
+            return userId;
+        }
+
+        /**
+         * @return The time the measurement was taken
+         */
+        public long getClock() {
+            return clock;
+        }
+
+        /**
+         * @return The energy for host rows, the cumulative energy for energy
+         * index rows or the cpu load for VM and application rows
+         */
+        public double getFirstValue() {
+            return firstValue;
+        }
+
+        /**
+         * @return The power for host and energy index rows or the power
+         * overhead for VM and application rows
+         */
+        public double getSecondValue() {
+            return secondValue;
+        }
+
+        /**
+         * @return The time in milliseconds the row was queued at
+         */
+        public long getQueuedAt() {
+            return queuedAt;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import eu.tango.energymodeller.types.energyuser.Accelerator;
+import eu.tango.energymodeller.types.energyuser.Host;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * This keeps running totals of the current power consumption of the hosts in
+ * the data centre and of the power allocated to the VMs running on them. The
+ * totals are updated as each host's measurement is processed, by adding the
+ * host's new values and removing its previous ones, so the totals can be read
+ * without visiting every host.
+ *
+ * The power allocated to a host's VMs is the sum of the VMs' shares of the
+ * host's power. Whichever energy share rule is used the shares sum to the
+ * host's power, or if idle energy is considered to the larger of the host's
+ * power and its idle power. This only depends upon whether any VMs are on the
+ * host.
+ *
+ * The totals are also kept for groups of hosts that share an attribute, such
+ * as their state.
+ *
+ * @author Richard Kavanagh
+ */
+public class ClusterPowerAggregates {
+
+    /**
+     * The attribute of a host by which totals may be grouped.
+     */
+    public enum GroupBy {
+
+        /**
+         * All hosts are placed in a single group.
+         */
+        NONE,
+        /**
+         * Hosts are grouped by their state, such as SLURM's drain state.
+         */
+        STATE,
+        /**
+         * Hosts are grouped by whether they are available.
+         */
+        AVAILABILITY,
+        /**
+         * Hosts are grouped by the types of accelerator they have.
+         */
+        ACCELERATOR;
+
+        /**
+         * This gets the group that a host belongs to.
+         *
+         * @param host The host to get the group of
+         * @return The name of the host's group
+         */
+        public String getGroup(Host host) {
+            switch (this) {
+                case STATE:
+                    return (host.getState() == null ? "" : host.getState());
+                case AVAILABILITY:
+                    return (host.isAvailable() ? "AVAILABLE" : "UNAVAILABLE");
+                case ACCELERATOR:
+                    if (!host.hasAccelerator()) {
+                        return "NONE";
+                    }
+                    TreeSet<String> types = new TreeSet<>();
+                    for (Accelerator accelerator : host.getAccelerators()) {
+                        types.add(accelerator.getType().name());
+                    }
+                    StringBuilder answer = new StringBuilder();
+                    for (String type : types) {
+                        if (answer.length() > 0) {
+                            answer.append(",");
+                        }
+                        answer.append(type);
+                    }
+                    return answer.toString();
+                default:
+                    return "";
+            }
+        }
+    }
+
+    /**
+     * The running totals are rebuilt from the per host values after this many
+     * updates, which stops rounding errors from building up.
+     */
+    private static final int RECOMPUTE_INTERVAL = 10000;
+    private final GroupBy groupBy;
+    private final HashMap<Host, HostPower> hosts = new HashMap<>();
+    private final HashMap<String, PowerTotal> groups = new HashMap<>();
+    private final PowerTotal total = new PowerTotal();
+    private int updateCount = 0;
+    private long lastUpdated = 0;
+
+    /**
+     * This creates a new set of cluster power totals.
+     *
+     * @param groupBy The attribute of a host to group totals by
+     */
+    public ClusterPowerAggregates(GroupBy groupBy) {
+        this.groupBy = (groupBy == null ? GroupBy.NONE : groupBy);
+    }
+
+    /**
+     * This updates the totals with the latest power consumption of a host.
+     *
+     * @param host The host that was measured
+     * @param power The host's current power consumption
+     * @param hasVms If any VMs are running on the host
+     */
+    public synchronized void update(Host host, double power, boolean hasVms) {
+        HostPower current = new HostPower(groupBy.getGroup(host), power,
+                (hasVms ? power : 0),
+                (hasVms ? Math.max(power, host.getIdlePowerConsumption()) : 0));
+        HostPower previous = hosts.put(host, current);
+        if (previous != null) {
+            remove(previous);
+        }
+        add(current);
+        updateCount = updateCount + 1;
+        if (updateCount >= RECOMPUTE_INTERVAL) {
+            recompute();
+        }
+        lastUpdated = System.currentTimeMillis();
+    }
+
+    /**
+     * This removes hosts that are no longer seen from the totals.
+     *
+     * @param current The hosts that are currently seen
+     */
+    public synchronized void retain(Collection<Host> current) {
+        HashSet<Host> seen = new HashSet<>(current);
+        Iterator<Map.Entry<Host, HostPower>> iterator = hosts.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Host, HostPower> host = iterator.next();
+            if (!seen.contains(host.getKey())) {
+                remove(host.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * This adds a host's values to the totals.
+     *
+     * @param value The host's values
+     */
+    private void add(HostPower value) {
+        total.add(value, 1);
+        PowerTotal group = groups.get(value.group);
+        if (group == null) {
+            group = new PowerTotal();
+            groups.put(value.group, group);
+        }
+        group.add(value, 1);
+    }
+
+    /**
+     * This removes a host's values from the totals.
+     *
+     * @param value The host's values
+     */
+    private void remove(HostPower value) {
+        total.add(value, -1);
+        PowerTotal group = groups.get(value.group);
+        group.add(value, -1);
+        if (group.hostCount == 0) {
+            groups.remove(value.group);
+        }
+    }
+
+    /**
+     * This rebuilds the totals from the values held for each host.
+     */
+    private void recompute() {
+        total.clear();
+        groups.clear();
+        for (HostPower value : hosts.values()) {
+            add(value);
+        }
+        updateCount = 0;
+    }
+
+    /**
+     * This indicates if the totals have been updated recently enough to be
+     * used.
+     *
+     * @param maxAge The maximum age in milliseconds, a negative value
+     * indicates there is no limit.
+     * @return If the totals have been updated and the last update is no older
+     * than the maximum age given.
+     */
+    public synchronized boolean isFresh(long maxAge) {
+        return lastUpdated != 0 && (maxAge < 0 || System.currentTimeMillis() - lastUpdated <= maxAge);
+    }
+
+    /**
+     * This returns the attribute by which hosts are grouped.
+     *
+     * @return The attribute used to group hosts
+     */
+    public GroupBy getGroupBy() {
+        return groupBy;
+    }
+
+    /**
+     * This returns the amount of hosts the totals are made from.
+     *
+     * @return The amount of hosts
+     */
+    public synchronized int getHostCount() {
+        return total.hostCount;
+    }
+
+    /**
+     * This returns the total current power consumption of all hosts.
+     *
+     * @return The total power consumption of the hosts
+     */
+    public synchronized double getHostPower() {
+        return total.hostPower;
+    }
+
+    /**
+     * This returns the total current power consumption allocated to VMs.
+     *
+     * @param considerIdleEnergy If the VMs are allocated the host's idle
+     * energy
+     * @return The total power consumption of the VMs
+     */
+    public synchronized double getVmPower(boolean considerIdleEnergy) {
+        return (considerIdleEnergy ? total.vmPowerWithIdle : total.vmPower);
+    }
+
+    /**
+     * This returns the fraction of the hosts' power consumption that is
+     * allocated to VMs.
+     *
+     * @param considerIdleEnergy If the VMs are allocated the host's idle
+     * energy
+     * @return The total VM power consumption / total host power consumption
+     */
+    public synchronized double getVmToHostPowerRatio(boolean considerIdleEnergy) {
+        return getVmPower(considerIdleEnergy) / total.hostPower;
+    }
+
+    /**
+     * This returns the hosts' power consumption that is not allocated to VMs.
+     *
+     * @param considerIdleEnergy If the VMs are allocated the host's idle
+     * energy
+     * @return The total host power consumption - total VM power consumption
+     */
+    public synchronized double getHostPowerUnallocatedToVms(boolean considerIdleEnergy) {
+        return total.hostPower - getVmPower(considerIdleEnergy);
+    }
+
+    /**
+     * This returns the total current power consumption of the hosts in each
+     * group.
+     *
+     * @return The total power consumption of the hosts, by group name
+     */
+    public synchronized Map<String, Double> getHostPowerByGroup() {
+        TreeMap<String, Double> answer = new TreeMap<>();
+        for (Map.Entry<String, PowerTotal> group : groups.entrySet()) {
+            answer.put(group.getKey(), group.getValue().hostPower);
+        }
+        return answer;
+    }
+
+    /**
+     * This returns the total current power consumption allocated to VMs in
+     * each group of hosts.
+     *
+     * @param considerIdleEnergy If the VMs are allocated the host's idle
+     * energy
+     * @return The total power consumption of the VMs, by group name
+     */
+    public synchronized Map<String, Double> getVmPowerByGroup(boolean considerIdleEnergy) {
+        TreeMap<String, Double> answer = new TreeMap<>();
+        for (Map.Entry<String, PowerTotal> group : groups.entrySet()) {
+            answer.put(group.getKey(), (considerIdleEnergy ? group.getValue().vmPowerWithIdle : group.getValue().vmPower));
+        }
+        return answer;
+    }
+
+    /**
+     * The values last seen for a single host.
+     */
+    private static class HostPower {
+
+        private final String group;
+        private final double hostPower;
+        private final double vmPower;
+        private final double vmPowerWithIdle;
+
+        public HostPower(String group, double hostPower, double vmPower, double vmPowerWithIdle) {
+            this.group = group;
+            this.hostPower = hostPower;
+            this.vmPower = vmPower;
+            this.vmPowerWithIdle = vmPowerWithIdle;
+        }
+    }
+
+    /**
+     * The running totals for a set of hosts.
+     */
+    private static class PowerTotal {
+
+        private int hostCount = 0;
+        private double hostPower = 0;
+        private double vmPower = 0;
+        private double vmPowerWithIdle = 0;
+
+        /**
+         * This adds or removes a host's values from the totals.
+         *
+         * @param value The host's values
+         * @param sign 1 to add the values, -1 to remove them
+         */
+        private void add(HostPower value, int sign) {
+            hostCount = hostCount + sign;
+            hostPower = hostPower + sign * value.hostPower;
+            vmPower = vmPower + sign * value.vmPower;
+            vmPowerWithIdle = vmPowerWithIdle + sign * value.vmPowerWithIdle;
+        }
+
+        /**
+         * This resets the totals to zero.
+         */
+        private void clear() {
+            hostCount = 0;
+            hostPower = 0;
+            vmPower = 0;
+            vmPowerWithIdle = 0;
+        }
+    }
+}
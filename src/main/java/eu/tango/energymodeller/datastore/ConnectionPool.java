@@ -0,0 +1,241 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This is a small pool of database connections that may be used concurrently
+ * by several threads. Connections handed out by the pool are returned to it
+ * when closed, so they may be used in try with resources blocks.
+ *
+ * Connections are only validated against the database if they have been idle
+ * for longer than the validation interval, rather than before every query.
+ *
+ * @author Richard Kavanagh
+ */
+public class ConnectionPool {
+
+    private final MySqlDatabaseConnector factory;
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final long validationInterval;
+    private final long borrowTimeout;
+    private final AtomicInteger generation = new AtomicInteger(0);
+
+    /**
+     * This creates a new connection pool.
+     *
+     * @param factory The database connector that creates new connections.
+     * @param size The maximum amount of connections that may be open at once.
+     * @param validationInterval The time in milliseconds a connection may be
+     * idle for before it is validated prior to reuse.
+     * @param borrowTimeout The time in milliseconds to wait for a connection
+     * to become available, when all are in use.
+     */
+    public ConnectionPool(MySqlDatabaseConnector factory, int size, long validationInterval, long borrowTimeout) {
+        this.factory = factory;
+        this.permits = new Semaphore(Math.max(1, size), true);
+        this.validationInterval = validationInterval;
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    /**
+     * This obtains a connection from the pool, creating one if none are idle.
+     * The connection must be closed after use, which returns it to the pool.
+     *
+     * @return A connection to the database
+     * @throws SQLException If no connection could be obtained
+     */
+    public Connection getConnection() throws SQLException {
+        try {
+            if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a free database connection");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interupted while waiting for a free database connection", ex);
+        }
+        try {
+            Connection connection = takeIdleConnection();
+            if (connection == null) {
+                connection = factory.getConnection();
+            }
+            if (connection == null) {
+                throw new SQLException("Failed to establish the connection to the database");
+            }
+            return wrap(connection, generation.get());
+        } catch (IOException | ClassNotFoundException ex) {
+            permits.release();
+            throw new SQLException("Failed to establish the connection to the database", ex);
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * This takes the most recently used idle connection from the pool,
+     * validating it if it has been idle for too long.
+     *
+     * @return An idle connection or null if none are available.
+     */
+    private Connection takeIdleConnection() {
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            try {
+                if (System.currentTimeMillis() - candidate.getIdleSince() < validationInterval
+                        || candidate.getConnection().isValid(5)) {
+                    return candidate.getConnection();
+                }
+            } catch (SQLException ex) {
+                Logger.getLogger(ConnectionPool.class.getName()).log(Level.FINE, "An idle connection failed validation", ex);
+            }
+            closeQuietly(candidate.getConnection());
+        }
+        return null;
+    }
+
+    /**
+     * This returns a connection to the pool.
+     *
+     * @param connection The underlying connection to return.
+     * @param borrowedGeneration The generation of the pool when the
+     * connection was handed out.
+     */
+    private void release(Connection connection, int borrowedGeneration) {
+        try {
+            if (borrowedGeneration != generation.get() || connection.isClosed()) {
+                closeQuietly(connection);
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            idle.offerFirst(new IdleConnection(connection));
+        } catch (SQLException ex) {
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * This closes all idle connections. Connections that are in use are
+     * closed as they are returned. The pool may be used again afterwards, in
+     * which case new connections are opened.
+     */
+    public void close() {
+        generation.incrementAndGet();
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            closeQuietly(candidate.getConnection());
+        }
+    }
+
+    /**
+     * This closes a connection ignoring any errors.
+     *
+     * @param connection The connection to close.
+     */
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            Logger.getLogger(ConnectionPool.class.getName()).log(Level.FINE, "The connection close operation failed.", ex);
+        }
+    }
+
+    /**
+     * This wraps a connection so that closing it returns it to the pool.
+     *
+     * @param connection The connection to wrap
+     * @param borrowedGeneration The generation of the pool the connection
+     * belongs to
+     * @return The wrapped connection
+     */
+    private Connection wrap(final Connection connection, final int borrowedGeneration) {
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new InvocationHandler() {
+            private boolean returned = false;
+
+            @Override
+            public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!returned) {
+                            returned = true;
+                            release(connection, borrowedGeneration);
+                        }
+                        return null;
+                    case "isClosed":
+                        return returned || connection.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        if (returned) {
+                            throw new SQLException("The connection has been returned to the pool");
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                }
+            }
+        });
+    }
+
+    /**
+     * This is a connection waiting in the pool, alongside when it was last
+     * used.
+     */
+    private static class IdleConnection {
+
+        private final Connection connection;
+        private final long idleSince = System.currentTimeMillis();
+
+        public IdleConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        public long getIdleSince() {
+            return idleSince;
+        }
+    }
+}
@@ -34,10 +34,21 @@ import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.configuration.ConfigurationException;
@@ -53,12 +64,12 @@ public class DataGatherer implements Runnable {
 
     private final HostDataSource datasource;
     private final DatabaseConnector database;
-    private boolean running = true;
+    private volatile boolean running = true;
     private int faultCount = 0;
     private HashMap<String, Host> knownHosts = new HashMap<>();
     private HashMap<String, GeneralPurposePowerConsumer> knownGeneralPurposeNodes = new HashMap<>();
-    private HashMap<String, VmDeployed> knownVms = new HashMap<>();
-    private final HashMap<Host, Long> lastTimeStampSeen = new HashMap<>();
+    private ConcurrentHashMap<String, VmDeployed> knownVms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Host, Long> lastTimeStampSeen = new ConcurrentHashMap<>();
     private static final String CONFIG_FILE = "energy-modeller-data-gatherer.properties";
     private boolean logVmsToDisk = false;
     private boolean logAppsToDisk = false;
@@ -70,6 +81,12 @@ public class DataGatherer implements Runnable {
     private ApplicationEnergyUsageLogger appUsageLogger = null;
     private boolean useWorkloadCache = false;
     private WorkloadStatisticsCache workloadCache = null;
+    private int workerThreads = 4;
+    private ExecutorService workerPool = null;
+    private volatile long lastCycleDuration = 0;
+    private final AtomicReference<DataGathererSnapshot> snapshot = new AtomicReference<>();
+    private volatile long snapshotMaxAge = TimeUnit.SECONDS.toMillis(30);
+    private ClusterPowerAggregates powerAggregates = new ClusterPowerAggregates(ClusterPowerAggregates.GroupBy.NONE);
 
     /**
      * This creates a data gather component for the energy modeller.
@@ -109,6 +126,17 @@ public class DataGatherer implements Runnable {
                 workloadCache = WorkloadStatisticsCache.getInstance();
                 workloadCache.setInUse(true);
             }
+            workerThreads = config.getInt("energy.modeller.data.gatherer.worker_threads", workerThreads);
+            config.setProperty("energy.modeller.data.gatherer.worker_threads", workerThreads);
+            snapshotMaxAge = config.getLong("energy.modeller.data.gatherer.snapshot.max_age_ms", snapshotMaxAge);
+            config.setProperty("energy.modeller.data.gatherer.snapshot.max_age_ms", snapshotMaxAge);
+            String groupBy = config.getString("energy.modeller.data.gatherer.aggregate.group_by", powerAggregates.getGroupBy().name());
+            config.setProperty("energy.modeller.data.gatherer.aggregate.group_by", groupBy);
+            try {
+                powerAggregates = new ClusterPowerAggregates(ClusterPowerAggregates.GroupBy.valueOf(groupBy.trim().toUpperCase()));
+            } catch (IllegalArgumentException ex) {
+                Logger.getLogger(DataGatherer.class.getName()).log(Level.WARNING, "The host attribute to group power totals by was not recognised", ex);
+            }
         } catch (ConfigurationException ex) {
             Logger.getLogger(DataGatherer.class.getName()).log(Level.INFO, "Error loading the configuration of the IaaS energy modeller", ex);
         }
@@ -189,6 +217,9 @@ public class DataGatherer implements Runnable {
      */
     public void stop() {
         running = false;
+        if (workerPool != null) {
+            workerPool.shutdown();
+        }
         database.closeConnection();
         if (vmUsageLogger != null) {
             vmUsageLogger.stop();
@@ -239,6 +270,10 @@ public class DataGatherer implements Runnable {
      * hypervisors).
      */
     public double getGeneralPurposeHostsPowerConsumption() {
+        DataGathererSnapshot current = getFreshSnapshot();
+        if (current != null) {
+            return current.getGeneralPurposeHostsPowerConsumption();
+        }
         return getGeneralPurposeHostsPowerConsumption(null);
     }
 
@@ -293,11 +328,15 @@ public class DataGatherer implements Runnable {
             appUsageLoggerThread.setDaemon(true);
             appUsageLoggerThread.start();
         }
+        if (workerThreads > 1 && performDataGathering) {
+            workerPool = Executors.newFixedThreadPool(workerThreads, new GathererThreadFactory());
+        }
         /**
          * Polls the data source and write values to the database.
          */
         while (running) {
             try {
+                long cycleStart = System.currentTimeMillis();
                 Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Obtaining online host and vm list");
                 List<EnergyUsageSource> energyConsumers = datasource.getHostAndVmList();
                 List<Host> hostList = getHostList(energyConsumers);
@@ -310,7 +349,6 @@ public class DataGatherer implements Runnable {
                 List<HostMeasurement> measurements = datasource.getHostData(hostList);
                 List<HostMeasurement> generalNodeMeasurements = datasource.getHostData(GeneralPurposePowerConsumer.generalPurposeHostListToHostList(generalPurposeList));
                 for (HostMeasurement measurement : measurements) {
-                    Host host = knownHosts.get(measurement.getHost().getHostName());
                     /**
                      * This ensures all the calibration data is available, by
                      * setting the host from the cached data. HostList
@@ -318,16 +356,24 @@ public class DataGatherer implements Runnable {
                      * database/cache, which includes information such as idle
                      * energy usage.
                      */
-                    measurement.setHost(host);
-                    /**
-                     * Update only if a value has not been provided before or
-                     * the timestamp value has changed. This keeps the data
-                     * written to backing store as clean as possible.
-                     */
-                    if (performDataGathering) {
-                        gatherMeasurements(host, measurement, getGeneralPurposeHostsPowerConsumption(generalNodeMeasurements), vmList);
-                    }
+                    measurement.setHost(knownHosts.get(measurement.getHost().getHostName()));
+                }
+                double generalPurposePower = getGeneralPurposeHostsPowerConsumption(generalNodeMeasurements);
+                ConcurrentHashMap<Host, HostEnergyUserLoadFraction> vmLoad = new ConcurrentHashMap<>();
+                ConcurrentHashMap<Host, HostEnergyUserLoadFraction> appLoad = new ConcurrentHashMap<>();
+                if (useWorkloadCache && !workloadCache.isRecovered()) {
+                    //Tries the rebuild again if it failed, this has no effect while it is running
+                    workloadCache.rebuild(database);
                 }
+                //The running applications are read once and used by both the hosts and the snapshot
+                List<ApplicationOnHost> apps = datasource.getHostApplicationList(ApplicationOnHost.JOB_STATUS.RUNNING);
+                if (performDataGathering) {
+                    gatherMeasurements(measurements, generalPurposePower, vmList, apps, vmLoad, appLoad);
+                }
+                publishSnapshot(hostList, vmList, apps, measurements, vmLoad, appLoad, generalPurposePower);
+                lastCycleDuration = System.currentTimeMillis() - cycleStart;
+                Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Cycle of {0} hosts took {1} ms",
+                        new Object[]{measurements.size(), lastCycleDuration});
                 try {
                     //Note: The Zabbix API takes a few seconds to call, so don't call it faster than 3-4 seconds
                     Thread.sleep(1000);
@@ -351,15 +397,91 @@ public class DataGatherer implements Runnable {
         }
     }
 
+    /**
+     * This gathers and writes the measurements of every host seen in a single
+     * cycle. Hosts are processed concurrently on the worker pool, though each
+     * host is only ever handled by one task per cycle and the cycle waits for
+     * all tasks to complete. This preserves the per host ordering given by the
+     * last time stamp seen.
+     *
+     * @param measurements The host measurements obtained in this cycle
+     * @param hostOffset The overhead from general purpose nodes to add to each
+     * host
+     * @param vmList The list of VMs that are currently running
+     * @param apps The applications that are currently running
+     * @param vmLoad The map to record the load fractions of each host's VMs in
+     * @param appLoad The map to record the load fractions of each host's
+     * applications in
+     * @throws Exception The first fault seen amongst the hosts, this is only
+     * reported once all hosts have been processed.
+     */
+    private void gatherMeasurements(List<HostMeasurement> measurements, final double hostOffset, List<VmDeployed> vmList,
+            List<ApplicationOnHost> apps, final Map<Host, HostEnergyUserLoadFraction> vmLoad,
+            final Map<Host, HostEnergyUserLoadFraction> appLoad) throws Exception {
+        /**
+         * The VMs and applications on each host are worked out here, on the
+         * cycle's thread, so each host is only given its own lists and the
+         * known VMs are not read by several threads at once.
+         */
+        HashMap<Host, List<VmDeployed>> vmsByHost = getVMsByHost(vmList);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (final HostMeasurement measurement : measurements) {
+            final Host host = measurement.getHost();
+            List<VmDeployed> hostVms = (host == null ? null : vmsByHost.get(host));
+            final List<VmDeployed> vms = (hostVms == null
+                    ? Collections.<VmDeployed>emptyList() : Collections.unmodifiableList(hostVms));
+            final List<ApplicationOnHost> hostApps = (host == null
+                    ? Collections.<ApplicationOnHost>emptyList() : Collections.unmodifiableList(ApplicationOnHost.filter(apps, host)));
+            if (workerPool == null) {
+                gatherMeasurements(host, measurement, hostOffset, vms, hostApps, vmLoad, appLoad);
+                continue;
+            }
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    gatherMeasurements(host, measurement, hostOffset, vms, hostApps, vmLoad, appLoad);
+                    return null;
+                }
+            });
+        }
+        if (workerPool == null) {
+            return;
+        }
+        Exception fault = null;
+        for (Future<Void> result : workerPool.invokeAll(tasks)) {
+            try {
+                result.get();
+            } catch (ExecutionException ex) {
+                if (fault == null && ex.getCause() instanceof Exception) {
+                    fault = (Exception) ex.getCause();
+                }
+            }
+        }
+        if (fault != null) {
+            throw fault;
+        }
+    }
+
     /**
      * This method gathers and writes host measurements to disk and to the
      * background database for future usage.
      *
      * @param host The host to gather data for
      * @param measurement The measurement data to write to disk.
-     * @param vmList The list of VMs that are currently running
+     * @param hostOffset The overhead from general purpose nodes to add to the
+     * host
+     * @param vms The VMs that are currently running on the host
+     * @param apps The applications that are currently running on the host
+     * @param vmLoad The map to record the load fractions of the host's VMs in
+     * @param appLoad The map to record the load fractions of the host's
+     * applications in
      */
-    private void gatherMeasurements(Host host, HostMeasurement measurement, double hostOffset, List<VmDeployed> vmList) {       
+    private void gatherMeasurements(Host host, HostMeasurement measurement, double hostOffset, List<VmDeployed> vms,
+            List<ApplicationOnHost> apps, Map<Host, HostEnergyUserLoadFraction> vmLoad, Map<Host, HostEnergyUserLoadFraction> appLoad) {
+        if (host == null) {
+            Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Measurement seen for an unknown host");
+            return;
+        }
         if (lastTimeStampSeen.get(host) == null || measurement.getClock() > lastTimeStampSeen.get(host)) {
             lastTimeStampSeen.put(host, measurement.getClock());
             Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Writing out host information");
@@ -380,8 +502,6 @@ public class DataGatherer implements Runnable {
                 */                
                 ((InfluxDbBasedDataSourceAdaptor)datasource).writeOutHostValuesToInflux(host, measurement.getPower(true));
             }           
-            Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Obtaining list of vms on host {0}", host.getHostName());
-            ArrayList<VmDeployed> vms = getVMsOnHost(host, vmList);
             if (!vms.isEmpty()) {
                 HostEnergyUserLoadFraction fraction = new HostEnergyUserLoadFraction(host, measurement.getClock());
                 Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Obtaining specific vm information");
@@ -391,6 +511,7 @@ public class DataGatherer implements Runnable {
                 }
                 fraction.setFraction(vmMeasurements);
                 fraction.setHostPowerOffset(hostOffset);
+                vmLoad.put(host, fraction);
                 Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Writing out vm information");
                 database.writeHostVMHistoricData(host, measurement.getClock(), fraction);
                 if (vmUsageLogger != null) {
@@ -398,8 +519,6 @@ public class DataGatherer implements Runnable {
                     vmUsageLogger.printToFile(vmUsageLogger.new Pair(measurement, fraction));
                 }
             }
-            List<ApplicationOnHost> apps = datasource.getHostApplicationList(ApplicationOnHost.JOB_STATUS.RUNNING);
-            apps = ApplicationOnHost.filter(apps, host);
             if (!apps.isEmpty() && datasource instanceof ApplicationDataSource) {
                 Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Obtaining specific app information");
                 List<ApplicationMeasurement> appMeasurements = ((ApplicationDataSource) datasource).getApplicationData(apps);
@@ -409,6 +528,7 @@ public class DataGatherer implements Runnable {
                 HostEnergyUserLoadFraction fraction = new HostEnergyUserLoadFraction(host, measurement.getClock());
                 fraction.setApplicationFraction(appMeasurements);
                 fraction.setHostPowerOffset(hostOffset);
+                appLoad.put(host, fraction);
                 //TODO Write this data to the database
                 if (appUsageLogger != null) {
                     Logger.getLogger(DataGatherer.class.getName()).log(Level.FINE, "Data gatherer: Logging out to Zabbix file, for applications");
@@ -418,6 +538,146 @@ public class DataGatherer implements Runnable {
         }
     }
 
+    /**
+     * This builds the snapshot of the cycle that has just completed and
+     * publishes it for readers. Load fractions are only gathered for hosts
+     * with a new measurement, so a host whose measurement has not changed
+     * keeps the load fractions from the previous snapshot.
+     *
+     * @param hostList The hosts seen in the cycle
+     * @param vmList The VMs that are running
+     * @param apps The applications that are running
+     * @param measurements The host measurements obtained in the cycle
+     * @param vmLoad The load fractions of the VMs gathered in the cycle
+     * @param appLoad The load fractions of the applications gathered in the
+     * cycle
+     * @param generalPurposePower The overhead from general purpose nodes
+     * attributed to each host
+     */
+    private void publishSnapshot(List<Host> hostList, List<VmDeployed> vmList, List<ApplicationOnHost> apps, List<HostMeasurement> measurements,
+            Map<Host, HostEnergyUserLoadFraction> vmLoad, Map<Host, HostEnergyUserLoadFraction> appLoad, double generalPurposePower) {
+        DataGathererSnapshot previous = snapshot.get();
+        if (previous != null) {
+            for (HostMeasurement measurement : measurements) {
+                Host host = measurement.getHost();
+                if (host == null) {
+                    continue;
+                }
+                carryLoadFraction(host, measurement.getClock(), previous.getVmLoadFraction(host), vmLoad);
+                carryLoadFraction(host, measurement.getClock(), previous.getApplicationLoadFraction(host), appLoad);
+            }
+        }
+        List<Host> hosts = new ArrayList<>();
+        for (Host host : hostList) {
+            Host known = knownHosts.get(host.getHostName());
+            hosts.add(known == null ? host : known);
+        }
+        DataGathererSnapshot current = new DataGathererSnapshot(hosts, getRunningVMs(vmList), apps,
+                measurements, vmLoad, appLoad, generalPurposePower);
+        snapshot.set(current);
+        updatePowerAggregates(current, measurements);
+    }
+
+    /**
+     * This updates the cluster's power totals with the host measurements of
+     * the cycle. Hosts without a power reading are removed from the totals.
+     *
+     * @param current The snapshot of the cycle
+     * @param measurements The host measurements obtained in the cycle
+     */
+    private void updatePowerAggregates(DataGathererSnapshot current, List<HostMeasurement> measurements) {
+        List<Host> measured = new ArrayList<>();
+        for (HostMeasurement measurement : measurements) {
+            Host host = measurement.getHost();
+            if (host == null) {
+                continue;
+            }
+            double power = measurement.getPower(true);
+            if (power != -1) {
+                powerAggregates.update(host, power, !current.getVMsOnHost(host).isEmpty());
+                measured.add(host);
+            }
+        }
+        powerAggregates.retain(measured);
+    }
+
+    /**
+     * This returns the cluster's power totals, if they have been updated
+     * recently enough to be used.
+     *
+     * @return The cluster's power totals, or null if there are no totals
+     * recent enough to be used.
+     */
+    public ClusterPowerAggregates getFreshPowerAggregates() {
+        if (snapshotMaxAge == 0 || !powerAggregates.isFresh(snapshotMaxAge)) {
+            return null;
+        }
+        return powerAggregates;
+    }
+
+    /**
+     * This keeps a host's load fraction from the previous snapshot, if it
+     * describes the same measurement and no new load fraction was gathered.
+     *
+     * @param host The host the load fraction is for
+     * @param clock The time of the host's current measurement
+     * @param previous The load fraction from the previous snapshot
+     * @param load The load fractions gathered in this cycle
+     */
+    private static void carryLoadFraction(Host host, long clock, HostEnergyUserLoadFraction previous, Map<Host, HostEnergyUserLoadFraction> load) {
+        if (previous != null && previous.getTime() == clock && !load.containsKey(host)) {
+            load.put(host, previous);
+        }
+    }
+
+    /**
+     * This returns the snapshot of the most recently completed data gathering
+     * cycle, regardless of its age.
+     *
+     * @return The latest snapshot, or null if no cycle has completed yet.
+     */
+    public DataGathererSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * This returns the snapshot of the most recently completed data gathering
+     * cycle, if it is no older than the snapshot's maximum age.
+     *
+     * @return The latest snapshot, or null if there is no snapshot recent
+     * enough to be used.
+     */
+    public DataGathererSnapshot getFreshSnapshot() {
+        DataGathererSnapshot answer = snapshot.get();
+        if (answer == null || snapshotMaxAge == 0 || !answer.isFresh(snapshotMaxAge)) {
+            return null;
+        }
+        return answer;
+    }
+
+    /**
+     * This sets how old a snapshot may be before reads stop being served from
+     * it, and instead go to the data source.
+     *
+     * @param snapshotMaxAge The maximum age in milliseconds. Zero stops reads
+     * being served from snapshots and a negative value indicates there is no
+     * limit.
+     */
+    public void setSnapshotMaxAge(long snapshotMaxAge) {
+        this.snapshotMaxAge = snapshotMaxAge;
+    }
+
+    /**
+     * This indicates how old a snapshot may be before reads stop being served
+     * from it.
+     *
+     * @return The maximum age in milliseconds. Zero indicates reads are not
+     * served from snapshots and a negative value indicates there is no limit.
+     */
+    public long getSnapshotMaxAge() {
+        return snapshotMaxAge;
+    }
+
     /**
      * This allows the energy share rule to be set.
      *
@@ -579,7 +839,7 @@ public class DataGatherer implements Runnable {
     private void refreshKnownVMList(List<VmDeployed> vmList) {
         //Perform a refresh to make sure the VMs have been written to backing store
         if (knownVms == null) {
-            knownVms = toHashMapVm(vmList);
+            knownVms = new ConcurrentHashMap<>(toHashMapVm(vmList));
             database.getVMProfileData(vmList);
             database.setVms(vmList);
         } else {
@@ -651,10 +911,10 @@ public class DataGatherer implements Runnable {
     /**
      * This provides the list of known Vms
      *
-     * @return The list of known Vms
+     * @return A copy of the list of known Vms
      */
     public HashMap<String, VmDeployed> getVmList() {
-        return knownVms;
+        return new HashMap<>(knownVms);
     }
 
     /**
@@ -751,9 +1011,56 @@ public class DataGatherer implements Runnable {
      * @return The list of VMs on the specified host
      */
     public ArrayList<VmDeployed> getVMsOnHost(Host host) {
+        DataGathererSnapshot current = getFreshSnapshot();
+        if (current != null) {
+            return new ArrayList<>(current.getVMsOnHost(host));
+        }
         return getVMsOnHost(host, datasource.getVmList());
     }
 
+    /**
+     * This gets the known VMs that are currently running.
+     *
+     * @param activeVMs The list of VMs known to be active.
+     * @return The list of known VMs that are active, with their host set.
+     */
+    private List<VmDeployed> getRunningVMs(List<VmDeployed> activeVMs) {
+        HashSet<VmDeployed> currentVMs = new HashSet<>();
+        currentVMs.addAll(activeVMs);
+        ArrayList<VmDeployed> answer = new ArrayList<>();
+        for (VmDeployed vm : knownVms.values()) {
+            if (vm != null && currentVMs.contains(vm)) {
+                answer.add(validateVMInformation(vm));
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This groups the known VMs that are currently running by the host they
+     * are on.
+     *
+     * @param activeVMs The list of VMs known to be active.
+     * @return The running VMs on each host
+     */
+    private HashMap<Host, List<VmDeployed>> getVMsByHost(List<VmDeployed> activeVMs) {
+        HashSet<VmDeployed> currentVMs = new HashSet<>();
+        currentVMs.addAll(activeVMs);
+        HashMap<Host, List<VmDeployed>> answer = new HashMap<>();
+        for (VmDeployed vm : knownVms.values()) {
+            validateVMInformation(vm);
+            if (vm.getAllocatedTo() != null && currentVMs.contains(vm)) {
+                List<VmDeployed> vms = answer.get(vm.getAllocatedTo());
+                if (vms == null) {
+                    vms = new ArrayList<>();
+                    answer.put(vm.getAllocatedTo(), vms);
+                }
+                vms.add(vm);
+            }
+        }
+        return answer;
+    }
+
     /**
      * This gets a list of the VMs that are currently on a host machine.
      *
@@ -787,6 +1094,11 @@ public class DataGatherer implements Runnable {
                     "The host to get the list of applications for was not detected correctly");
             return answer;
         }
+        DataGathererSnapshot current = getFreshSnapshot();
+        if (current != null) {
+            answer.addAll(current.getApplications(host));
+            return answer;
+        }
         for (ApplicationOnHost app : datasource.getHostApplicationList()) {
             if (host.equals(app.getAllocatedTo())) {
                 answer.add(app);
@@ -801,6 +1113,10 @@ public class DataGatherer implements Runnable {
      * @return The list of applications running on the specified host
      */
     public ArrayList<ApplicationOnHost> getApplications() {
+        DataGathererSnapshot current = getFreshSnapshot();
+        if (current != null) {
+            return new ArrayList<>(current.getApplications());
+        }
         return (ArrayList<ApplicationOnHost>) datasource.getHostApplicationList();
     }
 
@@ -813,7 +1129,7 @@ public class DataGatherer implements Runnable {
      */
     public ArrayList<ApplicationOnHost> getApplication(String name, int deploymentId) {
         ArrayList<ApplicationOnHost> answer = new ArrayList<>();
-        for (ApplicationOnHost app : datasource.getHostApplicationList()) {
+        for (ApplicationOnHost app : getApplications()) {
             if (app.getName().equals(name) && app.getId() == deploymentId) {
                 /**
                  * The application may run over several hosts therefore multiple
@@ -850,4 +1166,30 @@ public class DataGatherer implements Runnable {
         return this.performDataGathering;
     }
 
+    /**
+     * This indicates how long the last complete data gathering cycle took,
+     * excluding the pause between cycles.
+     *
+     * @return The duration of the last cycle in milliseconds.
+     */
+    public long getLastCycleDuration() {
+        return lastCycleDuration;
+    }
+
+    /**
+     * This names and marks as daemons the threads used by the data gatherer's
+     * worker pool.
+     */
+    private static class GathererThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread answer = new Thread(runnable, "energy-modeller-gatherer-" + threadCount.incrementAndGet());
+            answer.setDaemon(true);
+            return answer;
+        }
+    }
+
 }
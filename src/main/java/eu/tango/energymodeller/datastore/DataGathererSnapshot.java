@@ -0,0 +1,272 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import eu.tango.energymodeller.datasourceclient.HostMeasurement;
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.energymodeller.types.energyuser.VmDeployed;
+import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
+import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the state of the data centre as seen by a single cycle of the data
+ * gatherer. It holds the hosts seen, the VMs and applications placed upon
+ * them, each host's measurement, the load fractions of the VMs and
+ * applications and the overhead from general purpose nodes.
+ *
+ * A snapshot is built once at the end of a cycle and is not changed after it
+ * has been published, so it may be read by many threads without locking and
+ * without calling the data source. The measurements and load fractions it
+ * holds must therefore be treated as read only.
+ *
+ * @author Richard Kavanagh
+ */
+public class DataGathererSnapshot {
+
+    private final long created = System.currentTimeMillis();
+    private final List<Host> hosts;
+    private final List<VmDeployed> vms;
+    private final List<ApplicationOnHost> applications;
+    private final Map<Host, List<VmDeployed>> vmsOnHost;
+    private final Map<Host, List<ApplicationOnHost>> applicationsOnHost;
+    private final Map<Host, HostMeasurement> measurements;
+    private final Map<Host, HostEnergyUserLoadFraction> vmLoadFractions;
+    private final Map<Host, HostEnergyUserLoadFraction> applicationLoadFractions;
+    private final double generalPurposePowerConsumption;
+
+    /**
+     * This creates a new snapshot of a data gathering cycle.
+     *
+     * @param hosts The hosts seen in the cycle
+     * @param vms The VMs that are running, each with its host set
+     * @param applications The applications seen in the cycle
+     * @param measurements The measurements of the hosts seen in the cycle
+     * @param vmLoadFractions The load fractions of the VMs on each host
+     * @param applicationLoadFractions The load fractions of the applications
+     * on each host
+     * @param generalPurposePowerConsumption The overhead from general purpose
+     * nodes that is attributed to each host.
+     */
+    public DataGathererSnapshot(List<Host> hosts, List<VmDeployed> vms, List<ApplicationOnHost> applications,
+            List<HostMeasurement> measurements, Map<Host, HostEnergyUserLoadFraction> vmLoadFractions,
+            Map<Host, HostEnergyUserLoadFraction> applicationLoadFractions, double generalPurposePowerConsumption) {
+        this.hosts = Collections.unmodifiableList(new ArrayList<>(hosts));
+        this.vms = Collections.unmodifiableList(new ArrayList<>(vms));
+        this.applications = Collections.unmodifiableList(new ArrayList<>(applications));
+        HashMap<Host, List<VmDeployed>> vmMap = new HashMap<>();
+        for (VmDeployed vm : vms) {
+            if (vm.getAllocatedTo() != null) {
+                getList(vmMap, vm.getAllocatedTo()).add(vm);
+            }
+        }
+        this.vmsOnHost = Collections.unmodifiableMap(vmMap);
+        HashMap<Host, List<ApplicationOnHost>> appMap = new HashMap<>();
+        for (ApplicationOnHost app : applications) {
+            if (app.getAllocatedTo() != null) {
+                getList(appMap, app.getAllocatedTo()).add(app);
+            }
+        }
+        this.applicationsOnHost = Collections.unmodifiableMap(appMap);
+        HashMap<Host, HostMeasurement> measurementMap = new HashMap<>();
+        for (HostMeasurement measurement : measurements) {
+            if (measurement.getHost() != null) {
+                measurementMap.put(measurement.getHost(), measurement);
+            }
+        }
+        this.measurements = Collections.unmodifiableMap(measurementMap);
+        this.vmLoadFractions = Collections.unmodifiableMap(new HashMap<>(vmLoadFractions));
+        this.applicationLoadFractions = Collections.unmodifiableMap(new HashMap<>(applicationLoadFractions));
+        this.generalPurposePowerConsumption = generalPurposePowerConsumption;
+    }
+
+    /**
+     * This gets the list held for a host, creating it if it does not yet
+     * exist.
+     *
+     * @param <T> The type of item held in the list
+     * @param map The map of hosts to lists
+     * @param host The host to get the list for
+     * @return The list for the host
+     */
+    private static <T> List<T> getList(HashMap<Host, List<T>> map, Host host) {
+        List<T> answer = map.get(host);
+        if (answer == null) {
+            answer = new ArrayList<>();
+            map.put(host, answer);
+        }
+        return answer;
+    }
+
+    /**
+     * This returns the time the snapshot was created.
+     *
+     * @return The creation time in milliseconds.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * This returns how old the snapshot is.
+     *
+     * @return The age of the snapshot in milliseconds.
+     */
+    public long getAge() {
+        return System.currentTimeMillis() - created;
+    }
+
+    /**
+     * This indicates if the snapshot is recent enough to be used.
+     *
+     * @param maxAge The maximum age in milliseconds, a negative value
+     * indicates there is no limit.
+     * @return If the snapshot is no older than the maximum age given
+     */
+    public boolean isFresh(long maxAge) {
+        return maxAge < 0 || getAge() <= maxAge;
+    }
+
+    /**
+     * This returns the hosts seen in the cycle.
+     *
+     * @return The list of hosts
+     */
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * This returns the VMs that were running in the cycle.
+     *
+     * @return The list of running VMs
+     */
+    public List<VmDeployed> getVms() {
+        return vms;
+    }
+
+    /**
+     * This returns the VMs that were running on a host.
+     *
+     * @param host The host to get the VMs for
+     * @return The list of VMs on the host
+     */
+    public List<VmDeployed> getVMsOnHost(Host host) {
+        List<VmDeployed> answer = vmsOnHost.get(host);
+        if (answer == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(answer);
+    }
+
+    /**
+     * This returns the applications seen in the cycle.
+     *
+     * @return The list of applications
+     */
+    public List<ApplicationOnHost> getApplications() {
+        return applications;
+    }
+
+    /**
+     * This returns the applications that were on a host.
+     *
+     * @param host The host to get the applications for
+     * @return The list of applications on the host
+     */
+    public List<ApplicationOnHost> getApplications(Host host) {
+        List<ApplicationOnHost> answer = applicationsOnHost.get(host);
+        if (answer == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(answer);
+    }
+
+    /**
+     * This returns the measurement of a host.
+     *
+     * @param host The host to get the measurement for
+     * @return The host's measurement, or null if the host was not measured
+     */
+    public HostMeasurement getMeasurement(Host host) {
+        return measurements.get(host);
+    }
+
+    /**
+     * This returns the current power consumption of a host.
+     *
+     * @param host The host to get the power consumption for
+     * @return The host's power consumption or null if there is no power
+     * reading for the host.
+     */
+    public CurrentUsageRecord getCurrentEnergyUsage(Host host) {
+        HostMeasurement measurement = measurements.get(host);
+        if (measurement == null) {
+            return null;
+        }
+        double power = measurement.getPower(true);
+        if (power == -1) {
+            return null;
+        }
+        CurrentUsageRecord answer = new CurrentUsageRecord(host, power);
+        GregorianCalendar time = new GregorianCalendar();
+        time.setTimeInMillis(TimeUnit.SECONDS.toMillis(measurement.getClock()));
+        answer.setTime(time);
+        return answer;
+    }
+
+    /**
+     * This returns the load fractions of the VMs on a host.
+     *
+     * @param host The host to get the load fractions for
+     * @return The load fractions of the VMs, or null if none were gathered.
+     */
+    public HostEnergyUserLoadFraction getVmLoadFraction(Host host) {
+        return vmLoadFractions.get(host);
+    }
+
+    /**
+     * This returns the load fractions of the applications on a host.
+     *
+     * @param host The host to get the load fractions for
+     * @return The load fractions of the applications, or null if none were
+     * gathered.
+     */
+    public HostEnergyUserLoadFraction getApplicationLoadFraction(Host host) {
+        return applicationLoadFractions.get(host);
+    }
+
+    /**
+     * This returns the overhead from the general purpose hosts that provide
+     * services to other hosts' VMs. i.e. DFS, or cooling etc.
+     *
+     * @return The power consumption of the general purpose nodes, attributed
+     * to each host.
+     */
+    public double getGeneralPurposeHostsPowerConsumption() {
+        return generalPurposePowerConsumption;
+    }
+}
@@ -19,6 +19,8 @@ import eu.tango.energymodeller.types.TimePeriod;
 import eu.tango.energymodeller.types.energyuser.Host;
 import eu.tango.energymodeller.types.energyuser.VmDeployed;
 import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
+import eu.tango.energymodeller.types.energyuser.usage.LoadFractionHandler;
+import eu.tango.energymodeller.types.usage.HistoricUsageRecord;
 import eu.tango.energymodeller.types.usage.HostEnergyRecord;
 import eu.tango.energymodeller.types.usage.VmLoadHistoryBootRecord;
 import eu.tango.energymodeller.types.usage.VmLoadHistoryRecord;
@@ -158,10 +160,23 @@ public interface DatabaseConnector {
      * @param host The host machine to get the data for.
      * @param timePeriod The start and end period for which to query for. If
      * null all records will be returned.
-     * @return The energy readings taken for a given host.
+     * @return The energy readings taken for a given host, in time order.
      */
     public List<HostEnergyRecord> getHostHistoryData(Host host, TimePeriod timePeriod);
 
+    /**
+     * This returns the energy used by a host in a specified time period,
+     * calculated from the host's cumulative energy index rather than by
+     * integrating every energy record in the time period.
+     *
+     * @param host The host machine to get the energy used for.
+     * @param timePeriod The start and end period for which to query for. If
+     * null all recorded data is considered.
+     * @return The energy used by the host, or null if the index does not cover
+     * the time period.
+     */
+    public HistoricUsageRecord getHostEnergyRecord(Host host, TimePeriod timePeriod);
+
     /**
      * This writes VM utilisation data for a given physical host to the
      * database.
@@ -183,6 +198,21 @@ public interface DatabaseConnector {
      */
     public Collection<HostEnergyUserLoadFraction> getHostVmHistoryLoadData(Host host, TimePeriod timePeriod);
 
+    /**
+     * This reads the VM load records for a given host from the database in
+     * time order, passing each to a handler as it is read. This avoids
+     * holding all the records for a long time period in memory at once. The
+     * records are the same as those of getHostVmHistoryLoadData.
+     *
+     * @param host The host to get the load records of
+     * @param timePeriod The start and end period for which to query for. If
+     * null all records will be used.
+     * @param handler The handler to pass the load records to
+     * @return If the records were read successfully, otherwise the handler
+     * has only been given part of the data.
+     */
+    public boolean getHostVmHistoryLoadData(Host host, TimePeriod timePeriod, LoadFractionHandler handler);
+
     /**
      * This returns the overall average CPU utilisation for a given tag.
      *
@@ -251,6 +281,20 @@ public interface DatabaseConnector {
      */
     public List<VmLoadHistoryBootRecord> getAverageCPUUtilisationBootTraceForDisk(String diskName, int windowSize);
 
+    /**
+     * This reads the cpu load of every VM measurement taken before a given
+     * time, along with the VM's application tags and disk references, and
+     * adds them to a workload statistics cache as they are read. It is used to
+     * rebuild the cache when it has no checkpoint to recover from.
+     *
+     * @param cache The workload statistics cache to add the measurements to
+     * @param before The time in Unix time before which measurements are read,
+     * i.e. when the cache started to record measurements itself
+     * @return If the measurements were read successfully, otherwise the cache
+     * only holds part of the data.
+     */
+    public boolean getVmWorkloadHistory(WorkloadStatisticsCache cache, long before);
+
     /**
      * This tests to see if the database connection is still live or not
      * @return If the database connection is live or not
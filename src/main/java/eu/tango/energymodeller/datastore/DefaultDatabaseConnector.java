@@ -23,6 +23,8 @@ import eu.tango.energymodeller.types.energyuser.VmDiskImage;
 import eu.tango.energymodeller.types.energyuser.usage.HostEnergyCalibrationData;
 import eu.tango.energymodeller.types.energyuser.usage.HostProfileData;
 import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
+import eu.tango.energymodeller.types.energyuser.usage.LoadFractionHandler;
+import eu.tango.energymodeller.types.usage.HistoricUsageRecord;
 import eu.tango.energymodeller.types.usage.HostEnergyRecord;
 import eu.tango.energymodeller.types.usage.VmLoadHistoryBootRecord;
 import eu.tango.energymodeller.types.usage.VmLoadHistoryRecord;
@@ -40,6 +42,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.configuration.ConfigurationException;
@@ -70,20 +73,109 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     private String databasePassword;
     private static final String CONFIG_FILE = "energy-modeller-db.properties";
-    
-    private Connection connection;
+    /**
+     * The settings for the write behind queue used for measurement data.
+     */
+    private boolean writeBehind = true;
+    private int writeBehindBatchSize = 500;
+    private long writeBehindMaxAge = 1000;
+    private int writeBehindCapacity = 50000;
+    private volatile BatchedMeasurementWriter measurementWriter = null;
+    private Thread measurementWriterThread = null;
+    /**
+     * The settings for the pool of connections to the database.
+     */
+    private int poolSize = 8;
+    private long poolValidationInterval = 30000;
+    /**
+     * The settings for the minute and hour level summaries of measurement
+     * data. Time periods up to rollupRawMaxPeriod seconds long are answered
+     * from the raw measurements, those up to rollupMinuteMaxPeriod seconds
+     * from the minute summaries and any longer from the hour summaries.
+     */
+    private boolean rollup = true;
+    private long rollupRawMaxPeriod = TimeUnit.HOURS.toSeconds(6);
+    private long rollupMinuteMaxPeriod = TimeUnit.DAYS.toSeconds(14);
+    private MeasurementRollup measurementRollup = null;
+    /**
+     * The setting for the cumulative energy index of each host.
+     */
+    private boolean energyIndex = true;
+    private HostEnergyIndex hostEnergyIndex = null;
 
     /**
      * This creates a new database connector for use. It establishes a database
      * connection immediately ready for use.
      */
     public DefaultDatabaseConnector() {
-        try {
-            loadSettings();
-            connection = getConnection();
-        } catch (IOException | SQLException | ClassNotFoundException ex) {
+        loadSettings();
+        setPoolSettings(poolSize, poolValidationInterval);
+        //Establish the first connection, returning it to the pool ready for use
+        try (Connection connection = getPooledConnection()) {
+            Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.FINE, "Connected to {0}", databaseURL);
+        } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
         }
+        if (rollup) {
+            measurementRollup = new MeasurementRollup(this);
+        }
+        if (energyIndex) {
+            hostEnergyIndex = new HostEnergyIndex(this);
+        }
+    }
+
+    /**
+     * This gets the write behind queue for measurement data, starting it on
+     * first use. Only connectors that write measurements, i.e. the data
+     * gatherer's, therefore start a writer thread.
+     *
+     * @return The write behind queue, or null if write behind is disabled.
+     */
+    private BatchedMeasurementWriter getMeasurementWriter() {
+        if (!writeBehind) {
+            return null;
+        }
+        BatchedMeasurementWriter answer = measurementWriter;
+        if (answer == null) {
+            synchronized (this) {
+                answer = measurementWriter;
+                if (answer == null) {
+                    answer = new BatchedMeasurementWriter(this, writeBehindBatchSize, writeBehindMaxAge, writeBehindCapacity);
+                    measurementWriterThread = new Thread(answer, "energy-modeller-db-writer");
+                    measurementWriterThread.setDaemon(true);
+                    measurementWriterThread.start();
+                    measurementWriter = answer;
+                }
+            }
+        }
+        return answer;
+    }
+
+    /**
+     * This stops the write behind queue's thread, if it was started, writing
+     * out any rows that are still queued. The queue is started again if more
+     * measurements are written.
+     */
+    private void stopMeasurementWriter() {
+        BatchedMeasurementWriter writer;
+        Thread writerThread;
+        synchronized (this) {
+            writer = measurementWriter;
+            writerThread = measurementWriterThread;
+            measurementWriter = null;
+            measurementWriterThread = null;
+        }
+        if (writer == null) {
+            return;
+        }
+        writer.stop();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        //Catches any rows added while the writer was stopping
+        writer.flush();
     }
     
     /**
@@ -113,6 +205,26 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
             config.setProperty("energy.modeller.db.password", databasePassword);
             databaseUser = config.getString("energy.modeller.db.user", databaseUser);
             config.setProperty("energy.modeller.db.user", databaseUser);
+            poolSize = config.getInt("energy.modeller.db.pool.size", poolSize);
+            config.setProperty("energy.modeller.db.pool.size", poolSize);
+            poolValidationInterval = config.getLong("energy.modeller.db.pool.validation_interval_ms", poolValidationInterval);
+            config.setProperty("energy.modeller.db.pool.validation_interval_ms", poolValidationInterval);
+            writeBehind = config.getBoolean("energy.modeller.db.write_behind", writeBehind);
+            config.setProperty("energy.modeller.db.write_behind", writeBehind);
+            writeBehindBatchSize = config.getInt("energy.modeller.db.write_behind.batch_size", writeBehindBatchSize);
+            config.setProperty("energy.modeller.db.write_behind.batch_size", writeBehindBatchSize);
+            writeBehindMaxAge = config.getLong("energy.modeller.db.write_behind.max_age_ms", writeBehindMaxAge);
+            config.setProperty("energy.modeller.db.write_behind.max_age_ms", writeBehindMaxAge);
+            writeBehindCapacity = config.getInt("energy.modeller.db.write_behind.capacity", writeBehindCapacity);
+            config.setProperty("energy.modeller.db.write_behind.capacity", writeBehindCapacity);
+            rollup = config.getBoolean("energy.modeller.db.rollup", rollup);
+            config.setProperty("energy.modeller.db.rollup", rollup);
+            rollupRawMaxPeriod = config.getLong("energy.modeller.db.rollup.raw_max_period_sec", rollupRawMaxPeriod);
+            config.setProperty("energy.modeller.db.rollup.raw_max_period_sec", rollupRawMaxPeriod);
+            rollupMinuteMaxPeriod = config.getLong("energy.modeller.db.rollup.minute_max_period_sec", rollupMinuteMaxPeriod);
+            config.setProperty("energy.modeller.db.rollup.minute_max_period_sec", rollupMinuteMaxPeriod);
+            energyIndex = config.getBoolean("energy.modeller.db.energy_index", energyIndex);
+            config.setProperty("energy.modeller.db.energy_index", energyIndex);
         } catch (ConfigurationException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.INFO, "Error loading database configuration information", ex);
         }
@@ -149,22 +261,20 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
     @Override
     public Collection<Host> getHosts() {
         Collection<Host> answer = new HashSet<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
-        }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "SELECT host_id , host_name  FROM host");
                 ResultSet resultSet = preparedStatement.executeQuery()) {
-            ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-            for (ArrayList<Object> hostData : results) {
-                Host host = new Host((Integer) hostData.get(0), (String) hostData.get(1));
-                host = getHostCalibrationData(host);
-                answer.add(host);
+            while (resultSet.next()) {
+                answer.add(new Host(resultSet.getInt(1), resultSet.getString(2)));
             }
         } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
         }
+        //The calibration data is obtained once the connection has been returned to the pool
+        for (Host host : answer) {
+            getHostCalibrationData(host);
+        }
         return answer;
     }
 
@@ -177,17 +287,13 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
     @Override
     public Collection<VmDeployed> getVms() {
         Collection<VmDeployed> answer = new HashSet<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return null;
-        }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "SELECT vm_id , vm_name, deployment_id FROM vm");
                 ResultSet resultSet = preparedStatement.executeQuery()) {
-            ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-            for (ArrayList<Object> vmData : results) {
-                VmDeployed vm = new VmDeployed((Integer) vmData.get(0), (String) vmData.get(1));
-                vm.setDeploymentID((String) vmData.get(2));
+            while (resultSet.next()) {
+                VmDeployed vm = new VmDeployed(resultSet.getInt(1), resultSet.getString(2));
+                vm.setDeploymentID(resultSet.getString(3));
                 answer.add(vm);
             }
         } catch (SQLException ex) {
@@ -220,20 +326,19 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     @Override
     public Host getHostCalibrationData(Host host) {
-        connection = getConnection(connection);
-        if (connection == null || host == null) {
+        if (host == null) {
             return host;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "SELECT calibration_id, host_id, cpu, memory, power FROM host_calibration_data WHERE host_id = ?")) {
             preparedStatement.setInt(1, host.getId());
             try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> result = resultSetToArray(resultSet);
-                for (ArrayList<Object> calibrationData : result) {
+                while (resultSet.next()) {
                     host.addCalibrationData(new HostEnergyCalibrationData(
-                            (Double) calibrationData.get(2), //cpu
-                            (Double) calibrationData.get(3), //memory
-                            (Double) calibrationData.get(4))); //power
+                            resultSet.getDouble(3), //cpu
+                            resultSet.getDouble(4), //memory
+                            resultSet.getDouble(5))); //power
                 }
             }
         } catch (SQLException ex) {
@@ -244,19 +349,18 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
 
     @Override
     public Host getHostProfileData(Host host) {
-        connection = getConnection(connection);
-        if (connection == null || host == null) {
+        if (host == null) {
             return host;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "SELECT host_profile_id, host_id, type, value FROM host_profile_data WHERE host_id = ?")) {
             preparedStatement.setInt(1, host.getId());
             try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> result = resultSetToArray(resultSet);
-                for (ArrayList<Object> profileData : result) {
+                while (resultSet.next()) {
                     host.addProfileData(new HostProfileData(
-                            (String) profileData.get(2),
-                            (Double) profileData.get(3)));
+                            resultSet.getString(3),
+                            resultSet.getDouble(4)));
                 }
             }
         } catch (SQLException ex) {
@@ -273,11 +377,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     @Override
     public void setHosts(Collection<Host> hosts) {
-        connection = getConnection(connection);
-        if (connection == null || hosts == null) {
+        if (hosts == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO host (host_id, host_name) VALUES (?,?) ON DUPLICATE KEY UPDATE host_name=VALUES(`host_name`);")) {
             for (Host host : hosts) {
                 preparedStatement.setInt(1, host.getId());
@@ -298,11 +402,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     @Override
     public void setVms(Collection<VmDeployed> vms) {
-        connection = getConnection(connection);
-        if (connection == null || vms == null) {
+        if (vms == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO vm (vm_id, vm_name, deployment_id) VALUES (?,?,?) ON DUPLICATE KEY UPDATE vm_name=VALUES(`vm_name`), deployment_id=COALESCE(VALUES(`deployment_id`), deployment_id);")) {
             for (VmDeployed vm : vms) {
                 preparedStatement.setInt(1, vm.getId());
@@ -340,21 +444,21 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      * @return The VM with its application tags set
      */
     private VmDeployed getVmAppTags(VmDeployed vm) {
-        connection = getConnection(connection);
-        if (connection == null || vm == null) {
+        if (vm == null) {
             return vm;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "SELECT vm.vm_id, vm_app_tag.tag_name "
                 + "FROM vm, vm_app_tag, vm_app_tag_arr "
                 + "WHERE vm.vm_id = ? AND "
                 + "vm.vm_id = vm_app_tag_arr.vm_id AND "
                 + "vm_app_tag_arr.vm_app_tag_id = vm_app_tag.vm_app_tag_id")) {
             preparedStatement.setInt(1, vm.getId());
-            ResultSet resultSet = preparedStatement.executeQuery();
-            ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-            for (ArrayList<Object> vmData : results) {
-                vm.addApplicationTag((String) vmData.get(1));
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    vm.addApplicationTag(resultSet.getString(2));
+                }
             }
         } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
@@ -369,21 +473,21 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      * @return The VM with its disk values set
      */
     private VmDeployed getVmDisks(VmDeployed vm) {
-        connection = getConnection(connection);
-        if (connection == null || vm == null) {
+        if (vm == null) {
             return vm;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "SELECT vm.vm_id, vm_disk.disk_name "
                 + "FROM vm, vm_disk, vm_disk_arr "
                 + "WHERE vm.vm_id = ? AND "
                 + "vm.vm_id = vm_disk_arr.vm_id AND "
                 + "vm_disk_arr.vm_disk_id = vm_disk.vm_disk_id")) {
             preparedStatement.setInt(1, vm.getId());
-            ResultSet resultSet = preparedStatement.executeQuery();
-            ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-            for (ArrayList<Object> vmData : results) {
-                vm.addApplicationTag((String) vmData.get(1));
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    vm.addApplicationTag(resultSet.getString(2));
+                }
             }
         } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
@@ -409,11 +513,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      * @param vm The VM to save the tags into the database for
      */
     private void setVMAppTagArray(VmDeployed vm) {
-        connection = getConnection(connection);
-        if (connection == null || vm == null) {
+        if (vm == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO vm_app_tag_arr (vm_app_tag_arr.vm_id, vm_app_tag_arr.vm_app_tag_id) "
                 + "SELECT ? as vm_id, vm_app_tag.vm_app_tag_id "
                 + "FROM vm_app_tag WHERE vm_app_tag.tag_name = ? ON DUPLICATE KEY UPDATE vm_app_tag_arr.vm_id=vm_app_tag_arr.vm_id")) {
@@ -433,11 +537,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      * @param vm The VM to save the disk information into the database for
      */
     private void setDiskInformationArray(VmDeployed vm) {
-        connection = getConnection(connection);
-        if (connection == null || vm == null) {
+        if (vm == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO vm_disk_arr (vm_disk_arr.vm_id, vm_disk_arr.vm_disk_id) "
                 + "SELECT ? as vm_id, vm_disk.vm_disk_id "
                 + "FROM vm_disk WHERE vm_disk.disk_name = ? ON DUPLICATE KEY UPDATE vm_disk_arr.vm_id=vm_disk_arr.vm_id")) {
@@ -457,11 +561,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      * @param vm The VM to save the tags into the database for
      */
     private void setVMAppTags(VmDeployed vm) {
-        connection = getConnection(connection);
-        if (connection == null || vm == null) {
+        if (vm == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO vm_app_tag (tag_name) VALUES (?) ON DUPLICATE KEY UPDATE tag_name=VALUES(tag_name)")) {
             for (String appTag : vm.getApplicationTags()) {
                 preparedStatement.setString(1, appTag);
@@ -479,11 +583,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      * @param vm The VM to save the disk information into the database for
      */
     private void setDiskInformation(VmDeployed vm) {
-        connection = getConnection(connection);
-        if (connection == null || vm == null) {
+        if (vm == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO vm_disk (disk_name) VALUES (?) ON DUPLICATE KEY UPDATE disk_name=VALUES(disk_name)")) {
             for (VmDiskImage diskImage : vm.getDiskImages()) {
                 preparedStatement.setString(1, diskImage.toString());
@@ -501,11 +605,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     @Override
     public void setHostCalibrationData(Host host) {
-        connection = getConnection(connection);
-        if (connection == null || host == null) {
+        if (host == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO host_calibration_data (host_id, cpu, memory, power) VALUES (?, ?, ?, ?) "
                 + " ON DUPLICATE KEY UPDATE host_id=VALUES(`host_id`), cpu=VALUES(`cpu`), memory=VALUES(`memory`), power=VALUES(`power`);")) {
             preparedStatement.setInt(1, host.getId());
@@ -523,11 +627,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
 
     @Override
     public void setHostProfileData(Host host) {
-        connection = getConnection(connection);
-        if (connection == null || host == null) {
+        if (host == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO host_profile_data (host_id, type, value) VALUES (?, ?, ?);")) {
             preparedStatement.setInt(1, host.getId());
             for (HostProfileData data : host.getProfileData()) {
@@ -554,11 +658,22 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     @Override
     public void writeHostHistoricData(Host host, long time, double power, double energy) {
-        connection = getConnection(connection);
-        if (connection == null || host == null) {
+        if (measurementRollup != null && host != null) {
+            measurementRollup.addHostMeasurement(host.getId(), time, power, energy);
+        }
+        if (hostEnergyIndex != null && host != null) {
+            writeHostEnergyIndex(host, time, power);
+        }
+        BatchedMeasurementWriter writer = getMeasurementWriter();
+        if (writer != null && host != null) {
+            writer.add(BatchedMeasurementWriter.MeasurementRow.host(host.getId(), time, energy, power));
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        if (host == null) {
+            return;
+        }
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO host_measurement (host_id, clock, energy, power) VALUES (?, ?, ? , ?);")) {
             preparedStatement.setInt(1, host.getId());
             preparedStatement.setLong(2, time);
@@ -570,69 +685,270 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
         }
     }
 
+    /**
+     * This adds an entry to the cumulative energy index of a host.
+     *
+     * @param host The host to write the index entry for
+     * @param time The time when the measurement was taken.
+     * @param power The power reading for the host.
+     */
+    private void writeHostEnergyIndex(Host host, long time, double power) {
+        double cumulativeEnergy = hostEnergyIndex.add(host.getId(), time, power);
+        if (Double.isNaN(cumulativeEnergy)) {
+            return;
+        }
+        BatchedMeasurementWriter writer = getMeasurementWriter();
+        if (writer != null) {
+            writer.add(BatchedMeasurementWriter.MeasurementRow.energyIndex(host.getId(), time, cumulativeEnergy, power));
+            return;
+        }
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                "INSERT INTO host_energy_index (host_id, clock, cumulative_energy, power) VALUES (?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE cumulative_energy=VALUES(`cumulative_energy`), power=VALUES(`power`);")) {
+            preparedStatement.setInt(1, host.getId());
+            preparedStatement.setLong(2, time);
+            preparedStatement.setDouble(3, cumulativeEnergy);
+            preparedStatement.setDouble(4, power);
+            preparedStatement.executeUpdate();
+        } catch (SQLException ex) {
+            Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * This returns the energy used by a host in a specified time period,
+     * calculated from the host's cumulative energy index.
+     *
+     * @param host The host machine to get the energy used for.
+     * @param timePeriod The start and end period for which to query for. If
+     * null all recorded data is considered.
+     * @return The energy used by the host, or null if the index is disabled or
+     * does not cover the time period.
+     */
+    @Override
+    public HistoricUsageRecord getHostEnergyRecord(Host host, TimePeriod timePeriod) {
+        if (hostEnergyIndex == null || host == null) {
+            return null;
+        }
+        return hostEnergyIndex.getEnergyUsed(host, timePeriod);
+    }
+
     /**
      * This returns the historic data for a given host, in a specified time
      * period.
      *
      * @param host The host machine to get the data for.
      * @param timePeriod The start and end period for which to query for. If
-     * null all records will be returned.
+     * null all records will be returned. Long time periods are answered from
+     * the minute or hour level summaries, giving one record per minute or
+     * hour, with the raw measurements used either side of the summaries.
      * @return The energy readings taken for a given host.
      */
     @Override
     public List<HostEnergyRecord> getHostHistoryData(Host host, TimePeriod timePeriod) {
-        connection = getConnection(connection);
         List<HostEnergyRecord> answer = new ArrayList<>();
-        if (connection == null || host == null) {
+        if (host == null) {
             return answer;
         }
-        PreparedStatement preparedStatement = null;
-        try {
-            if (timePeriod != null) {
-                long start = timePeriod.getStartTimeInSeconds();
-                long end = timePeriod.getEndTimeInSeconds();
-                preparedStatement = connection.prepareStatement(
-                        "SELECT host_id, clock, energy, power FROM host_measurement WHERE host_id = ? "
-                        + " AND clock >= ? AND clock <= ?;");
-                preparedStatement.setLong(2, start);
-                preparedStatement.setLong(3, end);
-            } else {
-                preparedStatement = connection.prepareStatement(
-                        "SELECT host_id, clock, energy, power FROM host_measurement WHERE host_id = ?;");
+        int resolution = getRollupResolution(timePeriod);
+        TimePeriod[] periods = (resolution > 0 ? getRollupPeriods(host, timePeriod, resolution) : null);
+        if (periods == null) {
+            return getHostHistoryRawData(host, timePeriod);
+        }
+        for (int i = 0; i < periods.length; i++) {
+            if (periods[i] == null) {
+                continue;
+            }
+            List<HostEnergyRecord> records = (i == 1
+                    ? getHostHistoryRollupData(host, periods[i], resolution)
+                    : getHostHistoryRawData(host, periods[i]));
+            if (records == null) {
+                return null;
             }
+            answer.addAll(records);
+        }
+        return answer;
+    }
+
+    /**
+     * This returns the raw historic data for a given host, in a specified
+     * time period.
+     *
+     * @param host The host machine to get the data for.
+     * @param timePeriod The start and end period for which to query for. If
+     * null all records will be returned.
+     * @return The energy readings taken for a given host, or null on failure.
+     */
+    private List<HostEnergyRecord> getHostHistoryRawData(Host host, TimePeriod timePeriod) {
+        List<HostEnergyRecord> answer;
+        String query = "SELECT host_id, clock, energy, power FROM host_measurement WHERE host_id = ? ORDER BY clock;";
+        if (timePeriod != null) {
+            query = "SELECT host_id, clock, energy, power FROM host_measurement WHERE host_id = ? "
+                    + " AND clock >= ? AND clock <= ? ORDER BY clock;";
+        }
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = prepareStreamingStatement(connection, query)) {
             preparedStatement.setInt(1, host.getId());
+            if (timePeriod != null) {
+                preparedStatement.setLong(2, timePeriod.getStartTimeInSeconds());
+                preparedStatement.setLong(3, timePeriod.getEndTimeInSeconds());
+            }
             try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-                for (ArrayList<Object> hostMeasurement : results) {
-                    answer.add(new HostEnergyRecord(
-                            host,
-                            (long) hostMeasurement.get(1), //clock is the 1st item
-                            (double) hostMeasurement.get(3), //power 3rd item
-                            (double) hostMeasurement.get(2))); //energy is 2nd item
-                }
+                answer = mapResultSet(resultSet, new HostEnergyRecordMapper(host));
             }
         } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
             return null;
-        } finally {
-            try {
-                if (preparedStatement != null) {
-                    preparedStatement.close();
+        }
+        return answer;
+    }
+
+    /**
+     * This determines which resolution of data should be used to answer a
+     * query for a given time period. The coarsest resolution that still
+     * describes the time period adequately is chosen.
+     *
+     * @param timePeriod The time period of the query
+     * @return The resolution in seconds of the summaries to use, or 0 if the
+     * raw measurements should be used.
+     */
+    private int getRollupResolution(TimePeriod timePeriod) {
+        if (measurementRollup == null || timePeriod == null || timePeriod.getDuration() <= rollupRawMaxPeriod) {
+            return 0;
+        }
+        if (timePeriod.getDuration() <= rollupMinuteMaxPeriod) {
+            return MeasurementRollup.MINUTE;
+        }
+        return MeasurementRollup.HOUR;
+    }
+
+    /**
+     * This determines which part of a time period the summaries can answer.
+     * The summaries only start once they are first kept and the bucket that
+     * is still open is only written out once it completes, so the records
+     * either side of the summaries are taken from the raw measurements.
+     *
+     * @param host The host the query is for
+     * @param timePeriod The time period of the query
+     * @param resolution The resolution of the summaries to use, in seconds.
+     * @return The time period before the summaries, the time period of the
+     * summaries and the time period after them, see
+     * {@link MeasurementRollup#splitTimePeriod}. Null if there are no
+     * summaries for the time period.
+     */
+    private TimePeriod[] getRollupPeriods(Host host, TimePeriod timePeriod, int resolution) {
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                        "SELECT MIN(bucket), MAX(bucket) FROM host_measurement_rollup "
+                        + "WHERE host_id = ? AND resolution = ? AND bucket >= ? AND bucket <= ?;")) {
+            setHistoryParameters(preparedStatement, host, timePeriod, resolution);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    long firstBucket = resultSet.getLong(1);
+                    if (!resultSet.wasNull()) {
+                        return MeasurementRollup.splitTimePeriod(timePeriod, firstBucket, resultSet.getLong(2), resolution);
+                    }
                 }
-            } catch (SQLException ex) {
-                Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
             }
+        } catch (SQLException ex) {
+            Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return null;
+    }
+
+    /**
+     * This returns the summarised historic data for a given host, in a
+     * specified time period. One record is given for each bucket of time,
+     * timestamped with the start of the bucket, giving the average power
+     * and the last energy reading of the bucket.
+     *
+     * @param host The host machine to get the data for.
+     * @param timePeriod The start and end period for which to query for.
+     * @param resolution The resolution of the summaries to use, in seconds.
+     * @return The energy readings for a given host, or null on failure.
+     */
+    private List<HostEnergyRecord> getHostHistoryRollupData(Host host, TimePeriod timePeriod, int resolution) {
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = prepareStreamingStatement(connection,
+                        "SELECT bucket, last_energy, power_sum, sample_count FROM host_measurement_rollup "
+                        + "WHERE host_id = ? AND resolution = ? AND bucket >= ? AND bucket <= ? ORDER BY bucket;")) {
+            preparedStatement.setInt(1, host.getId());
+            preparedStatement.setInt(2, resolution);
+            preparedStatement.setLong(3, MeasurementRollup.getBucket(timePeriod.getStartTimeInSeconds(), resolution));
+            preparedStatement.setLong(4, timePeriod.getEndTimeInSeconds());
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return mapResultSet(resultSet, new HostEnergyRollupRecordMapper(host));
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return null;
+    }
+
+    /**
+     * This converts rows of the host_measurement table, in the form: host_id,
+     * clock, energy, power, into host energy records.
+     */
+    private static class HostEnergyRecordMapper implements RowMapper<HostEnergyRecord> {
+
+        private final Host host;
+
+        public HostEnergyRecordMapper(Host host) {
+            this.host = host;
+        }
+
+        @Override
+        public HostEnergyRecord mapRow(ResultSet row) throws SQLException {
+            return new HostEnergyRecord(host,
+                    row.getLong(2), //clock is the 2nd column
+                    row.getDouble(4), //power is the 4th column
+                    row.getDouble(3)); //energy is the 3rd column
+        }
+    }
+
+    /**
+     * This converts rows of the host_measurement_rollup table, in the form:
+     * bucket, last_energy, power_sum, sample_count, into host energy records.
+     */
+    private static class HostEnergyRollupRecordMapper implements RowMapper<HostEnergyRecord> {
+
+        private final Host host;
+
+        public HostEnergyRollupRecordMapper(Host host) {
+            this.host = host;
+        }
+
+        @Override
+        public HostEnergyRecord mapRow(ResultSet row) throws SQLException {
+            return new HostEnergyRecord(host,
+                    row.getLong(1), //bucket
+                    row.getDouble(3) / row.getInt(4), //average power
+                    row.getDouble(2)); //last energy reading
         }
-        return answer;
     }
 
     @Override
     public void writeHostVMHistoricData(Host host, long time, HostEnergyUserLoadFraction load) {
-        connection = getConnection(connection);
-        if (connection == null || host == null) {
+        if (measurementRollup != null && host != null) {
+            double averageOverhead = load.getHostPowerOffset() / load.getEnergyUsageSources().size();
+            for (VmDeployed vm : load.getEnergyUsageSourcesAsVMs()) {
+                measurementRollup.addUserMeasurement(BatchedMeasurementWriter.Table.VM, host.getId(), vm.getId(), time, load.getFraction(vm), averageOverhead);
+            }
+        }
+        BatchedMeasurementWriter writer = getMeasurementWriter();
+        if (writer != null && host != null) {
+            double averageOverhead = load.getHostPowerOffset() / load.getEnergyUsageSources().size();
+            for (VmDeployed vm : load.getEnergyUsageSourcesAsVMs()) {
+                writer.add(BatchedMeasurementWriter.MeasurementRow.vm(host.getId(), vm.getId(), time, load.getFraction(vm), averageOverhead));
+            }
+            return;
+        }
+        if (host == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO vm_measurement (host_id, vm_id, clock, cpu_load, power_overhead) VALUES (?, ?, ? , ?, ?);")) {
             preparedStatement.setInt(1, host.getId());
             double averageOverhead = load.getHostPowerOffset() / load.getEnergyUsageSources().size();
@@ -649,11 +965,25 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
     }
 
     public void writeApplicationHistoricData(Host host, long time, HostEnergyUserLoadFraction load) {
-        connection = getConnection(connection);
-        if (connection == null || host == null) {
+        if (measurementRollup != null && host != null) {
+            double averageOverhead = load.getHostPowerOffset() / load.getEnergyUsageSources().size();
+            for (ApplicationOnHost app : load.getEnergyUsageSourcesAsApps()) {
+                measurementRollup.addUserMeasurement(BatchedMeasurementWriter.Table.APP, host.getId(), app.getId(), time, load.getFraction(app), averageOverhead);
+            }
+        }
+        BatchedMeasurementWriter writer = getMeasurementWriter();
+        if (writer != null && host != null) {
+            double averageOverhead = load.getHostPowerOffset() / load.getEnergyUsageSources().size();
+            for (ApplicationOnHost app : load.getEnergyUsageSourcesAsApps()) {
+                writer.add(BatchedMeasurementWriter.MeasurementRow.app(host.getId(), app.getId(), time, load.getFraction(app), averageOverhead));
+            }
+            return;
+        }
+        if (host == null) {
             return;
         }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 "INSERT INTO app_measurement (host_id, app_id, clock, cpu_load, power_overhead) VALUES (?, ?, ? , ?, ?);")) {
             preparedStatement.setInt(1, host.getId());
             double averageOverhead = load.getHostPowerOffset() / load.getEnergyUsageSources().size();
@@ -693,65 +1023,313 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
     public Collection<HostEnergyUserLoadFraction> getHostVmHistoryLoadData(Host host, TimePeriod timePeriod) {
         HashMap<String, VmDeployed> vmCache = new HashMap<>();
         List<HostEnergyUserLoadFraction> answer = new ArrayList<>();
-        connection = getConnection(connection);
-        if (connection == null || host == null) {
+        if (host == null) {
             return answer;
         }
-        PreparedStatement preparedStatement = null;
-        try {
-            if (timePeriod != null) {
-                long start = timePeriod.getStartTimeInSeconds();
-                long end = timePeriod.getEndTimeInSeconds();
-                preparedStatement = connection.prepareStatement(
-                        "SELECT host_id, vm_measurement.vm_id, vm_name, clock, cpu_load, power_overhead FROM vm_measurement, vm "
-                        + "WHERE vm_measurement.vm_id = vm.vm_id "
-                        + "and vm_measurement.host_id = ? "
-                        + " AND clock >= ? AND clock <= ?;");
-                preparedStatement.setLong(2, start);
-                preparedStatement.setLong(3, end);
-            } else {
-                preparedStatement = connection.prepareStatement(
-                        "SELECT host_id, vm_measurement.vm_id, vm_name, clock, cpu_load, power_overhead FROM vm_measurement, vm "
-                        + "WHERE vm_measurement.vm_id = vm.vm_id "
-                        + "and vm_measurement.host_id = ?;");
+        int resolution = getRollupResolution(timePeriod);
+        /**
+         * The summaries cover the same buckets as for the host's energy
+         * records, so that the records of each still line up.
+         */
+        TimePeriod[] periods = (resolution > 0 ? getRollupPeriods(host, timePeriod, resolution) : null);
+        if (periods == null) {
+            return getHostVmHistoryLoadRawData(host, timePeriod, vmCache);
+        }
+        for (int i = 0; i < periods.length; i++) {
+            if (periods[i] == null) {
+                continue;
             }
+            List<HostEnergyUserLoadFraction> records = (i == 1
+                    ? getHostVmHistoryLoadRollupData(host, periods[i], resolution, vmCache)
+                    : getHostVmHistoryLoadRawData(host, periods[i], vmCache));
+            if (records == null) {
+                return null;
+            }
+            answer.addAll(records);
+        }
+        return answer;
+    }
+
+    /**
+     * This returns the raw VM load data for a given host, in a specified time
+     * period.
+     *
+     * @param host The host machine to get the data for.
+     * @param timePeriod The start and end period for which to query for. If
+     * null all records will be returned.
+     * @param vmCache The cache of VMs already created for the query
+     * @return The VM load data for the given host, or null on failure.
+     */
+    private List<HostEnergyUserLoadFraction> getHostVmHistoryLoadRawData(Host host, TimePeriod timePeriod, HashMap<String, VmDeployed> vmCache) {
+        List<HostEnergyUserLoadFraction> answer = new ArrayList<>();
+        String query = "SELECT host_id, vm_measurement.vm_id, vm_name, clock, cpu_load, power_overhead FROM vm_measurement, vm "
+                + "WHERE vm_measurement.vm_id = vm.vm_id "
+                + "and vm_measurement.host_id = ? ORDER BY clock;";
+        if (timePeriod != null) {
+            query = "SELECT host_id, vm_measurement.vm_id, vm_name, clock, cpu_load, power_overhead FROM vm_measurement, vm "
+                    + "WHERE vm_measurement.vm_id = vm.vm_id "
+                    + "and vm_measurement.host_id = ? "
+                    + " AND clock >= ? AND clock <= ? ORDER BY clock;";
+        }
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = prepareStreamingStatement(connection, query)) {
             preparedStatement.setInt(1, host.getId());
+            if (timePeriod != null) {
+                preparedStatement.setLong(2, timePeriod.getStartTimeInSeconds());
+                preparedStatement.setLong(3, timePeriod.getEndTimeInSeconds());
+            }
             try (ResultSet resultSet = preparedStatement.executeQuery()) {
-                ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
                 long lastClock = Long.MIN_VALUE;
                 long currentClock;
                 HostEnergyUserLoadFraction currentHostLoadFraction = null;
-                for (ArrayList<Object> measurement : results) {
-                    currentClock = (long) measurement.get(3); //clock is the 3rd item)
+                while (resultSet.next()) {
+                    currentClock = resultSet.getLong(4); //clock is the 4th column
                     if (currentClock != lastClock || currentHostLoadFraction == null) {
                         currentHostLoadFraction = new HostEnergyUserLoadFraction(host, currentClock);
-                        VmDeployed vm = getVM((int) measurement.get(1), (String) measurement.get(2), host, vmCache);
-                        currentHostLoadFraction.addFraction(vm, (double) measurement.get(4)); //load is the fourth item
-                        currentHostLoadFraction.setHostPowerOffset((double) measurement.get(5)); //power overhead is fifth item
                         answer.add(currentHostLoadFraction);
-                    } else {
-                        VmDeployed vm = getVM((int) measurement.get(1), (String) measurement.get(2), host, vmCache);
-                        currentHostLoadFraction.addFraction(vm, (double) measurement.get(4)); //load is the fourth item
-                        currentHostLoadFraction.setHostPowerOffset((double) measurement.get(5)); //overhead power is fifth item
                     }
+                    VmDeployed vm = getVM(resultSet.getInt(2), resultSet.getString(3), host, vmCache);
+                    currentHostLoadFraction.addFraction(vm, resultSet.getDouble(5)); //load is the 5th column
+                    currentHostLoadFraction.setHostPowerOffset(resultSet.getDouble(6)); //power overhead is the 6th column
                     lastClock = currentClock;
                 }
             }
         } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
             return null;
-        } finally {
-            try {
-                if (preparedStatement != null) {
-                    preparedStatement.close();
+        }
+        return answer;
+    }
+
+    /**
+     * This returns the summarised VM load data for a given host, in a
+     * specified time period. One load fraction record is given for each
+     * bucket of time, timestamped with the start of the bucket, so that it
+     * matches the summarised host energy records. Each VM's load is its
+     * average over the bucket.
+     *
+     * @param host The host machine to get the data for.
+     * @param timePeriod The start and end period for which to query for.
+     * @param resolution The resolution of the summaries to use, in seconds.
+     * @param vmCache The cache of VMs already created for the query
+     * @return The VM load data for the given host, or null on failure.
+     */
+    private List<HostEnergyUserLoadFraction> getHostVmHistoryLoadRollupData(Host host, TimePeriod timePeriod, int resolution, HashMap<String, VmDeployed> vmCache) {
+        List<HostEnergyUserLoadFraction> answer = new ArrayList<>();
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = prepareStreamingStatement(connection,
+                        "SELECT rollup.vm_id, vm_name, bucket, cpu_load_sum, power_overhead_sum, sample_count "
+                        + "FROM vm_measurement_rollup AS rollup, vm "
+                        + "WHERE rollup.vm_id = vm.vm_id AND rollup.host_id = ? AND resolution = ? "
+                        + "AND bucket >= ? AND bucket <= ? ORDER BY bucket;")) {
+            preparedStatement.setInt(1, host.getId());
+            preparedStatement.setInt(2, resolution);
+            preparedStatement.setLong(3, MeasurementRollup.getBucket(timePeriod.getStartTimeInSeconds(), resolution));
+            preparedStatement.setLong(4, timePeriod.getEndTimeInSeconds());
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                HostEnergyUserLoadFraction current = null;
+                while (resultSet.next()) {
+                    long bucket = resultSet.getLong(3);
+                    int sampleCount = resultSet.getInt(6);
+                    if (current == null || current.getTime() != bucket) {
+                        current = new HostEnergyUserLoadFraction(host, bucket);
+                        answer.add(current);
+                    }
+                    VmDeployed vm = getVM(resultSet.getInt(1), resultSet.getString(2), host, vmCache);
+                    current.addFraction(vm, resultSet.getDouble(4) / sampleCount);
+                    current.setHostPowerOffset(resultSet.getDouble(5) / sampleCount);
                 }
-            } catch (SQLException ex) {
-                Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
             }
+        } catch (SQLException ex) {
+            Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
         }
         return answer;
     }
 
+    @Override
+    public boolean getHostVmHistoryLoadData(Host host, TimePeriod timePeriod, LoadFractionHandler handler) {
+        if (host == null) {
+            return false;
+        }
+        /**
+         * The same records as getHostVmHistoryLoadData are used, i.e. summaries
+         * are used for the buckets they cover for long time periods, otherwise
+         * the raw measurements.
+         */
+        List<TimePeriod> periods = new ArrayList<>();
+        List<Integer> resolutions = new ArrayList<>();
+        int resolution = getRollupResolution(timePeriod);
+        TimePeriod[] split = (resolution > 0 ? getRollupPeriods(host, timePeriod, resolution) : null);
+        if (split == null) {
+            periods.add(timePeriod);
+            resolutions.add(0);
+        } else {
+            for (int i = 0; i < split.length; i++) {
+                if (split[i] != null) {
+                    periods.add(split[i]);
+                    resolutions.add(i == 1 ? resolution : 0);
+                }
+            }
+        }
+        HashMap<String, VmDeployed> vmCache = new HashMap<>();
+        /**
+         * A single connection is used, with each query run after the last has
+         * been read in full, as only one streamed result set may be open on a
+         * connection.
+         */
+        try (Connection connection = getPooledConnection()) {
+            long count = 0;
+            for (int i = 0; i < periods.size(); i++) {
+                count = count + getCount(connection, getVmHistoryLoadQuery(periods.get(i), resolutions.get(i), true),
+                        host, periods.get(i), resolutions.get(i));
+            }
+            handler.setRecordCount(count);
+            for (int i = 0; i < periods.size(); i++) {
+                try (PreparedStatement preparedStatement = prepareStreamingStatement(connection,
+                        getVmHistoryLoadQuery(periods.get(i), resolutions.get(i), false))) {
+                    setHistoryParameters(preparedStatement, host, periods.get(i), resolutions.get(i));
+                    try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                        LoadFractionCursor records = new LoadFractionCursor(resultSet, host, resolutions.get(i) > 0, vmCache);
+                        while (records.hasNext()) {
+                            handler.add(records.next());
+                        }
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This gets the query for the VM load records of a host, in time order,
+     * or the count of the records.
+     *
+     * @param timePeriod The time period to get the records for, may be null
+     * for raw records.
+     * @param resolution The resolution of the summaries to use, or 0 for raw
+     * records.
+     * @param count If the query should count the records
+     * @return The query for the VM load records of a host.
+     */
+    private static String getVmHistoryLoadQuery(TimePeriod timePeriod, int resolution, boolean count) {
+        if (resolution > 0) {
+            return (count ? "SELECT COUNT(DISTINCT bucket) " : "SELECT rollup.vm_id, vm_name, bucket, cpu_load_sum, power_overhead_sum, sample_count ")
+                    + "FROM vm_measurement_rollup AS rollup, vm "
+                    + "WHERE rollup.vm_id = vm.vm_id AND rollup.host_id = ? AND resolution = ? "
+                    + "AND bucket >= ? AND bucket <= ?" + (count ? ";" : " ORDER BY bucket;");
+        }
+        String timeClause = (timePeriod == null ? "" : " AND clock >= ? AND clock <= ?");
+        return (count ? "SELECT COUNT(DISTINCT clock) " : "SELECT host_id, vm_measurement.vm_id, vm_name, clock, cpu_load, power_overhead ")
+                + "FROM vm_measurement, vm "
+                + "WHERE vm_measurement.vm_id = vm.vm_id and vm_measurement.host_id = ?" + timeClause
+                + (count ? ";" : " ORDER BY clock;");
+    }
+
+    /**
+     * This runs a query that counts the historic records for a host.
+     *
+     * @param connection The connection to run the query on
+     * @param query The query to run
+     * @param host The host to count the records of
+     * @param timePeriod The time period to count the records in, may be null
+     * for raw records.
+     * @param resolution The resolution of the summaries to count, or 0 for
+     * raw records.
+     * @return The count of records
+     * @throws SQLException if a database access error occurs
+     */
+    private static long getCount(Connection connection, String query, Host host, TimePeriod timePeriod, int resolution) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            setHistoryParameters(preparedStatement, host, timePeriod, resolution);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return (resultSet.next() ? resultSet.getLong(1) : 0);
+            }
+        }
+    }
+
+    /**
+     * This sets the host, time period and resolution of a query for historic
+     * records.
+     *
+     * @param preparedStatement The query to set the parameters of
+     * @param host The host to get the records of
+     * @param timePeriod The time period to get the records for, may be null
+     * for raw records.
+     * @param resolution The resolution of the summaries to use, or 0 for raw
+     * records.
+     * @throws SQLException if a database access error occurs
+     */
+    private static void setHistoryParameters(PreparedStatement preparedStatement, Host host, TimePeriod timePeriod, int resolution) throws SQLException {
+        preparedStatement.setInt(1, host.getId());
+        if (resolution > 0) {
+            preparedStatement.setInt(2, resolution);
+            preparedStatement.setLong(3, MeasurementRollup.getBucket(timePeriod.getStartTimeInSeconds(), resolution));
+            preparedStatement.setLong(4, timePeriod.getEndTimeInSeconds());
+        } else if (timePeriod != null) {
+            preparedStatement.setLong(2, timePeriod.getStartTimeInSeconds());
+            preparedStatement.setLong(3, timePeriod.getEndTimeInSeconds());
+        }
+    }
+
+    /**
+     * This reads load fraction records one at a time from a result set, each
+     * record being made from all the rows with the same time.
+     */
+    private class LoadFractionCursor {
+
+        private final ResultSet resultSet;
+        private final Host host;
+        private final boolean summarised;
+        private final HashMap<String, VmDeployed> vmCache;
+        private boolean pending;
+
+        /**
+         * @param resultSet The rows of either the vm_measurement table or if
+         * summarised the vm_measurement_rollup table, ordered by time.
+         * @param host The host the rows are for
+         * @param summarised If the rows are from the summaries
+         * @param vmCache The cache of VMs already created for the query
+         * @throws SQLException if a database access error occurs
+         */
+        public LoadFractionCursor(ResultSet resultSet, Host host, boolean summarised, HashMap<String, VmDeployed> vmCache) throws SQLException {
+            this.resultSet = resultSet;
+            this.host = host;
+            this.summarised = summarised;
+            this.vmCache = vmCache;
+            pending = resultSet.next();
+        }
+
+        public boolean hasNext() {
+            return pending;
+        }
+
+        public HostEnergyUserLoadFraction next() throws SQLException {
+            HostEnergyUserLoadFraction answer = new HostEnergyUserLoadFraction(host, getClock());
+            while (pending && getClock() == answer.getTime()) {
+                if (summarised) {
+                    int sampleCount = resultSet.getInt(6);
+                    VmDeployed vm = getVM(resultSet.getInt(1), resultSet.getString(2), host, vmCache);
+                    answer.addFraction(vm, resultSet.getDouble(4) / sampleCount);
+                    answer.setHostPowerOffset(resultSet.getDouble(5) / sampleCount);
+                } else {
+                    VmDeployed vm = getVM(resultSet.getInt(2), resultSet.getString(3), host, vmCache);
+                    answer.addFraction(vm, resultSet.getDouble(5)); //load is the 5th column
+                    answer.setHostPowerOffset(resultSet.getDouble(6)); //power overhead is the 6th column
+                }
+                pending = resultSet.next();
+            }
+            return answer;
+        }
+
+        private long getClock() throws SQLException {
+            return resultSet.getLong(summarised ? 3 : 4);
+        }
+    }
+
     /**
      * This runs a query that returns the average CPU utilisation for either an
      * app tag or a vm disk reference.
@@ -763,11 +1341,8 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
     private VmLoadHistoryRecord getAverageCPUUtilisation(String query, String queryItem) {
         double answer = 0.0;
         double stdDev = 0.0;
-        connection = getConnection(connection);
-        if (connection == null) {
-            return new VmLoadHistoryRecord(answer, stdDev);
-        }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 query)) {
             preparedStatement.setString(1, queryItem);
             try (ResultSet resultSet = preparedStatement.executeQuery()) {
@@ -830,21 +1405,18 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     private List<VmLoadHistoryWeekRecord> getAverageCPUUtilisationWeekTrace(String query, String queryItem) {
         List<VmLoadHistoryWeekRecord> answer = new ArrayList<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return answer;
-        }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 query)) {
             preparedStatement.setString(1, queryItem);
-            ResultSet resultSet = preparedStatement.executeQuery();
-            ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-            for (ArrayList<Object> avgRecord : results) {
-                answer.add(new VmLoadHistoryWeekRecord(
-                        (int) avgRecord.get(2), //week day 3rd item
-                        (int) avgRecord.get(3), //day of week 4th item
-                        (double) avgRecord.get(0), // avg load is 1st item
-                        (double) avgRecord.get(1))); //standardDev is 2nd item
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    answer.add(new VmLoadHistoryWeekRecord(
+                            resultSet.getInt(3), //week day 3rd item
+                            resultSet.getInt(4), //day of week 4th item
+                            resultSet.getDouble(1), // avg load is 1st item
+                            resultSet.getDouble(2))); //standardDev is 2nd item
+                }
             }
         } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
@@ -904,11 +1476,11 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     @Override
     public double getVMCurrentBootTraceIndex(VmDeployed vm, int windowSize) {
-        connection = getConnection(connection);
-        if (connection == null || vm == null) {
+        if (vm == null) {
             return Double.NaN;
         }
-        try (Statement statement = connection.createStatement();
+        try (Connection connection = getPooledConnection();
+                Statement statement = connection.createStatement();
                 PreparedStatement preparedStatement = connection.prepareStatement(
                         "SELECT floor((max(vm_measurement.clock) - "
                         + "min(vm_measurement.clock)) / ?) "
@@ -941,21 +1513,18 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
      */
     private List<VmLoadHistoryBootRecord> getAverageCPUUtilisationBootTrace(String query, String queryItem, int windowSize) {
         List<VmLoadHistoryBootRecord> answer = new ArrayList<>();
-        connection = getConnection(connection);
-        if (connection == null) {
-            return answer;
-        }
-        try (PreparedStatement preparedStatement = connection.prepareStatement(
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
                 query)) {
             preparedStatement.setString(1, queryItem);
             preparedStatement.setInt(2, windowSize);
-            ResultSet resultSet = preparedStatement.executeQuery();
-            ArrayList<ArrayList<Object>> results = resultSetToArray(resultSet);
-            for (ArrayList<Object> avgRecord : results) {
-                answer.add(new VmLoadHistoryBootRecord(
-                        ((Long) avgRecord.get(0)).intValue(), //boot index
-                        (double) avgRecord.get(1), // avg load is 2nd item
-                        (double) avgRecord.get(2))); //Std Dev is 3rd item
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    answer.add(new VmLoadHistoryBootRecord(
+                            (int) resultSet.getLong(1), //boot index
+                            resultSet.getDouble(2), // avg load is 2nd item
+                            resultSet.getDouble(3))); //Std Dev is 3rd item
+                }
             }
         } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
@@ -1012,16 +1581,69 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
                 "GROUP BY start_clock DIV ?", diskName, windowSize);
     }
     
+    @Override
+    public boolean getVmWorkloadHistory(WorkloadStatisticsCache cache, long before) {
+        return getVmWorkloadHistory("SELECT tag.tag_name, mesu.clock, mesu.clock - valid_vms.start_time, mesu.cpu_load "
+                + "FROM vm_measurement AS mesu, "
+                + "(SELECT vm_id, min(clock) AS start_time FROM vm_measurement GROUP BY vm_id) AS valid_vms, "
+                + "vm_app_tag_arr AS arr, "
+                + "vm_app_tag AS tag "
+                + "WHERE mesu.vm_id = valid_vms.vm_id "
+                + "AND arr.vm_id = mesu.vm_id "
+                + "AND tag.vm_app_tag_id = arr.vm_app_tag_id "
+                + "AND mesu.clock < ?", cache, before, true)
+                && getVmWorkloadHistory("SELECT disk.disk_name, mesu.clock, mesu.clock - valid_vms.start_time, mesu.cpu_load "
+                + "FROM vm_measurement AS mesu, "
+                + "(SELECT vm_id, min(clock) AS start_time FROM vm_measurement GROUP BY vm_id) AS valid_vms, "
+                + "vm_disk_arr AS arr, "
+                + "vm_disk AS disk "
+                + "WHERE mesu.vm_id = valid_vms.vm_id "
+                + "AND arr.vm_id = mesu.vm_id "
+                + "AND disk.vm_disk_id = arr.vm_disk_id "
+                + "AND mesu.clock < ?", cache, before, false);
+    }
+
+    /**
+     * This reads VM measurements for either application tags or disk
+     * references and adds them to a workload statistics cache.
+     *
+     * @param query The query to run, either for application tags or disks.
+     * The rows must give the tag or disk, clock, time since the VM's first
+     * measurement and cpu load. Its only parameter is the time before which
+     * measurements are read.
+     * @param cache The workload statistics cache to add the measurements to
+     * @param before The time in Unix time before which measurements are read
+     * @param tags If the query is for application tags, otherwise disks
+     * @return If the measurements were read successfully
+     */
+    private boolean getVmWorkloadHistory(String query, WorkloadStatisticsCache cache, long before, boolean tags) {
+        try (Connection connection = getPooledConnection();
+                PreparedStatement preparedStatement = prepareStreamingStatement(connection, query)) {
+            preparedStatement.setLong(1, before);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (tags) {
+                        cache.addTagMeasurement(resultSet.getString(1), resultSet.getLong(2), resultSet.getLong(3), resultSet.getDouble(4));
+                    } else {
+                        cache.addDiskMeasurement(resultSet.getString(1), resultSet.getLong(2), resultSet.getLong(3), resultSet.getDouble(4));
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+        return true;
+    }
+    
     /**
      * This tests to see if the database connection is still live or not
      * @return If the database connection is live or not
      */
     @Override
     public boolean isConnectionValid() {
-        try {
-            if (connection != null) {
-                return connection.isValid(20);
-            }
+        try (Connection connection = getPooledConnection()) {
+            return connection.isValid(20);
         } catch (SQLException ex) {
             Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, "The connection was invalid.", ex);
         }
@@ -1029,18 +1651,18 @@ public class DefaultDatabaseConnector extends MySqlDatabaseConnector implements
     }
 
     /**
-     * This closes the database connection. It will be reopened if a query is
-     * called.
+     * This closes the database connections held in the connection pool. They
+     * will be reopened if a query is called. Any measurements waiting in the
+     * write behind queue, along with the incomplete measurement summaries,
+     * are written out before the connections are closed and the write behind
+     * queue's thread is stopped.
      */
     @Override
     public void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-                connection = null;
-            }
-        } catch (SQLException ex) {
-            Logger.getLogger(DefaultDatabaseConnector.class.getName()).log(Level.SEVERE, "The connection close operation failed.", ex);
+        stopMeasurementWriter();
+        if (measurementRollup != null) {
+            measurementRollup.flush();
         }
+        closePooledConnections();
     }
 }
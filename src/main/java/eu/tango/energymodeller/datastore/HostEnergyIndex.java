@@ -0,0 +1,271 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import eu.tango.energymodeller.types.TimePeriod;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.energymodeller.types.usage.HistoricUsageRecord;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This maintains a cumulative energy index for each host. Each entry of the
+ * index records, for a host measurement, the energy used by the host from the
+ * start of the index up until the time of the measurement, calculated by the
+ * trapezoid rule from the power readings. The energy used between any two
+ * points in time is then the difference between two entries, rather than the
+ * sum over every measurement in between.
+ *
+ * @author Richard Kavanagh
+ */
+public class HostEnergyIndex {
+
+    private static final String LAST_ENTRY = "SELECT clock, cumulative_energy, power FROM host_energy_index "
+            + "WHERE host_id = ? ORDER BY clock DESC LIMIT 1;";
+    private static final String ENTRIES_AROUND = "(SELECT clock, cumulative_energy FROM host_energy_index "
+            + "WHERE host_id = ? AND clock <= ? ORDER BY clock DESC LIMIT 1) "
+            + "UNION ALL (SELECT clock, cumulative_energy FROM host_energy_index "
+            + "WHERE host_id = ? AND clock >= ? ORDER BY clock ASC LIMIT 1);";
+    private static final String FIRST_MEASUREMENT = "SELECT MIN(clock) FROM host_measurement WHERE host_id = ?;";
+    private static final String LAST_MEASUREMENT = "SELECT MAX(clock) FROM host_measurement WHERE host_id = ?;";
+
+    private final DefaultDatabaseConnector database;
+    private final ConcurrentHashMap<Integer, IndexState> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * This creates a new maintainer of the cumulative energy index.
+     *
+     * @param database The database connector that provides the connection to
+     * the index.
+     */
+    public HostEnergyIndex(DefaultDatabaseConnector database) {
+        this.database = database;
+    }
+
+    /**
+     * This adds a host measurement to the index, returning the index entry's
+     * cumulative energy value. The caller is responsible for writing the entry
+     * out to the database.
+     *
+     * @param hostId The host's id
+     * @param clock The time of the measurement
+     * @param power The power reading
+     * @return The cumulative energy used by the host in Watt hours, up until
+     * the time of the measurement or NaN if the measurement is older than the
+     * last entry in the index, or the index could not be read.
+     */
+    public double add(int hostId, long clock, double power) {
+        IndexState state = getIndexState(hostId);
+        synchronized (state) {
+            if (!state.loaded && !loadLastEntry(hostId, state)) {
+                return Double.NaN;
+            }
+            if (state.lastClock >= 0 && clock <= state.lastClock) {
+                return Double.NaN;
+            }
+            if (state.lastClock >= 0) {
+                double deltaTime = clock - state.lastClock;
+                state.cumulativeEnergy = state.cumulativeEnergy + ((deltaTime / 3600d) * (state.lastPower + power) * 0.5);
+            }
+            state.lastClock = clock;
+            state.lastPower = power;
+            return state.cumulativeEnergy;
+        }
+    }
+
+    /**
+     * This gets the energy used by a host in a given time period, with the
+     * cumulative energy at each end of the period interpolated from the index
+     * entries either side of it.
+     *
+     * @param host The host to get the energy used for
+     * @param timePeriod The time period to get the energy used for, if null
+     * all recorded data is considered.
+     * @return The energy used by the host or null if the index does not cover
+     * the time period, i.e. there are raw measurements in the time period
+     * either before the first or after the last index entry.
+     */
+    public HistoricUsageRecord getEnergyUsed(Host host, TimePeriod timePeriod) {
+        long start = (timePeriod == null ? 0 : timePeriod.getStartTimeInSeconds());
+        long end = (timePeriod == null ? Long.MAX_VALUE : timePeriod.getEndTimeInSeconds());
+        try (Connection connection = database.getPooledConnection();
+                PreparedStatement entriesAround = connection.prepareStatement(ENTRIES_AROUND)) {
+            IndexPoint startPoint = getPoint(entriesAround, host.getId(), start);
+            IndexPoint endPoint = getPoint(entriesAround, host.getId(), end);
+            if (startPoint == null || endPoint == null || endPoint.clock < startPoint.clock) {
+                return null;
+            }
+            if (startPoint.clock > start) {
+                //The period starts before the index, check there is no older data
+                Long firstClock = getMeasurementClock(connection, FIRST_MEASUREMENT, host.getId());
+                if (firstClock != null && Math.max(start, firstClock) < startPoint.clock) {
+                    return null;
+                }
+            }
+            if (endPoint.clock < end) {
+                //The period ends after the index, check there is no newer data
+                Long lastClock = getMeasurementClock(connection, LAST_MEASUREMENT, host.getId());
+                if (lastClock != null && Math.min(end, lastClock) > endPoint.clock) {
+                    return null;
+                }
+            }
+            HistoricUsageRecord answer = new HistoricUsageRecord(host);
+            double totalEnergy = endPoint.cumulativeEnergy - startPoint.cumulativeEnergy;
+            answer.setTotalEnergyUsed(totalEnergy);
+            answer.setDuration(new TimePeriod(startPoint.clock, endPoint.clock));
+            if (endPoint.clock > startPoint.clock) {
+                answer.setAvgPowerUsed(totalEnergy / (((double) (endPoint.clock - startPoint.clock)) / 3600d));
+            }
+            return answer;
+        } catch (SQLException ex) {
+            Logger.getLogger(HostEnergyIndex.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return null;
+    }
+
+    /**
+     * This gets the time of either the first or last raw measurement of a
+     * host.
+     *
+     * @param connection The connection to query
+     * @param query The query for the time of the measurement
+     * @param hostId The host's id
+     * @return The time of the measurement, or null if the host has no
+     * measurements.
+     * @throws SQLException if a database access error occurs
+     */
+    private static Long getMeasurementClock(Connection connection, String query, int hostId) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            preparedStatement.setInt(1, hostId);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next() && resultSet.getObject(1) != null) {
+                    return resultSet.getLong(1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This gets the cumulative energy of a host at a given time, by
+     * interpolating between the index entries either side of it. Times
+     * outside of the index are moved to the nearest index entry.
+     *
+     * @param entriesAround The prepared query for the entries around a time
+     * @param hostId The host's id
+     * @param clock The time to get the cumulative energy for
+     * @return The cumulative energy at the given time, or null if the host has
+     * no index entries.
+     * @throws SQLException if a database access error occurs
+     */
+    private IndexPoint getPoint(PreparedStatement entriesAround, int hostId, long clock) throws SQLException {
+        entriesAround.setInt(1, hostId);
+        entriesAround.setLong(2, clock);
+        entriesAround.setInt(3, hostId);
+        entriesAround.setLong(4, clock);
+        IndexPoint before = null;
+        IndexPoint after = null;
+        try (ResultSet resultSet = entriesAround.executeQuery()) {
+            while (resultSet.next()) {
+                IndexPoint point = new IndexPoint(resultSet.getLong(1), resultSet.getDouble(2));
+                if (point.clock <= clock && before == null) {
+                    before = point;
+                } else {
+                    after = point;
+                }
+            }
+        }
+        if (before == null || after == null || after.clock == before.clock) {
+            return (before == null ? after : before);
+        }
+        double fraction = ((double) (clock - before.clock)) / ((double) (after.clock - before.clock));
+        return new IndexPoint(clock, before.cumulativeEnergy + fraction * (after.cumulativeEnergy - before.cumulativeEnergy));
+    }
+
+    /**
+     * This gets the state held for a host, creating it if required.
+     *
+     * @param hostId The host's id
+     * @return The index state for the host.
+     */
+    private IndexState getIndexState(int hostId) {
+        IndexState state = hosts.get(hostId);
+        if (state == null) {
+            hosts.putIfAbsent(hostId, new IndexState());
+            state = hosts.get(hostId);
+        }
+        return state;
+    }
+
+    /**
+     * This loads the last entry of the index for a host, so that the index
+     * continues on from where it was left after a restart.
+     *
+     * @param hostId The host's id
+     * @param state The state to load the last entry into
+     * @return If the index could be read, even if it held no entries.
+     */
+    private boolean loadLastEntry(int hostId, IndexState state) {
+        try (Connection connection = database.getPooledConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(LAST_ENTRY)) {
+            preparedStatement.setInt(1, hostId);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    state.lastClock = resultSet.getLong(1);
+                    state.cumulativeEnergy = resultSet.getDouble(2);
+                    state.lastPower = resultSet.getDouble(3);
+                }
+            }
+            state.loaded = true;
+        } catch (SQLException ex) {
+            Logger.getLogger(HostEnergyIndex.class.getName()).log(Level.SEVERE, "Failed to load the host's energy index", ex);
+        }
+        return state.loaded;
+    }
+
+    /**
+     * The running state of the index for a single host.
+     */
+    private static class IndexState {
+
+        private boolean loaded = false;
+        private long lastClock = -1;
+        private double lastPower = 0;
+        private double cumulativeEnergy = 0;
+    }
+
+    /**
+     * A point in the index, either an entry or interpolated between two.
+     */
+    private static class IndexPoint {
+
+        private final long clock;
+        private final double cumulativeEnergy;
+
+        public IndexPoint(long clock, double cumulativeEnergy) {
+            this.clock = clock;
+            this.cumulativeEnergy = cumulativeEnergy;
+        }
+    }
+}
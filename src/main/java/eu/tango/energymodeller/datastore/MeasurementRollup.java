@@ -0,0 +1,436 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import eu.tango.energymodeller.types.TimePeriod;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * This maintains minute and hour level summaries of the host, VM and
+ * application measurement data, as it is written to the database. Each
+ * summary (or bucket) records the last energy reading, the sums needed to
+ * give average power and average CPU load, and the amount of samples seen.
+ *
+ * Buckets are accumulated in memory and written out once a later sample shows
+ * they are complete. Written buckets are merged with any existing row for the
+ * same bucket, so a bucket split by a restart of the energy modeller is still
+ * recorded correctly.
+ *
+ * @author Richard Kavanagh
+ */
+public class MeasurementRollup {
+
+    /**
+     * The resolution of the minute level summaries, in seconds.
+     */
+    public static final int MINUTE = 60;
+    /**
+     * The resolution of the hour level summaries, in seconds.
+     */
+    public static final int HOUR = 3600;
+    private static final int[] RESOLUTIONS = {MINUTE, HOUR};
+
+    private static final String HOST_ROLLUP_UPSERT = "INSERT INTO host_measurement_rollup "
+            + "(host_id, resolution, bucket, first_clock, last_clock, last_energy, power_sum, sample_count) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+            + "first_clock = LEAST(first_clock, VALUES(first_clock)), "
+            + "last_energy = IF(VALUES(last_clock) >= last_clock, VALUES(last_energy), last_energy), "
+            + "last_clock = GREATEST(last_clock, VALUES(last_clock)), "
+            + "power_sum = power_sum + VALUES(power_sum), "
+            + "sample_count = sample_count + VALUES(sample_count);";
+    private static final String VM_ROLLUP_UPSERT = "INSERT INTO vm_measurement_rollup "
+            + "(host_id, vm_id, resolution, bucket, cpu_load_sum, power_overhead_sum, sample_count) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+            + "cpu_load_sum = cpu_load_sum + VALUES(cpu_load_sum), "
+            + "power_overhead_sum = power_overhead_sum + VALUES(power_overhead_sum), "
+            + "sample_count = sample_count + VALUES(sample_count);";
+    private static final String APP_ROLLUP_UPSERT = "INSERT INTO app_measurement_rollup "
+            + "(host_id, app_id, resolution, bucket, cpu_load_sum, power_overhead_sum, sample_count) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE "
+            + "cpu_load_sum = cpu_load_sum + VALUES(cpu_load_sum), "
+            + "power_overhead_sum = power_overhead_sum + VALUES(power_overhead_sum), "
+            + "sample_count = sample_count + VALUES(sample_count);";
+
+    private final DefaultDatabaseConnector database;
+    private final ConcurrentHashMap<Integer, HostState> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * This creates a new maintainer of the measurement summaries.
+     *
+     * @param database The database connector that provides the connection to
+     * write to.
+     */
+    public MeasurementRollup(DefaultDatabaseConnector database) {
+        this.database = database;
+    }
+
+    /**
+     * This returns the bucket that a given time belongs to, at a given
+     * resolution.
+     *
+     * @param clock The time in seconds
+     * @param resolution The resolution of the bucket, in seconds
+     * @return The start time of the bucket that holds the given time.
+     */
+    public static long getBucket(long clock, int resolution) {
+        return clock - (clock % resolution);
+    }
+
+    /**
+     * This splits a time period into the part that is answered by the
+     * summaries and the parts either side of it that must be answered from the
+     * raw measurements. These are the measurements taken before the summaries
+     * were kept and those that are in buckets that have not been written out
+     * yet, i.e. the bucket that is still open.
+     *
+     * @param timePeriod The time period of the query
+     * @param firstBucket The first bucket of the summaries in the time period
+     * @param lastBucket The last bucket of the summaries in the time period
+     * @param resolution The resolution of the summaries, in seconds
+     * @return The time period before the summaries, the time period of the
+     * summaries and the time period after the summaries, in that order. The
+     * periods before and after are null if they are empty.
+     */
+    public static TimePeriod[] splitTimePeriod(TimePeriod timePeriod, long firstBucket, long lastBucket, int resolution) {
+        TimePeriod[] answer = new TimePeriod[3];
+        if (timePeriod.getStartTimeInSeconds() < firstBucket) {
+            answer[0] = new TimePeriod(timePeriod.getStartTimeInSeconds(), firstBucket - 1);
+        }
+        answer[1] = new TimePeriod(firstBucket, lastBucket);
+        if (timePeriod.getEndTimeInSeconds() >= lastBucket + resolution) {
+            answer[2] = new TimePeriod(lastBucket + resolution, timePeriod.getEndTimeInSeconds());
+        }
+        return answer;
+    }
+
+    /**
+     * This adds a host measurement to the summaries.
+     *
+     * @param hostId The host's id
+     * @param clock The time of the measurement
+     * @param power The power reading
+     * @param energy The energy meter reading
+     */
+    public void addHostMeasurement(int hostId, long clock, double power, double energy) {
+        ArrayList<HostBucket> closedHostBuckets = new ArrayList<>();
+        ArrayList<UserBucket> closedUserBuckets = new ArrayList<>();
+        HostState state = getHostState(hostId);
+        synchronized (state) {
+            for (int i = 0; i < RESOLUTIONS.length; i++) {
+                long bucket = getBucket(clock, RESOLUTIONS[i]);
+                HostBucket current = state.hostBuckets[i];
+                if (current != null && current.bucket != bucket) {
+                    closedHostBuckets.add(current);
+                    current = null;
+                }
+                if (current == null) {
+                    current = new HostBucket(hostId, RESOLUTIONS[i], bucket);
+                    state.hostBuckets[i] = current;
+                }
+                current.add(clock, power, energy);
+                //Energy users no longer seen on the host have completed their buckets
+                closeUserBuckets(state.vms, i, clock, closedUserBuckets);
+                closeUserBuckets(state.apps, i, clock, closedUserBuckets);
+            }
+        }
+        write(closedHostBuckets, closedUserBuckets);
+    }
+
+    /**
+     * This adds a VM or application measurement to the summaries.
+     *
+     * @param table The table the measurement belongs to, either VM or APP.
+     * @param hostId The host's id
+     * @param userId The VM's or application's id
+     * @param clock The time of the measurement
+     * @param cpuLoad The fraction of the host's load
+     * @param powerOverhead The share of the overhead power
+     */
+    public void addUserMeasurement(BatchedMeasurementWriter.Table table, int hostId, int userId, long clock, double cpuLoad, double powerOverhead) {
+        ArrayList<UserBucket> closedUserBuckets = new ArrayList<>();
+        HostState state = getHostState(hostId);
+        synchronized (state) {
+            HashMap<Integer, UserBucket[]> users = (table == BatchedMeasurementWriter.Table.APP ? state.apps : state.vms);
+            UserBucket[] buckets = users.get(userId);
+            if (buckets == null) {
+                buckets = new UserBucket[RESOLUTIONS.length];
+                users.put(userId, buckets);
+            }
+            for (int i = 0; i < RESOLUTIONS.length; i++) {
+                long bucket = getBucket(clock, RESOLUTIONS[i]);
+                UserBucket current = buckets[i];
+                if (current != null && current.bucket != bucket) {
+                    closedUserBuckets.add(current);
+                    current = null;
+                }
+                if (current == null) {
+                    current = new UserBucket(table, hostId, userId, RESOLUTIONS[i], bucket);
+                    buckets[i] = current;
+                }
+                current.add(cpuLoad, powerOverhead);
+            }
+        }
+        write(new ArrayList<HostBucket>(), closedUserBuckets);
+    }
+
+    /**
+     * This writes out all buckets, including those that are not yet
+     * complete. Any later samples for the same buckets are merged with the
+     * rows written.
+     */
+    public void flush() {
+        ArrayList<HostBucket> hostBuckets = new ArrayList<>();
+        ArrayList<UserBucket> userBuckets = new ArrayList<>();
+        for (HostState state : hosts.values()) {
+            synchronized (state) {
+                for (int i = 0; i < RESOLUTIONS.length; i++) {
+                    if (state.hostBuckets[i] != null) {
+                        hostBuckets.add(state.hostBuckets[i]);
+                        state.hostBuckets[i] = null;
+                    }
+                    closeUserBuckets(state.vms, i, Long.MAX_VALUE, userBuckets);
+                    closeUserBuckets(state.apps, i, Long.MAX_VALUE, userBuckets);
+                }
+                state.vms.clear();
+                state.apps.clear();
+            }
+        }
+        write(hostBuckets, userBuckets);
+    }
+
+    /**
+     * This gets the state held for a host, creating it if required.
+     *
+     * @param hostId The host's id
+     * @return The summary state for the host.
+     */
+    private HostState getHostState(int hostId) {
+        HostState state = hosts.get(hostId);
+        if (state == null) {
+            hosts.putIfAbsent(hostId, new HostState());
+            state = hosts.get(hostId);
+        }
+        return state;
+    }
+
+    /**
+     * This closes the VM or application buckets for a given resolution that
+     * end at or before a given time.
+     *
+     * @param users The buckets of each VM or application on the host
+     * @param resolutionIndex The index of the resolution to close buckets for
+     * @param clock The current time
+     * @param closed The list to add closed buckets to
+     */
+    private static void closeUserBuckets(HashMap<Integer, UserBucket[]> users, int resolutionIndex, long clock, ArrayList<UserBucket> closed) {
+        for (Iterator<Map.Entry<Integer, UserBucket[]>> it = users.entrySet().iterator(); it.hasNext();) {
+            UserBucket[] buckets = it.next().getValue();
+            UserBucket current = buckets[resolutionIndex];
+            if (current != null && (clock == Long.MAX_VALUE || current.bucket + current.resolution <= clock)) {
+                closed.add(current);
+                buckets[resolutionIndex] = null;
+            }
+            boolean empty = true;
+            for (UserBucket bucket : buckets) {
+                empty = empty && bucket == null;
+            }
+            if (empty) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * This writes completed buckets out to the database.
+     *
+     * @param hostBuckets The host buckets to write
+     * @param userBuckets The VM and application buckets to write
+     */
+    void write(ArrayList<HostBucket> hostBuckets, ArrayList<UserBucket> userBuckets) {
+        if (hostBuckets.isEmpty() && userBuckets.isEmpty()) {
+            return;
+        }
+        try (Connection connection = database.getPooledConnection();
+                PreparedStatement hostStatement = connection.prepareStatement(HOST_ROLLUP_UPSERT);
+                PreparedStatement vmStatement = connection.prepareStatement(VM_ROLLUP_UPSERT);
+                PreparedStatement appStatement = connection.prepareStatement(APP_ROLLUP_UPSERT)) {
+            for (HostBucket bucket : hostBuckets) {
+                hostStatement.setInt(1, bucket.hostId);
+                hostStatement.setInt(2, bucket.resolution);
+                hostStatement.setLong(3, bucket.bucket);
+                hostStatement.setLong(4, bucket.firstClock);
+                hostStatement.setLong(5, bucket.lastClock);
+                hostStatement.setDouble(6, bucket.lastEnergy);
+                hostStatement.setDouble(7, bucket.powerSum);
+                hostStatement.setInt(8, bucket.sampleCount);
+                hostStatement.addBatch();
+            }
+            boolean vms = false;
+            boolean apps = false;
+            for (UserBucket bucket : userBuckets) {
+                PreparedStatement statement = vmStatement;
+                if (bucket.table == BatchedMeasurementWriter.Table.APP) {
+                    statement = appStatement;
+                    apps = true;
+                } else {
+                    vms = true;
+                }
+                statement.setInt(1, bucket.hostId);
+                statement.setInt(2, bucket.userId);
+                statement.setInt(3, bucket.resolution);
+                statement.setLong(4, bucket.bucket);
+                statement.setDouble(5, bucket.cpuLoadSum);
+                statement.setDouble(6, bucket.powerOverheadSum);
+                statement.setInt(7, bucket.sampleCount);
+                statement.addBatch();
+            }
+            if (!hostBuckets.isEmpty()) {
+                hostStatement.executeBatch();
+            }
+            if (vms) {
+                vmStatement.executeBatch();
+            }
+            if (apps) {
+                appStatement.executeBatch();
+            }
+        } catch (SQLException ex) {
+            Logger.getLogger(MeasurementRollup.class.getName()).log(Level.SEVERE, "Failed to write the measurement summaries.", ex);
+        }
+    }
+
+    /**
+     * The summary state held for a single host.
+     */
+    private static class HostState {
+
+        private final HostBucket[] hostBuckets = new HostBucket[RESOLUTIONS.length];
+        private final HashMap<Integer, UserBucket[]> vms = new HashMap<>();
+        private final HashMap<Integer, UserBucket[]> apps = new HashMap<>();
+    }
+
+    /**
+     * A summary of a host's measurements over a single bucket of time.
+     */
+    static class HostBucket {
+
+        private final int hostId;
+        private final int resolution;
+        private final long bucket;
+        private long firstClock = Long.MAX_VALUE;
+        private long lastClock = Long.MIN_VALUE;
+        private double lastEnergy;
+        private double powerSum = 0;
+        private int sampleCount = 0;
+
+        public HostBucket(int hostId, int resolution, long bucket) {
+            this.hostId = hostId;
+            this.resolution = resolution;
+            this.bucket = bucket;
+        }
+
+        public void add(long clock, double power, double energy) {
+            firstClock = Math.min(firstClock, clock);
+            if (clock >= lastClock) {
+                lastClock = clock;
+                lastEnergy = energy;
+            }
+            powerSum = powerSum + power;
+            sampleCount++;
+        }
+
+        public int getResolution() {
+            return resolution;
+        }
+
+        public long getBucket() {
+            return bucket;
+        }
+
+        public double getLastEnergy() {
+            return lastEnergy;
+        }
+
+        public double getPowerSum() {
+            return powerSum;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+    }
+
+    /**
+     * A summary of a VM's or application's measurements over a single bucket
+     * of time.
+     */
+    static class UserBucket {
+
+        private final BatchedMeasurementWriter.Table table;
+        private final int hostId;
+        private final int userId;
+        private final int resolution;
+        private final long bucket;
+        private double cpuLoadSum = 0;
+        private double powerOverheadSum = 0;
+        private int sampleCount = 0;
+
+        public UserBucket(BatchedMeasurementWriter.Table table, int hostId, int userId, int resolution, long bucket) {
+            this.table = table;
+            this.hostId = hostId;
+            this.userId = userId;
+            this.resolution = resolution;
+            this.bucket = bucket;
+        }
+
+        public void add(double cpuLoad, double powerOverhead) {
+            cpuLoadSum = cpuLoadSum + cpuLoad;
+            powerOverheadSum = powerOverheadSum + powerOverhead;
+            sampleCount++;
+        }
+
+        public int getUserId() {
+            return userId;
+        }
+
+        public int getResolution() {
+            return resolution;
+        }
+
+        public long getBucket() {
+            return bucket;
+        }
+
+        public double getCpuLoadSum() {
+            return cpuLoadSum;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+    }
+}
@@ -17,6 +17,7 @@ package eu.tango.energymodeller.datastore;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -32,37 +33,123 @@ import java.util.logging.Logger;
  */
 public abstract class MySqlDatabaseConnector {
 
+    private static final long POOL_BORROW_TIMEOUT = 30000;
+    private volatile ConnectionPool pool = null;
+    private int poolSize = 8;
+    private long poolValidationInterval = 30000;
+    /**
+     * The MySQL driver streams rows one at a time from the server, rather than
+     * reading the whole result into memory, when given this fetch size.
+     */
+    private int streamingFetchSize = Integer.MIN_VALUE;
+
     protected abstract Connection getConnection() throws IOException, SQLException, ClassNotFoundException;
 
     /**
-     * This tests and sets the connection to make sure that it is established.
+     * This sets the size and validation settings of the connection pool. It
+     * should be called before the first connection is requested.
      *
-     * @param connection The connection to test
-     * @return The connection passed in or a new one if it is null or otherwise
-     * closed. If a connection cannot be created null is returned.
+     * @param size The maximum amount of connections that may be open at once.
+     * @param validationInterval The time in milliseconds a connection may be
+     * idle for before it is validated prior to reuse.
      */
-    protected Connection getConnection(Connection connection) {
-        try {
-            if (connection == null || !connection.isValid(30)) {
-                return getConnection();
-            }
-            return connection;
-        } catch (SQLException | IOException | ClassNotFoundException ex) {
-            Logger.getLogger(MySqlDatabaseConnector.class.getName()).log(Level.SEVERE, "Failed to establish the connection to the database", ex);
-            try {
-                if (connection == null || connection.isValid(30)) {
-                    return getConnection();
+    protected void setPoolSettings(int size, long validationInterval) {
+        this.poolSize = size;
+        this.poolValidationInterval = validationInterval;
+    }
+
+    /**
+     * This obtains a connection from this connector's connection pool. The
+     * connection must be closed after use, which returns it to the pool, it is
+     * therefore expected to be used in a try with resources block.
+     *
+     * @return A connection to the database
+     * @throws SQLException If a connection could not be established
+     */
+    protected Connection getPooledConnection() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (this) {
+                if (pool == null) {
+                    pool = new ConnectionPool(this, poolSize, poolValidationInterval, POOL_BORROW_TIMEOUT);
                 }
-            } catch (SQLException | IOException | ClassNotFoundException ex1) {
-                Logger.getLogger(MySqlDatabaseConnector.class.getName()).log(Level.SEVERE, "Failed to connect to the database on the second attempt", ex1);
+                current = pool;
             }
         }
-        return null;
-    }    
-    
+        return current.getConnection();
+    }
+
+    /**
+     * This closes all idle connections held in the connection pool. New
+     * connections are opened if a query is called afterwards.
+     */
+    protected void closePooledConnections() {
+        ConnectionPool current = pool;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * This sets the fetch size used by statements that stream their results.
+     * The default of Integer.MIN_VALUE makes the MySQL driver stream rows one
+     * at a time, other drivers may need a positive value.
+     *
+     * @param fetchSize The fetch size to use for streaming statements
+     */
+    protected void setStreamingFetchSize(int fetchSize) {
+        this.streamingFetchSize = fetchSize;
+    }
+
+    /**
+     * This prepares a forward only, read only statement whose results are
+     * streamed from the database, so that the memory used while reading them
+     * stays constant regardless of how many rows are returned. The
+     * connection must not be used for other queries until the result set has
+     * been closed.
+     *
+     * @param connection The connection to prepare the statement on
+     * @param query The query to prepare
+     * @return The prepared statement
+     * @throws SQLException if a database access error occurs
+     */
+    protected PreparedStatement prepareStreamingStatement(Connection connection, String query) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            statement.setFetchSize(streamingFetchSize);
+        } catch (SQLException ex) {
+            //Drivers that don't support streaming will read the results in one go
+            Logger.getLogger(MySqlDatabaseConnector.class.getName()).log(Level.FINE, "The fetch size for streaming could not be set", ex);
+        }
+        return statement;
+    }
+
+    /**
+     * This reads a result set row by row, converting each row directly into a
+     * typed object.
+     *
+     * @param <T> The type of object each row is converted into
+     * @param results The result set to read
+     * @param mapper The mapper that converts each row
+     * @return The list of objects, one for each row not skipped by the mapper.
+     * @throws SQLException if a database access error occurs
+     */
+    protected <T> ArrayList<T> mapResultSet(ResultSet results, RowMapper<T> mapper) throws SQLException {
+        ArrayList<T> answer = new ArrayList<>();
+        while (results.next()) {
+            T item = mapper.mapRow(results);
+            if (item != null) {
+                answer.add(item);
+            }
+        }
+        return answer;
+    }
+
     /**
      * This converts a result set into an array list structure that has all the
-     * objects precast and ready for use.
+     * objects precast and ready for use. Every value is boxed and the whole
+     * result is held in memory, for large results a {@link RowMapper} should
+     * be used instead.
      *
      * @param results The result set to convert
      * @return The ArrayList representing the object.
@@ -79,22 +166,22 @@ public abstract class MySqlDatabaseConnector {
         while (results.next()) {
             ArrayList<Object> row = new ArrayList<>();
             for (int i = 1; i <= numberOfColumns; i++) {
-                if (results.getMetaData().getColumnType(i) == Types.BOOLEAN) {
+                if (metaData.getColumnType(i) == Types.BOOLEAN) {
                     row.add(results.getBoolean(i));
-                } else if (results.getMetaData().getColumnType(i) == Types.BIGINT) {
+                } else if (metaData.getColumnType(i) == Types.BIGINT) {
                     row.add(new Long(results.getLong(i)));
-                } else if (isIntegerType(results.getMetaData(), i)) {
+                } else if (isIntegerType(metaData, i)) {
                     row.add(new Integer(results.getInt(i)));
-                } else if (isDoubleType(results.getMetaData(), i)) {
+                } else if (isDoubleType(metaData, i)) {
                     row.add(new Double(results.getDouble(i)));
-                } else if (isStringType(results.getMetaData(), i)) {
+                } else if (isStringType(metaData, i)) {
                     row.add(results.getString(i));
-                } else if (results.getMetaData().getColumnType(i) == Types.NULL) {
+                } else if (metaData.getColumnType(i) == Types.NULL) {
                     row.add(null);
-                } else if (results.getMetaData().getColumnTypeName(i).compareTo("datetime") == 0) {
+                } else if (metaData.getColumnTypeName(i).compareTo("datetime") == 0) {
                     row.add(results.getDate(i));
                 } else {
-                    throw new SQLException("Error processing SQL datatype:" + results.getMetaData().getColumnTypeName(i));
+                    throw new SQLException("Error processing SQL datatype:" + metaData.getColumnTypeName(i));
                 }
             }
             table.add(row);
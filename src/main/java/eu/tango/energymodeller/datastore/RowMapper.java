@@ -0,0 +1,45 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * This converts the current row of a result set directly into a typed object.
+ * Columns are read with the primitive getters of the result set, so no
+ * intermediate boxed representation of the row is created.
+ *
+ * @author Richard Kavanagh
+ * @param <T> The type of object each row is converted into
+ */
+public interface RowMapper<T> {
+
+    /**
+     * This converts the current row of a result set into an object. The
+     * mapper must not move the cursor of the result set.
+     *
+     * @param row The result set, positioned at the row to convert
+     * @return The object representing the row, or null if the row should be
+     * skipped.
+     * @throws SQLException if a database access error occurs
+     */
+    public T mapRow(ResultSet row) throws SQLException;
+
+}
@@ -20,52 +20,80 @@ import eu.tango.energymodeller.datasourceclient.VmMeasurement;
 import eu.tango.energymodeller.types.energyuser.VM;
 import eu.tango.energymodeller.types.energyuser.VmDeployed;
 import eu.tango.energymodeller.types.energyuser.VmDiskImage;
-import eu.tango.energymodeller.types.usage.DayOfWeek;
-import eu.tango.energymodeller.types.usage.RunningAverage;
+import eu.tango.energymodeller.types.usage.VmLoadHistoryRecord;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.GregorianCalendar;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.clapper.util.misc.FileHashMap;
-import org.clapper.util.misc.ObjectExistsException;
-import org.clapper.util.misc.VersionMismatchException;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 
 /**
  * The aim of this is to generate a running average counter for various workload
  * metrics. This enables faster querying than a database oriented approach by
  * maintaining statistics such as averages in memory.
  *
+ * Each application tag and disk reference has one record of primitive arrays,
+ * holding the sum, count and sum of squares of the cpu utilisation overall,
+ * for each of the 168 hours of the week and for each hour since boot. Adding
+ * a measurement and looking up an average or standard deviation are therefore
+ * only index arithmetic.
+ *
+ * The statistics are updated in memory only. They are written to a checkpoint
+ * file in the background, either periodically or once enough updates have
+ * been made, and when the energy modeller shuts down. The checkpoint is
+ * written to a temporary file that then replaces the previous checkpoint, so
+ * a crash while writing leaves the previous checkpoint intact. On start up
+ * the statistics are recovered from the last checkpoint. If there is no
+ * checkpoint they may be rebuilt from the VM measurements held in the
+ * database. Only measurements taken before the cache started are read back,
+ * as later ones are added to the cache as they are gathered.
+ *
  * @author Richard Kavanagh
  */
 public class WorkloadStatisticsCache {
 
-    private boolean inUse = false;
-
-    //Running averages since the last restart of the energy modeller.
-    private FileHashMap<String, RunningAverage> tagAverage;
-    private FileHashMap<String, RunningAverage> diskAverage;
-    /**
-     * The next set are for time from boot records (first field tag second boot
-     * index. If the Energy modeller is restarted there is a notion that VMs
-     * that have already started will not have data for earlier parts of their
-     * traces, thus a hashmap is used rather than a simple list.
-     */
+    private static final String CONFIG_FILE = "energy-modeller-data-gatherer.properties";
+    private static final int CHECKPOINT_VERSION = 2;
     private static final int BOOT_BUCKET_SIZE = 3600; //time in seconds to make each bucket
-    private FileHashMap<String, HashMap<Integer, RunningAverage>> tagBootAverage;
-    private FileHashMap<String, HashMap<Integer, RunningAverage>> diskBootAverage;
+    private static final int HOURS_IN_WEEK = 168;
+    private boolean inUse = false;
+    private File checkpointFile = new File("./WorkloadStatistics.dat");
+    private int checkpointInterval = 60; //seconds between checkpoints
+    private int checkpointThreshold = 1000; //updates before an early checkpoint
+    private int bootBuckets = 168; //hours since boot that are recorded separately
+    private final TimeZone timeZone = TimeZone.getDefault();
+    private final long startTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    private int dirty = 0;
+    private boolean recovered = false;
+    private boolean rebuilding = false;
+    private final AtomicBoolean checkpointQueued = new AtomicBoolean(false);
+    private final ScheduledExecutorService checkpointer;
+    private final Object checkpointWriteLock = new Object();
 
-    /**
-     * The next set are for day of week records (first field tag second day of
-     * week. If the Energy modeller is restarted there is a notion that VMs that
-     * have already started will not have data for earlier parts of their
-     * traces, thus a hashmap is used rather than a simple list.
-     */
-    private FileHashMap<String, HashMap<DayOfWeek, RunningAverage>> tagDoWAverage;
-    private FileHashMap<String, HashMap<DayOfWeek, RunningAverage>> diskDoWAverage;
+    //Statistics for each application tag and disk reference.
+    private HashMap<String, WorkloadRecord> tagStatistics = new HashMap<>();
+    private HashMap<String, WorkloadRecord> diskStatistics = new HashMap<>();
 
     /**
      * SingletonHolder is loaded on the first execution of
@@ -93,44 +121,299 @@ public class WorkloadStatisticsCache {
      */
     private WorkloadStatisticsCache() {
         try {
-            cleanFilesUp("./TagListing");
-            cleanFilesUp("./DiskListing");
-            cleanFilesUp("./TagBootAverage");
-            cleanFilesUp("./DiskBootAverage");
-            cleanFilesUp("./TagDoWAverage");
-            cleanFilesUp("./DiskDoWAverage");
-            tagAverage = new FileHashMap<>("./TagListing", FileHashMap.FORCE_OVERWRITE);
-            diskAverage = new FileHashMap<>("./DiskListing", FileHashMap.FORCE_OVERWRITE);
-            tagBootAverage = new FileHashMap<>("./TagBootAverage", FileHashMap.FORCE_OVERWRITE);
-            diskBootAverage = new FileHashMap<>("./DiskBootAverage", FileHashMap.FORCE_OVERWRITE);
-            tagDoWAverage = new FileHashMap<>("./TagDoWAverage", FileHashMap.FORCE_OVERWRITE);
-            diskDoWAverage = new FileHashMap<>("./DiskDoWAverage", FileHashMap.FORCE_OVERWRITE);
-        } catch (IOException | ObjectExistsException | ClassNotFoundException | VersionMismatchException ex) {
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.SEVERE, null, ex);
+            PropertiesConfiguration config;
+            if (new File(CONFIG_FILE).exists()) {
+                config = new PropertiesConfiguration(CONFIG_FILE);
+            } else {
+                config = new PropertiesConfiguration();
+                config.setFile(new File(CONFIG_FILE));
+            }
+            config.setAutoSave(true); //This will save the configuration file back to disk. In case the defaults need setting.
+            checkpointFile = new File(config.getString("energy.modeller.workload.cache.checkpoint.filename", checkpointFile.getPath()));
+            config.setProperty("energy.modeller.workload.cache.checkpoint.filename", checkpointFile.getPath());
+            checkpointInterval = config.getInt("energy.modeller.workload.cache.checkpoint.interval", checkpointInterval);
+            config.setProperty("energy.modeller.workload.cache.checkpoint.interval", checkpointInterval);
+            checkpointThreshold = config.getInt("energy.modeller.workload.cache.checkpoint.threshold", checkpointThreshold);
+            config.setProperty("energy.modeller.workload.cache.checkpoint.threshold", checkpointThreshold);
+            bootBuckets = config.getInt("energy.modeller.workload.cache.boot_buckets", bootBuckets);
+            config.setProperty("energy.modeller.workload.cache.boot_buckets", bootBuckets);
+        } catch (ConfigurationException ex) {
+            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Error loading the configuration of the workload statistics cache", ex);
         }
+        checkpointer = createCheckpointer();
+        start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                checkpoint();
+            }
+        }, "energy-modeller-workload-checkpoint-shutdown"));
+    }
 
+    /**
+     * This creates a workload statistics cache that is not the singleton
+     * instance and ignores the configuration file, it is used for testing.
+     *
+     * @param checkpointFile The file to recover from and to write
+     * checkpoints to
+     * @param checkpointInterval The seconds between checkpoints, 0 to disable
+     * periodic checkpoints
+     * @param checkpointThreshold The updates before an early checkpoint, 0 to
+     * disable early checkpoints
+     * @param bootBuckets The hours since boot that are recorded separately
+     */
+    WorkloadStatisticsCache(File checkpointFile, int checkpointInterval, int checkpointThreshold, int bootBuckets) {
+        this.checkpointFile = checkpointFile;
+        this.checkpointInterval = checkpointInterval;
+        this.checkpointThreshold = checkpointThreshold;
+        this.bootBuckets = bootBuckets;
+        checkpointer = createCheckpointer();
+        start();
     }
 
     /**
-     * This aims to deal with the situation where the .db file has been created
-     * but because no entries were added the idx file was not. This thus avoids
-     * exceptions when both files don't exist on reloading the hash maps.
+     * This creates an in memory only workload statistics cache, which the
+     * statistics are rebuilt into before being merged into this cache.
      *
-     * @param filename
+     * @param bootBuckets The hours since boot that are recorded separately
      */
-    private void cleanFilesUp(String filename) {
-        /**
-         * Avoids: org.clapper.util.misc.ObjectExistsException: One of the hash
-         * table files exists ("DiskListing.db" or "DiskListing.ix") exists, but
-         * the other one does not.
-         */
-        File file = new File(filename + ".db");
-        File fileIndex = new File(filename + ".ix");
-        if (file.exists() && !fileIndex.exists()) {
-            boolean deleted = file.delete();
-            if (deleted == false) {
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.SEVERE, "The deletion of the file {0} did not work.", file.getName());
+    private WorkloadStatisticsCache(int bootBuckets) {
+        this.bootBuckets = bootBuckets;
+        checkpointThreshold = 0;
+        checkpointer = null;
+    }
+
+    /**
+     * This creates the executor that writes checkpoints in the background.
+     *
+     * @return The checkpoint executor
+     */
+    private static ScheduledExecutorService createCheckpointer() {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread answer = new Thread(runnable, "energy-modeller-workload-checkpoint");
+                answer.setDaemon(true);
+                return answer;
+            }
+        });
+    }
+
+    /**
+     * This recovers the statistics from the last checkpoint and schedules the
+     * periodic checkpoints.
+     */
+    private void start() {
+        recovered = readCheckpoint();
+        if (checkpointInterval > 0) {
+            checkpointer.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    checkpoint();
+                }
+            }, checkpointInterval, checkpointInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * This reads the statistics from the last checkpoint.
+     *
+     * @return If the statistics were recovered from a checkpoint.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean readCheckpoint() {
+        if (!checkpointFile.exists()) {
+            return false;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            int version = in.readInt();
+            if (version != CHECKPOINT_VERSION) {
+                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.WARNING,
+                        "The workload statistics checkpoint {0} has an unknown version: {1}", new Object[]{checkpointFile, version});
+                return false;
             }
+            HashMap<String, WorkloadRecord> tags = (HashMap<String, WorkloadRecord>) in.readObject();
+            HashMap<String, WorkloadRecord> disks = (HashMap<String, WorkloadRecord>) in.readObject();
+            tagStatistics = tags;
+            diskStatistics = disks;
+            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO,
+                    "The workload statistics were recovered from {0}", checkpointFile);
+            return true;
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.SEVERE,
+                    "The workload statistics checkpoint " + checkpointFile + " could not be read", ex);
+        }
+        return false;
+    }
+
+    /**
+     * This writes the statistics to the checkpoint file, if they have changed
+     * since the last checkpoint. The statistics are copied while holding the
+     * cache's lock, but written to disk without it. Only one checkpoint is
+     * written at a time, so the shutdown hook and a scheduled checkpoint can
+     * not write the same temporary file together, or replace a newer
+     * checkpoint with an older one.
+     *
+     * @return If the checkpoint was written, or there was nothing to write.
+     */
+    public boolean checkpoint() {
+        synchronized (checkpointWriteLock) {
+            return writeCheckpoint();
+        }
+    }
+
+    /**
+     * This writes the statistics to the checkpoint file, if they have changed
+     * since the last checkpoint. It must only be called while holding the
+     * checkpoint write lock.
+     *
+     * @return If the checkpoint was written, or there was nothing to write.
+     */
+    private boolean writeCheckpoint() {
+        byte[] data;
+        int written;
+        synchronized (this) {
+            checkpointQueued.set(false);
+            if (dirty == 0) {
+                return true;
+            }
+            written = dirty;
+            try {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+                    out.writeInt(CHECKPOINT_VERSION);
+                    out.writeObject(tagStatistics);
+                    out.writeObject(diskStatistics);
+                }
+                data = buffer.toByteArray();
+            } catch (IOException ex) {
+                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.SEVERE, null, ex);
+                return false;
+            }
+            dirty = 0;
+        }
+        try {
+            File temp = new File(checkpointFile.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(data);
+                out.getFD().sync();
+            }
+            try {
+                Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.SEVERE,
+                    "The workload statistics checkpoint " + checkpointFile + " could not be written", ex);
+            synchronized (this) {
+                dirty = dirty + written; //try again at the next checkpoint
+            }
+            return false;
+        }
+    }
+
+    /**
+     * This records that the statistics have changed and if enough changes
+     * have been made since the last checkpoint, requests that a checkpoint be
+     * taken in the background.
+     */
+    private void markDirty() {
+        dirty = dirty + 1;
+        if (dirty >= checkpointThreshold && checkpointThreshold > 0 && checkpointQueued.compareAndSet(false, true)) {
+            checkpointer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    checkpoint();
+                }
+            });
+        }
+    }
+
+    /**
+     * This indicates if the statistics were recovered from a checkpoint, or
+     * have been rebuilt from the database.
+     *
+     * @return If the statistics were recovered or rebuilt.
+     */
+    public synchronized boolean isRecovered() {
+        return recovered;
+    }
+
+    /**
+     * This indicates if the statistics are currently being rebuilt from the
+     * database.
+     *
+     * @return If a rebuild is in progress
+     */
+    synchronized boolean isRebuilding() {
+        return rebuilding;
+    }
+
+    /**
+     * This rebuilds the statistics from the VM measurements held in the
+     * database, in the background. It is intended for when no checkpoint
+     * exists and has no effect if the statistics have already been recovered
+     * or rebuilt, or if a rebuild is already in progress.
+     *
+     * The measurements taken before the cache started are read into a
+     * separate cache and are only merged into this one once they have all
+     * been read, so measurements added while the rebuild runs are not counted
+     * twice and a failed rebuild leaves the statistics unchanged, ready for
+     * the rebuild to be tried again. The rebuild runs on a thread of its own,
+     * so that the scan of the database does not hold up the checkpoints.
+     *
+     * @param database The database to read the VM measurements from
+     */
+    public void rebuild(final DatabaseConnector database) {
+        synchronized (this) {
+            if (recovered || rebuilding) {
+                return;
+            }
+            rebuilding = true;
+        }
+        Thread rebuilder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WorkloadStatisticsCache rebuilt = new WorkloadStatisticsCache(bootBuckets);
+                boolean success = false;
+                try {
+                    success = database.getVmWorkloadHistory(rebuilt, startTime);
+                } finally {
+                    synchronized (WorkloadStatisticsCache.this) {
+                        if (success) {
+                            merge(tagStatistics, rebuilt.tagStatistics);
+                            merge(diskStatistics, rebuilt.diskStatistics);
+                            dirty = dirty + 1;
+                            recovered = true;
+                        }
+                        rebuilding = false;
+                    }
+                }
+                if (success) {
+                    Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO,
+                            "The workload statistics were rebuilt from the database");
+                    checkpoint();
+                } else {
+                    Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.WARNING,
+                            "The workload statistics could not be rebuilt from the database");
+                }
+            }
+        }, "energy-modeller-workload-rebuild");
+        rebuilder.setDaemon(true);
+        rebuilder.start();
+    }
+
+    /**
+     * This adds the statistics of one set of records to another.
+     *
+     * @param statistics The records to add to
+     * @param additions The records to add
+     */
+    private void merge(HashMap<String, WorkloadRecord> statistics, HashMap<String, WorkloadRecord> additions) {
+        for (Map.Entry<String, WorkloadRecord> addition : additions.entrySet()) {
+            getRecord(statistics, addition.getKey()).add(addition.getValue());
         }
     }
 
@@ -140,33 +423,65 @@ public class WorkloadStatisticsCache {
      *
      * @param vmMeasurements The measurements to cache a summary of
      */
-    public void addVMToStatistics(List<VmMeasurement> vmMeasurements) {
+    public synchronized void addVMToStatistics(List<VmMeasurement> vmMeasurements) {
         for (VmMeasurement measurement : vmMeasurements) {
             HashSet<String> tags = measurement.getVm().getApplicationTags();
             HashSet<VmDiskImage> disks = measurement.getVm().getDiskImages();
             double cpuUtil = measurement.getCpuUtilisation();
             long timeFromBoot = measurement.getVm().getTimeFromBoot();
+            long clock = measurement.getClock();
             for (String tag : tags) {
-                addRunningAverageForVMAppTag(tag, cpuUtil);
-                addRunningBootAverageForAppTag(tag, cpuUtil, timeFromBoot);
-                addRunningDoWAverageForAppTag(tag, cpuUtil);
+                addTagMeasurement(tag, clock, timeFromBoot, cpuUtil);
             }
             for (VmDiskImage disk : disks) {
-                addRunningAverageForVMDisk(disk, cpuUtil);
-                addRunningBootAverageForVMDisk(disk, cpuUtil, timeFromBoot);
-                addRunningDoWAverageForVMDisk(disk, cpuUtil);
+                addDiskMeasurement(disk.getDiskImage(), clock, timeFromBoot, cpuUtil);
             }
         }
-        try {
-            tagAverage.save();
-            diskAverage.save();
-            tagBootAverage.save();
-            diskBootAverage.save();
-            tagDoWAverage.save();
-            diskDoWAverage.save();
-        } catch (IOException ex) {
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.SEVERE, null, ex);
+    }
+
+    /**
+     * This adds a single measurement of a VM with a given application tag to
+     * the cached values in memory.
+     *
+     * @param tag The application tag
+     * @param clock The time of the measurement in Unix time
+     * @param secondsFromBoot The time since the VM booted
+     * @param cpuUtil The cpu utilisation of the VM
+     */
+    public synchronized void addTagMeasurement(String tag, long clock, long secondsFromBoot, double cpuUtil) {
+        getRecord(tagStatistics, tag).add(cpuUtil, getHourOfWeek(clock), getBootIndex(secondsFromBoot));
+        markDirty();
+    }
+
+    /**
+     * This adds a single measurement of a VM with a given disk reference to
+     * the cached values in memory.
+     *
+     * @param disk The disk reference
+     * @param clock The time of the measurement in Unix time
+     * @param secondsFromBoot The time since the VM booted
+     * @param cpuUtil The cpu utilisation of the VM
+     */
+    public synchronized void addDiskMeasurement(String disk, long clock, long secondsFromBoot, double cpuUtil) {
+        getRecord(diskStatistics, disk).add(cpuUtil, getHourOfWeek(clock), getBootIndex(secondsFromBoot));
+        markDirty();
+    }
+
+    /**
+     * This gets the record for an application tag or disk reference, creating
+     * it if it does not yet exist.
+     *
+     * @param statistics The records for either application tags or disks
+     * @param name The application tag or disk reference
+     * @return The record for the application tag or disk reference
+     */
+    private WorkloadRecord getRecord(HashMap<String, WorkloadRecord> statistics, String name) {
+        WorkloadRecord answer = statistics.get(name);
+        if (answer == null) {
+            answer = new WorkloadRecord(bootBuckets);
+            statistics.put(name, answer);
         }
+        return answer;
     }
 
     /**
@@ -174,14 +489,11 @@ public class WorkloadStatisticsCache {
      * associated with the disk reference.
      *
      * @param vm The VM to get the information for
-     * @return
+     * @return The average utilisation of VMs with the same disks, along with
+     * its standard deviation.
      */
-    public double getUtilisationforDisks(VM vm) {
-        double answer = 0;
-        for (VmDiskImage disk : vm.getDiskImages()) {
-            answer = answer + tagAverage.get(disk.getDiskImage()).getAverage();
-        }
-        return answer / vm.getDiskImages().size();
+    public synchronized VmLoadHistoryRecord getUtilisationforDisks(VM vm) {
+        return getUtilisation(diskStatistics, getDiskNames(vm), WorkloadRecord.OVERALL);
     }
 
     /**
@@ -189,19 +501,11 @@ public class WorkloadStatisticsCache {
      * associated with the disk reference.
      *
      * @param vm The VM to get the information for
-     * @return
+     * @return The average utilisation of VMs with the same disks, at the
+     * same time since boot, along with its standard deviation.
      */
-    public double getBootUtilisationforDisks(VM vm) {
-        double answer = 0;
-        int bootIndex = 0;
-        if (vm instanceof VmDeployed) {
-            long timeFromBoot = ((VmDeployed) vm).getTimeFromBoot();
-            bootIndex = AbstractVMHistoryWorkloadEstimator.getIndexPosition(BOOT_BUCKET_SIZE, (int) timeFromBoot);
-        }
-        for (VmDiskImage disk : vm.getDiskImages()) {
-            answer = answer + diskBootAverage.get(disk.getDiskImage()).get(bootIndex).getAverage();
-        }
-        return answer / vm.getDiskImages().size();
+    public synchronized VmLoadHistoryRecord getBootUtilisationforDisks(VM vm) {
+        return getUtilisation(diskStatistics, getDiskNames(vm), WorkloadRecord.getBootSlot(getBootIndex(vm)));
     }
 
     /**
@@ -209,15 +513,11 @@ public class WorkloadStatisticsCache {
      * associated with the disk reference.
      *
      * @param vm The VM to get the information for
-     * @return
+     * @return The average utilisation of VMs with the same disks, at the
+     * current hour of the week, along with its standard deviation.
      */
-    public double getDoWUtilisationforDisks(VM vm) {
-        double answer = 0;
-        DayOfWeek index = getCurrentDayOfWeek();
-        for (VmDiskImage disk : vm.getDiskImages()) {
-            answer = answer + diskDoWAverage.get(disk.getDiskImage()).get(index).getAverage();
-        }
-        return answer / vm.getDiskImages().size();
+    public synchronized VmLoadHistoryRecord getDoWUtilisationforDisks(VM vm) {
+        return getUtilisation(diskStatistics, getDiskNames(vm), WorkloadRecord.getWeekSlot(getCurrentHourOfWeek()));
     }
 
     /**
@@ -225,14 +525,11 @@ public class WorkloadStatisticsCache {
      * with the app tags.
      *
      * @param vm The VM to get the information for
-     * @return
+     * @return The average utilisation of VMs with similar app tags, along with
+     * its standard deviation.
      */
-    public double getUtilisationforTags(VM vm) {
-        double answer = 0;
-        for (String tag : vm.getApplicationTags()) {
-            answer = answer + tagAverage.get(tag).getAverage();
-        }
-        return answer / vm.getApplicationTags().size();
+    public synchronized VmLoadHistoryRecord getUtilisationforTags(VM vm) {
+        return getUtilisation(tagStatistics, vm.getApplicationTags(), WorkloadRecord.OVERALL);
     }
 
     /**
@@ -240,190 +537,92 @@ public class WorkloadStatisticsCache {
      * with the app tags.
      *
      * @param vm The VM to get the information for
-     * @return The average utilisation of VMs with similar app tags.
+     * @return The average utilisation of VMs with similar app tags, along with
+     * its standard deviation.
      */
-    public double getBootUtilisationforTags(VM vm) {
-        double answer = 0;
-        int bootIndex = 0;
-        if (vm instanceof VmDeployed) {
-            long timeFromBoot = ((VmDeployed) vm).getTimeFromBoot();
-            bootIndex = AbstractVMHistoryWorkloadEstimator.getIndexPosition(BOOT_BUCKET_SIZE, (int) timeFromBoot);
-
-        }
-        for (String tag : vm.getApplicationTags()) {
-            answer = answer + tagBootAverage.get(tag).get(bootIndex).getAverage();
-        }
-        return answer / vm.getApplicationTags().size();
+    public synchronized VmLoadHistoryRecord getBootUtilisationforTags(VM vm) {
+        return getUtilisation(tagStatistics, vm.getApplicationTags(), WorkloadRecord.getBootSlot(getBootIndex(vm)));
     }
 
     /**
-     * This given a VM with disk reference will find historical information
-     * associated with the disk reference.
+     * This given a VM with app tags will find historical information associated
+     * with the app tags.
      *
      * @param vm The VM to get the information for
-     * @return
+     * @return The average utilisation of VMs with similar app tags, at the
+     * current hour of the week, along with its standard deviation.
      */
-    public double getDoWUtilisationforTags(VM vm) {
-        double answer = 0;
-        DayOfWeek index = getCurrentDayOfWeek();
-        for (VmDiskImage disk : vm.getDiskImages()) {
-            answer = answer + tagDoWAverage.get(disk.getDiskImage()).get(index).getAverage();
-        }
-        return answer / vm.getDiskImages().size();
+    public synchronized VmLoadHistoryRecord getDoWUtilisationforTags(VM vm) {
+        return getUtilisation(tagStatistics, vm.getApplicationTags(), WorkloadRecord.getWeekSlot(getCurrentHourOfWeek()));
     }
 
     /**
-     * This subroutine is called by addVMToStatistics and adds part of the
-     * metrics values obtained to the running averages.
+     * This averages the utilisation held in a given slot, for a set of
+     * application tags or disks. As with the database based predictions the
+     * standard deviation reported is the largest of the application tags or
+     * disks.
      *
-     * @param tag The application tag to add the utilisation value to
-     * @param cpuUtil The amount of utilisation of the CPU
-     */
-    private void addRunningAverageForVMAppTag(String tag, double cpuUtil) {
-        RunningAverage average = tagAverage.get(tag);
-        if (average == null) {
-            tagAverage.put(tag, new RunningAverage(tag, cpuUtil));
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Average - Tag:{0} Value: {1}", new Object[]{tag, cpuUtil});
-        } else {
-            average.add(cpuUtil);
-            tagAverage.put(tag, average);
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Average - Tag:{0} Value: {1}, New Average {2}", new Object[]{tag, cpuUtil, average.getAverage()});
-        }
-    }
-
-    /**
-     * This subroutine is called by addVMToStatistics and adds part of the
-     * metrics values obtained to the running averages.
-     *
-     * @param disk The disk reference to add the utilisation value to
-     * @param cpuUtil The amount of utilisation of the CPU
-     */
-    private void addRunningAverageForVMDisk(VmDiskImage disk, double cpuUtil) {
-        RunningAverage average = diskAverage.get(disk.getDiskImage());
-        if (average == null) {
-            diskAverage.put(disk.getDiskImage(), new RunningAverage(disk.getDiskImage(), cpuUtil));
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Average - Disk:{0} Value: {1}", new Object[]{disk.getDiskImage(), cpuUtil});
-        } else {
-            average.add(cpuUtil);
-            diskAverage.put(disk.getDiskImage(), average);
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Average - Disk:{0} Value: {1}, New Average {2}", new Object[]{disk.getDiskImage(), cpuUtil, average.getAverage()});
-        }
-    }
-
-    /**
-     * This generates boot time averaging in discrete time blocks
-     *
-     * @param tag The application tag
-     * @param cpuUtil The cpu utilisation to record in the average
-     * @param secondsFromBoot The time which is to be used to find the correct
-     * time window.
-     */
-    private void addRunningBootAverageForAppTag(String tag, double cpuUtil, long secondsFromBoot) {
-        HashMap<Integer, RunningAverage> bootTrace = tagBootAverage.get(tag);
-        if (bootTrace == null) {
-            HashMap<Integer, RunningAverage> answer = new HashMap<>();
-            answer.put(0, new RunningAverage(tag, cpuUtil));
-            tagBootAverage.put(tag, answer);
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Boot Average - Tag:{0} Index:{1} Value: {2}", new Object[]{tag, 0, cpuUtil});
-        } else {
-            //get the index position item, and add to it.
-            Integer index = AbstractVMHistoryWorkloadEstimator.getIndexPosition(BOOT_BUCKET_SIZE, (int) secondsFromBoot);
-            RunningAverage average = bootTrace.get(index);
-            if (average == null) {
-                average = new RunningAverage(tag, cpuUtil);
-                bootTrace.put(index, average);
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Boot Average - Tag:{0} Index:{1} Value: {2}", new Object[]{tag, index, cpuUtil});
-            } else {
-                average.add(cpuUtil);
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Boot Average - Tag:{0} Index:{1} Value: {2}", new Object[]{tag, index, cpuUtil});
+     * @param statistics The records for either application tags or disks
+     * @param names The application tags or disk references
+     * @param slot The slot of the records to use
+     * @return The average utilisation of the application tags or disks that
+     * have data in the slot and its standard deviation, or 0 if none of them
+     * do.
+     */
+    private VmLoadHistoryRecord getUtilisation(HashMap<String, WorkloadRecord> statistics, Iterable<String> names, int slot) {
+        double answer = 0;
+        double stdDev = 0;
+        int count = 0;
+        for (String name : names) {
+            WorkloadRecord record = statistics.get(name);
+            if (record != null && record.getCount(slot) > 0) {
+                answer = answer + record.getAverage(slot);
+                stdDev = Math.max(stdDev, record.getStandardDeviation(slot));
+                count = count + 1;
             }
         }
+        return new VmLoadHistoryRecord(count == 0 ? 0.0 : answer / count, stdDev);
     }
 
     /**
-     * This generates boot time averaging in discrete time blocks
+     * This gets the disk references of a VM.
      *
-     * @param disk The disk reference to use
-     * @param cpuUtil The cpu utilisation to record in the average
-     * @param secondsFromBoot The time which is to be used to find the correct
-     * time window.
-     */
-    private void addRunningBootAverageForVMDisk(VmDiskImage disk, double cpuUtil, long secondsFromBoot) {
-        HashMap<Integer, RunningAverage> bootTrace = diskBootAverage.get(disk.getDiskImage());
-        if (bootTrace == null) {
-            HashMap<Integer, RunningAverage> answer = new HashMap<>();
-            answer.put(0, new RunningAverage(disk.getDiskImage(), cpuUtil));
-            diskBootAverage.put(disk.getDiskImage(), answer);
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Boot Average - Disk:{0} Index:{1} Value: {2}", new Object[]{disk.getDiskImage(), 0, cpuUtil});
-        } else {
-            //get the index position item, and add to it.
-            Integer index = AbstractVMHistoryWorkloadEstimator.getIndexPosition(BOOT_BUCKET_SIZE, (int) secondsFromBoot);
-            RunningAverage average = bootTrace.get(index);
-            if (average == null) {
-                average = new RunningAverage(disk.getDiskImage(), cpuUtil);
-                bootTrace.put(index, average);
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Boot Average - Disk:{0} Index:{1} Value: {2}", new Object[]{disk.getDiskImage(), index, cpuUtil});
-            } else {
-                average.add(cpuUtil);
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "Boot Average - Disk:{0} Index:{1} Value: {2}", new Object[]{disk.getDiskImage(), index, cpuUtil});
-            }
+     * @param vm The VM to get the disk references for
+     * @return The VM's disk references
+     */
+    private static HashSet<String> getDiskNames(VM vm) {
+        HashSet<String> answer = new HashSet<>();
+        for (VmDiskImage disk : vm.getDiskImages()) {
+            answer.add(disk.getDiskImage());
         }
+        return answer;
     }
 
     /**
-     * This generates day of week time averaging in discrete time blocks
+     * This gets the boot bucket a VM is currently in.
      *
-     * @param tag The application tag
-     * @param cpuUtil The cpu utilisation to record in the average
-     */
-    private void addRunningDoWAverageForAppTag(String tag, double cpuUtil) {
-        HashMap<DayOfWeek, RunningAverage> dowTrace = tagDoWAverage.get(tag);
-        DayOfWeek index = getCurrentDayOfWeek();
-        if (dowTrace == null) {
-            HashMap<DayOfWeek, RunningAverage> answer = new HashMap<>();
-            answer.put(index, new RunningAverage(tag, cpuUtil));
-            tagDoWAverage.put(tag, answer);
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "DoW Average - Tag:{0} Day:{1} Hour:{2} Value: {3}", new Object[]{tag, index.getDay(), index.getHour(), cpuUtil});
-        } else {
-            //given the index position item, add to it.
-            RunningAverage average = dowTrace.get(index);
-            if (average == null) {
-                average = new RunningAverage(tag, cpuUtil);
-                dowTrace.put(index, average);
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "DoW Average - Tag:{0} Day:{1} Hour:{2} Value: {3}", new Object[]{tag, index.getDay(), index.getHour(), cpuUtil});
-            } else {
-                average.add(cpuUtil);
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "DoW Average - Tag:{0} Day:{1} Hour:{2} Value: {3}", new Object[]{tag, index.getDay(), index.getHour(), cpuUtil});
-            }
+     * @param vm The VM to get the boot bucket for
+     * @return The boot bucket of a deployed VM, or 0 if the VM is not deployed
+     */
+    private int getBootIndex(VM vm) {
+        if (vm instanceof VmDeployed) {
+            return getBootIndex(((VmDeployed) vm).getTimeFromBoot());
         }
+        return 0;
     }
 
     /**
-     * This generates day of week time averaging in discrete time blocks
+     * This gets the boot bucket for a given time since boot. Times beyond the
+     * last bucket are placed in the last bucket.
      *
-     * @param disk The application tag
-     * @param cpuUtil The cpu utilisation to record in the average
-     */
-    private void addRunningDoWAverageForVMDisk(VmDiskImage disk, double cpuUtil) {
-        HashMap<DayOfWeek, RunningAverage> dowTrace = diskDoWAverage.get(disk.getDiskImage());
-        DayOfWeek index = getCurrentDayOfWeek();
-        if (dowTrace == null) {
-            HashMap<DayOfWeek, RunningAverage> answer = new HashMap<>();
-            answer.put(getCurrentDayOfWeek(), new RunningAverage(disk.getDiskImage(), cpuUtil));
-            diskDoWAverage.put(disk.getDiskImage(), answer);
-            Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "DoW Average - disk:{0} Day:{1} Hour:{2} Value: {3}", new Object[]{disk.getDiskImage(), index.getDay(), index.getHour(), cpuUtil});
-        } else {
-            //given the index position item and add to it.
-            RunningAverage average = dowTrace.get(index);
-            if (average == null) {
-                average = new RunningAverage(disk.getDiskImage(), cpuUtil);
-                dowTrace.put(index, average);
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "DoW Average - disk:{0} Day:{1} Hour:{2} Value: {3}", new Object[]{disk.getDiskImage(), index.getDay(), index.getHour(), cpuUtil});
-            } else {
-                average.add(cpuUtil);
-                Logger.getLogger(WorkloadStatisticsCache.class.getName()).log(Level.INFO, "DoW Average - disk:{0} Day:{1} Hour:{2} Value: {3}", new Object[]{disk.getDiskImage(), index.getDay(), index.getHour(), cpuUtil});
-            }
+     * @param secondsFromBoot The time since boot
+     * @return The boot bucket for the time since boot
+     */
+    private int getBootIndex(long secondsFromBoot) {
+        if (secondsFromBoot <= 0) {
+            return 0;
         }
+        return AbstractVMHistoryWorkloadEstimator.getIndexPosition(BOOT_BUCKET_SIZE, (int) Math.min(secondsFromBoot, Integer.MAX_VALUE));
     }
 
     /**
@@ -440,9 +639,176 @@ public class WorkloadStatisticsCache {
         this.inUse = inUse;
     }
 
-    private DayOfWeek getCurrentDayOfWeek() {
-        GregorianCalendar cal = new GregorianCalendar();
-        return new DayOfWeek(cal.get(GregorianCalendar.DAY_OF_WEEK), cal.get(GregorianCalendar.HOUR_OF_DAY));
+    /**
+     * This gets the hour of the week of the current time.
+     *
+     * @return The hour of the week, in the range 0..167 starting from Sunday
+     */
+    private int getCurrentHourOfWeek() {
+        return getHourOfWeek(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+    }
+
+    /**
+     * This gets the hour of the week of a given time, in the local time zone.
+     *
+     * @param clock The time in Unix time
+     * @return The hour of the week, in the range 0..167 starting from Sunday
+     */
+    private int getHourOfWeek(long clock) {
+        return getHourOfWeek(clock, timeZone);
+    }
+
+    /**
+     * This gets the hour of the week of a given time.
+     *
+     * @param clock The time in Unix time
+     * @param timeZone The time zone the week is measured in
+     * @return The hour of the week, in the range 0..167 starting from Sunday
+     */
+    static int getHourOfWeek(long clock, TimeZone timeZone) {
+        long millis = TimeUnit.SECONDS.toMillis(clock);
+        long local = millis + timeZone.getOffset(millis);
+        long hours = local / TimeUnit.HOURS.toMillis(1);
+        if (local < 0 && local % TimeUnit.HOURS.toMillis(1) != 0) {
+            hours = hours - 1; //round times before 1970 down to the start of the hour
+        }
+        //The 1st of January 1970 was a Thursday, i.e. 4 days after a Sunday.
+        long answer = (hours + 4 * 24) % HOURS_IN_WEEK;
+        return (int) (answer < 0 ? answer + HOURS_IN_WEEK : answer);
     }
 
+    /**
+     * This holds the cpu utilisation statistics of a single application tag
+     * or disk reference. Slot 0 holds the overall statistics, followed by one
+     * slot for each hour of the week and then one slot for each hour since
+     * boot.
+     */
+    static final class WorkloadRecord implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        static final int OVERALL = 0;
+        private final double[] sum;
+        private final double[] sumOfSquares;
+        private final long[] count;
+
+        /**
+         * This creates a new empty record.
+         *
+         * @param bootBuckets The amount of boot buckets to record
+         */
+        WorkloadRecord(int bootBuckets) {
+            int size = 1 + HOURS_IN_WEEK + Math.max(bootBuckets, 1);
+            sum = new double[size];
+            sumOfSquares = new double[size];
+            count = new long[size];
+        }
+
+        /**
+         * This gets the slot for an hour of the week.
+         *
+         * @param hourOfWeek The hour of the week
+         * @return The slot for the hour of the week
+         */
+        static int getWeekSlot(int hourOfWeek) {
+            return 1 + hourOfWeek;
+        }
+
+        /**
+         * This gets the slot for a boot bucket.
+         *
+         * @param bootIndex The boot bucket
+         * @return The slot for the boot bucket
+         */
+        static int getBootSlot(int bootIndex) {
+            return 1 + HOURS_IN_WEEK + bootIndex;
+        }
+
+        /**
+         * This adds a cpu utilisation value to the record.
+         *
+         * @param cpuUtil The cpu utilisation
+         * @param hourOfWeek The hour of the week the value was measured in
+         * @param bootIndex The boot bucket the value was measured in
+         */
+        void add(double cpuUtil, int hourOfWeek, int bootIndex) {
+            add(OVERALL, cpuUtil);
+            add(getWeekSlot(hourOfWeek), cpuUtil);
+            add(Math.min(getBootSlot(bootIndex), count.length - 1), cpuUtil);
+        }
+
+        /**
+         * This adds a cpu utilisation value to a slot.
+         *
+         * @param slot The slot to add the value to
+         * @param cpuUtil The cpu utilisation
+         */
+        private void add(int slot, double cpuUtil) {
+            sum[slot] = sum[slot] + cpuUtil;
+            sumOfSquares[slot] = sumOfSquares[slot] + cpuUtil * cpuUtil;
+            count[slot] = count[slot] + 1;
+        }
+
+        /**
+         * This adds all the values held in another record to this record.
+         *
+         * @param record The record to add
+         */
+        void add(WorkloadRecord record) {
+            int slots = Math.min(count.length, record.count.length);
+            for (int slot = 0; slot < slots; slot++) {
+                sum[slot] = sum[slot] + record.sum[slot];
+                sumOfSquares[slot] = sumOfSquares[slot] + record.sumOfSquares[slot];
+                count[slot] = count[slot] + record.count[slot];
+            }
+        }
+
+        /**
+         * This gets the amount of values held in a slot.
+         *
+         * @param slot The slot, boot slots beyond the last are treated as the
+         * last
+         * @return The amount of values held in the slot
+         */
+        long getCount(int slot) {
+            return count[Math.min(slot, count.length - 1)];
+        }
+
+        /**
+         * This gets the average of the values held in a slot.
+         *
+         * @param slot The slot, boot slots beyond the last are treated as the
+         * last
+         * @return The average value in the slot
+         */
+        double getAverage(int slot) {
+            slot = Math.min(slot, count.length - 1);
+            return sum[slot] / count[slot];
+        }
+
+        /**
+         * This gets the population variance of the values held in a slot.
+         *
+         * @param slot The slot, boot slots beyond the last are treated as the
+         * last
+         * @return The variance of the values in the slot
+         */
+        double getVariance(int slot) {
+            slot = Math.min(slot, count.length - 1);
+            double average = sum[slot] / count[slot];
+            //Rounding errors may make the variance of equal values negative
+            return Math.max(0, sumOfSquares[slot] / count[slot] - average * average);
+        }
+
+        /**
+         * This gets the population standard deviation of the values held in a
+         * slot.
+         *
+         * @param slot The slot, boot slots beyond the last are treated as the
+         * last
+         * @return The standard deviation of the values in the slot
+         */
+        double getStandardDeviation(int slot) {
+            return Math.sqrt(getVariance(slot));
+        }
+    }
 }
@@ -19,6 +19,7 @@
 package eu.tango.energymodeller.energypredictor;
 
 import eu.ascetic.ioutils.caching.LRUCache;
+import eu.tango.energymodeller.datasourceclient.MetricKeyRegistry;
 import static eu.tango.energymodeller.energypredictor.AbstractEnergyPredictor.CONFIG_FILE;
 import eu.tango.energymodeller.energypredictor.vmenergyshare.EnergyDivision;
 import eu.tango.energymodeller.types.TimePeriod;
@@ -349,9 +350,10 @@ public class CpuAndBiModalAcceleratorEnergyPredictor extends AbstractEnergyPredi
          */
         double[] answer = new double[acceleratorCount];
         java.util.Arrays.fill(answer, 0.0); //ensure default is no utilisation.
+        MetricKeyRegistry.KeyPattern pattern = MetricKeyRegistry.getPattern(groupingParameter);
         for (Map.Entry<String, Double> entry : values.entrySet()) {           
-            if (entry.getKey().matches(groupingParameter)) {
-                String indexString = entry.getKey().trim().replaceAll("[^0-9]","");
+            if (pattern.matches(entry.getKey())) {
+                String indexString = getDigits(entry.getKey());
                 if (indexString == null || indexString.isEmpty()) {
                     Logger.getLogger(CpuAndBiModalAcceleratorEnergyPredictor.class.getName()).log(Level.WARNING, "Index value not found in metric: {0}", entry.getKey().trim());
                     continue;
@@ -382,6 +384,23 @@ public class CpuAndBiModalAcceleratorEnergyPredictor extends AbstractEnergyPredi
         }        
         return answer;
     }
+    
+    /**
+     * This gets the digits contained within a metric's name, in the order they
+     * appear. i.e. nvidia_value:1:percent gives 1.
+     * @param metricName The name of the metric
+     * @return The digits in the metric's name
+     */
+    private static String getDigits(String metricName) {
+        StringBuilder answer = new StringBuilder(2);
+        for (int i = 0; i < metricName.length(); i++) {
+            char current = metricName.charAt(i);
+            if (current >= '0' && current <= '9') {
+                answer.append(current);
+            }
+        }
+        return answer.toString();
+    }
 
     /**
      * This estimates the power used by a host, given its CPU load. It assumes
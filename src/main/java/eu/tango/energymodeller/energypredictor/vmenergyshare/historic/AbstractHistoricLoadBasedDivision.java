@@ -26,10 +26,12 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -44,6 +46,7 @@ public abstract class AbstractHistoricLoadBasedDivision implements HistoricLoadB
     protected final HashSet<EnergyUsageSource> energyusers = new HashSet<>();
     protected List<HostEnergyRecord> energyUsage;
     protected List<HostEnergyUserLoadFraction> loadFraction;
+    private EnergyDataColumns columns;
 
     /**
      * This creates a load based division mechanism for the specified host, that
@@ -192,6 +195,23 @@ public abstract class AbstractHistoricLoadBasedDivision implements HistoricLoadB
     @Override
     public abstract double getEnergyUsage(EnergyUsageSource energyUser);
 
+    /**
+     * This returns the energy usage for a set of VMs or applications on the
+     * host. By default each is calculated in turn, sub classes should override
+     * this to calculate them together in a single pass over the records.
+     *
+     * @param energyUsers The VMs or applications to get energy usage for.
+     * @return The energy used by each of the named VMs or applications.
+     */
+    @Override
+    public Map<EnergyUsageSource, Double> getEnergyUsage(Collection<? extends EnergyUsageSource> energyUsers) {
+        HashMap<EnergyUsageSource, Double> answer = new HashMap<>();
+        for (EnergyUsageSource energyUser : energyUsers) {
+            answer.put(energyUser, getEnergyUsage(energyUser));
+        }
+        return answer;
+    }
+
     /**
      * This lists VMs on the host machine.
      *
@@ -226,6 +246,7 @@ public abstract class AbstractHistoricLoadBasedDivision implements HistoricLoadB
          */
         this.energyUsage = energyUsage;
         Collections.sort(energyUsage);
+        columns = null;
     }
 
     /**
@@ -242,6 +263,7 @@ public abstract class AbstractHistoricLoadBasedDivision implements HistoricLoadB
          */
         this.loadFraction = loadFraction;
         Collections.sort(loadFraction);
+        columns = null;
     }
 
     /**
@@ -269,28 +291,44 @@ public abstract class AbstractHistoricLoadBasedDivision implements HistoricLoadB
      */
     public LinkedHashMap<HostEnergyRecord, HostEnergyUserLoadFraction> cleanData(Collection<HostEnergyUserLoadFraction> energyUserLoad, List<HostEnergyRecord> hostData) {
         LinkedHashMap<HostEnergyRecord, HostEnergyUserLoadFraction> answer = new LinkedHashMap<>();
-        //Make a copy and compare times remove them each time.
-        LinkedList<HostEnergyUserLoadFraction> vmDataCopy = new LinkedList<>();
-        vmDataCopy.addAll(energyUserLoad);
-        LinkedList<HostEnergyRecord> hostDataCopy = new LinkedList<>();
-        hostDataCopy.addAll(hostData);
-        HostEnergyUserLoadFraction vmHead = vmDataCopy.pop();
-        HostEnergyRecord hostHead = hostDataCopy.pop();
-        while (!vmDataCopy.isEmpty() && !hostDataCopy.isEmpty()) {
+        if (energyUserLoad.isEmpty() || hostData.isEmpty()) {
+            return answer;
+        }
+        //Walk both sorted datasets together, advancing past unmatched times.
+        Iterator<HostEnergyUserLoadFraction> vmData = energyUserLoad.iterator();
+        Iterator<HostEnergyRecord> hostDataIterator = hostData.iterator();
+        HostEnergyUserLoadFraction vmHead = vmData.next();
+        HostEnergyRecord hostHead = hostDataIterator.next();
+        while (vmData.hasNext() && hostDataIterator.hasNext()) {
             if (vmHead.getTime() == hostHead.getTime()) {
                 answer.put(hostHead, vmHead);
-                vmHead = vmDataCopy.pop();
-                hostHead = hostDataCopy.pop();
+                vmHead = vmData.next();
+                hostHead = hostDataIterator.next();
             } else {
                 //replace the youngest, given this is a sorted list.
                 if (vmHead.getTime() < hostHead.getTime()) {
-                    vmHead = vmDataCopy.pop();
+                    vmHead = vmData.next();
                 } else {
-                    hostHead = hostDataCopy.pop();
+                    hostHead = hostDataIterator.next();
                 }
             }
         }
         return answer;
     }
 
+    /**
+     * This provides the column based view of the cleaned energy usage and
+     * load fraction records. It is built once and then reused until the
+     * records are next set.
+     *
+     * @return The energy usage and load fraction data as columns.
+     */
+    protected EnergyDataColumns getColumns() {
+        if (columns == null) {
+            cleanData();
+            columns = new EnergyDataColumns(energyUsage, loadFraction);
+        }
+        return columns;
+    }
+
 }
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.energypredictor.vmenergyshare.historic;
+
+import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
+import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
+import eu.tango.energymodeller.types.usage.HostEnergyRecord;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is a column based view of a host's energy records and the matching
+ * load fraction records, as used by the historic load based division rules.
+ * Record i of each column describes the same point in time.
+ *
+ * Each VM or application is given a dense id. Most VMs or applications are
+ * only present in a small part of the records, so their load fractions are
+ * held sparsely: the entries of each VM or application are stored together,
+ * in record order, in the parallel arrays of record indexes and fractions,
+ * between its start and end positions.
+ *
+ * The columns are built once, after which the energy of any VM or application
+ * can be calculated by a loop over primitive arrays.
+ *
+ * @author Richard Kavanagh
+ */
+public class EnergyDataColumns {
+
+    private final int length;
+    private final long[] time;
+    private final double[] power;
+    private final double[] powerOffset;
+    private final int[] userCount;
+    private final HashMap<EnergyUsageSource, Integer> userIds = new HashMap<>();
+    private final EnergyUsageSource[] users;
+    private final int[] userStart;
+    private final int[] entryRecord;
+    private final double[] entryFraction;
+
+    /**
+     * This creates the column based view of a set of energy records and load
+     * fraction records that are already aligned 1:1 by position.
+     *
+     * @param energyUsage The host's energy records
+     * @param loadFraction The load fraction records, matching the energy
+     * records by position.
+     */
+    public EnergyDataColumns(List<HostEnergyRecord> energyUsage, List<HostEnergyUserLoadFraction> loadFraction) {
+        length = Math.min(energyUsage.size(), loadFraction.size());
+        time = new long[length];
+        power = new double[length];
+        powerOffset = new double[length];
+        userCount = new int[length];
+        //Assign the dense ids and count the entries of each VM or application
+        ArrayList<Integer> entryCount = new ArrayList<>();
+        int entries = 0;
+        for (int i = 0; i < length; i++) {
+            for (EnergyUsageSource user : loadFraction.get(i).getFraction().keySet()) {
+                Integer userId = userIds.get(user);
+                if (userId == null) {
+                    userId = userIds.size();
+                    userIds.put(user, userId);
+                    entryCount.add(0);
+                }
+                entryCount.set(userId, entryCount.get(userId) + 1);
+                entries++;
+            }
+        }
+        users = new EnergyUsageSource[userIds.size()];
+        for (Map.Entry<EnergyUsageSource, Integer> user : userIds.entrySet()) {
+            users[user.getValue()] = user.getKey();
+        }
+        userStart = new int[users.length + 1];
+        for (int userId = 0; userId < users.length; userId++) {
+            userStart[userId + 1] = userStart[userId] + entryCount.get(userId);
+        }
+        entryRecord = new int[entries];
+        entryFraction = new double[entries];
+        int[] next = Arrays.copyOf(userStart, users.length);
+        for (int i = 0; i < length; i++) {
+            HostEnergyRecord energy = energyUsage.get(i);
+            HostEnergyUserLoadFraction load = loadFraction.get(i);
+            time[i] = energy.getTime();
+            power[i] = energy.getPower();
+            powerOffset[i] = load.getHostPowerOffset();
+            userCount[i] = load.getEnergyUsageSources().size();
+            for (Map.Entry<EnergyUsageSource, Double> fraction : load.getFraction().entrySet()) {
+                int entry = next[userIds.get(fraction.getKey())]++;
+                entryRecord[entry] = i;
+                entryFraction[entry] = fraction.getValue();
+            }
+        }
+    }
+
+    /**
+     * This returns the amount of aligned records held.
+     *
+     * @return The length of each column
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * This returns the time of each record.
+     *
+     * @return The column of record times, in seconds.
+     */
+    public long[] getTime() {
+        return time;
+    }
+
+    /**
+     * This returns the host's power for each record.
+     *
+     * @return The column of host power readings
+     */
+    public double[] getPower() {
+        return power;
+    }
+
+    /**
+     * This returns the host's power offset for each record.
+     *
+     * @return The column of host power offsets
+     */
+    public double[] getPowerOffset() {
+        return powerOffset;
+    }
+
+    /**
+     * This returns the amount of VMs or applications present in each record.
+     *
+     * @return The column of energy user counts
+     */
+    public int[] getUserCount() {
+        return userCount;
+    }
+
+    /**
+     * This returns the amount of distinct VMs or applications seen.
+     *
+     * @return The amount of dense user ids that have been assigned.
+     */
+    public int getUserIdCount() {
+        return users.length;
+    }
+
+    /**
+     * This returns the dense id of a VM or application.
+     *
+     * @param user The VM or application to get the id of
+     * @return The id of the VM or application, or -1 if it is not present in
+     * any record.
+     */
+    public int getUserId(EnergyUsageSource user) {
+        Integer answer = userIds.get(user);
+        return (answer == null ? -1 : answer);
+    }
+
+    /**
+     * This returns the VM or application that has a given dense id.
+     *
+     * @param userId The dense id of the VM or application
+     * @return The VM or application
+     */
+    public EnergyUsageSource getUser(int userId) {
+        return users[userId];
+    }
+
+    /**
+     * This returns the position of the first entry of a VM or application,
+     * in the arrays of entry record indexes and fractions.
+     *
+     * @param userId The dense id of the VM or application
+     * @return The position of the VM's or application's first entry
+     */
+    public int getEntryStart(int userId) {
+        return userStart[userId];
+    }
+
+    /**
+     * This returns the position after the last entry of a VM or application,
+     * in the arrays of entry record indexes and fractions.
+     *
+     * @param userId The dense id of the VM or application
+     * @return The position after the VM's or application's last entry
+     */
+    public int getEntryEnd(int userId) {
+        return userStart[userId + 1];
+    }
+
+    /**
+     * This returns the record index of each entry. The entries of a VM or
+     * application are in ascending record order.
+     *
+     * @return The record that each entry belongs to
+     */
+    public int[] getEntryRecord() {
+        return entryRecord;
+    }
+
+    /**
+     * This returns the load fraction of each entry.
+     *
+     * @return The load fraction of the VM or application in the entry's
+     * record
+     */
+    public double[] getEntryFraction() {
+        return entryFraction;
+    }
+}
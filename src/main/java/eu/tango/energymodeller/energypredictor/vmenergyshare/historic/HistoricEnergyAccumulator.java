@@ -0,0 +1,261 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.energypredictor.vmenergyshare.historic;
+
+import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
+import eu.tango.energymodeller.types.energyuser.usage.LoadFractionHandler;
+import eu.tango.energymodeller.types.usage.HostEnergyRecord;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This divides a host's energy among its VMs or applications as the host's
+ * records are read, rather than after they have all been loaded. Each energy
+ * record and its matching load fraction record are added in time order and
+ * folded into a running total for each VM or application, so when both are
+ * added together only the previous pair is held in memory no matter how long
+ * the time period is.
+ *
+ * The load fraction records may also be added on their own, as they are read
+ * from the data store, in which case they are matched to the host's energy
+ * records in the same way as
+ * {@link AbstractHistoricLoadBasedDivision#cleanData()}. The host's energy
+ * records are then all held in memory, via
+ * {@link #setEnergyUsage(java.util.List)}, and must be in time order, only the
+ * much larger set of load fraction records is not held.
+ *
+ * The calculation is the same as that of {@link LoadBasedDivision} or, if idle
+ * energy is included, {@link LoadBasedDivisionWithIdleEnergy}.
+ *
+ * @author Richard Kavanagh
+ */
+public class HistoricEnergyAccumulator implements LoadFractionHandler {
+
+    private final boolean includeIdleEnergy;
+    private final double idlePower;
+    private final ArrayList<EnergyUsageSource> users;
+    private final double[] userEnergy;
+    private HostEnergyRecord firstEnergy = null;
+    private HostEnergyRecord lastEnergy = null;
+    private HostEnergyUserLoadFraction lastLoad = null;
+    private List<HostEnergyRecord> energyUsage = new ArrayList<>();
+    private Iterator<HostEnergyRecord> energyRecords = null;
+    private HostEnergyRecord energyHead = null;
+    private HostEnergyUserLoadFraction loadHead = null;
+    private boolean matchByPosition = false;
+
+    /**
+     * This creates a new accumulator of historic energy usage.
+     *
+     * @param host The host to divide energy for, among its VMs or
+     * applications.
+     * @param energyUsers The VMs or applications to get the energy usage for
+     * @param includeIdleEnergy If the host's idle energy should be divided
+     * evenly among the VMs or applications, as in
+     * {@link LoadBasedDivisionWithIdleEnergy}.
+     */
+    public HistoricEnergyAccumulator(Host host, Collection<? extends EnergyUsageSource> energyUsers, boolean includeIdleEnergy) {
+        this.includeIdleEnergy = includeIdleEnergy;
+        this.idlePower = (includeIdleEnergy ? host.getIdlePowerConsumption() : 0);
+        this.users = new ArrayList<>(energyUsers);
+        this.userEnergy = new double[users.size()];
+    }
+
+    /**
+     * This adds the next energy record and its matching load fraction record.
+     * Records must be added in time order.
+     *
+     * @param energy The host's energy record
+     * @param load The load fraction record that matches the energy record
+     */
+    public void add(HostEnergyRecord energy, HostEnergyUserLoadFraction load) {
+        if (lastEnergy == null) {
+            firstEnergy = energy;
+        } else {
+            long timePeriod = energy.getTime() - lastEnergy.getTime();
+            double deltaEnergy = Math.abs((((double) timePeriod) / 3600d)
+                    * (lastEnergy.getPower() + lastLoad.getHostPowerOffset()
+                    + energy.getPower() + load.getHostPowerOffset()) * 0.5);
+            double idleUserEnergy = 0;
+            if (includeIdleEnergy) {
+                double userCount = lastLoad.getEnergyUsageSources().size() + load.getEnergyUsageSources().size() / 2d;
+                double eUserIdlePower = idlePower / userCount;
+                double idleEnergy = idlePower * (((double) timePeriod) / 3600);
+                idleUserEnergy = eUserIdlePower * (((double) timePeriod) / 3600);
+                deltaEnergy = deltaEnergy - idleEnergy;
+            }
+            for (int i = 0; i < userEnergy.length; i++) {
+                Double fraction1 = lastLoad.getFraction().get(users.get(i));
+                Double fraction2 = load.getFraction().get(users.get(i));
+                if (fraction1 != null && fraction2 != null) {
+                    if (includeIdleEnergy) {
+                        userEnergy[i] = userEnergy[i] + idleUserEnergy + (deltaEnergy * ((fraction1 + fraction2) / 2));
+                    } else {
+                        userEnergy[i] = userEnergy[i] + (deltaEnergy * ((fraction1 + fraction2) / 2));
+                    }
+                }
+            }
+        }
+        lastEnergy = energy;
+        lastLoad = load;
+    }
+
+    /**
+     * This sets the host's energy records that the load fraction records are
+     * matched against, when they are added one at a time. The records are held
+     * until the load fraction records have been added.
+     *
+     * @param energyUsage The host's energy records, which must be in time
+     * order, as given by the data store's queries
+     */
+    public void setEnergyUsage(List<HostEnergyRecord> energyUsage) {
+        this.energyUsage = energyUsage;
+        energyRecords = null;
+    }
+
+    /**
+     * This is called before the load fraction records are added. If there are
+     * as many load fraction records as energy records they are matched by
+     * position, otherwise they are matched by time.
+     *
+     * @param count The amount of load fraction records that follow
+     */
+    @Override
+    public void setRecordCount(long count) {
+        matchByPosition = (count == energyUsage.size());
+        energyRecords = energyUsage.iterator();
+        energyHead = null;
+        loadHead = null;
+    }
+
+    /**
+     * This adds the next load fraction record, matching it with the host's
+     * energy records. Records that have no match are skipped.
+     *
+     * @param load The load fraction record, records must be added in time
+     * order.
+     */
+    @Override
+    public void add(HostEnergyUserLoadFraction load) {
+        if (energyRecords == null) {
+            setRecordCount(-1);
+        }
+        if (matchByPosition) {
+            if (energyRecords.hasNext()) {
+                add(energyRecords.next(), load);
+            }
+            return;
+        }
+        if (loadHead == null) {
+            if (energyRecords.hasNext()) {
+                loadHead = load;
+                energyHead = energyRecords.next();
+            }
+            return;
+        }
+        /**
+         * The record being added is the next load record. As for cleanData,
+         * the heads are only compared while both series have more records
+         * after them, skipping past whichever is older when they don't match.
+         */
+        while (energyHead != null && energyRecords.hasNext()) {
+            if (loadHead.getTime() == energyHead.getTime()) {
+                add(energyHead, loadHead);
+                loadHead = load;
+                energyHead = energyRecords.next();
+                return;
+            } else if (loadHead.getTime() < energyHead.getTime()) {
+                loadHead = load;
+                return;
+            } else {
+                energyHead = energyRecords.next();
+            }
+        }
+        //The host's records are exhausted, so no more matches can be made
+        energyHead = null;
+    }
+
+    /**
+     * This returns the energy used by each of the VMs or applications, from
+     * the records added so far.
+     *
+     * @return The energy used by each of the VMs or applications.
+     */
+    public Map<EnergyUsageSource, Double> getEnergyUsage() {
+        HashMap<EnergyUsageSource, Double> answer = new HashMap<>();
+        for (int i = 0; i < userEnergy.length; i++) {
+            answer.put(users.get(i), userEnergy[i]);
+        }
+        return answer;
+    }
+
+    /**
+     * This gets the duration that the added records describe.
+     *
+     * @return The duration in seconds the added records describe.
+     */
+    public long getDuration() {
+        if (firstEnergy == null) {
+            return 0;
+        }
+        return lastEnergy.getTime() - firstEnergy.getTime();
+    }
+
+    /**
+     * This returns the time of the first record that was added.
+     *
+     * @return The time of the first record. Null if no records were added.
+     */
+    public Calendar getStart() {
+        return getCalendar(firstEnergy);
+    }
+
+    /**
+     * This returns the time of the last record that was added.
+     *
+     * @return The time of the last record. Null if no records were added.
+     */
+    public Calendar getEnd() {
+        return getCalendar(lastEnergy);
+    }
+
+    /**
+     * This converts the time of an energy record into a calendar.
+     *
+     * @param record The energy record
+     * @return The time of the record, or null if there is no record.
+     */
+    private static Calendar getCalendar(HostEnergyRecord record) {
+        if (record == null) {
+            return null;
+        }
+        GregorianCalendar answer = new GregorianCalendar();
+        answer.setTimeInMillis(TimeUnit.SECONDS.toMillis(record.getTime()));
+        return answer;
+    }
+}
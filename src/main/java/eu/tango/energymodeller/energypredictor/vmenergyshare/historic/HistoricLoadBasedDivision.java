@@ -25,6 +25,7 @@ import eu.tango.energymodeller.types.usage.HostEnergyRecord;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
@@ -106,6 +107,15 @@ public interface HistoricLoadBasedDivision {
      */
     public double getEnergyUsage(EnergyUsageSource energyUser);
 
+    /**
+     * This returns the energy usage for a set of VMs or applications on the
+     * host, calculated together in a single pass over the host's records.
+     *
+     * @param energyUsers The VMs or applications to get energy usage for.
+     * @return The energy used by each of the named VMs or applications.
+     */
+    public Map<EnergyUsageSource, Double> getEnergyUsage(Collection<? extends EnergyUsageSource> energyUsers);
+
     /**
      * This lists VMs or applications on the host machine.
      * @return  The VMs or applications on the host machine.
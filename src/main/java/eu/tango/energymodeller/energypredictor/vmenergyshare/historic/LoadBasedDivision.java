@@ -20,10 +20,9 @@ package eu.tango.energymodeller.energypredictor.vmenergyshare.historic;
 
 import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
 import eu.tango.energymodeller.types.energyuser.Host;
-import eu.tango.energymodeller.types.energyuser.VM;
-import eu.tango.energymodeller.types.energyuser.VmDeployed;
-import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
-import eu.tango.energymodeller.types.usage.HostEnergyRecord;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This creates a load based division mechanism for dividing host energy among
@@ -60,27 +59,55 @@ public class LoadBasedDivision extends AbstractHistoricLoadBasedDivision {
      */
     @Override
     public double getEnergyUsage(EnergyUsageSource energyUser) {
-        VmDeployed deployed = (VmDeployed) energyUser;
-        cleanData();
-        int recordCount = (energyUsage.size() <= loadFraction.size() ? energyUsage.size() : loadFraction.size());
+        EnergyDataColumns data = getColumns();
+        int userId = data.getUserId(energyUser);
+        if (userId == -1) {
+            return 0;
+        }
+        return getEnergyUsage(data, userId);
+    }
 
-        /**
-         * Calculate the energy used by a VM taking into account the work it has
-         * performed.
-         */
+    /**
+     * This returns the energy usage for a set of VMs, calculated together
+     * from a single column based view of the host's records.
+     *
+     * @param energyUsers The VMs to get energy usage for.
+     * @return The energy used by each of the named VMs.
+     */
+    @Override
+    public Map<EnergyUsageSource, Double> getEnergyUsage(Collection<? extends EnergyUsageSource> energyUsers) {
+        EnergyDataColumns data = getColumns();
+        HashMap<EnergyUsageSource, Double> answer = new HashMap<>();
+        for (EnergyUsageSource energyUser : energyUsers) {
+            int userId = data.getUserId(energyUser);
+            answer.put(energyUser, (userId == -1 ? 0 : getEnergyUsage(data, userId)));
+        }
+        return answer;
+    }
+
+    /**
+     * This calculates the energy used by a VM taking into account the work it
+     * has performed.
+     *
+     * @param data The column based view of the host's records
+     * @param userId The dense id of the VM in the columns
+     * @return The energy used by this VM.
+     */
+    private static double getEnergyUsage(EnergyDataColumns data, int userId) {
+        long[] time = data.getTime();
+        double[] power = data.getPower();
+        double[] offset = data.getPowerOffset();
+        int[] record = data.getEntryRecord();
+        double[] fraction = data.getEntryFraction();
         double vmEnergy = 0;
-        //Access two records at once hence ensure size() -2
-        for (int i = 0; i <= recordCount - 2; i++) {
-            HostEnergyRecord energy1 = energyUsage.get(i);
-            HostEnergyRecord energy2 = energyUsage.get(i + 1);
-            HostEnergyUserLoadFraction load1 = loadFraction.get(i);
-            HostEnergyUserLoadFraction load2 = loadFraction.get(i + 1);
-            if (load1.getEnergyUsageSources().contains(deployed) && load2.getEnergyUsageSources().contains(deployed)) {
-                long timePeriod = energy2.getTime() - energy1.getTime();
+        //Access two entries at once, these are used if they are for adjacent records
+        for (int entry = data.getEntryStart(userId); entry < data.getEntryEnd(userId) - 1; entry++) {
+            int i = record[entry];
+            if (record[entry + 1] == i + 1) {
+                long timePeriod = time[i + 1] - time[i];
                 double deltaEnergy = Math.abs((((double) timePeriod) / 3600d)
-                        * (energy1.getPower() + load1.getHostPowerOffset()
-                        + energy2.getPower() + load2.getHostPowerOffset()) * 0.5);
-                double avgLoadFraction = (load1.getFraction(deployed) + load2.getFraction(deployed)) / 2;
+                        * (power[i] + offset[i] + power[i + 1] + offset[i + 1]) * 0.5);
+                double avgLoadFraction = (fraction[entry] + fraction[entry + 1]) / 2;
                 vmEnergy = vmEnergy + (deltaEnergy * avgLoadFraction);
             }
         }
@@ -18,12 +18,11 @@
  */
 package eu.tango.energymodeller.energypredictor.vmenergyshare.historic;
 
-import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
 import eu.tango.energymodeller.types.energyuser.Host;
-import eu.tango.energymodeller.types.energyuser.VmDeployed;
-import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
-import eu.tango.energymodeller.types.usage.HostEnergyRecord;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * This creates a load based division mechanism for dividing host energy among
@@ -61,44 +60,65 @@ public class LoadBasedDivisionWithIdleEnergy extends AbstractHistoricLoadBasedDi
      */
     @Override
     public double getEnergyUsage(EnergyUsageSource energyUser) {
-        cleanData();
-        int recordCount = (energyUsage.size() <= loadFraction.size() ? energyUsage.size() : loadFraction.size());
+        EnergyDataColumns data = getColumns();
+        int userId = data.getUserId(energyUser);
+        if (userId == -1) {
+            return 0;
+        }
+        return getEnergyUsage(data, userId, getHost().getIdlePowerConsumption());
+    }
 
-        /**
-         * Calculate the idle power used for the vm/appplication being idle. This is
-         * fractioned out evenly among VMs/applications
-         */
+    /**
+     * This returns the energy usage for a set of VMs or applications,
+     * calculated together from a single column based view of the host's
+     * records.
+     *
+     * @param energyUsers The VMs or applications to get energy usage for.
+     * @return The energy used by each of the named VMs or applications.
+     */
+    @Override
+    public Map<EnergyUsageSource, Double> getEnergyUsage(Collection<? extends EnergyUsageSource> energyUsers) {
+        EnergyDataColumns data = getColumns();
         double idlePower = getHost().getIdlePowerConsumption();
+        HashMap<EnergyUsageSource, Double> answer = new HashMap<>();
+        for (EnergyUsageSource energyUser : energyUsers) {
+            int userId = data.getUserId(energyUser);
+            answer.put(energyUser, (userId == -1 ? 0 : getEnergyUsage(data, userId, idlePower)));
+        }
+        return answer;
+    }
 
-        /**
-         * Calculate the energy used by a VM taking into account the work it has
-         * performed.
-         */
+    /**
+     * This calculates the energy used by a VM or application taking into
+     * account the work it has performed. The host's idle power is fractioned
+     * out evenly among the VMs/applications present.
+     *
+     * @param data The column based view of the host's records
+     * @param userId The dense id of the VM or application in the columns
+     * @param idlePower The idle power consumption of the host
+     * @return The energy used by this VM or application.
+     */
+    private static double getEnergyUsage(EnergyDataColumns data, int userId, double idlePower) {
+        long[] time = data.getTime();
+        double[] power = data.getPower();
+        double[] offset = data.getPowerOffset();
+        int[] users = data.getUserCount();
+        int[] record = data.getEntryRecord();
+        double[] fraction = data.getEntryFraction();
         double eUsrEnergy = 0;
-        //Access two records at once hence ensure size() -2
-        for (int i = 0; i <= recordCount - 2; i++) {
-            HostEnergyRecord energy1 = energyUsage.get(i);
-            HostEnergyRecord energy2 = energyUsage.get(i + 1);
-            HostEnergyUserLoadFraction load1 = loadFraction.get(i);
-            HostEnergyUserLoadFraction load2 = loadFraction.get(i + 1);
-            if (load1.getEnergyUsageSources().contains(energyUser) && load2.getEnergyUsageSources().contains(energyUser)) {
-                long timePeriod = energy2.getTime() - energy1.getTime();
-                double userCount = load1.getEnergyUsageSources().size() + load2.getEnergyUsageSources().size() / 2d;
+        //Access two entries at once, these are used if they are for adjacent records
+        for (int entry = data.getEntryStart(userId); entry < data.getEntryEnd(userId) - 1; entry++) {
+            int i = record[entry];
+            if (record[entry + 1] == i + 1) {
+                long timePeriod = time[i + 1] - time[i];
+                double userCount = users[i] + users[i + 1] / 2d;
                 double eUserIdlePower = idlePower / userCount;
                 double idleEnergy = idlePower * (((double) timePeriod) / 3600);
                 double idleUserEnergy = eUserIdlePower * (((double) timePeriod) / 3600);
                 double deltaEnergy = Math.abs((((double) timePeriod) / 3600d)
-                        * (energy1.getPower() + load1.getHostPowerOffset()
-                        + energy2.getPower() + load2.getHostPowerOffset()) * 0.5);
+                        * (power[i] + offset[i] + power[i + 1] + offset[i + 1]) * 0.5);
                 double activeEnergyUsed = deltaEnergy - idleEnergy;
-                double avgLoadFraction;
-                if (energyUser instanceof VmDeployed) {
-                    VmDeployed deployed = (VmDeployed) energyUser;
-                    avgLoadFraction = (load1.getFraction(deployed) + load2.getFraction(deployed)) / 2;
-                } else {
-                    ApplicationOnHost deployed = (ApplicationOnHost) energyUser;
-                    avgLoadFraction = (load1.getFraction(deployed) + load2.getFraction(deployed)) / 2;
-                }
+                double avgLoadFraction = (fraction[entry] + fraction[entry + 1]) / 2;
                 //Add previous energy value to idle energy + fraction of active energy associated with VM.
                 eUsrEnergy = eUsrEnergy + idleUserEnergy + (activeEnergyUsed * avgLoadFraction);
             }
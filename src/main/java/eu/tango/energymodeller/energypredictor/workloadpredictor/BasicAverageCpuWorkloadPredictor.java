@@ -67,7 +67,7 @@ public class BasicAverageCpuWorkloadPredictor extends AbstractVMHistoryWorkloadE
             return new VmLoadHistoryRecord(utilisation, stdDev);
         }
         if (WorkloadStatisticsCache.getInstance().isInUse()) {
-            return new VmLoadHistoryRecord(WorkloadStatisticsCache.getInstance().getUtilisationforTags(vm), -1);
+            return WorkloadStatisticsCache.getInstance().getUtilisationforTags(vm);
         }
         for (String tag : vm.getApplicationTags()) {
             VmLoadHistoryRecord answer = database.getAverageCPUUtilisationTag(tag);
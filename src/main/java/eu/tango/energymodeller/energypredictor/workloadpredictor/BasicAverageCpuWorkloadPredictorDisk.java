@@ -68,7 +68,7 @@ public class BasicAverageCpuWorkloadPredictorDisk extends AbstractVMHistoryWorkl
             return new VmLoadHistoryRecord(utilisation, stdDev);
         }
         if (WorkloadStatisticsCache.getInstance().isInUse()) {
-            return new VmLoadHistoryRecord(WorkloadStatisticsCache.getInstance().getUtilisationforTags(vm), -1);
+            return WorkloadStatisticsCache.getInstance().getUtilisationforDisks(vm);
         }         
         for (VmDiskImage disk : vm.getDiskImages()) {
             VmLoadHistoryRecord answer = database.getAverageCPUUtilisationDisk(disk.getDiskImage());
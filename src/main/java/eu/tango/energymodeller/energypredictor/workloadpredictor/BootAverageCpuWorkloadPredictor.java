@@ -73,7 +73,7 @@ public class BootAverageCpuWorkloadPredictor extends AbstractVMHistoryWorkloadEs
             return new VmLoadHistoryRecord(utilisation, stdDev);
         }
         if (WorkloadStatisticsCache.getInstance().isInUse()) {
-            return new VmLoadHistoryRecord(WorkloadStatisticsCache.getInstance().getBootUtilisationforTags(vm), -1);
+            return WorkloadStatisticsCache.getInstance().getBootUtilisationforTags(vm);
         }         
         for (String tag : vm.getApplicationTags()) {
             if (vm.getClass().equals(VmDeployed.class)) {
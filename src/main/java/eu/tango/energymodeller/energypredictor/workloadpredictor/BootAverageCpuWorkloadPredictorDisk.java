@@ -74,7 +74,7 @@ public class BootAverageCpuWorkloadPredictorDisk extends AbstractVMHistoryWorklo
             return new VmLoadHistoryRecord(utilisation, stdDev);
         }
         if (WorkloadStatisticsCache.getInstance().isInUse()) {
-            return new VmLoadHistoryRecord(WorkloadStatisticsCache.getInstance().getBootUtilisationforDisks(vm), -1);
+            return WorkloadStatisticsCache.getInstance().getBootUtilisationforDisks(vm);
         }         
         for (VmDiskImage disk : vm.getDiskImages()) {
             if (vm.getClass().equals(VmDeployed.class)) {
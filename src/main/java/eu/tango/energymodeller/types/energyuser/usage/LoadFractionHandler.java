@@ -0,0 +1,46 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.types.energyuser.usage;
+
+/**
+ * This receives a host's load fraction records one at a time, in time order,
+ * as they are read from the data store. It allows a long history of records
+ * to be processed without holding all of them in memory at once.
+ *
+ * @author Richard Kavanagh
+ */
+public interface LoadFractionHandler {
+
+    /**
+     * This is called once, before any records are added, with the amount of
+     * records that are going to be added.
+     *
+     * @param count The amount of load fraction records that follow
+     */
+    public void setRecordCount(long count);
+
+    /**
+     * This adds the next load fraction record.
+     *
+     * @param loadFraction The load fraction record, records are added in
+     * time order.
+     */
+    public void add(HostEnergyUserLoadFraction loadFraction);
+
+}
@@ -178,4 +178,59 @@ REFERENCES vm(vm_id);
 ALTER TABLE vm_disk_arr
 ADD CONSTRAINT fk_vm_disk_arr_vm_disk_id
 FOREIGN KEY (vm_disk_id)
-REFERENCES vm_disk(vm_disk_id);
\ No newline at end of file
+REFERENCES vm_disk(vm_disk_id);
+CREATE TABLE IF NOT EXISTS host_measurement_rollup
+  (
+     host_id         INT NOT NULL,
+     resolution      INT NOT NULL,
+     bucket          BIGINT UNSIGNED NOT NULL,
+     first_clock     BIGINT UNSIGNED,
+     last_clock      BIGINT UNSIGNED,
+     last_energy     DOUBLE,
+     power_sum       DOUBLE,
+     sample_count    INT
+  );
+
+ALTER TABLE host_measurement_rollup
+ADD CONSTRAINT pk_host_measurement_rollup PRIMARY KEY (host_id, resolution, bucket);
+
+CREATE TABLE IF NOT EXISTS vm_measurement_rollup
+  (
+     host_id            INT NOT NULL,
+     vm_id              INT NOT NULL,
+     resolution         INT NOT NULL,
+     bucket             BIGINT UNSIGNED NOT NULL,
+     cpu_load_sum       DOUBLE,
+     power_overhead_sum DOUBLE,
+     sample_count       INT
+  );
+
+ALTER TABLE vm_measurement_rollup
+ADD CONSTRAINT pk_vm_measurement_rollup PRIMARY KEY (host_id, vm_id, resolution, bucket);
+
+CREATE INDEX idx_vm_rollup_host_bucket ON vm_measurement_rollup (host_id, resolution, bucket);
+
+CREATE TABLE IF NOT EXISTS app_measurement_rollup
+  (
+     host_id            INT NOT NULL,
+     app_id             INT NOT NULL,
+     resolution         INT NOT NULL,
+     bucket             BIGINT UNSIGNED NOT NULL,
+     cpu_load_sum       DOUBLE,
+     power_overhead_sum DOUBLE,
+     sample_count       INT
+  );
+
+ALTER TABLE app_measurement_rollup
+ADD CONSTRAINT pk_app_measurement_rollup PRIMARY KEY (host_id, app_id, resolution, bucket);
+
+CREATE TABLE IF NOT EXISTS host_energy_index
+  (
+     host_id           INT NOT NULL,
+     clock             BIGINT UNSIGNED NOT NULL,
+     cumulative_energy DOUBLE,
+     power             DOUBLE
+  );
+
+ALTER TABLE host_energy_index
+ADD CONSTRAINT pk_host_energy_index PRIMARY KEY (host_id, clock);
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import eu.tango.energymodeller.types.energyuser.Host;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.influxdb.dto.QueryResult;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Richard Kavanagh
+ */
+public class CollectDInfluxDbDataSourceAdaptorTest {
+
+    public CollectDInfluxDbDataSourceAdaptorTest() {
+    }
+
+    /**
+     * This creates a series as returned by a query grouped by host.
+     *
+     * @param host The value of the series' host tag
+     * @param value The value of the series' only row
+     * @return The series
+     */
+    private static QueryResult.Series getSeries(String host, double value) {
+        QueryResult.Series answer = new QueryResult.Series();
+        answer.setName("power_value");
+        HashMap<String, String> tags = new HashMap<>();
+        if (host != null) {
+            tags.put("host", host);
+        }
+        answer.setTags(tags);
+        answer.setColumns(Arrays.asList("time", "last"));
+        List<List<Object>> values = new ArrayList<>();
+        values.add(Arrays.<Object>asList("2018-06-06T14:55:27.195Z", value));
+        answer.setValues(values);
+        return answer;
+    }
+
+    /**
+     * Test of getHostGroups method, of class CollectDInfluxDbDataSourceAdaptor.
+     */
+    @Test
+    public void testGetHostGroups() {
+        System.out.println("getHostGroups");
+        List<Host> hosts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            hosts.add(new Host(i, "ns5" + i));
+        }
+        hosts.add(null);
+        hosts.add(new Host(0, "ns50"));
+        List<List<Host>> result = CollectDInfluxDbDataSourceAdaptor.getHostGroups(hosts, 2);
+        assertEquals(3, result.size());
+        assertEquals(2, result.get(0).size());
+        assertEquals(2, result.get(1).size());
+        assertEquals(1, result.get(2).size());
+        assertEquals("ns54", result.get(2).get(0).getHostName());
+        assertEquals(0, CollectDInfluxDbDataSourceAdaptor.getHostGroups(null, 2).size());
+    }
+
+    /**
+     * Test of getHostCondition method, of class
+     * CollectDInfluxDbDataSourceAdaptor. Host names should be matched exactly,
+     * with any regular expression characters escaped.
+     */
+    @Test
+    public void testGetHostCondition() {
+        System.out.println("getHostCondition");
+        List<Host> hosts = new ArrayList<>();
+        hosts.add(new Host(1, "ns50.bullx"));
+        hosts.add(new Host(2, "ns51"));
+        assertEquals("host =~ /^(ns50\\.bullx|ns51)$/", CollectDInfluxDbDataSourceAdaptor.getHostCondition(hosts));
+    }
+
+    /**
+     * Test of addSeriesByHost method, of class
+     * CollectDInfluxDbDataSourceAdaptor. The series of every statement should
+     * be sorted by their host tag, skipping any without one.
+     */
+    @Test
+    public void testAddSeriesByHost() {
+        System.out.println("addSeriesByHost");
+        QueryResult.Result first = new QueryResult.Result();
+        first.setSeries(Arrays.asList(getSeries("ns50", 100), getSeries("ns51", 120), getSeries(null, 5)));
+        QueryResult.Result second = new QueryResult.Result();
+        second.setSeries(Arrays.asList(getSeries("ns50", 110)));
+        QueryResult.Result empty = new QueryResult.Result();
+        empty.setSeries(null);
+        QueryResult results = new QueryResult();
+        results.setResults(Arrays.asList(first, second, empty));
+        HashMap<String, List<QueryResult.Series>> seriesByHost = new HashMap<>();
+        CollectDInfluxDbDataSourceAdaptor.addSeriesByHost(results, seriesByHost);
+        assertEquals(2, seriesByHost.size());
+        assertEquals(2, seriesByHost.get("ns50").size());
+        assertEquals(110.0, (Double) seriesByHost.get("ns50").get(1).getValues().get(0).get(1), 0.0);
+        assertEquals(1, seriesByHost.get("ns51").size());
+        //Empty results are ignored
+        CollectDInfluxDbDataSourceAdaptor.addSeriesByHost(null, seriesByHost);
+        CollectDInfluxDbDataSourceAdaptor.addSeriesByHost(new QueryResult(), seriesByHost);
+        assertEquals(2, seriesByHost.size());
+    }
+}
@@ -20,14 +20,23 @@ package eu.tango.energymodeller.datasourceclient;
 
 import eu.tango.energymodeller.datasourceclient.compsstype.CompssImplementation;
 import eu.tango.energymodeller.datasourceclient.compsstype.CompssResource;
+import eu.tango.energymodeller.datasourceclient.compsstype.CompssState;
+import eu.tango.energymodeller.datasourceclient.compsstype.CompssStateParser;
 import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
 import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
 import eu.tango.energymodeller.types.energyuser.GeneralPurposePowerConsumer;
 import eu.tango.energymodeller.types.energyuser.Host;
 import eu.tango.energymodeller.types.energyuser.VmDeployed;
 import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import org.json.JSONObject;
+import org.json.XML;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -82,6 +91,69 @@ public class CompssDatasourceAdaptorTest {
         }
     }
     
+    /**
+     * Test of parse method, of class CompssStateParser. The resources and
+     * implementations read from the file as a stream should match those
+     * given by converting the whole file into JSON, as was done before. The
+     * tasks in progress should be summed over every application.
+     */
+    @Test
+    public void testParseCompssState() throws IOException {
+        System.out.println("parseCompssState");
+        File file = new File("./test_example_files/example_run_01/COMPSs_state_multiple.xml");
+        CompssState result = CompssStateParser.parse("example_run_01", file);
+        JSONObject compssState = XML.toJSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)).getJSONObject("COMPSsState");
+        List<CompssResource> expResources = CompssResource.getCompssResouce(compssState.getJSONObject("ResourceInfo"));
+        List<CompssImplementation> expImplementations = CompssImplementation.getCompssImplementation(compssState.getJSONObject("CoresInfo"));
+        assertEquals(2, result.getResources().size());
+        assertEquals(expResources.size(), result.getResources().size());
+        for (int i = 0; i < expResources.size(); i++) {
+            assertEquals(expResources.get(i).getHostname(), result.getResources().get(i).getHostname());
+            assertTrue(expResources.get(i).getJsonObject().similar(result.getResources().get(i).getJsonObject()));
+        }
+        assertEquals(3, result.getImplementations().size());
+        assertEquals(expImplementations.size(), result.getImplementations().size());
+        for (int i = 0; i < expImplementations.size(); i++) {
+            assertEquals(expImplementations.get(i).getName(), result.getImplementations().get(i).getName());
+            assertTrue(expImplementations.get(i).getJsonObject().similar(result.getImplementations().get(i).getJsonObject()));
+        }
+        CompssResource busy = result.getResources().get(0);
+        assertEquals("ns50", busy.getHostname());
+        assertEquals(16, busy.getCoreCount());
+        assertEquals(2, busy.getGpuCount());
+        assertEquals(Arrays.asList("ExecutionAction ( Task 4, CE name multiplyBlocks)",
+                "ExecutionAction ( Task 5, CE name multiplyBlocks)"), busy.getCurrentActions());
+        assertFalse(busy.isIdle());
+        CompssResource idle = result.getResources().get(1);
+        assertEquals("ns51", idle.getHostname());
+        assertTrue(idle.getCurrentActions().isEmpty());
+        assertTrue(idle.isIdle());
+        assertEquals("initBlock(BINDING_OBJECT_T)NULL", result.getImplementations().get(2).getName());
+        assertEquals(16, result.getImplementations().get(0).getExecutionCount());
+        assertEquals(4, result.getImplementations().get(2).getExecutionCount());
+        assertEquals(5, result.getRunningTaskCount());
+    }
+
+    /**
+     * Test of parse method, of class CompssStateParser. A file that is still
+     * being written should give no resources, implementations or tasks,
+     * rather than the part of its content that has been written.
+     */
+    @Test
+    public void testParseCompssStateTruncated() throws IOException {
+        System.out.println("parseCompssStateTruncated");
+        byte[] content = Files.readAllBytes(new File("./test_example_files/example_run_01/COMPSs_state_multiple.xml").toPath());
+        File file = File.createTempFile("COMPSs_state", ".xml");
+        file.deleteOnExit();
+        //Cut part way through the resources, after the tasks and cores
+        Files.write(file.toPath(), Arrays.copyOf(content, new String(content, StandardCharsets.UTF_8).indexOf("<Resource id=\"ns51\">")));
+        CompssState result = CompssStateParser.parse("example_run_01", file);
+        assertTrue(result.getResources().isEmpty());
+        assertTrue(result.getImplementations().isEmpty());
+        assertEquals(0, result.getRunningTaskCount());
+        file.delete();
+    }
+
     @Test
     public void testGetCurrentMonitoringJobId() {
         System.out.println("getMonitoringFile");
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Richard Kavanagh
+ */
+public class CpuUtilisationRingBufferTest {
+
+    public CpuUtilisationRingBufferTest() {
+    }
+
+    /**
+     * Test of getAverage method, of class CpuUtilisationRingBuffer.
+     */
+    @Test
+    public void testGetAverage() {
+        System.out.println("getAverage");
+        CpuUtilisationRingBuffer instance = new CpuUtilisationRingBuffer(10);
+        assertEquals(true, Double.isNaN(instance.getAverage(0)));
+        for (int i = 1; i <= 5; i++) {
+            instance.add(100 + i, i * 0.1);
+        }
+        assertEquals(0.3, instance.getAverage(0), 0.0001);
+        assertEquals(0.45, instance.getAverage(105, 1), 0.0001);
+        assertEquals(0.5, instance.getAverage(105), 0.0001);
+        assertEquals(true, Double.isNaN(instance.getAverage(106)));
+        assertEquals(0.5, instance.getLatest(), 0.0);
+    }
+
+    /**
+     * Test of getAverage method, of class CpuUtilisationRingBuffer, once the
+     * oldest samples have been replaced.
+     */
+    @Test
+    public void testGetAverageWrapped() {
+        System.out.println("getAverageWrapped");
+        CpuUtilisationRingBuffer instance = new CpuUtilisationRingBuffer(4);
+        for (int i = 1; i <= 10; i++) {
+            instance.add(i, i);
+        }
+        assertEquals(4, instance.size());
+        //Only the samples 7 to 10 remain
+        assertEquals(8.5, instance.getAverage(0), 0.0001);
+        assertEquals(9.5, instance.getAverage(9), 0.0001);
+        assertEquals(10.0, instance.getLatest(), 0.0);
+    }
+
+    /**
+     * Test of getAverageUpTo method, of class CpuUtilisationRingBuffer.
+     * Samples added after the given count should be ignored.
+     */
+    @Test
+    public void testGetAverageUpTo() {
+        System.out.println("getAverageUpTo");
+        CpuUtilisationRingBuffer instance = new CpuUtilisationRingBuffer(4);
+        assertEquals(true, Double.isNaN(instance.getAverageUpTo(0, instance.getCount())));
+        for (int i = 1; i <= 6; i++) {
+            instance.add(i, i);
+        }
+        long count = instance.getCount();
+        assertEquals(6, count);
+        assertEquals(4.5, instance.getAverageUpTo(0, count), 0.0001);
+        //The new sample is ignored, though it replaces the oldest sample
+        instance.add(7, 100);
+        assertEquals(5.0, instance.getAverageUpTo(0, count), 0.0001);
+        assertEquals(5.5, instance.getAverageUpTo(5, count), 0.0001);
+        assertEquals(true, Double.isNaN(instance.getAverageUpTo(7, count)));
+        //Once all the samples counted have been replaced there is nothing left
+        for (int i = 8; i <= 11; i++) {
+            instance.add(i, i);
+        }
+        assertEquals(true, Double.isNaN(instance.getAverageUpTo(0, count)));
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import eu.tango.energymodeller.types.energyuser.Host;
+import java.util.HashMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Richard Kavanagh
+ */
+public class HostMeasurementTest {
+
+    public HostMeasurementTest() {
+    }
+
+    /**
+     * Test of getPower method, of class HostMeasurement.
+     */
+    @Test
+    public void testGetPower() {
+        System.out.println("getPower");
+        HostMeasurement instance = new HostMeasurement(new Host(1, "test"), 1000);
+        assertEquals(-1.0, instance.getPower(true), 0.0);
+        instance.addMetric(new MetricValue(KpiList.ESTIMATED_POWER_KPI_NAME, KpiList.ESTIMATED_POWER_KPI_NAME, 80.0, 1000));
+        assertEquals(80.0, instance.getPower(true), 0.0);
+        instance.addMetric(new MetricValue(KpiList.POWER_KPI_NAME, KpiList.POWER_KPI_NAME, "120.5", 1000));
+        assertEquals(120.5, instance.getPower(true), 0.0);
+        //Older values do not replace newer ones
+        instance.addMetric(new MetricValue(KpiList.POWER_KPI_NAME, KpiList.POWER_KPI_NAME, 10.0, 999));
+        assertEquals(120.5, instance.getPower(), 0.0);
+        instance.deleteMetric(KpiList.POWER_KPI_NAME);
+        assertEquals(false, instance.getPowerMetricExist());
+        assertEquals(80.0, instance.getPower(true), 0.0);
+    }
+
+    /**
+     * Test of getCpuUtilisation method, of class HostMeasurement.
+     */
+    @Test
+    public void testGetCpuUtilisation() {
+        System.out.println("getCpuUtilisation");
+        HostMeasurement instance = new HostMeasurement(new Host(1, "test"), 1000);
+        instance.addMetric(new MetricValue(KpiList.CPU_USER_KPI_NAME, KpiList.CPU_USER_KPI_NAME, 20.0, 1000));
+        instance.addMetric(new MetricValue(KpiList.CPU_SYSTEM_KPI_NAME, KpiList.CPU_SYSTEM_KPI_NAME, "5", 1001));
+        assertEquals(0.25, instance.getCpuUtilisation(), 0.0001);
+        assertEquals(1001, instance.getCpuUtilisationTimeStamp());
+        HashMap<String, MetricValue> metrics = new HashMap<>();
+        metrics.put(KpiList.CPU_SPOT_USAGE_KPI_NAME, new MetricValue(KpiList.CPU_SPOT_USAGE_KPI_NAME, KpiList.CPU_SPOT_USAGE_KPI_NAME, 50.0, 1002));
+        instance.setMetrics(metrics);
+        assertEquals(0.5, instance.getCpuUtilisation(), 0.0001);
+        assertEquals(1002, instance.getCpuUtilisationTimeStamp());
+    }
+
+    /**
+     * Test of the copy constructor, of class HostMeasurement.
+     */
+    @Test
+    public void testCopy() {
+        System.out.println("copy");
+        HostMeasurement original = new HostMeasurement(new Host(1, "test"), 1000);
+        original.addMetric(new MetricValue(KpiList.POWER_KPI_NAME, KpiList.POWER_KPI_NAME, 120.0, 1000));
+        original.addMetric(new MetricValue(KpiList.CPU_SPOT_USAGE_KPI_NAME, KpiList.CPU_SPOT_USAGE_KPI_NAME, 50.0, 1000));
+        HostMeasurement instance = new HostMeasurement(original);
+        assertEquals(original.getHost(), instance.getHost());
+        assertEquals(1000, instance.getClock());
+        assertEquals(120.0, instance.getPower(), 0.0);
+        assertEquals(0.5, instance.getCpuUtilisation(), 0.0001);
+        //Changes to the copy do not change the original
+        instance.deleteMetric(KpiList.POWER_KPI_NAME);
+        instance.addMetric(new MetricValue(KpiList.ESTIMATED_POWER_KPI_NAME, KpiList.ESTIMATED_POWER_KPI_NAME, 80.0, 1000));
+        assertEquals(true, original.getPowerMetricExist());
+        assertEquals(120.0, original.getPower(true), 0.0);
+        assertEquals(null, original.getMetric(KpiList.ESTIMATED_POWER_KPI_NAME));
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.BatchPoints;
+import org.influxdb.dto.Point;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Richard Kavanagh
+ */
+public class InfluxDbPointWriterTest {
+
+    private final List<Integer> batches = new ArrayList<>();
+
+    /**
+     * This creates a connection to influx db that records the size of each
+     * batch of points written, instead of writing them out.
+     *
+     * @return The recording connection to influx db
+     */
+    private InfluxDB getInfluxDB() {
+        return (InfluxDB) Proxy.newProxyInstance(InfluxDB.class.getClassLoader(), new Class<?>[]{InfluxDB.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("write") && args.length == 1 && args[0] instanceof BatchPoints) {
+                            synchronized (batches) {
+                                batches.add(((BatchPoints) args[0]).getPoints().size());
+                            }
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static Point getPoint(int value) {
+        return Point.measurement("power").tag("host", "ns50").addField("value", value).build();
+    }
+
+    /**
+     * Test of flush method, of class InfluxDbPointWriter. Queued points should
+     * be written out in batches of at most the batch size.
+     */
+    @Test
+    public void testFlush() {
+        System.out.println("flush");
+        InfluxDbPointWriter instance = new InfluxDbPointWriter(getInfluxDB(), "collectd", InfluxDB.ConsistencyLevel.ALL, 4, 60000, 100);
+        for (int i = 0; i < 10; i++) {
+            instance.add(getPoint(i));
+        }
+        assertEquals(10, instance.getQueuedPointCount());
+        assertEquals(0, batches.size());
+        instance.flush();
+        assertEquals(0, instance.getQueuedPointCount());
+        assertEquals(3, batches.size());
+        assertEquals(4, (int) batches.get(0));
+        assertEquals(4, (int) batches.get(1));
+        assertEquals(2, (int) batches.get(2));
+    }
+
+    /**
+     * Test of add method, of class InfluxDbPointWriter. Points beyond the
+     * queue's capacity should be dropped and counted.
+     */
+    @Test
+    public void testAddFull() {
+        System.out.println("addFull");
+        InfluxDbPointWriter instance = new InfluxDbPointWriter(getInfluxDB(), "collectd", InfluxDB.ConsistencyLevel.ALL, 2, 60000, 5);
+        for (int i = 0; i < 8; i++) {
+            instance.add(getPoint(i));
+        }
+        assertEquals(5, instance.getQueuedPointCount());
+        assertEquals(3, instance.getDroppedPointCount());
+    }
+
+    /**
+     * Test of run method, of class InfluxDbPointWriter. A full batch should be
+     * written out by the background thread, and stopping the writer should
+     * write out the remainder and any later points.
+     */
+    @Test
+    public void testRunAndStop() throws InterruptedException {
+        System.out.println("runAndStop");
+        InfluxDbPointWriter instance = new InfluxDbPointWriter(getInfluxDB(), "collectd", InfluxDB.ConsistencyLevel.ALL, 3, 60000, 100);
+        Thread thread = new Thread(instance);
+        thread.setDaemon(true);
+        thread.start();
+        for (int i = 0; i < 3; i++) {
+            instance.add(getPoint(i));
+        }
+        for (int i = 0; i < 100 && instance.getQueuedPointCount() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, instance.getQueuedPointCount());
+        //Less than a batch is held until the flush interval passes
+        instance.add(getPoint(3));
+        Thread.sleep(50);
+        assertEquals(1, instance.getQueuedPointCount());
+        instance.stop();
+        thread.join(1000);
+        assertEquals(false, thread.isAlive());
+        assertEquals(false, instance.isRunning());
+        assertEquals(0, instance.getQueuedPointCount());
+        instance.add(getPoint(5));
+        assertEquals(0, instance.getQueuedPointCount());
+        int written = 0;
+        for (int batch : batches) {
+            written = written + batch;
+        }
+        assertEquals(5, written);
+    }
+
+    /**
+     * Test of run method, of class InfluxDbPointWriter. Interrupting the
+     * background thread should stop it, once it has written out the queue.
+     */
+    @Test
+    public void testRunInterrupted() throws InterruptedException {
+        System.out.println("runInterrupted");
+        InfluxDbPointWriter instance = new InfluxDbPointWriter(getInfluxDB(), "collectd", InfluxDB.ConsistencyLevel.ALL, 10, 60000, 100);
+        Thread thread = new Thread(instance);
+        thread.setDaemon(true);
+        thread.start();
+        instance.add(getPoint(1));
+        thread.interrupt();
+        thread.join(1000);
+        assertEquals(false, thread.isAlive());
+        assertEquals(false, instance.isRunning());
+        assertEquals(0, instance.getQueuedPointCount());
+        assertEquals(1, batches.size());
+    }
+
+    /**
+     * Test of getInstance method, of class InfluxDbPointWriter. Writers should
+     * be shared for the same server, user and database only.
+     */
+    @Test
+    public void testGetInstance() {
+        System.out.println("getInstance");
+        InfluxDB influxDB = getInfluxDB();
+        InfluxDbPointWriter writer1 = InfluxDbPointWriter.getInstance(influxDB, "http://localhost:8086", "user1", "collectd", InfluxDB.ConsistencyLevel.ALL, 10, 1000, 100);
+        InfluxDbPointWriter writer2 = InfluxDbPointWriter.getInstance(influxDB, "http://localhost:8086", "user1", "collectd", InfluxDB.ConsistencyLevel.ALL, 10, 1000, 100);
+        InfluxDbPointWriter writer3 = InfluxDbPointWriter.getInstance(influxDB, "http://localhost:8086", "user2", "collectd", InfluxDB.ConsistencyLevel.ALL, 10, 1000, 100);
+        assertEquals(true, writer1 == writer2);
+        assertEquals(false, writer1 == writer3);
+        writer1.stop();
+        writer3.stop();
+        //A stopped writer is replaced
+        InfluxDbPointWriter writer4 = InfluxDbPointWriter.getInstance(influxDB, "http://localhost:8086", "user1", "collectd", InfluxDB.ConsistencyLevel.ALL, 10, 1000, 100);
+        assertEquals(false, writer1 == writer4);
+        writer4.stop();
+    }
+}
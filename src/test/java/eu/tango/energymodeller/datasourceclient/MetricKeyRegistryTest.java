@@ -0,0 +1,76 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import java.util.HashSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Richard Kavanagh
+ */
+public class MetricKeyRegistryTest {
+
+    public MetricKeyRegistryTest() {
+    }
+
+    /**
+     * Test of getId method, of class MetricKeyRegistry.
+     */
+    @Test
+    public void testGetId() {
+        System.out.println("getId");
+        int id = MetricKeyRegistry.getId("test.registry.key");
+        assertEquals(id, MetricKeyRegistry.getId("test.registry.key"));
+        assertEquals("test.registry.key", MetricKeyRegistry.getKey(id));
+        assertEquals(true, MetricKeyRegistry.getId("test.registry.key2") != id);
+    }
+
+    /**
+     * Test of getPattern method, of class MetricKeyRegistry.
+     */
+    @Test
+    public void testGetPattern() {
+        System.out.println("getPattern");
+        MetricKeyRegistry.KeyPattern pattern = MetricKeyRegistry.getPattern("nvidia_value:[0-9]?:percent");
+        assertEquals(pattern, MetricKeyRegistry.getPattern("nvidia_value:[0-9]?:percent"));
+        assertEquals(true, pattern.matches("nvidia_value:1:percent"));
+        assertEquals(false, pattern.matches("nvidia_value:1:power"));
+        //Keys registered after the pattern was first used are also tested
+        assertEquals(true, pattern.matches("nvidia_value::percent"));
+        assertEquals(true, pattern.getMatchingIds().get(MetricKeyRegistry.getId("nvidia_value:1:percent")));
+    }
+
+    /**
+     * Test of getMetricByRegularExpression method, of class Measurement.
+     */
+    @Test
+    public void testGetMetricByRegularExpression() {
+        System.out.println("getMetricByRegularExpression");
+        HostMeasurement measurement = new HostMeasurement(null, 1000);
+        measurement.addMetric(new MetricValue("gpu0", "nvidia_value:0:percent", 10.0, 1000));
+        measurement.addMetric(new MetricValue("gpu1", "nvidia_value:1:percent", 20.0, 1000));
+        measurement.addMetric(new MetricValue("power", "nvidia_value:1:power", 100.0, 1000));
+        HashSet<MetricValue> result = measurement.getMetricByRegularExpression("nvidia_value:[0-9]?:percent");
+        assertEquals(2, result.size());
+        result = measurement.getMetricByRegularExpression("nvidia_value:1:power");
+        assertEquals(1, result.size());
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datasourceclient;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Richard Kavanagh
+ */
+public class SlurmNodeRecordTest {
+
+    private static final String LINE = "NodeName=ns51;Arch=x86_64;CoresPerSocket=8;"
+            + "CPUAlloc=0;CPUErr=0;CPUTot=32;CPULoad=0.07;AvailableFeatures=(null);"
+            + "Gres=gpu:teslak20:2;GresUsed=gpu:teslak20:0(IDX:N/A);NodeAddr=ns51;"
+            + "RealMemory=64408;AllocMem=0;FreeMem=60211;State=IDLE;;"
+            + "CfgTRES=cpu=32,mem=64408M;AllocTRES=;CapWatts=n/a;CurrentWatts=105;"
+            + "ConsumedJoules=12345678;ExtSensorsJoules=n/s";
+
+    public SlurmNodeRecordTest() {
+    }
+
+    /**
+     * Test of getString method, of class SlurmNodeRecord.
+     */
+    @Test
+    public void testGetString() {
+        System.out.println("getString");
+        SlurmNodeRecord instance = new SlurmNodeRecord(LINE);
+        assertEquals("ns51", instance.getString(SlurmNodeRecord.NODE_NAME));
+        assertEquals("IDLE", instance.getString(SlurmNodeRecord.STATE));
+        assertEquals("gpu:teslak20:2", instance.getString(SlurmNodeRecord.GRES));
+        assertEquals("gpu:teslak20:0(IDX:N/A)", instance.getString(SlurmNodeRecord.GRES_USED));
+        assertEquals(true, instance.valueEquals(SlurmNodeRecord.STATE, "IDLE"));
+        instance.reset("NodeName=ns52;State=DOWN*;CPULoad=N/A");
+        assertEquals("ns52", instance.getString(SlurmNodeRecord.NODE_NAME));
+        assertEquals("", instance.getString(SlurmNodeRecord.GRES));
+        assertEquals(false, instance.contains(SlurmNodeRecord.CPU_TOTAL));
+        assertEquals(false, instance.isNumber(SlurmNodeRecord.CPU_LOAD));
+    }
+
+    /**
+     * Test of getDouble method, of class SlurmNodeRecord.
+     */
+    @Test
+    public void testGetDouble() {
+        System.out.println("getDouble");
+        SlurmNodeRecord instance = new SlurmNodeRecord(LINE);
+        assertEquals(0.07, instance.getDouble(SlurmNodeRecord.CPU_LOAD), 0.0);
+        assertEquals(32.0, instance.getDouble(SlurmNodeRecord.CPU_TOTAL), 0.0);
+        assertEquals(105.0, instance.getDouble(SlurmNodeRecord.CURRENT_WATTS), 0.0);
+        assertEquals(12345678.0, instance.getDouble(SlurmNodeRecord.CONSUMED_JOULES), 0.0);
+        assertEquals(32, instance.getInt(SlurmNodeRecord.CPU_TOTAL));
+        instance.reset("NodeName=ns52;CPULoad=-12.3456789;FreeMem=1e3");
+        assertEquals(Double.parseDouble("-12.3456789"), instance.getDouble(SlurmNodeRecord.CPU_LOAD), 0.0);
+        assertEquals(1000.0, instance.getDouble(SlurmNodeRecord.FREE_MEMORY), 0.0);
+        //Only ASCII digits are read directly, others are left to parseDouble
+        instance.reset("NodeName=ns52;CPULoad=\u0661\u0662");
+        assertEquals(false, instance.isNumber(SlurmNodeRecord.CPU_LOAD));
+        try {
+            instance.getDouble(SlurmNodeRecord.REAL_MEMORY);
+            fail("A missing value should not parse as a number");
+        } catch (NumberFormatException ex) {
+            //This is the expected outcome
+        }
+    }
+
+    /**
+     * Test of the generic field accessors, of class SlurmNodeRecord.
+     */
+    @Test
+    public void testFields() {
+        System.out.println("fields");
+        SlurmNodeRecord instance = new SlurmNodeRecord(LINE);
+        assertEquals(LINE.split(";").length - 1, instance.getFieldCount());
+        int cfgTres = -1;
+        int allocTres = -1;
+        for (int i = 0; i < instance.getFieldCount(); i++) {
+            if (instance.getKey(i).equals("CfgTRES")) {
+                cfgTres = i;
+            } else if (instance.getKey(i).equals("AllocTRES")) {
+                allocTres = i;
+            }
+        }
+        assertEquals("cpu=32,mem=64408M", instance.getValue(cfgTres));
+        assertEquals(true, instance.hasNestedValues(cfgTres));
+        assertEquals("", instance.getValue(allocTres));
+        assertEquals(false, instance.hasNestedValues(allocTres));
+    }
+}
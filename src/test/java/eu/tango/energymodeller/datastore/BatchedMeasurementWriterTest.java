@@ -0,0 +1,112 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import eu.tango.energymodeller.datastore.BatchedMeasurementWriter.MeasurementRow;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * This is the test class for the write behind queue of measurement data.
+ *
+ * @author Richard Kavanagh
+ */
+public class BatchedMeasurementWriterTest {
+
+    /**
+     * This records the rows that are written out, instead of writing them to
+     * the database. Any transaction holding the VM with the bad id fails, as
+     * does every transaction if the database is set as unreachable.
+     */
+    private static class RecordingWriter extends BatchedMeasurementWriter {
+
+        private static final int BAD_VM = 99;
+        private final List<MeasurementRow> written = new ArrayList<>();
+        private final boolean unreachable;
+        private int transactions = 0;
+
+        public RecordingWriter(boolean unreachable) {
+            super(null, 100, 1000, 100);
+            this.unreachable = unreachable;
+        }
+
+        @Override
+        void writeTransaction(List<MeasurementRow> batch) throws SQLException {
+            transactions++;
+            if (unreachable) {
+                throw new SQLTransientConnectionException("The database can not be reached");
+            }
+            for (MeasurementRow row : batch) {
+                if (row.getTable() == Table.VM && row.getUserId() == BAD_VM) {
+                    throw new SQLException("The row can not be written");
+                }
+            }
+            written.addAll(batch);
+        }
+    }
+
+    /**
+     * Test of flush method, of class BatchedMeasurementWriter. A row that can
+     * not be written should only cause itself to be dropped, not the host and
+     * energy index rows written alongside it.
+     */
+    @Test
+    public void testFlushWithBadRow() {
+        System.out.println("flushWithBadRow");
+        RecordingWriter instance = new RecordingWriter(false);
+        MeasurementRow host = MeasurementRow.host(1, 3600, 100, 10);
+        MeasurementRow goodVm = MeasurementRow.vm(1, 2, 3600, 0.5, 1);
+        MeasurementRow badVm = MeasurementRow.vm(1, RecordingWriter.BAD_VM, 3600, 0.5, 1);
+        MeasurementRow index = MeasurementRow.energyIndex(1, 3600, 1000, 10);
+        instance.add(host);
+        instance.add(goodVm);
+        instance.add(badVm);
+        instance.add(index);
+        instance.flush();
+        assertEquals(3, instance.written.size());
+        assertTrue(instance.written.contains(host));
+        assertTrue(instance.written.contains(goodVm));
+        assertTrue(instance.written.contains(index));
+        assertEquals(1, instance.getDroppedRowCount());
+        assertEquals(0, instance.getQueuedRowCount());
+    }
+
+    /**
+     * Test of flush method, of class BatchedMeasurementWriter. If the
+     * database can not be reached the batch should be retried once and then
+     * dropped, without trying each row in turn.
+     */
+    @Test
+    public void testFlushUnreachable() {
+        System.out.println("flushUnreachable");
+        RecordingWriter instance = new RecordingWriter(true);
+        instance.add(MeasurementRow.host(1, 3600, 100, 10));
+        instance.add(MeasurementRow.vm(1, 2, 3600, 0.5, 1));
+        instance.add(MeasurementRow.energyIndex(1, 3600, 1000, 10));
+        instance.flush();
+        assertEquals(2, instance.transactions);
+        assertEquals(3, instance.getDroppedRowCount());
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import eu.tango.energymodeller.types.energyuser.Host;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * This is the test class for the running totals of the cluster's power
+ * consumption.
+ *
+ * @author Richard Kavanagh
+ */
+public class ClusterPowerAggregatesTest {
+
+    private final Host host1 = new Host(1, "asok09");
+    private final Host host2 = new Host(2, "asok10");
+    private final Host host3 = new Host(3, "asok11");
+
+    public ClusterPowerAggregatesTest() {
+        host1.setDefaultIdlePowerConsumption(50);
+        host2.setDefaultIdlePowerConsumption(50);
+        host3.setDefaultIdlePowerConsumption(50);
+        host1.setState("IDLE");
+        host2.setState("ALLOCATED");
+        host3.setState("ALLOCATED");
+    }
+
+    /**
+     * Test of update method, of class ClusterPowerAggregates.
+     */
+    @Test
+    public void testUpdate() {
+        System.out.println("update");
+        ClusterPowerAggregates instance = new ClusterPowerAggregates(ClusterPowerAggregates.GroupBy.NONE);
+        assertEquals(false, instance.isFresh(-1));
+        instance.update(host1, 100, false);
+        instance.update(host2, 150, true);
+        instance.update(host3, 40, true);
+        assertEquals(true, instance.isFresh(-1));
+        assertEquals(3, instance.getHostCount());
+        assertEquals(290, instance.getHostPower(), 0.0);
+        assertEquals(190, instance.getVmPower(false), 0.0);
+        assertEquals(200, instance.getVmPower(true), 0.0);
+        //A new measurement replaces the host's previous one
+        instance.update(host2, 120, true);
+        assertEquals(260, instance.getHostPower(), 0.0);
+        assertEquals(160, instance.getVmPower(false), 0.0);
+        assertEquals(160d / 260d, instance.getVmToHostPowerRatio(false), 0.0);
+        assertEquals(100, instance.getHostPowerUnallocatedToVms(false), 0.0);
+        //Hosts no longer seen are removed
+        List<Host> seen = new ArrayList<>();
+        seen.add(host1);
+        seen.add(host2);
+        instance.retain(seen);
+        assertEquals(2, instance.getHostCount());
+        assertEquals(220, instance.getHostPower(), 0.0);
+        assertEquals(120, instance.getVmPower(true), 0.0);
+    }
+
+    /**
+     * Test of getHostPowerByGroup method, of class ClusterPowerAggregates.
+     */
+    @Test
+    public void testGetHostPowerByGroup() {
+        System.out.println("getHostPowerByGroup");
+        ClusterPowerAggregates instance = new ClusterPowerAggregates(ClusterPowerAggregates.GroupBy.STATE);
+        instance.update(host1, 100, false);
+        instance.update(host2, 150, true);
+        instance.update(host3, 40, true);
+        Map<String, Double> result = instance.getHostPowerByGroup();
+        assertEquals(2, result.size());
+        assertEquals(100, result.get("IDLE"), 0.0);
+        assertEquals(190, result.get("ALLOCATED"), 0.0);
+        assertEquals(0, instance.getVmPowerByGroup(false).get("IDLE"), 0.0);
+        //A host that changes state moves to its new group
+        host1.setState("ALLOCATED");
+        instance.update(host1, 110, true);
+        result = instance.getHostPowerByGroup();
+        assertEquals(1, result.size());
+        assertEquals(300, result.get("ALLOCATED"), 0.0);
+        assertEquals(300, instance.getVmPowerByGroup(false).get("ALLOCATED"), 0.0);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import eu.tango.energymodeller.datasourceclient.HostMeasurement;
+import eu.tango.energymodeller.datasourceclient.KpiList;
+import eu.tango.energymodeller.datasourceclient.MetricValue;
+import eu.tango.energymodeller.types.energyuser.ApplicationOnHost;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.energymodeller.types.energyuser.VmDeployed;
+import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
+import eu.tango.energymodeller.types.usage.CurrentUsageRecord;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * This is the test class for the snapshot of a data gathering cycle.
+ *
+ * @author Richard Kavanagh
+ */
+public class DataGathererSnapshotTest {
+
+    private final Host host1 = new Host(1, "asok09");
+    private final Host host2 = new Host(2, "asok10");
+    private final VmDeployed vm1 = new VmDeployed(1, "vm1");
+    private final VmDeployed vm2 = new VmDeployed(2, "vm2");
+    private final DataGathererSnapshot instance;
+
+    public DataGathererSnapshotTest() {
+        List<Host> hosts = new ArrayList<>();
+        hosts.add(host1);
+        hosts.add(host2);
+        vm1.setAllocatedTo(host1);
+        vm2.setAllocatedTo(host2);
+        List<VmDeployed> vms = new ArrayList<>();
+        vms.add(vm1);
+        vms.add(vm2);
+        List<ApplicationOnHost> apps = new ArrayList<>();
+        apps.add(new ApplicationOnHost(1, "app1", host2));
+        List<HostMeasurement> measurements = new ArrayList<>();
+        HostMeasurement measurement = new HostMeasurement(host1, 1000);
+        measurement.addMetric(new MetricValue(KpiList.POWER_KPI_NAME, KpiList.POWER_KPI_NAME, "120.5", 1000));
+        measurements.add(measurement);
+        HashMap<Host, HostEnergyUserLoadFraction> vmLoad = new HashMap<>();
+        HostEnergyUserLoadFraction fraction = new HostEnergyUserLoadFraction(host1, 1000);
+        fraction.addFraction(vm1, 1.0);
+        vmLoad.put(host1, fraction);
+        instance = new DataGathererSnapshot(hosts, vms, apps, measurements, vmLoad,
+                new HashMap<Host, HostEnergyUserLoadFraction>(), 15.0);
+        hosts.clear();
+        vms.clear();
+    }
+
+    /**
+     * Test of getVMsOnHost method, of class DataGathererSnapshot.
+     */
+    @Test
+    public void testGetVMsOnHost() {
+        System.out.println("getVMsOnHost");
+        assertEquals(2, instance.getHosts().size());
+        assertEquals(2, instance.getVms().size());
+        assertEquals(vm1, instance.getVMsOnHost(host1).get(0));
+        assertEquals(1, instance.getVMsOnHost(host2).size());
+        assertEquals(0, instance.getVMsOnHost(new Host(3, "asok11")).size());
+        assertEquals(0, instance.getApplications(host1).size());
+        assertEquals(1, instance.getApplications(host2).size());
+    }
+
+    /**
+     * Test of getCurrentEnergyUsage method, of class DataGathererSnapshot.
+     */
+    @Test
+    public void testGetCurrentEnergyUsage() {
+        System.out.println("getCurrentEnergyUsage");
+        CurrentUsageRecord result = instance.getCurrentEnergyUsage(host1);
+        assertEquals(120.5, result.getPower(), 0.0);
+        assertEquals(1000000L, result.getTime().getTimeInMillis());
+        assertEquals(null, instance.getCurrentEnergyUsage(host2));
+        assertEquals(1.0, instance.getVmLoadFraction(host1).getFraction(vm1), 0.0);
+        assertEquals(null, instance.getVmLoadFraction(host2));
+        assertEquals(15.0, instance.getGeneralPurposeHostsPowerConsumption(), 0.0);
+    }
+
+    /**
+     * Test of isFresh method, of class DataGathererSnapshot.
+     */
+    @Test
+    public void testIsFresh() {
+        System.out.println("isFresh");
+        assertEquals(true, instance.isFresh(-1));
+        assertEquals(true, instance.isFresh(60000));
+    }
+}
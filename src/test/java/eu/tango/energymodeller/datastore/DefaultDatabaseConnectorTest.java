@@ -21,6 +21,7 @@ import eu.tango.energymodeller.types.energyuser.Host;
 import eu.tango.energymodeller.types.energyuser.VmDeployed;
 import eu.tango.energymodeller.types.energyuser.VmDiskImage;
 //import eu.ascetic.asceticarchitecture.iaas.energymodeller.types.energyuser.usage.HostVmLoadFraction;
+import eu.tango.energymodeller.types.usage.HistoricUsageRecord;
 import eu.tango.energymodeller.types.usage.HostEnergyRecord;
 import eu.tango.energymodeller.types.usage.VmLoadHistoryBootRecord;
 import eu.tango.energymodeller.types.usage.VmLoadHistoryWeekRecord;
@@ -143,6 +144,27 @@ public class DefaultDatabaseConnectorTest {
 
     }
 
+    /**
+     * Test of getHostEnergyRecord method, of class DefaultDatabaseConnector.
+     */
+    @Test
+    public void testGetHostEnergyRecord() {
+        System.out.println("getHostEnergyRecord");
+        Host host = CHOSEN_HOST;
+        GregorianCalendar time = new GregorianCalendar();
+        int deltaTime = (int) TimeUnit.MINUTES.toMillis(60);
+        long startTime = time.getTimeInMillis() - deltaTime;
+        time.setTimeInMillis(startTime);
+        TimePeriod timePeriod = new TimePeriod(time, deltaTime, TimeUnit.MINUTES);
+        DefaultDatabaseConnector instance = new DefaultDatabaseConnector();
+        HistoricUsageRecord result = instance.getHostEnergyRecord(host, timePeriod);
+        //The index may not yet cover the time period, in which case null is returned
+        if (result != null) {
+            assert (result.getTotalEnergyUsed() >= 0);
+            System.out.println("Energy Used: " + result.getTotalEnergyUsed());
+        }
+    }
+
     /**
      * Test of getVms method, of class DefaultDatabaseConnector.
      */
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.datastore;
+
+import eu.tango.energymodeller.types.TimePeriod;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ * This is the test class for the minute and hour level summaries of the
+ * measurement data.
+ *
+ * @author Richard Kavanagh
+ */
+public class MeasurementRollupTest {
+
+    /**
+     * This records the buckets that are written out, instead of writing them
+     * to the database.
+     */
+    private static class RecordingRollup extends MeasurementRollup {
+
+        private final List<HostBucket> hostBuckets = new ArrayList<>();
+        private final List<UserBucket> userBuckets = new ArrayList<>();
+
+        public RecordingRollup() {
+            super(null);
+        }
+
+        @Override
+        void write(ArrayList<HostBucket> hostBuckets, ArrayList<UserBucket> userBuckets) {
+            this.hostBuckets.addAll(hostBuckets);
+            this.userBuckets.addAll(userBuckets);
+        }
+    }
+
+    /**
+     * Test of getBucket method, of class MeasurementRollup.
+     */
+    @Test
+    public void testGetBucket() {
+        System.out.println("getBucket");
+        assertEquals(7200, MeasurementRollup.getBucket(7200, MeasurementRollup.HOUR));
+        assertEquals(7200, MeasurementRollup.getBucket(10799, MeasurementRollup.HOUR));
+        assertEquals(10800, MeasurementRollup.getBucket(10800, MeasurementRollup.HOUR));
+        assertEquals(7260, MeasurementRollup.getBucket(7319, MeasurementRollup.MINUTE));
+    }
+
+    /**
+     * Test of addHostMeasurement method, of class MeasurementRollup. A
+     * bucket should only be written out once a sample in a later bucket is
+     * seen.
+     */
+    @Test
+    public void testAddHostMeasurement() {
+        System.out.println("addHostMeasurement");
+        RecordingRollup instance = new RecordingRollup();
+        instance.addHostMeasurement(1, 3600, 100, 10);
+        instance.addHostMeasurement(1, 3630, 200, 11);
+        assertEquals(0, instance.hostBuckets.size());
+        //The minute bucket completes, the hour bucket does not
+        instance.addHostMeasurement(1, 3660, 200, 12);
+        assertEquals(1, instance.hostBuckets.size());
+        MeasurementRollup.HostBucket minute = instance.hostBuckets.get(0);
+        assertEquals(MeasurementRollup.MINUTE, minute.getResolution());
+        assertEquals(3600, minute.getBucket());
+        assertEquals(2, minute.getSampleCount());
+        assertEquals(300, minute.getPowerSum(), 0.0);
+        assertEquals(11, minute.getLastEnergy(), 0.0);
+        instance.hostBuckets.clear();
+        //Both the minute and hour bucket complete
+        instance.addHostMeasurement(1, 7200, 100, 20);
+        assertEquals(2, instance.hostBuckets.size());
+        MeasurementRollup.HostBucket hour = instance.hostBuckets.get(1);
+        assertEquals(MeasurementRollup.HOUR, hour.getResolution());
+        assertEquals(3600, hour.getBucket());
+        assertEquals(3, hour.getSampleCount());
+        assertEquals(500, hour.getPowerSum(), 0.0);
+        //The open buckets are written by a flush
+        instance.hostBuckets.clear();
+        instance.flush();
+        assertEquals(2, instance.hostBuckets.size());
+        assertEquals(7200, instance.hostBuckets.get(1).getBucket());
+        assertEquals(1, instance.hostBuckets.get(1).getSampleCount());
+    }
+
+    /**
+     * Test of addUserMeasurement method, of class MeasurementRollup. A VM's
+     * bucket should be written out once the host moves on to a later
+     * bucket, even if the VM is no longer seen.
+     */
+    @Test
+    public void testAddUserMeasurement() {
+        System.out.println("addUserMeasurement");
+        RecordingRollup instance = new RecordingRollup();
+        instance.addHostMeasurement(1, 60, 100, 10);
+        instance.addUserMeasurement(BatchedMeasurementWriter.Table.VM, 1, 5, 60, 0.25, 10);
+        instance.addUserMeasurement(BatchedMeasurementWriter.Table.VM, 1, 5, 90, 0.75, 10);
+        assertEquals(0, instance.userBuckets.size());
+        instance.addHostMeasurement(1, 120, 100, 11);
+        assertEquals(1, instance.userBuckets.size());
+        MeasurementRollup.UserBucket minute = instance.userBuckets.get(0);
+        assertEquals(5, minute.getUserId());
+        assertEquals(MeasurementRollup.MINUTE, minute.getResolution());
+        assertEquals(60, minute.getBucket());
+        assertEquals(2, minute.getSampleCount());
+        assertEquals(1.0, minute.getCpuLoadSum(), 0.0);
+    }
+
+    /**
+     * Test of splitTimePeriod method, of class MeasurementRollup.
+     */
+    @Test
+    public void testSplitTimePeriod() {
+        System.out.println("splitTimePeriod");
+        int hour = MeasurementRollup.HOUR;
+        //Raw data before the summaries were kept and in the open bucket
+        TimePeriod[] result = MeasurementRollup.splitTimePeriod(new TimePeriod(0, 10 * hour + 100), 2 * hour, 8 * hour, hour);
+        assertEquals(new TimePeriod(0, 2 * hour - 1), result[0]);
+        assertEquals(new TimePeriod(2 * hour, 8 * hour), result[1]);
+        assertEquals(new TimePeriod(9 * hour, 10 * hour + 100), result[2]);
+        //The summaries cover the whole time period
+        result = MeasurementRollup.splitTimePeriod(new TimePeriod(2 * hour + 10, 9 * hour - 1), 2 * hour, 8 * hour, hour);
+        assertNull(result[0]);
+        assertEquals(new TimePeriod(2 * hour, 8 * hour), result[1]);
+        assertNull(result[2]);
+    }
+}
@@ -10,13 +10,23 @@ import eu.tango.energymodeller.datasourceclient.MetricValue;
 import eu.tango.energymodeller.datasourceclient.VmMeasurement;
 import eu.tango.energymodeller.types.energyuser.VM;
 import eu.tango.energymodeller.types.energyuser.VmDeployed;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.fail;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -68,121 +78,436 @@ public class WorkloadStatisticsCacheTest {
         instance.addVMToStatistics(vmMeasurements);
     }
 
+    /**
+     * This creates a workload statistics cache that has no checkpoint to
+     * recover from and only writes checkpoints when asked to.
+     *
+     * @return The new workload statistics cache
+     * @throws IOException If the checkpoint file could not be created
+     */
+    private static WorkloadStatisticsCache getCache() throws IOException {
+        File checkpoint = File.createTempFile("WorkloadStatistics", ".dat");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        new File(checkpoint.getPath() + ".tmp").deleteOnExit();
+        return getCache(checkpoint);
+    }
+
+    /**
+     * This creates a workload statistics cache that recovers from and writes
+     * to a given checkpoint file.
+     *
+     * @param checkpoint The checkpoint file
+     * @return The new workload statistics cache
+     */
+    private static WorkloadStatisticsCache getCache(File checkpoint) {
+        return new WorkloadStatisticsCache(checkpoint, 0, 0, 4);
+    }
+
+    /**
+     * @return The current time in Unix time
+     */
+    private static long now() {
+        return TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    }
+
+    /**
+     * This creates a VM with a given application tag and disk reference.
+     *
+     * @param tag The application tag
+     * @param disk The disk reference
+     * @return The VM
+     */
+    private static VM getVm(String tag, String disk) {
+        VM vm = new VM();
+        vm.addApplicationTag(tag);
+        vm.addDiskImage(disk);
+        return vm;
+    }
+
+    /**
+     * This creates a database that only implements reading the VM workload
+     * history, which it does by adding a single measurement for the
+     * application tag and the disk reference "db".
+     *
+     * @param cpuUtil The cpu utilisation of the measurements
+     * @param success The value to return from reading the workload history
+     * @param before The times before which measurements were requested are
+     * added to this list
+     * @return The database
+     */
+    private static DatabaseConnector getDatabase(final double cpuUtil, final boolean success, final List<Long> before) {
+        return (DatabaseConnector) Proxy.newProxyInstance(DatabaseConnector.class.getClassLoader(), new Class<?>[]{DatabaseConnector.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getVmWorkloadHistory")) {
+                            WorkloadStatisticsCache cache = (WorkloadStatisticsCache) args[0];
+                            long clock = (Long) args[1] - 60;
+                            before.add((Long) args[1]);
+                            cache.addTagMeasurement("db", clock, 0, cpuUtil);
+                            cache.addDiskMeasurement("db", clock, 0, cpuUtil);
+                            return success;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * This waits for a rebuild of a workload statistics cache to finish.
+     *
+     * @param instance The workload statistics cache
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private static void waitForRebuild(WorkloadStatisticsCache instance) throws InterruptedException {
+        for (int i = 0; i < 100 && instance.isRebuilding(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(false, instance.isRebuilding());
+    }
+
     /**
      * Test of getUtilisationforDisks method, of class WorkloadStatisticsCache.
      */
     @Test
-    public void testGetUtilisationforDisks() {
+    public void testGetUtilisationforDisks() throws IOException {
         System.out.println("getUtilisationforDisks");
-        VM vm = null;
-        WorkloadStatisticsCache instance = null;
-        double expResult = 0.0;
-        double result = instance.getUtilisationforDisks(vm);
-        assertEquals(expResult, result, 0.0);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        WorkloadStatisticsCache instance = getCache();
+        VM vm = getVm("tag", "disk");
+        assertEquals(0.0, instance.getUtilisationforDisks(vm).getUtilisation(), 0.0);
+        instance.addDiskMeasurement("disk", now(), 0, 0.2);
+        instance.addDiskMeasurement("disk", now(), 0, 0.4);
+        assertEquals(0.3, instance.getUtilisationforDisks(vm).getUtilisation(), 0.0001);
+        assertEquals(0.1, instance.getUtilisationforDisks(vm).getStdDev(), 0.0001);
     }
 
     /**
      * Test of getBootUtilisationforDisks method, of class WorkloadStatisticsCache.
      */
     @Test
-    public void testGetBootUtilisationforDisks() {
+    public void testGetBootUtilisationforDisks() throws IOException {
         System.out.println("getBootUtilisationforDisks");
-        VM vm = null;
-        WorkloadStatisticsCache instance = null;
-        double expResult = 0.0;
-        double result = instance.getBootUtilisationforDisks(vm);
-        assertEquals(expResult, result, 0.0);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        WorkloadStatisticsCache instance = getCache();
+        VM vm = getVm("tag", "disk");
+        instance.addDiskMeasurement("disk", now(), 0, 0.2);
+        instance.addDiskMeasurement("disk", now(), TimeUnit.HOURS.toSeconds(2), 0.8);
+        //A VM that is not deployed is treated as having just booted
+        assertEquals(0.2, instance.getBootUtilisationforDisks(vm).getUtilisation(), 0.0001);
     }
 
     /**
      * Test of getDoWUtilisationforDisks method, of class WorkloadStatisticsCache.
      */
     @Test
-    public void testGetDoWUtilisationforDisks() {
+    public void testGetDoWUtilisationforDisks() throws IOException {
         System.out.println("getDoWUtilisationforDisks");
-        VM vm = null;
-        WorkloadStatisticsCache instance = null;
-        double expResult = 0.0;
-        double result = instance.getDoWUtilisationforDisks(vm);
-        assertEquals(expResult, result, 0.0);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        WorkloadStatisticsCache instance = getCache();
+        VM vm = getVm("tag", "disk");
+        instance.addDiskMeasurement("disk", now(), 0, 0.2);
+        instance.addDiskMeasurement("disk", now() - TimeUnit.DAYS.toSeconds(1), 0, 0.8);
+        assertEquals(0.2, instance.getDoWUtilisationforDisks(vm).getUtilisation(), 0.0001);
     }
 
     /**
      * Test of getUtilisationforTags method, of class WorkloadStatisticsCache.
      */
     @Test
-    public void testGetUtilisationforTags() {
+    public void testGetUtilisationforTags() throws IOException {
         System.out.println("getUtilisationforTags");
-        VM vm = null;
-        WorkloadStatisticsCache instance = null;
-        double expResult = 0.0;
-        double result = instance.getUtilisationforTags(vm);
-        assertEquals(expResult, result, 0.0);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        WorkloadStatisticsCache instance = getCache();
+        VM vm = getVm("tag", "disk");
+        assertEquals(0.0, instance.getUtilisationforTags(vm).getUtilisation(), 0.0);
+        instance.addTagMeasurement("tag", now(), 0, 0.2);
+        instance.addTagMeasurement("tag", now(), 0, 0.4);
+        assertEquals(0.3, instance.getUtilisationforTags(vm).getUtilisation(), 0.0001);
+        assertEquals(0.1, instance.getUtilisationforTags(vm).getStdDev(), 0.0001);
     }
 
     /**
      * Test of getBootUtilisationforTags method, of class WorkloadStatisticsCache.
      */
     @Test
-    public void testGetBootUtilisationforTags() {
+    public void testGetBootUtilisationforTags() throws IOException {
         System.out.println("getBootUtilisationforTags");
-        VM vm = null;
-        WorkloadStatisticsCache instance = null;
-        double expResult = 0.0;
-        double result = instance.getBootUtilisationforTags(vm);
-        assertEquals(expResult, result, 0.0);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        WorkloadStatisticsCache instance = getCache();
+        VM vm = getVm("tag", "disk");
+        instance.addTagMeasurement("tag", now(), 0, 0.2);
+        instance.addTagMeasurement("tag", now(), TimeUnit.HOURS.toSeconds(2), 0.8);
+        assertEquals(0.2, instance.getBootUtilisationforTags(vm).getUtilisation(), 0.0001);
     }
 
     /**
      * Test of getDoWUtilisationforTags method, of class WorkloadStatisticsCache.
      */
     @Test
-    public void testGetDoWUtilisationforTags() {
+    public void testGetDoWUtilisationforTags() throws IOException {
         System.out.println("getDoWUtilisationforTags");
-        VM vm = null;
-        WorkloadStatisticsCache instance = null;
-        double expResult = 0.0;
-        double result = instance.getDoWUtilisationforTags(vm);
-        assertEquals(expResult, result, 0.0);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        WorkloadStatisticsCache instance = getCache();
+        VM vm = getVm("tag", "disk");
+        instance.addTagMeasurement("tag", now(), 0, 0.2);
+        instance.addTagMeasurement("tag", now() - TimeUnit.DAYS.toSeconds(1), 0, 0.8);
+        assertEquals(0.2, instance.getDoWUtilisationforTags(vm).getUtilisation(), 0.0001);
     }
 
     /**
      * Test of isInUse method, of class WorkloadStatisticsCache.
      */
     @Test
-    public void testIsInUse() {
+    public void testIsInUse() throws IOException {
         System.out.println("isInUse");
-        WorkloadStatisticsCache instance = null;
-        boolean expResult = false;
-        boolean result = instance.isInUse();
-        assertEquals(expResult, result);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        WorkloadStatisticsCache instance = getCache();
+        assertEquals(false, instance.isInUse());
     }
 
     /**
      * Test of setInUse method, of class WorkloadStatisticsCache.
      */
     @Test
-    public void testSetInUse() {
+    public void testSetInUse() throws IOException {
         System.out.println("setInUse");
-        boolean inUse = false;
-        WorkloadStatisticsCache instance = null;
-        instance.setInUse(inUse);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        WorkloadStatisticsCache instance = getCache();
+        instance.setInUse(true);
+        assertEquals(true, instance.isInUse());
+        instance.setInUse(false);
+        assertEquals(false, instance.isInUse());
     }
-    
+
+    /**
+     * Test of checkpoint method, of class WorkloadStatisticsCache. A new
+     * cache should recover the statistics from the checkpoint.
+     */
+    @Test
+    public void testCheckpoint() throws IOException {
+        System.out.println("checkpoint");
+        File checkpoint = File.createTempFile("WorkloadStatistics", ".dat");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        WorkloadStatisticsCache instance = getCache(checkpoint);
+        assertEquals(false, instance.isRecovered());
+        //Nothing has changed so there is nothing to write
+        assertEquals(true, instance.checkpoint());
+        assertEquals(false, checkpoint.exists());
+        instance.addTagMeasurement("tag", now(), 0, 0.2);
+        instance.addDiskMeasurement("disk", now(), 0, 0.6);
+        assertEquals(true, instance.checkpoint());
+        assertEquals(true, checkpoint.exists());
+        assertEquals(false, new File(checkpoint.getPath() + ".tmp").exists());
+        WorkloadStatisticsCache recovered = getCache(checkpoint);
+        assertEquals(true, recovered.isRecovered());
+        VM vm = getVm("tag", "disk");
+        assertEquals(0.2, recovered.getUtilisationforTags(vm).getUtilisation(), 0.0001);
+        assertEquals(0.6, recovered.getUtilisationforDisks(vm).getUtilisation(), 0.0001);
+    }
+
+    /**
+     * Test of checkpoint method, of class WorkloadStatisticsCache. A new
+     * checkpoint should replace the previous one, while a checkpoint that was
+     * left half written should not affect recovery.
+     */
+    @Test
+    public void testCheckpointReplace() throws IOException {
+        System.out.println("checkpointReplace");
+        File checkpoint = File.createTempFile("WorkloadStatistics", ".dat");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        File temp = new File(checkpoint.getPath() + ".tmp");
+        temp.deleteOnExit();
+        WorkloadStatisticsCache instance = getCache(checkpoint);
+        instance.addTagMeasurement("tag", now(), 0, 0.2);
+        assertEquals(true, instance.checkpoint());
+        instance.addTagMeasurement("tag", now(), 0, 0.4);
+        assertEquals(true, instance.checkpoint());
+        //A crash part way through writing the next checkpoint
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+        WorkloadStatisticsCache recovered = getCache(checkpoint);
+        assertEquals(true, recovered.isRecovered());
+        assertEquals(0.3, recovered.getUtilisationforTags(getVm("tag", "disk")).getUtilisation(), 0.0001);
+        //The next checkpoint replaces the half written one
+        recovered.addTagMeasurement("tag", now(), 0, 0.6);
+        assertEquals(true, recovered.checkpoint());
+        assertEquals(false, temp.exists());
+        assertEquals(0.4, getCache(checkpoint).getUtilisationforTags(getVm("tag", "disk")).getUtilisation(), 0.0001);
+    }
+
+    /**
+     * Test of recovering from a checkpoint with an unknown version, of class
+     * WorkloadStatisticsCache. The checkpoint should be ignored.
+     */
+    @Test
+    public void testCheckpointVersionMismatch() throws IOException {
+        System.out.println("checkpointVersionMismatch");
+        File checkpoint = File.createTempFile("WorkloadStatistics", ".dat");
+        checkpoint.deleteOnExit();
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(checkpoint))) {
+            out.writeInt(1);
+            out.writeObject(new HashMap<String, Object>());
+            out.writeObject(new HashMap<String, Object>());
+        }
+        WorkloadStatisticsCache instance = getCache(checkpoint);
+        assertEquals(false, instance.isRecovered());
+        assertEquals(0.0, instance.getUtilisationforTags(getVm("tag", "disk")).getUtilisation(), 0.0);
+    }
+
+    /**
+     * Test of rebuild method, of class WorkloadStatisticsCache. Only
+     * measurements from before the cache started should be read from the
+     * database and measurements added during the rebuild should be kept.
+     */
+    @Test
+    public void testRebuild() throws IOException, InterruptedException {
+        System.out.println("rebuild");
+        long start = now();
+        WorkloadStatisticsCache instance = getCache();
+        instance.addTagMeasurement("db", now(), 0, 0.2);
+        List<Long> before = new ArrayList<>();
+        instance.rebuild(getDatabase(0.6, true, before));
+        waitForRebuild(instance);
+        assertEquals(true, instance.isRecovered());
+        assertEquals(1, before.size());
+        assertEquals(true, before.get(0) >= start && before.get(0) <= now());
+        VM vm = getVm("db", "db");
+        assertEquals(0.4, instance.getUtilisationforTags(vm).getUtilisation(), 0.0001);
+        assertEquals(0.6, instance.getUtilisationforDisks(vm).getUtilisation(), 0.0001);
+        //Once rebuilt, further rebuilds have no effect
+        instance.rebuild(getDatabase(0.6, true, before));
+        waitForRebuild(instance);
+        assertEquals(1, before.size());
+        assertEquals(0.4, instance.getUtilisationforTags(vm).getUtilisation(), 0.0001);
+    }
+
+    /**
+     * Test of rebuild method, of class WorkloadStatisticsCache. A failed
+     * rebuild should leave the statistics unchanged, so that the rebuild can
+     * be tried again.
+     */
+    @Test
+    public void testRebuildFailed() throws IOException, InterruptedException {
+        System.out.println("rebuildFailed");
+        WorkloadStatisticsCache instance = getCache();
+        instance.addTagMeasurement("db", now(), 0, 0.2);
+        List<Long> before = new ArrayList<>();
+        instance.rebuild(getDatabase(0.6, false, before));
+        waitForRebuild(instance);
+        assertEquals(false, instance.isRecovered());
+        VM vm = getVm("db", "db");
+        assertEquals(0.2, instance.getUtilisationforTags(vm).getUtilisation(), 0.0001);
+        assertEquals(0.0, instance.getUtilisationforDisks(vm).getUtilisation(), 0.0);
+        instance.rebuild(getDatabase(0.6, true, before));
+        waitForRebuild(instance);
+        assertEquals(true, instance.isRecovered());
+        assertEquals(0.4, instance.getUtilisationforTags(vm).getUtilisation(), 0.0001);
+        assertEquals(0.6, instance.getUtilisationforDisks(vm).getUtilisation(), 0.0001);
+    }
+
+    /**
+     * Test of the lookups, of class WorkloadStatisticsCache. Application tags
+     * and disk references with the same name should be kept apart.
+     */
+    @Test
+    public void testTagsAndDisksSeparate() throws IOException {
+        System.out.println("tagsAndDisksSeparate");
+        WorkloadStatisticsCache instance = getCache();
+        VM vm = getVm("same", "same");
+        instance.addTagMeasurement("same", now(), 0, 0.2);
+        instance.addDiskMeasurement("same", now(), 0, 0.8);
+        assertEquals(0.2, instance.getUtilisationforTags(vm).getUtilisation(), 0.0001);
+        assertEquals(0.2, instance.getBootUtilisationforTags(vm).getUtilisation(), 0.0001);
+        assertEquals(0.2, instance.getDoWUtilisationforTags(vm).getUtilisation(), 0.0001);
+        assertEquals(0.8, instance.getUtilisationforDisks(vm).getUtilisation(), 0.0001);
+        assertEquals(0.8, instance.getBootUtilisationforDisks(vm).getUtilisation(), 0.0001);
+        assertEquals(0.8, instance.getDoWUtilisationforDisks(vm).getUtilisation(), 0.0001);
+    }
+
+    /**
+     * Test of the checkpoint format, of class WorkloadStatisticsCache. The
+     * checkpoint should hold the version followed by the records for the
+     * application tags and then the disks.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCheckpointFormat() throws IOException, ClassNotFoundException {
+        System.out.println("checkpointFormat");
+        File checkpoint = File.createTempFile("WorkloadStatistics", ".dat");
+        checkpoint.delete();
+        checkpoint.deleteOnExit();
+        WorkloadStatisticsCache instance = getCache(checkpoint);
+        instance.addTagMeasurement("tag", now(), 0, 0.2);
+        instance.addTagMeasurement("tag", now(), 0, 0.4);
+        instance.addDiskMeasurement("disk", now(), 0, 0.6);
+        assertEquals(true, instance.checkpoint());
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(checkpoint))) {
+            assertEquals(2, in.readInt());
+            HashMap<String, WorkloadStatisticsCache.WorkloadRecord> tags = (HashMap<String, WorkloadStatisticsCache.WorkloadRecord>) in.readObject();
+            HashMap<String, WorkloadStatisticsCache.WorkloadRecord> disks = (HashMap<String, WorkloadStatisticsCache.WorkloadRecord>) in.readObject();
+            assertEquals(1, tags.size());
+            assertEquals(2, tags.get("tag").getCount(WorkloadStatisticsCache.WorkloadRecord.OVERALL));
+            assertEquals(0.3, tags.get("tag").getAverage(WorkloadStatisticsCache.WorkloadRecord.OVERALL), 0.0001);
+            assertEquals(1, disks.size());
+            assertEquals(0.6, disks.get("disk").getAverage(WorkloadStatisticsCache.WorkloadRecord.OVERALL), 0.0001);
+        }
+    }
+
+    /**
+     * Test of getHourOfWeek method, of class WorkloadStatisticsCache.
+     */
+    @Test
+    public void testGetHourOfWeek() {
+        System.out.println("getHourOfWeek");
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        //The 1st of January 1970 was a Thursday
+        assertEquals(4 * 24, WorkloadStatisticsCache.getHourOfWeek(0, utc));
+        //Sunday the 4th of January 1970 at midnight and just before
+        long sunday = TimeUnit.DAYS.toSeconds(3);
+        assertEquals(0, WorkloadStatisticsCache.getHourOfWeek(sunday, utc));
+        assertEquals(167, WorkloadStatisticsCache.getHourOfWeek(sunday - 1, utc));
+        assertEquals(0, WorkloadStatisticsCache.getHourOfWeek(sunday + TimeUnit.DAYS.toSeconds(7 * 52), utc));
+        //Times before 1970
+        assertEquals(4 * 24 - 1, WorkloadStatisticsCache.getHourOfWeek(-1, utc));
+        //The hour is taken in the given time zone
+        assertEquals(4 * 24 + 1, WorkloadStatisticsCache.getHourOfWeek(0, TimeZone.getTimeZone("GMT+1")));
+    }
+
+    /**
+     * Test of the record of a single application tag or disk reference, of
+     * class WorkloadStatisticsCache.
+     */
+    @Test
+    public void testWorkloadRecord() {
+        System.out.println("workloadRecord");
+        WorkloadStatisticsCache.WorkloadRecord instance = new WorkloadStatisticsCache.WorkloadRecord(2);
+        instance.add(0.2, 0, 0);
+        instance.add(0.4, 167, 1);
+        //Boot buckets beyond the last are counted in the last
+        instance.add(0.9, 167, 5);
+        int overall = WorkloadStatisticsCache.WorkloadRecord.OVERALL;
+        assertEquals(3, instance.getCount(overall));
+        assertEquals(0.5, instance.getAverage(overall), 0.0001);
+        assertEquals(0.0866667, instance.getVariance(overall), 0.0001);
+        assertEquals(Math.sqrt(0.0866667), instance.getStandardDeviation(overall), 0.0001);
+        int sunday = WorkloadStatisticsCache.WorkloadRecord.getWeekSlot(0);
+        int saturday = WorkloadStatisticsCache.WorkloadRecord.getWeekSlot(167);
+        assertEquals(1, instance.getCount(sunday));
+        assertEquals(0.2, instance.getAverage(sunday), 0.0001);
+        assertEquals(0.0, instance.getStandardDeviation(sunday), 0.0);
+        assertEquals(2, instance.getCount(saturday));
+        assertEquals(0.65, instance.getAverage(saturday), 0.0001);
+        assertEquals(0.25, instance.getStandardDeviation(saturday), 0.0001);
+        int lastBoot = WorkloadStatisticsCache.WorkloadRecord.getBootSlot(1);
+        assertEquals(2, instance.getCount(lastBoot));
+        assertEquals(2, instance.getCount(WorkloadStatisticsCache.WorkloadRecord.getBootSlot(5)));
+        assertEquals(0.65, instance.getAverage(WorkloadStatisticsCache.WorkloadRecord.getBootSlot(5)), 0.0001);
+        //Adding one record to another adds every slot
+        WorkloadStatisticsCache.WorkloadRecord other = new WorkloadStatisticsCache.WorkloadRecord(2);
+        other.add(0.5, 0, 0);
+        other.add(instance);
+        assertEquals(4, other.getCount(overall));
+        assertEquals(0.5, other.getAverage(overall), 0.0001);
+        assertEquals(2, other.getCount(sunday));
+        assertEquals(0.35, other.getAverage(sunday), 0.0001);
+        assertEquals(0.15, other.getStandardDeviation(sunday), 0.0001);
+    }
+
 }
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * This is being developed for the TANGO Project: http://tango-project.eu
+ *
+ */
+package eu.tango.energymodeller.energypredictor.vmenergyshare.historic;
+
+import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.energymodeller.types.energyuser.VmDeployed;
+import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
+import eu.tango.energymodeller.types.usage.HostEnergyRecord;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * This is the test class for the streamed division of historic energy.
+ *
+ * @author Richard Kavanagh
+ */
+public class HistoricEnergyAccumulatorTest {
+
+    private final Host host = new Host(10084, "asok10");
+    private final VmDeployed vm1 = new VmDeployed(1, "vm1");
+    private final VmDeployed vm2 = new VmDeployed(2, "vm2");
+    private final VmDeployed vm3 = new VmDeployed(3, "vm3");
+    private final List<HostEnergyRecord> energy = new ArrayList<>();
+    private final List<HostEnergyUserLoadFraction> load = new ArrayList<>();
+
+    public HistoricEnergyAccumulatorTest() {
+        host.setDefaultIdlePowerConsumption(50);
+        for (int i = 0; i < 20; i++) {
+            long clock = 1000 + (i * 5);
+            energy.add(new HostEnergyRecord(host, clock, 100 + (i % 7) * 10, i * 5));
+            HostEnergyUserLoadFraction fraction = new HostEnergyUserLoadFraction(host, clock);
+            if (i >= 5 && i < 15) {
+                fraction.addFraction(vm1, 0.5);
+                fraction.addFraction(vm2, 0.25);
+                fraction.addFraction(vm3, 0.25);
+            } else {
+                fraction.addFraction(vm1, 0.6);
+                fraction.addFraction(vm2, 0.4);
+            }
+            load.add(fraction);
+        }
+    }
+
+    /**
+     * This feeds the test records, in time order, into an accumulator.
+     *
+     * @param includeIdleEnergy If idle energy should be divided among the VMs
+     * @return The accumulator with the records added
+     */
+    private HistoricEnergyAccumulator getAccumulator(boolean includeIdleEnergy) {
+        List<VmDeployed> vms = new ArrayList<>();
+        vms.add(vm1);
+        vms.add(vm2);
+        vms.add(vm3);
+        HistoricEnergyAccumulator instance = new HistoricEnergyAccumulator(host, vms, includeIdleEnergy);
+        for (int i = 0; i < energy.size(); i++) {
+            instance.add(energy.get(i), load.get(i));
+        }
+        return instance;
+    }
+
+    /**
+     * Test of getEnergyUsage method, of class HistoricEnergyAccumulator. It
+     * should give the same results as LoadBasedDivision.
+     */
+    @Test
+    public void testGetEnergyUsage() {
+        System.out.println("getEnergyUsage");
+        HistoricEnergyAccumulator instance = getAccumulator(false);
+        Map<EnergyUsageSource, Double> result = instance.getEnergyUsage();
+        LoadBasedDivision expResult = new LoadBasedDivision(host);
+        expResult.setEnergyUsage(new ArrayList<>(energy));
+        expResult.setLoadFraction(new ArrayList<>(load));
+        assertEquals(expResult.getEnergyUsage(vm1), result.get(vm1), 0.0);
+        assertEquals(expResult.getEnergyUsage(vm2), result.get(vm2), 0.0);
+        assertEquals(expResult.getEnergyUsage(vm3), result.get(vm3), 0.0);
+        assertEquals(expResult.getDuration(), instance.getDuration());
+    }
+
+    /**
+     * Test of getEnergyUsage method including idle energy, of class
+     * HistoricEnergyAccumulator. It should give the same results as
+     * LoadBasedDivisionWithIdleEnergy.
+     */
+    @Test
+    public void testGetEnergyUsage_IdleEnergy() {
+        System.out.println("getEnergyUsage");
+        Map<EnergyUsageSource, Double> result = getAccumulator(true).getEnergyUsage();
+        LoadBasedDivisionWithIdleEnergy expResult = new LoadBasedDivisionWithIdleEnergy(host);
+        expResult.setEnergyUsage(new ArrayList<>(energy));
+        expResult.setLoadFraction(new ArrayList<>(load));
+        assertEquals(expResult.getEnergyUsage(vm1), result.get(vm1), 0.0);
+        assertEquals(expResult.getEnergyUsage(vm2), result.get(vm2), 0.0);
+        assertEquals(expResult.getEnergyUsage(vm3), result.get(vm3), 0.0);
+    }
+
+    /**
+     * This adds the load fraction records to an accumulator one at a time,
+     * as the database does when streaming them, and checks that the results
+     * match LoadBasedDivision given the same records in full.
+     *
+     * @param hostData The host's energy records
+     * @param loadData The load fraction records
+     */
+    private void checkMatchedRecords(List<HostEnergyRecord> hostData, List<HostEnergyUserLoadFraction> loadData) {
+        List<VmDeployed> vms = new ArrayList<>();
+        vms.add(vm1);
+        vms.add(vm2);
+        vms.add(vm3);
+        HistoricEnergyAccumulator instance = new HistoricEnergyAccumulator(host, vms, false);
+        instance.setEnergyUsage(hostData);
+        instance.setRecordCount(loadData.size());
+        for (HostEnergyUserLoadFraction record : loadData) {
+            instance.add(record);
+        }
+        Map<EnergyUsageSource, Double> result = instance.getEnergyUsage();
+        LoadBasedDivision expResult = new LoadBasedDivision(host);
+        expResult.setEnergyUsage(new ArrayList<>(hostData));
+        expResult.setLoadFraction(new ArrayList<>(loadData));
+        assertEquals(expResult.getEnergyUsage(vm1), result.get(vm1), 0.0);
+        assertEquals(expResult.getEnergyUsage(vm2), result.get(vm2), 0.0);
+        assertEquals(expResult.getEnergyUsage(vm3), result.get(vm3), 0.0);
+        assertEquals(expResult.getDuration(), instance.getDuration());
+    }
+
+    /**
+     * Test of add method, of class HistoricEnergyAccumulator. When there are
+     * more energy records than load records they should be matched by time,
+     * as AbstractHistoricLoadBasedDivision.cleanData does.
+     */
+    @Test
+    public void testAdd_MatchByTime() {
+        System.out.println("add");
+        List<HostEnergyRecord> hostData = new ArrayList<>();
+        List<HostEnergyUserLoadFraction> loadData = new ArrayList<>();
+        for (int i = 0; i < energy.size(); i++) {
+            hostData.add(energy.get(i));
+            //Energy records without a load record at the same time
+            hostData.add(new HostEnergyRecord(host, energy.get(i).getTime() + 1, 500, 0));
+            //Load records without an energy record are skipped as well
+            if (i % 4 == 3) {
+                loadData.add(new HostEnergyUserLoadFraction(host, energy.get(i).getTime() - 1));
+            }
+            loadData.add(load.get(i));
+        }
+        assertEquals(true, hostData.size() != loadData.size());
+        checkMatchedRecords(hostData, loadData);
+    }
+
+    /**
+     * Test of add method, of class HistoricEnergyAccumulator. When there are
+     * as many energy records as load records they should be matched by
+     * position, even if their times differ.
+     */
+    @Test
+    public void testAdd_MatchByPosition() {
+        System.out.println("add");
+        List<HostEnergyRecord> hostData = new ArrayList<>();
+        for (HostEnergyRecord record : energy) {
+            hostData.add(new HostEnergyRecord(host, record.getTime() + 1, record.getPower(), record.getEnergy()));
+        }
+        checkMatchedRecords(hostData, load);
+        //The records are a second apart throughout, so the result is unchanged
+        HistoricEnergyAccumulator instance = new HistoricEnergyAccumulator(host, load.get(5).getEnergyUsageSources(), false);
+        instance.setEnergyUsage(hostData);
+        instance.setRecordCount(load.size());
+        for (HostEnergyUserLoadFraction record : load) {
+            instance.add(record);
+        }
+        assertEquals(getAccumulator(false).getEnergyUsage().get(vm3), instance.getEnergyUsage().get(vm3), 0.0000001);
+    }
+
+    /**
+     * Test of add method, of class HistoricEnergyAccumulator. Nothing should
+     * be matched if there are no energy records.
+     */
+    @Test
+    public void testAdd_NoEnergyRecords() {
+        System.out.println("add");
+        checkMatchedRecords(new ArrayList<HostEnergyRecord>(), load);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2014 University of Leeds
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package eu.tango.energymodeller.energypredictor.vmenergyshare.historic;
+
+import eu.tango.energymodeller.types.energyuser.EnergyUsageSource;
+import eu.tango.energymodeller.types.energyuser.Host;
+import eu.tango.energymodeller.types.energyuser.VmDeployed;
+import eu.tango.energymodeller.types.energyuser.usage.HostEnergyUserLoadFraction;
+import eu.tango.energymodeller.types.usage.HostEnergyRecord;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * This is the test class for the historic load based division of energy.
+ *
+ * @author Richard Kavanagh
+ */
+public class LoadBasedDivisionTest {
+
+    private final Host host = new Host(10084, "asok10");
+    private final VmDeployed vm1 = new VmDeployed(1, "vm1");
+    private final VmDeployed vm2 = new VmDeployed(2, "vm2");
+    private final VmDeployed vm3 = new VmDeployed(3, "vm3");
+
+    /**
+     * This creates a division mechanism with a set of host records and load
+     * fractions, where vm3 is only present for part of the time.
+     *
+     * @return The division mechanism populated with test data
+     */
+    private LoadBasedDivision getDivision() {
+        List<HostEnergyRecord> energy = new ArrayList<>();
+        List<HostEnergyUserLoadFraction> load = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            long clock = 1000 + (i * 5);
+            energy.add(new HostEnergyRecord(host, clock, 100 + (i % 7) * 10, i * 5));
+            HostEnergyUserLoadFraction fraction = new HostEnergyUserLoadFraction(host, clock);
+            if (i >= 5 && i < 15) {
+                fraction.addFraction(vm1, 0.5);
+                fraction.addFraction(vm2, 0.25);
+                fraction.addFraction(vm3, 0.25);
+            } else {
+                fraction.addFraction(vm1, 0.6);
+                fraction.addFraction(vm2, 0.4);
+            }
+            load.add(fraction);
+        }
+        //A host record without a matching load record, which should be cleaned
+        energy.add(new HostEnergyRecord(host, 1002, 500, 0));
+        LoadBasedDivision instance = new LoadBasedDivision(host);
+        instance.addEnergyUser(vm1);
+        instance.addEnergyUser(vm2);
+        instance.addEnergyUser(vm3);
+        instance.setEnergyUsage(energy);
+        instance.setLoadFraction(load);
+        return instance;
+    }
+
+    /**
+     * Test of getEnergyUsage method for several VMs at once, of class
+     * LoadBasedDivision. It should give the same results as each VM in turn.
+     */
+    @Test
+    public void testGetEnergyUsage_Collection() {
+        System.out.println("getEnergyUsage");
+        List<VmDeployed> vms = new ArrayList<>();
+        vms.add(vm1);
+        vms.add(vm2);
+        vms.add(vm3);
+        Map<EnergyUsageSource, Double> result = getDivision().getEnergyUsage(vms);
+        assertEquals(3, result.size());
+        for (VmDeployed vm : vms) {
+            double expResult = getDivision().getEnergyUsage(vm);
+            assertEquals(expResult, result.get(vm), 0.000001);
+        }
+    }
+
+    /**
+     * Test of getEnergyUsage method, of class LoadBasedDivision. It checks the
+     * energy of each VM, including a VM that is not in the records.
+     */
+    @Test
+    public void testGetEnergyUsage() {
+        System.out.println("getEnergyUsage");
+        LoadBasedDivision instance = getDivision();
+        assertEquals(1.7333333333333336, instance.getEnergyUsage(vm1), 0.000001);
+        assertEquals(1.0027777777777778, instance.getEnergyUsage(vm2), 0.000001);
+        assertEquals(0.4149305555555555, instance.getEnergyUsage(vm3), 0.000001);
+        assertEquals(0.0, instance.getEnergyUsage(new VmDeployed(4, "vm4")), 0.0);
+    }
+}